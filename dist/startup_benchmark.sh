@@ -0,0 +1,62 @@
+#!/bin/bash
+# Copyright 2021 Google LLC
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#     https://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License
+#
+# Measures the startup time of the extraction tool on a plain JVM, with an AppCDS archive and,
+# optionally, as GraalVM native image. Each variant runs "td-extract --help", which bootstraps
+# Guice and picocli just like an actual extraction.
+#
+# Usage: startup_benchmark.sh <ExtractionTool_deploy.jar> <ExtractionTool.classlist> [native image]
+
+set -euo pipefail
+
+readonly MAIN_CLASS="com.google.cloud.bigquery.dwhassessment.extractiontool.ExtractionTool"
+readonly RUNS="${STARTUP_BENCHMARK_RUNS:-10}"
+
+if [[ $# -lt 2 ]]; then
+  echo "Usage: ${0} <ExtractionTool_deploy.jar> <ExtractionTool.classlist> [native image]"
+  exit 1
+fi
+DEPLOY_JAR="$(realpath "$1")"
+CLASS_LIST="$(realpath "$2")"
+NATIVE_IMAGE="${3:-}"
+
+WORK_DIR="$(mktemp -d)"
+trap 'rm -rf "${WORK_DIR}"' EXIT
+
+# Prints the mean wall-clock time of the given command in milliseconds.
+measure() {
+  # Warm up the file system cache.
+  "$@" > /dev/null 2>&1
+  local start end
+  start="$(date +%s%N)"
+  for ((i = 0; i < RUNS; i++)); do
+    "$@" > /dev/null 2>&1
+  done
+  end="$(date +%s%N)"
+  echo $(((end - start) / RUNS / 1000000))
+}
+
+java -Xshare:dump -XX:SharedClassListFile="${CLASS_LIST}" \
+  -XX:SharedArchiveFile="${WORK_DIR}/ExtractionTool.jsa" -cp "${DEPLOY_JAR}" > /dev/null 2>&1
+
+echo "Mean startup time over ${RUNS} runs:"
+printf "  JVM:          %6d ms\n" \
+  "$(measure java -cp "${DEPLOY_JAR}" "${MAIN_CLASS}" td-extract --help)"
+printf "  JVM + AppCDS: %6d ms\n" \
+  "$(measure java -Xshare:on -XX:SharedArchiveFile="${WORK_DIR}/ExtractionTool.jsa" \
+    -cp "${DEPLOY_JAR}" "${MAIN_CLASS}" td-extract --help)"
+if [[ -n "${NATIVE_IMAGE}" ]]; then
+  printf "  Native image: %6d ms\n" "$(measure "${NATIVE_IMAGE}" td-extract --help)"
+fi
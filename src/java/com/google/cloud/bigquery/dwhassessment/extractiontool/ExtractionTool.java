@@ -42,6 +42,11 @@ public final class ExtractionTool implements Callable<Integer> {
   }
 
   public static void main(String[] args) {
+    // A native image cannot load classes generated at runtime, so Guice has to fall back to
+    // reflection. See dist/BUILD for how the native image is built.
+    if (System.getProperty("org.graalvm.nativeimage.imagecode") != null) {
+      System.setProperty("guice_bytecode_gen_option", "DISABLED");
+    }
     Injector injector = Guice.createInjector(new BaseModule());
 
     CommandLine commandLine = new CommandLine(new ExtractionTool());
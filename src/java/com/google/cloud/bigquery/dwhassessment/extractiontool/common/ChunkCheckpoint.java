@@ -16,6 +16,7 @@
 package com.google.cloud.bigquery.dwhassessment.extractiontool.common;
 
 import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableMap;
 import java.time.Instant;
 
 @AutoValue
@@ -25,10 +26,17 @@ public abstract class ChunkCheckpoint {
 
   public abstract Instant lastSavedInstant();
 
+  /**
+   * The values of the tie-breaking sorting columns of the last saved row, by column, if the last
+   * chunk ended among rows that share its timestamp. Empty if the chunk ended with its timestamp.
+   */
+  public abstract ImmutableMap<String, String> lastSavedKey();
+
   public static Builder builder() {
     return new AutoValue_ChunkCheckpoint.Builder()
         .setLastSavedChunkNumber(-1)
-        .setLastSavedInstant(Instant.ofEpochMilli(0));
+        .setLastSavedInstant(Instant.ofEpochMilli(0))
+        .setLastSavedKey(ImmutableMap.of());
   }
 
   @AutoValue.Builder
@@ -38,6 +46,8 @@ public abstract class ChunkCheckpoint {
 
     public abstract Builder setLastSavedInstant(Instant value);
 
+    public abstract Builder setLastSavedKey(ImmutableMap<String, String> value);
+
     public abstract ChunkCheckpoint build();
   }
 }
@@ -25,12 +25,21 @@ import com.google.cloud.bigquery.dwhassessment.extractiontool.dbscripts.Internal
 import com.google.cloud.bigquery.dwhassessment.extractiontool.dbscripts.ScriptLoader;
 import com.google.cloud.bigquery.dwhassessment.extractiontool.dumper.DataEntityManager;
 import com.google.cloud.bigquery.dwhassessment.extractiontool.dumper.DataEntityManagerFactory;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.executor.CompactExecutor;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.executor.CompactExecutorImpl;
 import com.google.cloud.bigquery.dwhassessment.extractiontool.executor.ExtractExecutor;
 import com.google.cloud.bigquery.dwhassessment.extractiontool.executor.ExtractExecutorImpl;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.executor.HiveExtractExecutor;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.executor.HiveExtractExecutorImpl;
 import com.google.cloud.bigquery.dwhassessment.extractiontool.executor.SaveChecker;
 import com.google.cloud.bigquery.dwhassessment.extractiontool.executor.SaveCheckerImpl;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.executor.VerifyExecutor;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.executor.VerifyExecutorImpl;
 import com.google.cloud.bigquery.dwhassessment.extractiontool.subcommand.AboutSubcommand;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.subcommand.CompactSubcommand;
 import com.google.cloud.bigquery.dwhassessment.extractiontool.subcommand.ExtractSubcommand;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.subcommand.HiveExtractSubcommand;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.subcommand.VerifySubcommand;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.inject.AbstractModule;
@@ -40,6 +49,7 @@ import com.google.inject.TypeLiteral;
 import com.google.inject.multibindings.Multibinder;
 import java.nio.file.Path;
 import java.util.concurrent.Callable;
+import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import javax.inject.Provider;
@@ -54,9 +64,36 @@ public final class BaseModule extends AbstractModule {
       SchemaManager schemaManager,
       ScriptManager scriptManager,
       SaveChecker saveChecker,
-      Function<Path, DataEntityManager> dataEntityManagerFactory) {
+      BiFunction<Path, Boolean, DataEntityManager> dataEntityManagerFactory,
+      ScriptLoader scriptLoader) {
     return new ExtractExecutorImpl(
-        schemaManager, scriptManager, saveChecker, dataEntityManagerFactory);
+        schemaManager,
+        scriptManager,
+        saveChecker,
+        dataEntityManagerFactory,
+        scriptLoader.getHashPartitionableScripts(),
+        scriptLoader.getCostHints(),
+        scriptLoader.getBatchableScripts(),
+        scriptLoader.getOptInScripts());
+  }
+
+  @Provides
+  @Singleton
+  HiveExtractExecutor hiveExtractExecutor(
+      Function<Path, DataEntityManager> dataEntityManagerFactory) {
+    return new HiveExtractExecutorImpl(dataEntityManagerFactory);
+  }
+
+  @Provides
+  @Singleton
+  VerifyExecutor verifyExecutor(ImmutableMap<String, ImmutableList<String>> sortingColumnsMap) {
+    return new VerifyExecutorImpl(sortingColumnsMap);
+  }
+
+  @Provides
+  @Singleton
+  CompactExecutor compactExecutor() {
+    return new CompactExecutorImpl();
   }
 
   @Provides
@@ -72,6 +109,25 @@ public final class BaseModule extends AbstractModule {
     return new ExtractSubcommand(extractExecutorProvider::get, scriptManager);
   }
 
+  @Provides
+  @Singleton
+  HiveExtractSubcommand hiveExtractSubcommand(
+      Provider<HiveExtractExecutor> hiveExtractExecutorProvider) {
+    return new HiveExtractSubcommand(hiveExtractExecutorProvider::get);
+  }
+
+  @Provides
+  @Singleton
+  VerifySubcommand verifySubcommand(Provider<VerifyExecutor> verifyExecutorProvider) {
+    return new VerifySubcommand(verifyExecutorProvider::get);
+  }
+
+  @Provides
+  @Singleton
+  CompactSubcommand compactSubcommand(Provider<CompactExecutor> compactExecutorProvider) {
+    return new CompactSubcommand(compactExecutorProvider::get);
+  }
+
   @Provides
   @Singleton
   AboutSubcommand aboutSubcommand() {
@@ -89,8 +145,10 @@ public final class BaseModule extends AbstractModule {
   ScriptManager scriptManager(
       ScriptRunner scriptRunner,
       ImmutableMap<String, Supplier<String>> scriptsMap,
-      ImmutableMap<String, ImmutableList<String>> sortingColumnsMap) {
-    return new ScriptManagerImpl(scriptRunner, scriptsMap, sortingColumnsMap);
+      ImmutableMap<String, ImmutableList<String>> sortingColumnsMap,
+      ScriptLoader scriptLoader) {
+    return new ScriptManagerImpl(
+        scriptRunner, scriptsMap, sortingColumnsMap, scriptLoader.getIndexColumnsMap());
   }
 
   @Provides
@@ -99,6 +157,12 @@ public final class BaseModule extends AbstractModule {
     return new DataEntityManagerFactory();
   }
 
+  @Provides
+  @Singleton
+  BiFunction<Path, Boolean, DataEntityManager> syncingDataEntityManagerFactory() {
+    return DataEntityManagerFactory::create;
+  }
+
   @Provides
   @Singleton
   ScriptRunner scriptRunner() {
@@ -129,5 +193,8 @@ public final class BaseModule extends AbstractModule {
         Multibinder.newSetBinder(binder(), new TypeLiteral<Callable<Integer>>() {});
     subcommandBinder.addBinding().to(new Key<AboutSubcommand>() {});
     subcommandBinder.addBinding().to(new Key<ExtractSubcommand>() {});
+    subcommandBinder.addBinding().to(new Key<HiveExtractSubcommand>() {});
+    subcommandBinder.addBinding().to(new Key<VerifySubcommand>() {});
+    subcommandBinder.addBinding().to(new Key<CompactSubcommand>() {});
   }
 }
@@ -0,0 +1,309 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigquery.dwhassessment.extractiontool.db;
+
+import com.google.cloud.bigquery.dwhassessment.extractiontool.dumper.DataEntityManager;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.dumper.ForwardingDataEntityManager;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.dumper.ForwardingOutputStream;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Sets the fetch size of the statements of a unit of work so that the rows that the driver buffers
+ * stay within a memory budget, whatever the width of the rows.
+ *
+ * <p>The width of a row is estimated from the precision of the columns in the {@link
+ * ResultSetMetaData}, which bounds it, and, once rows were written, from the average size of the
+ * encoded rows, which is usually far below that bound, e.g. for texts that are declared with
+ * thousands of characters. Since the driver holds the values in a less compact form than Avro, the
+ * average is doubled. The fetch size is adjusted as the average changes, and later statements of
+ * the unit, e.g. the retry of a timed out script, start with the last width.
+ */
+public final class AdaptiveFetchSizer {
+
+  private static final Logger LOGGER = Logger.getLogger(AdaptiveFetchSizer.class.getName());
+
+  private static final String AVRO_SUFFIX = ".avro";
+  @VisibleForTesting static final int MAX_FETCH_SIZE = 100_000;
+  // Java holds characters in two bytes.
+  private static final int BYTES_PER_CHAR = 2;
+  // The width of numbers, dates and other values of a fixed size, including their object header.
+  private static final int FIXED_COLUMN_WIDTH = 24;
+  // The width of variable length values without a declared precision, e.g. LOBs of some drivers.
+  private static final int UNKNOWN_COLUMN_WIDTH = 4096;
+  private static final int ENCODING_OVERHEAD = 2;
+  // Fetch sizes that differ by less than this factor are not changed, to spare the driver.
+  private static final double ADJUSTMENT_TOLERANCE = 1.25;
+
+  private final long memoryBudget;
+  private long declaredRowWidth;
+  private long rowCount;
+  private long sampledRowCount;
+  private long writtenBytes;
+
+  /**
+   * Creates a fetch sizer.
+   *
+   * @param memoryBudget The number of bytes that the fetched rows of a statement may take.
+   */
+  public AdaptiveFetchSizer(long memoryBudget) {
+    Preconditions.checkArgument(memoryBudget > 0, "The memory budget must be positive.");
+    this.memoryBudget = memoryBudget;
+  }
+
+  /** Returns a connection whose statements are sized. Closing it closes the given connection. */
+  public Connection watch(Connection connection) {
+    return newProxy(Connection.class, new ConnectionHandler(connection));
+  }
+
+  /**
+   * Returns a data entity manager that measures the size of the encoded rows from the bytes that
+   * are written to Avro files.
+   */
+  public DataEntityManager observe(DataEntityManager dataEntityManager) {
+    return new ForwardingDataEntityManager(dataEntityManager) {
+      @Override
+      public OutputStream getEntityOutputStream(String name) throws IOException {
+        OutputStream outputStream = delegate.getEntityOutputStream(name);
+        if (!name.endsWith(AVRO_SUFFIX)) {
+          return outputStream;
+        }
+        return new ForwardingOutputStream(outputStream) {
+          private long unflushedBytes;
+
+          @Override
+          public void write(byte[] b, int off, int len) throws IOException {
+            super.write(b, off, len);
+            unflushedBytes += len;
+          }
+
+          @Override
+          public void write(int b) throws IOException {
+            super.write(b);
+            unflushedBytes++;
+          }
+
+          @Override
+          public void flush() throws IOException {
+            super.flush();
+            onBlocksWritten(unflushedBytes);
+            unflushedBytes = 0;
+          }
+        };
+      }
+    };
+  }
+
+  /** Returns the fetch size for the current estimate of the row width, if there is one. */
+  @VisibleForTesting
+  synchronized int getFetchSize() {
+    long rowWidth = getRowWidth();
+    if (rowWidth <= 0) {
+      return 0;
+    }
+    return (int) Math.max(1, Math.min(MAX_FETCH_SIZE, memoryBudget / rowWidth));
+  }
+
+  private synchronized long getRowWidth() {
+    if (sampledRowCount == 0) {
+      return declaredRowWidth;
+    }
+    long encodedRowWidth = ENCODING_OVERHEAD * Math.max(1, writtenBytes / sampledRowCount);
+    return declaredRowWidth > 0 ? Math.min(declaredRowWidth, encodedRowWidth) : encodedRowWidth;
+  }
+
+  private synchronized void onMetaData(ResultSetMetaData metaData) throws SQLException {
+    long width = 0;
+    for (int column = 1; column <= metaData.getColumnCount(); column++) {
+      width += getColumnWidth(metaData.getColumnType(column), metaData.getPrecision(column));
+    }
+    declaredRowWidth = width;
+  }
+
+  private synchronized void onRow() {
+    rowCount++;
+  }
+
+  private synchronized void onBlocksWritten(long length) {
+    // Avro flushes the stream after each block, which is written while the last fetched row is
+    // appended, so the blocks hold all rows that were fetched before. Between flushes, the stream
+    // may get only a part of a block, e.g. when the buffer of the writer overflows.
+    writtenBytes += length;
+    sampledRowCount = rowCount;
+  }
+
+  private static long getColumnWidth(int type, int precision) {
+    switch (type) {
+      case Types.CHAR:
+      case Types.VARCHAR:
+      case Types.LONGVARCHAR:
+      case Types.NCHAR:
+      case Types.NVARCHAR:
+      case Types.LONGNVARCHAR:
+      case Types.CLOB:
+      case Types.NCLOB:
+        return FIXED_COLUMN_WIDTH
+            + (precision > 0 ? (long) precision * BYTES_PER_CHAR : UNKNOWN_COLUMN_WIDTH);
+      case Types.BINARY:
+      case Types.VARBINARY:
+      case Types.LONGVARBINARY:
+      case Types.BLOB:
+        return FIXED_COLUMN_WIDTH + (precision > 0 ? precision : UNKNOWN_COLUMN_WIDTH);
+      default:
+        return FIXED_COLUMN_WIDTH;
+    }
+  }
+
+  private static <T> T newProxy(Class<T> type, InvocationHandler handler) {
+    return type.cast(
+        Proxy.newProxyInstance(
+            AdaptiveFetchSizer.class.getClassLoader(), new Class<?>[] {type}, handler));
+  }
+
+  private static Object invoke(Method method, Object target, Object[] args) throws Throwable {
+    try {
+      return method.invoke(target, args);
+    } catch (InvocationTargetException e) {
+      throw e.getCause();
+    }
+  }
+
+  private final class ConnectionHandler implements InvocationHandler {
+
+    private final Connection connection;
+
+    ConnectionHandler(Connection connection) {
+      this.connection = connection;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      Object result = AdaptiveFetchSizer.invoke(method, connection, args);
+      switch (method.getName()) {
+        case "createStatement":
+        case "prepareStatement":
+        case "prepareCall":
+          return sizeStatement((Statement) result);
+        default:
+          return result;
+      }
+    }
+
+    private Statement sizeStatement(Statement statement) throws SQLException {
+      // The first rows are usually fetched by the execution, before the metadata is known.
+      int fetchSize = getFetchSize();
+      if (fetchSize > 0) {
+        statement.setFetchSize(fetchSize);
+      }
+      StatementHandler handler = new StatementHandler(statement);
+      if (statement instanceof CallableStatement) {
+        return newProxy(CallableStatement.class, handler);
+      }
+      if (statement instanceof PreparedStatement) {
+        return newProxy(PreparedStatement.class, handler);
+      }
+      return newProxy(Statement.class, handler);
+    }
+  }
+
+  private final class StatementHandler implements InvocationHandler {
+
+    private final Statement statement;
+
+    StatementHandler(Statement statement) {
+      this.statement = statement;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      Object result = AdaptiveFetchSizer.invoke(method, statement, args);
+      if (!(result instanceof ResultSet)) {
+        return result;
+      }
+      ResultSet resultSet = (ResultSet) result;
+      onMetaData(resultSet.getMetaData());
+      SizedResultSet sizedResultSet = new SizedResultSet(resultSet, (Statement) proxy);
+      sizedResultSet.adjustFetchSize();
+      return sizedResultSet;
+    }
+  }
+
+  /** A result set whose fetch size is adjusted as the rows are fetched. */
+  private final class SizedResultSet extends ForwardingResultSet {
+
+    private final Statement statementProxy;
+    private int fetchSize;
+    private long rowsUntilAdjustment;
+
+    SizedResultSet(ResultSet resultSet, Statement statementProxy) {
+      super(resultSet);
+      this.statementProxy = statementProxy;
+    }
+
+    @Override
+    public boolean next() throws SQLException {
+      boolean hasRow = delegate.next();
+      if (hasRow) {
+        onRow();
+        // Adjusts once per fetch, which is when the driver may use a new size.
+        if (--rowsUntilAdjustment <= 0) {
+          adjustFetchSize();
+        }
+      }
+      return hasRow;
+    }
+
+    @Override
+    public Statement getStatement() {
+      return statementProxy;
+    }
+
+    void adjustFetchSize() throws SQLException {
+      // The fetch size of the sizer, not the one that this result set forwards.
+      int newFetchSize = AdaptiveFetchSizer.this.getFetchSize();
+      rowsUntilAdjustment = Math.max(1, fetchSize > 0 ? fetchSize : newFetchSize);
+      if (newFetchSize <= 0
+          || (fetchSize > 0
+              && newFetchSize < fetchSize * ADJUSTMENT_TOLERANCE
+              && fetchSize < newFetchSize * ADJUSTMENT_TOLERANCE)) {
+        return;
+      }
+      LOGGER.log(
+          Level.FINE,
+          "Setting the fetch size to {0} rows of about {1} bytes.",
+          new Object[] {newFetchSize, getRowWidth()});
+      delegate.setFetchSize(newFetchSize);
+      fetchSize = newFetchSize;
+      rowsUntilAdjustment = newFetchSize;
+    }
+  }
+}
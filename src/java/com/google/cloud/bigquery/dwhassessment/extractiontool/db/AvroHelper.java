@@ -16,6 +16,8 @@
 
 package com.google.cloud.bigquery.dwhassessment.extractiontool.db;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.CharMatcher;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import java.io.IOException;
@@ -30,7 +32,6 @@ import java.sql.Types;
 import java.time.ZonedDateTime;
 import java.util.Calendar;
 import java.util.TimeZone;
-import java.util.regex.Pattern;
 import org.apache.avro.LogicalTypes;
 import org.apache.avro.Schema;
 import org.apache.avro.SchemaBuilder;
@@ -42,7 +43,8 @@ import org.apache.avro.generic.GenericRecordBuilder;
 /** A helper to convert sql result set to avro format and dump the avro result to output stream. */
 public class AvroHelper {
 
-  private static final Pattern TRAILING_SPACES_REGEX = Pattern.compile("\\s++$");
+  // The whitespace characters matched by the regular expression "\s".
+  private static final CharMatcher TRAILING_WHITESPACE = CharMatcher.anyOf(" \t\n\u000B\f\r");
 
   private AvroHelper() {}
 
@@ -54,11 +56,28 @@ public class AvroHelper {
    * @return a generic record of the data in avro format.
    */
   public static GenericRecord parseRowToAvro(ResultSet row, Schema schema) throws SQLException {
+    return parseRowToAvro(row, schema, /* utf8Interner= */ null);
+  }
+
+  /**
+   * Parse a row from sql result set to avro format in the form of a generic record, sharing
+   * repeated string values between rows.
+   *
+   * @param row A row of data from sql result set.
+   * @param schema The avro schema object to build the avro generic record.
+   * @param utf8Interner The interner for the string values of the result set, or null if string
+   *     values should not be interned.
+   * @return a generic record of the data in avro format.
+   */
+  public static GenericRecord parseRowToAvro(
+      ResultSet row, Schema schema, Utf8Interner utf8Interner) throws SQLException {
     GenericRecordBuilder recordBuilder = new GenericRecordBuilder(schema);
     ResultSetMetaData metaData = row.getMetaData();
-    for (int columnIndex = 1; columnIndex <= row.getMetaData().getColumnCount(); columnIndex++) {
+    int columnCount = metaData.getColumnCount();
+    for (int columnIndex = 1; columnIndex <= columnCount; columnIndex++) {
       recordBuilder.set(
-          metaData.getColumnName(columnIndex), getRowObject(metaData, row, columnIndex));
+          metaData.getColumnName(columnIndex),
+          getRowObject(metaData, row, columnIndex, utf8Interner));
     }
     return recordBuilder.build();
   }
@@ -228,7 +247,8 @@ public class AvroHelper {
         ZonedDateTime.of(timestamp.toLocalDateTime(), cal.getTimeZone().toZoneId()).toInstant());
   }
 
-  private static Object getRowObject(ResultSetMetaData metaData, ResultSet row, int columnIndex)
+  private static Object getRowObject(
+      ResultSetMetaData metaData, ResultSet row, int columnIndex, Utf8Interner utf8Interner)
       throws SQLException {
     switch (metaData.getColumnType(columnIndex)) {
       case Types.DECIMAL:
@@ -253,14 +273,23 @@ public class AvroHelper {
         }
       case Types.CHAR:
         {
-          return trimTrailingSpaces(row.getString(columnIndex));
+          return intern(utf8Interner, columnIndex, trimTrailingSpaces(row.getString(columnIndex)));
+        }
+      case Types.VARCHAR:
+        {
+          return intern(utf8Interner, columnIndex, row.getString(columnIndex));
         }
       default:
         return row.getObject(columnIndex);
     }
   }
 
-  private static String trimTrailingSpaces(String s) {
-    return s == null ? null : TRAILING_SPACES_REGEX.matcher(s).replaceFirst("");
+  private static CharSequence intern(Utf8Interner utf8Interner, int columnIndex, String value) {
+    return utf8Interner == null ? value : utf8Interner.intern(columnIndex, value);
+  }
+
+  @VisibleForTesting
+  static String trimTrailingSpaces(String s) {
+    return s == null ? null : TRAILING_WHITESPACE.trimTrailingFrom(s);
   }
 }
@@ -15,8 +15,10 @@
  */
 package com.google.cloud.bigquery.dwhassessment.extractiontool.db;
 
+import com.google.common.collect.ImmutableMap;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.Optional;
 import org.apache.avro.Schema;
 import org.apache.avro.file.DataFileWriter;
 import org.apache.avro.generic.GenericDatumWriter;
@@ -27,6 +29,7 @@ public class AvroResultSetRecorder implements ResultSetRecorder<GenericRecord> {
 
   private final OutputStream outputStream;
   private final DataFileWriter<GenericRecord> dataFileWriter;
+  private final Optional<ChunkIndexer> chunkIndexer;
 
   /**
    * Creates an avro result set recorder.
@@ -37,21 +40,78 @@ public class AvroResultSetRecorder implements ResultSetRecorder<GenericRecord> {
    */
   public static AvroResultSetRecorder create(Schema schema, OutputStream outputStream)
       throws IOException {
+    return create(schema, outputStream, ImmutableMap.of());
+  }
+
+  /**
+   * Creates an avro result set recorder that adds metadata to the AVRO file.
+   *
+   * @param schema the schema to be used for the AVRO file.
+   * @param outputStream the output stream to which to write.
+   * @param metadata the key-value pairs to write into the metadata of the AVRO file.
+   * @throws IOException if creating the AVRO file writer failed.
+   */
+  public static AvroResultSetRecorder create(
+      Schema schema, OutputStream outputStream, ImmutableMap<String, String> metadata)
+      throws IOException {
+    return create(schema, outputStream, metadata, Optional.empty());
+  }
+
+  /**
+   * Creates an avro result set recorder that adds metadata to the AVRO file and collects the
+   * statistics of the written records in an indexer.
+   *
+   * @param schema the schema to be used for the AVRO file.
+   * @param outputStream the output stream to which to write.
+   * @param metadata the key-value pairs to write into the metadata of the AVRO file.
+   * @param chunkIndexer the indexer to which to add the records. Its blocks are started at the sync
+   *     markers of the AVRO file.
+   * @throws IOException if creating the AVRO file writer failed.
+   */
+  public static AvroResultSetRecorder create(
+      Schema schema,
+      OutputStream outputStream,
+      ImmutableMap<String, String> metadata,
+      ChunkIndexer chunkIndexer)
+      throws IOException {
+    return create(schema, outputStream, metadata, Optional.of(chunkIndexer));
+  }
+
+  private static AvroResultSetRecorder create(
+      Schema schema,
+      OutputStream outputStream,
+      ImmutableMap<String, String> metadata,
+      Optional<ChunkIndexer> chunkIndexer)
+      throws IOException {
     GenericDatumWriter<GenericRecord> writer = new GenericDatumWriter<>(schema);
     DataFileWriter<GenericRecord> dataFileWriter = new DataFileWriter<>(writer);
+    metadata.forEach(dataFileWriter::setMeta);
     dataFileWriter.create(schema, outputStream);
-    return new AvroResultSetRecorder(outputStream, dataFileWriter);
+    if (chunkIndexer.isPresent()) {
+      chunkIndexer.get().startBlock(dataFileWriter.sync());
+    }
+    return new AvroResultSetRecorder(outputStream, dataFileWriter, chunkIndexer);
   }
 
   private AvroResultSetRecorder(
-      OutputStream outputStream, DataFileWriter<GenericRecord> dataFileWriter) {
+      OutputStream outputStream,
+      DataFileWriter<GenericRecord> dataFileWriter,
+      Optional<ChunkIndexer> chunkIndexer) {
     this.outputStream = outputStream;
     this.dataFileWriter = dataFileWriter;
+    this.chunkIndexer = chunkIndexer;
   }
 
   @Override
   public void add(GenericRecord record) {
     try {
+      if (chunkIndexer.isPresent()) {
+        if (chunkIndexer.get().isBlockFull()) {
+          // Ends the AVRO block, so that the next block of the index starts at a sync marker.
+          chunkIndexer.get().startBlock(dataFileWriter.sync());
+        }
+        chunkIndexer.get().add(record);
+      }
       dataFileWriter.append(record);
     } catch (IOException e) {
       throw new IllegalStateException(
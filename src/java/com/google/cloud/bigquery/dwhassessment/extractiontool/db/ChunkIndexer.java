@@ -0,0 +1,255 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigquery.dwhassessment.extractiontool.db;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.generic.GenericRecordBuilder;
+
+/**
+ * Collects statistics of some columns of a chunk while the chunk is written, and writes them into a
+ * sidecar index file next to the chunk.
+ *
+ * <p>For the whole chunk and for every block of rows, the index has the row count and, per column,
+ * the minimum, the maximum and the number of nulls. Every block starts at a sync marker of the
+ * chunk, at the offset in {@code offset}, so that a reader can skip the blocks that cannot match
+ * with {@link org.apache.avro.file.DataFileReader#seek}. The minimum and the maximum have the type
+ * of the column; they are null for columns of type bytes and for columns with only nulls.
+ *
+ * <p>The index cannot go into the metadata of the chunk, since Avro writes the metadata into the
+ * header, before the first row.
+ */
+public final class ChunkIndexer {
+
+  /** The suffix that is appended to the name of the chunk for the name of the index. */
+  public static final String INDEX_SUFFIX = ".index";
+
+  private static final int DEFAULT_BLOCK_ROWS = 4096;
+
+  private final ImmutableList<Schema.Field> fields;
+  private final Schema indexSchema;
+  private final Schema columnsSchema;
+  private final Schema blockSchema;
+  private final int blockRows;
+  private final ColumnStatistics[] chunkStatistics;
+  private final List<GenericRecord> blocks = new ArrayList<>();
+  private ColumnStatistics[] blockStatistics;
+  private long chunkRowCount;
+  private long blockRowCount;
+  private long blockOffset = -1;
+
+  /**
+   * Creates an indexer.
+   *
+   * @param schema The schema of the chunk.
+   * @param columnNames The names of the columns to index. Columns that the schema does not have,
+   *     e.g. because they were projected away, are not indexed.
+   */
+  public static ChunkIndexer create(Schema schema, ImmutableList<String> columnNames) {
+    return new ChunkIndexer(schema, columnNames, DEFAULT_BLOCK_ROWS);
+  }
+
+  @VisibleForTesting
+  ChunkIndexer(Schema schema, ImmutableList<String> columnNames, int blockRows) {
+    ImmutableList.Builder<Schema.Field> fieldsBuilder = ImmutableList.builder();
+    SchemaBuilder.FieldAssembler<Schema> columnsAssembler =
+        SchemaBuilder.record("Columns").fields();
+    for (String columnName : columnNames) {
+      // The column names in the schema have the case returned by the JDBC driver.
+      for (Schema.Field field : schema.getFields()) {
+        if (field.name().equalsIgnoreCase(columnName)) {
+          fieldsBuilder.add(field);
+          columnsAssembler.name(field.name()).type(getStatisticsSchema(field)).noDefault();
+          break;
+        }
+      }
+    }
+    this.fields = fieldsBuilder.build();
+    this.columnsSchema = columnsAssembler.endRecord();
+    this.blockSchema =
+        SchemaBuilder.record("Block")
+            .fields()
+            .requiredLong("offset")
+            .requiredLong("rowCount")
+            .name("columns")
+            .type(columnsSchema)
+            .noDefault()
+            .endRecord();
+    this.indexSchema =
+        SchemaBuilder.record("ChunkIndex")
+            .fields()
+            .requiredLong("rowCount")
+            .name("columns")
+            .type(columnsSchema)
+            .noDefault()
+            .name("blocks")
+            .type()
+            .array()
+            .items(blockSchema)
+            .noDefault()
+            .endRecord();
+    this.blockRows = blockRows;
+    this.chunkStatistics = newStatistics();
+    this.blockStatistics = newStatistics();
+  }
+
+  /** Returns the schema of the index. */
+  public Schema getIndexSchema() {
+    return indexSchema;
+  }
+
+  /**
+   * Starts a new block of rows at the given offset, which has to be the position of a sync marker
+   * as returned by {@link DataFileWriter#sync()}. Ends the current block, if it has rows.
+   */
+  public void startBlock(long offset) {
+    endBlock();
+    blockOffset = offset;
+  }
+
+  /** Adds a row that was written into the current block. */
+  public void add(GenericRecord record) {
+    Preconditions.checkState(blockOffset >= 0, "No block was started.");
+    for (int i = 0; i < fields.size(); i++) {
+      Object value = record.get(fields.get(i).pos());
+      chunkStatistics[i].add(value);
+      blockStatistics[i].add(value);
+    }
+    chunkRowCount++;
+    blockRowCount++;
+  }
+
+  /** Returns whether the current block has enough rows to start a new one. */
+  public boolean isBlockFull() {
+    return blockRowCount >= blockRows;
+  }
+
+  /**
+   * Ends the current block and writes the index.
+   *
+   * @param outputStream The stream to which to write the index. It is closed afterwards.
+   */
+  public void write(OutputStream outputStream) throws IOException {
+    endBlock();
+    try (DataFileWriter<GenericRecord> writer =
+        new DataFileWriter<>(new GenericDatumWriter<GenericRecord>(indexSchema))) {
+      writer.create(indexSchema, outputStream);
+      writer.append(
+          new GenericRecordBuilder(indexSchema)
+              .set("rowCount", chunkRowCount)
+              .set("columns", toRecord(chunkStatistics))
+              .set("blocks", blocks)
+              .build());
+    }
+  }
+
+  private void endBlock() {
+    if (blockRowCount == 0) {
+      return;
+    }
+    blocks.add(
+        new GenericRecordBuilder(blockSchema)
+            .set("offset", blockOffset)
+            .set("rowCount", blockRowCount)
+            .set("columns", toRecord(blockStatistics))
+            .build());
+    blockStatistics = newStatistics();
+    blockRowCount = 0;
+  }
+
+  private ColumnStatistics[] newStatistics() {
+    ColumnStatistics[] statistics = new ColumnStatistics[fields.size()];
+    for (int i = 0; i < statistics.length; i++) {
+      statistics[i] = new ColumnStatistics();
+    }
+    return statistics;
+  }
+
+  private GenericRecord toRecord(ColumnStatistics[] statistics) {
+    GenericRecordBuilder columns = new GenericRecordBuilder(columnsSchema);
+    for (int i = 0; i < fields.size(); i++) {
+      Schema statisticsSchema = columnsSchema.getFields().get(i).schema();
+      columns.set(
+          fields.get(i).name(),
+          new GenericRecordBuilder(statisticsSchema)
+              .set("min", statistics[i].min)
+              .set("max", statistics[i].max)
+              .set("nullCount", statistics[i].nullCount)
+              .build());
+    }
+    return columns.build();
+  }
+
+  private static Schema getStatisticsSchema(Schema.Field field) {
+    Schema valueSchema = field.schema();
+    if (valueSchema.getType() != Schema.Type.UNION) {
+      valueSchema = Schema.createUnion(Schema.create(Schema.Type.NULL), valueSchema);
+    }
+    return SchemaBuilder.record(field.name().replaceAll("\\W", "_") + "Statistics")
+        .fields()
+        .name("min")
+        .type(valueSchema)
+        .withDefault(null)
+        .name("max")
+        .type(valueSchema)
+        .withDefault(null)
+        .requiredLong("nullCount")
+        .endRecord();
+  }
+
+  /** The minimum, the maximum and the number of nulls of the values of a column. */
+  private static final class ColumnStatistics {
+
+    private Object min;
+    private Object max;
+    private long nullCount;
+
+    void add(Object value) {
+      if (value == null) {
+        nullCount++;
+        return;
+      }
+      if (value instanceof ByteBuffer) {
+        return;
+      }
+      if (value instanceof CharSequence) {
+        value = value.toString();
+      }
+      if (min == null || compare(value, min) < 0) {
+        min = value;
+      }
+      if (max == null || compare(value, max) > 0) {
+        max = value;
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int compare(Object a, Object b) {
+      return ((Comparable<Object>) a).compareTo(b);
+    }
+  }
+}
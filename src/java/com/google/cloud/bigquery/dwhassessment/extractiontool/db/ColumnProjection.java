@@ -0,0 +1,161 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigquery.dwhassessment.extractiontool.db;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
+import static java.util.stream.Collectors.joining;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.base.Ascii;
+import com.google.common.base.Joiner;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import java.util.Optional;
+import java.util.Set;
+import org.apache.avro.Schema;
+import org.apache.avro.Schema.Field;
+
+/**
+ * Restricts the columns that a script extracts and truncates its text columns. The projection is
+ * applied by wrapping the rendered script into an outer query, so that dropped columns are never
+ * transferred from the database.
+ */
+@AutoValue
+public abstract class ColumnProjection {
+
+  /** The columns to extract. If empty, all columns (except the excluded ones) are extracted. */
+  public abstract ImmutableSet<String> includeColumns();
+
+  /** The columns not to extract. */
+  public abstract ImmutableSet<String> excludeColumns();
+
+  /** The maximum number of characters to extract from text columns. */
+  public abstract Optional<Integer> maxTextLength();
+
+  public static Builder builder() {
+    return new AutoValue_ColumnProjection.Builder()
+        .setIncludeColumns(ImmutableSet.of())
+        .setExcludeColumns(ImmutableSet.of());
+  }
+
+  /** Returns whether the projection keeps the output of a script as it is. */
+  public boolean isIdentity() {
+    return includeColumns().isEmpty() && excludeColumns().isEmpty() && !maxTextLength().isPresent();
+  }
+
+  /** Returns a script that yields the columns of the given script without any rows. */
+  public static String getColumnsScript(String script) {
+    return String.format("SELECT * FROM (\n%s\n) AS \"Projection\" WHERE 1 = 0", script);
+  }
+
+  /**
+   * Returns the script that applies this projection on the given script.
+   *
+   * @param script The script to project, which must not contain an ORDER BY clause.
+   * @param schema The schema of the result of the script, as obtained with {@link
+   *     #getColumnsScript}.
+   * @param sortingColumns The columns by which to order the results. They are always extracted.
+   * @return The projected script.
+   */
+  public String apply(String script, Schema schema, ImmutableList<String> sortingColumns) {
+    ImmutableSet<String> columnNames =
+        schema.getFields().stream().map(Field::name).collect(toImmutableSet());
+    validateColumns("include", includeColumns(), columnNames);
+    validateColumns("exclude", excludeColumns(), columnNames);
+    ImmutableList<String> projectedColumns =
+        schema.getFields().stream()
+            .filter(field -> isProjected(field.name(), sortingColumns))
+            .map(this::getColumnExpression)
+            .collect(toImmutableList());
+    Preconditions.checkState(!projectedColumns.isEmpty(), "All columns were excluded.");
+    String projectedScript =
+        String.format(
+            "SELECT\n  %s\nFROM (\n%s\n) AS \"Projection\"",
+            Joiner.on(",\n  ").join(projectedColumns), script);
+    if (sortingColumns.isEmpty()) {
+      return projectedScript;
+    }
+    return String.format(
+        "%s\nORDER BY %s ASC NULLS FIRST",
+        projectedScript,
+        sortingColumns.stream().map(ColumnProjection::wrapInQuotes).collect(joining(",")));
+  }
+
+  private boolean isProjected(String columnName, ImmutableList<String> sortingColumns) {
+    if (containsIgnoreCase(sortingColumns, columnName)) {
+      return true;
+    }
+    if (!includeColumns().isEmpty() && !containsIgnoreCase(includeColumns(), columnName)) {
+      return false;
+    }
+    return !containsIgnoreCase(excludeColumns(), columnName);
+  }
+
+  private String getColumnExpression(Field field) {
+    String column = wrapInQuotes(field.name());
+    if (maxTextLength().isPresent() && isText(field.schema())) {
+      return String.format("SUBSTR(%s, 1, %d) AS %s", column, maxTextLength().get(), column);
+    }
+    return column;
+  }
+
+  private static boolean isText(Schema schema) {
+    if (schema.getType() == Schema.Type.UNION) {
+      return schema.getTypes().stream().anyMatch(ColumnProjection::isText);
+    }
+    return schema.getType() == Schema.Type.STRING;
+  }
+
+  private static void validateColumns(
+      String action, ImmutableSet<String> columns, ImmutableSet<String> availableColumns) {
+    Set<String> unknownColumns =
+        Sets.filter(columns, column -> !containsIgnoreCase(availableColumns, column));
+    if (!unknownColumns.isEmpty()) {
+      throw new IllegalArgumentException(
+          String.format(
+              "Cannot %s unknown column(s): %s", action, Joiner.on(", ").join(unknownColumns)));
+    }
+  }
+
+  // Teradata treats column names case-insensitively.
+  private static boolean containsIgnoreCase(Iterable<String> columns, String column) {
+    for (String candidate : columns) {
+      if (Ascii.equalsIgnoreCase(candidate, column)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static String wrapInQuotes(String input) {
+    return String.format("\"%s\"", input);
+  }
+
+  /** Builder for the ColumnProjection. */
+  @AutoValue.Builder
+  public abstract static class Builder {
+    public abstract Builder setIncludeColumns(Set<String> columns);
+
+    public abstract Builder setExcludeColumns(Set<String> columns);
+
+    public abstract Builder setMaxTextLength(Integer maxTextLength);
+
+    public abstract ColumnProjection build();
+  }
+}
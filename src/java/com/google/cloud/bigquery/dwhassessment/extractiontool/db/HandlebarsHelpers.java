@@ -20,9 +20,21 @@ import static com.google.common.base.Preconditions.checkArgument;
 import com.github.jknack.handlebars.Options;
 import com.github.jknack.handlebars.internal.text.StringEscapeUtils;
 import com.google.cloud.bigquery.dwhassessment.extractiontool.db.SqlScriptVariables.QueryLogsVariables;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.db.SqlScriptVariables.QueryLogsVariables.HashPartition;
 import com.google.cloud.bigquery.dwhassessment.extractiontool.db.SqlScriptVariables.QueryLogsVariables.TimeRange;
+import com.google.common.collect.ImmutableList;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoField;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 /**
@@ -32,6 +44,38 @@ import java.util.stream.Collectors;
  * queryLogsVariables "QLV"}}{{/whereClauseForQuerylogs}} }
  */
 public final class HandlebarsHelpers {
+  /**
+   * Number of buckets among which queries are sampled, i.e. the resolution of sample ratios. It
+   * divides the number of Teradata hash buckets (65536 or 1048576), so that each sample bucket
+   * holds the same number of hash buckets.
+   */
+  public static final int SAMPLE_BUCKETS = 65536;
+
+  /**
+   * Name of the script variable, and of the helper option, that declares the date column by which
+   * the table of a script is partitioned, e.g. "LogDate" for the PDCR history tables.
+   */
+  public static final String PARTITION_COLUMN = "partitionColumn";
+
+  /**
+   * Name of the context data holding the list of bind parameters, if the script is rendered with
+   * bind parameters. The time windows are then rendered as ? placeholders and their values added to
+   * the list, in the order of the placeholders.
+   */
+  public static final String BIND_PARAMETERS = "bindParameters";
+
+  private static final LocalDate MIN_DATE = LocalDate.of(1, 1, 1);
+  private static final LocalDate MAX_DATE = LocalDate.of(9999, 12, 31);
+
+  private static final DateTimeFormatter TIMESTAMP_PARSER =
+      new DateTimeFormatterBuilder()
+          .appendPattern("uuuu-MM-dd HH:mm:ss")
+          .appendFraction(ChronoField.NANO_OF_SECOND, 0, 9, /* decimalPoint= */ true)
+          .appendPattern("xxx")
+          .toFormatter(Locale.ROOT);
+  private static final DateTimeFormatter TIMESTAMP_FORMATTER =
+      DateTimeFormatter.ofPattern("uuuu-MM-dd HH:mm:ss.SSSSSSxxx", Locale.ROOT);
+
   /** Returns WHERE clause contents specific to querylogs.sql */
   public static CharSequence whereClauseForQuerylogs(
       QueryLogsVariables queryLogsVariables, Options options) {
@@ -44,7 +88,8 @@ public final class HandlebarsHelpers {
         .timeRange()
         .ifPresent(
             timeRange ->
-                whereClauses.add(timestampRangeClause(timeRange, qryLogVAlias, "StartTime")));
+                whereClauses.add(
+                    timestampRangeClause(timeRange, qryLogVAlias, "StartTime", options)));
     if (!queryLogsVariables.users().isEmpty()) {
       whereClauses.add(
           String.format(
@@ -52,13 +97,18 @@ public final class HandlebarsHelpers {
               wrapInQuotes(qryLogVAlias),
               queryLogsVariables.users().stream().collect(Collectors.joining("','", "('", "')"))));
     }
+    whereClauses.addAll(
+        queryIdClauses(queryLogsVariables, qryLogVAlias, getColumnName("QueryID", options)));
     if (!whereClauses.isEmpty()) {
       return String.format("\nWHERE\n%s", String.join("\nAND\n", whereClauses));
     }
     return "";
   }
 
-  /** Returns WHERE clause content for scripts requiring only time range */
+  /**
+   * Returns WHERE clause content for scripts requiring only time range. An optional third parameter
+   * names the query ID column on which a hash partition and sampling, if requested, are applied.
+   */
   public static CharSequence whereClauseWithTimeRange(
       QueryLogsVariables queryLogsVariables, Options options) {
     String tableAlias = options.param(0);
@@ -67,10 +117,23 @@ public final class HandlebarsHelpers {
     checkArgument(!tableAlias.isEmpty(), "tableAlias cannot be empty.");
     checkArgument(!columnAlias.isEmpty(), "columnAlias cannot be empty.");
 
-    return queryLogsVariables
+    List<String> whereClauses = new ArrayList<>();
+    queryLogsVariables
         .timeRange()
-        .map(timeRange -> "WHERE " + timestampRangeClause(timeRange, tableAlias, columnAlias))
-        .orElse("");
+        .ifPresent(
+            timeRange ->
+                whereClauses.add(
+                    timestampRangeClause(timeRange, tableAlias, columnAlias, options)));
+    if (options.params.length > 2) {
+      String queryIdColumn = options.param(2);
+      checkArgument(!queryIdColumn.isEmpty(), "queryIdColumn cannot be empty.");
+      whereClauses.addAll(
+          queryIdClauses(queryLogsVariables, tableAlias, getColumnName(queryIdColumn, options)));
+    }
+    if (!whereClauses.isEmpty()) {
+      return "WHERE " + String.join(" AND ", whereClauses);
+    }
+    return "";
   }
 
   /**
@@ -87,13 +150,183 @@ public final class HandlebarsHelpers {
   }
 
   private static String timestampRangeClause(
-      TimeRange timeRange, String tableAlias, String columnName) {
+      TimeRange timeRange, String tableAlias, String columnName, Options options) {
+    String rangeClause =
+        String.format(
+            "%s.%s BETWEEN %s AND %s",
+            wrapInQuotes(tableAlias),
+            wrapInQuotes(columnName),
+            timestamp(timeRange.getStartTimestamp(), options),
+            timestamp(timeRange.getEndTimestamp(), options));
+    Optional<String> partitionClause = partitionClause(timeRange, tableAlias, options);
+    if (partitionClause.isPresent()) {
+      rangeClause = String.format("%s AND %s", rangeClause, partitionClause.get());
+    }
+    if (timeRange.getStartKey().isEmpty()) {
+      return rangeClause;
+    }
     return String.format(
-        "%s.%s BETWEEN TIMESTAMP '%s' AND TIMESTAMP '%s'",
+        "%s AND (%s.%s > %s OR %s)",
+        rangeClause,
         wrapInQuotes(tableAlias),
         wrapInQuotes(columnName),
-        timeRange.getStartTimestamp(),
-        timeRange.getEndTimestamp());
+        timestamp(timeRange.getStartTimestamp(), options),
+        startKeyClause(
+            ImmutableList.copyOf(timeRange.getStartKey().entrySet()), tableAlias, options));
+  }
+
+  /**
+   * Returns the clause selecting the partitions of the time range, if the script declares a
+   * partitioning column. The clause is redundant with the time range, but lets the database skip
+   * the other partitions. The dates are widened by a day on both sides, since the partitioning
+   * column holds dates in the time zone of the database rather than in UTC.
+   */
+  private static Optional<String> partitionClause(
+      TimeRange timeRange, String tableAlias, Options options) {
+    SqlScriptVariables model = (SqlScriptVariables) options.context.model();
+    Object hashColumn = options.hash(PARTITION_COLUMN);
+    String partitionColumn =
+        model
+            .getVars()
+            .getOrDefault(PARTITION_COLUMN, hashColumn == null ? "" : hashColumn.toString());
+    if (partitionColumn.isEmpty()) {
+      return Optional.empty();
+    }
+    LocalDate startDate = getDate(timeRange.getStartTimestamp());
+    LocalDate endDate = getDate(timeRange.getEndTimestamp());
+    startDate = startDate.isAfter(MIN_DATE) ? startDate.minusDays(1) : MIN_DATE;
+    endDate = endDate.isBefore(MAX_DATE) ? endDate.plusDays(1) : MAX_DATE;
+    if (startDate.equals(MIN_DATE) && endDate.equals(MAX_DATE)) {
+      return Optional.empty();
+    }
+    return Optional.of(
+        String.format(
+            "%s.%s BETWEEN %s AND %s",
+            wrapInQuotes(tableAlias),
+            wrapInQuotes(partitionColumn),
+            date(startDate, options),
+            date(endDate, options)));
+  }
+
+  /** Returns the date of a timestamp of a time range, e.g. "2022-01-01 00:00:00+00:00". */
+  private static LocalDate getDate(String timestamp) {
+    try {
+      return LocalDate.parse(timestamp.substring(0, Math.min(timestamp.length(), 10)));
+    } catch (DateTimeParseException e) {
+      throw new IllegalArgumentException(
+          String.format("Cannot get the date of the timestamp '%s'.", timestamp), e);
+    }
+  }
+
+  /**
+   * Returns the clause selecting the rows whose tie-breaking columns are greater than the start
+   * key, compared column by column like the ORDER BY of the scripts.
+   */
+  private static String startKeyClause(
+      ImmutableList<Map.Entry<String, String>> startKey, String tableAlias, Options options) {
+    Map.Entry<String, String> first = startKey.get(0);
+    String column =
+        String.format(
+            "%s.%s",
+            wrapInQuotes(tableAlias), wrapInQuotes(getColumnName(first.getKey(), options)));
+    if (startKey.size() == 1) {
+      return String.format("%s > %s", column, number(first.getValue(), options));
+    }
+    return String.format(
+        "%s > %s OR (%s = %s AND (%s))",
+        column,
+        number(first.getValue(), options),
+        column,
+        number(first.getValue(), options),
+        startKeyClause(startKey.subList(1, startKey.size()), tableAlias, options));
+  }
+
+  /**
+   * Returns the SQL of a timestamp of a time range, e.g. "2022-01-01 00:00:00+00:00": a literal, or
+   * a placeholder cast from the timestamp with six fractional digits if the script binds
+   * parameters.
+   */
+  private static String timestamp(String timestamp, Options options) {
+    List<Object> parameters = options.data(BIND_PARAMETERS);
+    if (parameters == null) {
+      return String.format("TIMESTAMP '%s'", timestamp);
+    }
+    try {
+      parameters.add(
+          TIMESTAMP_FORMATTER.format(TIMESTAMP_PARSER.parse(timestamp, OffsetDateTime::from)));
+    } catch (DateTimeParseException e) {
+      throw new IllegalArgumentException(
+          String.format("Cannot bind the timestamp '%s'.", timestamp), e);
+    }
+    return "CAST(? AS TIMESTAMP(6) WITH TIME ZONE)";
+  }
+
+  /** Returns the SQL of a date: a literal, or a placeholder if the script binds parameters. */
+  private static String date(LocalDate date, Options options) {
+    List<Object> parameters = options.data(BIND_PARAMETERS);
+    if (parameters == null) {
+      return String.format("DATE '%s'", date);
+    }
+    parameters.add(date.toString());
+    return "CAST(? AS DATE)";
+  }
+
+  /** Returns the SQL of a number: a literal, or a placeholder if the script binds parameters. */
+  private static String number(String number, Options options) {
+    List<Object> parameters = options.data(BIND_PARAMETERS);
+    if (parameters == null) {
+      return number;
+    }
+    parameters.add(new BigDecimal(number));
+    return "?";
+  }
+
+  /** Returns the clauses selecting queries by a hash of their query ID. */
+  private static List<String> queryIdClauses(
+      QueryLogsVariables queryLogsVariables, String tableAlias, String columnName) {
+    List<String> clauses = new ArrayList<>();
+    queryLogsVariables
+        .hashPartition()
+        .ifPresent(
+            hashPartition ->
+                clauses.add(hashPartitionClause(hashPartition, tableAlias, columnName)));
+    queryLogsVariables
+        .sampleRatio()
+        .ifPresent(sampleRatio -> clauses.add(sampleClause(sampleRatio, tableAlias, columnName)));
+    return clauses;
+  }
+
+  private static String hashPartitionClause(
+      HashPartition hashPartition, String tableAlias, String columnName) {
+    return String.format(
+        "MOD(HASHBUCKET(HASHROW(%s.%s)), %d) = %d",
+        wrapInQuotes(tableAlias),
+        wrapInQuotes(columnName),
+        hashPartition.getCount(),
+        hashPartition.getIndex());
+  }
+
+  private static String sampleClause(double sampleRatio, String tableAlias, String columnName) {
+    return String.format(
+        "MOD(HASHBUCKET(HASHROW(%s.%s)), %d) < %d",
+        wrapInQuotes(tableAlias),
+        wrapInQuotes(columnName),
+        SAMPLE_BUCKETS,
+        Math.round(sampleRatio * SAMPLE_BUCKETS));
+  }
+
+  /** Returns the fraction of queries actually selected for a sample ratio. */
+  static double effectiveSampleRatio(double sampleRatio) {
+    return (double) Math.round(sampleRatio * SAMPLE_BUCKETS) / SAMPLE_BUCKETS;
+  }
+
+  /**
+   * Returns the actual name of a column, which scripts allow to overwrite through the script
+   * variable "columnName<defaultColumnName>".
+   */
+  private static String getColumnName(String defaultColumnName, Options options) {
+    SqlScriptVariables model = (SqlScriptVariables) options.context.model();
+    return model.getVars().getOrDefault("columnName" + defaultColumnName, defaultColumnName);
   }
 
   private static String wrapInQuotes(String input) {
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigquery.dwhassessment.extractiontool.db;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * The output of a Hive {@code DESCRIBE FORMATTED} statement on a table or a partition.
+ *
+ * <p>The statement returns rows of the columns col_name, data_type and comment. The rows are
+ * grouped into sections: first the columns, then the partition keys after {@code # Partition
+ * Information}, and then the details after e.g. {@code # Detailed Table Information}. Details are
+ * rows like {@code Owner: | hive}, except for the parameters, which follow a {@code Table
+ * Parameters:} or {@code Partition Parameters:} row with an empty col_name.
+ */
+@AutoValue
+public abstract class HiveDescription {
+
+  private static final String PARTITION_INFORMATION_SECTION = "# Partition Information";
+  private static final String COLUMN_HEADER = "# col_name";
+
+  private enum Section {
+    COLUMNS,
+    PARTITION_KEYS,
+    DETAILS
+  }
+
+  /** The columns of the table, without the partition keys. */
+  public abstract ImmutableList<Column> columns();
+
+  /** The partition keys of the table. */
+  public abstract ImmutableList<Column> partitionKeys();
+
+  /** The details such as Owner or Location, keyed by their label without the trailing colon. */
+  public abstract ImmutableMap<String, String> details();
+
+  /** The table or partition parameters such as numRows or totalSize. */
+  public abstract ImmutableMap<String, String> parameters();
+
+  /**
+   * Parses the result of a {@code DESCRIBE FORMATTED} statement.
+   *
+   * @param resultSet The result set, which is read to its end.
+   */
+  public static HiveDescription parse(ResultSet resultSet) throws SQLException {
+    ImmutableList.Builder<Column> columns = ImmutableList.builder();
+    ImmutableList.Builder<Column> partitionKeys = ImmutableList.builder();
+    Map<String, String> details = new LinkedHashMap<>();
+    Map<String, String> parameters = new LinkedHashMap<>();
+    Section section = Section.COLUMNS;
+    boolean inParameters = false;
+    while (resultSet.next()) {
+      String name = Strings.nullToEmpty(resultSet.getString(1)).trim();
+      String type = Strings.nullToEmpty(resultSet.getString(2)).trim();
+      String comment = Strings.nullToEmpty(resultSet.getString(3)).trim();
+      if (name.startsWith(COLUMN_HEADER) || (name.isEmpty() && type.isEmpty())) {
+        continue;
+      }
+      if (name.startsWith("#")) {
+        section =
+            name.equals(PARTITION_INFORMATION_SECTION) ? Section.PARTITION_KEYS : Section.DETAILS;
+        inParameters = false;
+        continue;
+      }
+      switch (section) {
+        case COLUMNS:
+          columns.add(Column.create(name, type, comment));
+          break;
+        case PARTITION_KEYS:
+          partitionKeys.add(Column.create(name, type, comment));
+          break;
+        case DETAILS:
+          if (name.isEmpty()) {
+            if (inParameters) {
+              parameters.put(type, comment);
+            }
+          } else {
+            inParameters = name.equals("Table Parameters:") || name.equals("Partition Parameters:");
+            if (!type.isEmpty()) {
+              details.put(name.endsWith(":") ? name.substring(0, name.length() - 1) : name, type);
+            }
+          }
+          break;
+      }
+    }
+    return new AutoValue_HiveDescription(
+        columns.build(),
+        partitionKeys.build(),
+        ImmutableMap.copyOf(details),
+        ImmutableMap.copyOf(parameters));
+  }
+
+  /** A column of a Hive table. */
+  @AutoValue
+  public abstract static class Column {
+
+    public abstract String name();
+
+    public abstract String type();
+
+    public abstract Optional<String> comment();
+
+    public static Column create(String name, String type, String comment) {
+      return new AutoValue_HiveDescription_Column(
+          name, type, comment.isEmpty() ? Optional.empty() : Optional.of(comment));
+    }
+  }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigquery.dwhassessment.extractiontool.db;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.re2j.Pattern;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.generic.GenericRecordBuilder;
+
+/**
+ * Reads the schemas of all Hive tables directly from the database of the Hive metastore.
+ *
+ * <p>Instead of one round trip per table and partition, the tables, columns, partition keys and
+ * partitions are read with one query each, all ordered by the table ID. The four result sets are
+ * streamed side by side, so only the table at hand is held in memory. The records have the shape of
+ * the {@code Schema} message in {@code integ-tests/hadoop/src/main/proto/schema.proto}.
+ */
+public final class HiveMetastoreReader {
+
+  private static final int FETCH_SIZE = 10_000;
+
+  private static final Schema FIELD_SCHEMA =
+      SchemaBuilder.record("Field")
+          .fields()
+          .requiredString("name")
+          .requiredString("type")
+          .endRecord();
+
+  private static final Schema PARTITION_SCHEMA =
+      SchemaBuilder.record("Partition")
+          .fields()
+          .requiredString("name")
+          .requiredString("location")
+          .endRecord();
+
+  public static final Schema SCHEMA =
+      SchemaBuilder.record("Schema")
+          .fields()
+          .requiredString("schemaName")
+          .requiredString("name")
+          .requiredString("type")
+          .requiredLong("createTime")
+          .requiredLong("lastAccessTime")
+          .requiredString("owner")
+          .requiredString("location")
+          .name("fields")
+          .type()
+          .array()
+          .items(FIELD_SCHEMA)
+          .noDefault()
+          .name("partitionKeys")
+          .type()
+          .array()
+          .items(FIELD_SCHEMA)
+          .noDefault()
+          .name("partitions")
+          .type()
+          .array()
+          .items(PARTITION_SCHEMA)
+          .noDefault()
+          .endRecord();
+
+  // Identifiers are written in braces, so that they can be quoted if needed.
+  private static final Pattern IDENTIFIER_PATTERN = Pattern.compile("\\{(\\w+)}");
+
+  private static final String TABLES_QUERY =
+      "SELECT t.{TBL_ID}, d.{NAME}, t.{TBL_NAME}, t.{TBL_TYPE}, t.{CREATE_TIME},"
+          + " t.{LAST_ACCESS_TIME}, t.{OWNER}, s.{LOCATION}"
+          + " FROM {TBLS} t JOIN {DBS} d ON t.{DB_ID} = d.{DB_ID}"
+          + " LEFT JOIN {SDS} s ON t.{SD_ID} = s.{SD_ID}"
+          + " ORDER BY t.{TBL_ID}";
+
+  private static final String COLUMNS_QUERY =
+      "SELECT t.{TBL_ID}, c.{COLUMN_NAME}, c.{TYPE_NAME}"
+          + " FROM {TBLS} t JOIN {SDS} s ON t.{SD_ID} = s.{SD_ID}"
+          + " JOIN {COLUMNS_V2} c ON s.{CD_ID} = c.{CD_ID}"
+          + " ORDER BY t.{TBL_ID}, c.{INTEGER_IDX}";
+
+  private static final String PARTITION_KEYS_QUERY =
+      "SELECT k.{TBL_ID}, k.{PKEY_NAME}, k.{PKEY_TYPE} FROM {PARTITION_KEYS} k"
+          + " ORDER BY k.{TBL_ID}, k.{INTEGER_IDX}";
+
+  private static final String PARTITIONS_QUERY =
+      "SELECT p.{TBL_ID}, p.{PART_NAME}, s.{LOCATION}"
+          + " FROM {PARTITIONS} p LEFT JOIN {SDS} s ON p.{SD_ID} = s.{SD_ID}"
+          + " ORDER BY p.{TBL_ID}, p.{PART_NAME}";
+
+  private final ImmutableList<SchemaFilter> filters;
+
+  /**
+   * Creates a reader.
+   *
+   * @param filters The filters on the tables to read. If empty, all tables are read.
+   */
+  public HiveMetastoreReader(ImmutableList<SchemaFilter> filters) {
+    this.filters = filters;
+  }
+
+  /**
+   * Reads the schemas of the tables and adds a record per table to the recorder.
+   *
+   * @param connection A connection to the database of the metastore.
+   * @param recorder The recorder to which to add the records.
+   * @return The number of tables read.
+   */
+  public int read(Connection connection, ResultSetRecorder<GenericRecord> recorder)
+      throws SQLException {
+    String quote = getIdentifierQuote(connection.getMetaData());
+    int tableCount = 0;
+    try (Statement tablesStatement = createStatement(connection);
+        Statement columnsStatement = createStatement(connection);
+        Statement partitionKeysStatement = createStatement(connection);
+        Statement partitionsStatement = createStatement(connection);
+        ResultSet tables = tablesStatement.executeQuery(quoteIdentifiers(TABLES_QUERY, quote))) {
+      Cursor columns =
+          new Cursor(columnsStatement.executeQuery(quoteIdentifiers(COLUMNS_QUERY, quote)));
+      Cursor partitionKeys =
+          new Cursor(
+              partitionKeysStatement.executeQuery(quoteIdentifiers(PARTITION_KEYS_QUERY, quote)));
+      Cursor partitions =
+          new Cursor(partitionsStatement.executeQuery(quoteIdentifiers(PARTITIONS_QUERY, quote)));
+      while (tables.next()) {
+        long tableId = tables.getLong(1);
+        String databaseName = tables.getString(2);
+        String tableName = tables.getString(3);
+        List<GenericRecord> fieldRecords = readFields(columns, tableId);
+        List<GenericRecord> partitionKeyRecords = readFields(partitionKeys, tableId);
+        List<GenericRecord> partitionRecords = new ArrayList<>();
+        while (partitions.advanceTo(tableId)) {
+          partitionRecords.add(
+              new GenericRecordBuilder(PARTITION_SCHEMA)
+                  .set("name", partitions.resultSet.getString(2))
+                  .set("location", Strings.nullToEmpty(partitions.resultSet.getString(3)))
+                  .build());
+          partitions.next();
+        }
+        if (!matches(databaseName, tableName)) {
+          continue;
+        }
+        recorder.add(
+            new GenericRecordBuilder(SCHEMA)
+                .set("schemaName", databaseName)
+                .set("name", tableName)
+                .set("type", Strings.nullToEmpty(tables.getString(4)))
+                .set("createTime", tables.getLong(5))
+                .set("lastAccessTime", tables.getLong(6))
+                .set("owner", Strings.nullToEmpty(tables.getString(7)))
+                .set("location", Strings.nullToEmpty(tables.getString(8)))
+                .set("fields", fieldRecords)
+                .set("partitionKeys", partitionKeyRecords)
+                .set("partitions", partitionRecords)
+                .build());
+        tableCount++;
+      }
+    }
+    return tableCount;
+  }
+
+  private boolean matches(String databaseName, String tableName) {
+    return filters.isEmpty()
+        || filters.stream().anyMatch(filter -> filter.matches(databaseName, tableName));
+  }
+
+  private static List<GenericRecord> readFields(Cursor cursor, long tableId) throws SQLException {
+    List<GenericRecord> fields = new ArrayList<>();
+    while (cursor.advanceTo(tableId)) {
+      fields.add(
+          new GenericRecordBuilder(FIELD_SCHEMA)
+              .set("name", cursor.resultSet.getString(2))
+              .set("type", cursor.resultSet.getString(3))
+              .build());
+      cursor.next();
+    }
+    return fields;
+  }
+
+  private static Statement createStatement(Connection connection) throws SQLException {
+    Statement statement = connection.createStatement();
+    statement.setFetchSize(FETCH_SIZE);
+    return statement;
+  }
+
+  // The metastore creates its tables with upper-case names. Databases such as PostgreSQL that fold
+  // unquoted names to lower case need the names to be quoted.
+  private static String getIdentifierQuote(DatabaseMetaData metaData) throws SQLException {
+    if (!metaData.storesLowerCaseIdentifiers()) {
+      return "";
+    }
+    return metaData.getIdentifierQuoteString().trim();
+  }
+
+  private static String quoteIdentifiers(String query, String quote) {
+    return IDENTIFIER_PATTERN.matcher(query).replaceAll(quote + "$1" + quote);
+  }
+
+  /** A result set ordered by the table ID that is consumed in step with the tables. */
+  private static final class Cursor {
+
+    private final ResultSet resultSet;
+    private boolean hasRow;
+
+    Cursor(ResultSet resultSet) throws SQLException {
+      this.resultSet = resultSet;
+      this.hasRow = resultSet.next();
+    }
+
+    /**
+     * Skips the rows of tables before the given one and returns whether the current row belongs to
+     * the given table.
+     */
+    boolean advanceTo(long tableId) throws SQLException {
+      while (hasRow && resultSet.getLong(1) < tableId) {
+        hasRow = resultSet.next();
+      }
+      return hasRow && resultSet.getLong(1) == tableId;
+    }
+
+    void next() throws SQLException {
+      hasRow = resultSet.next();
+    }
+  }
+}
@@ -30,6 +30,17 @@ public abstract class SchemaFilter {
 
   public abstract Optional<Pattern> tableName();
 
+  /** Returns whether the filter may match any table of the given database. */
+  public boolean matchesDatabase(String databaseName) {
+    return !databaseName().isPresent() || databaseName().get().matcher(databaseName).matches();
+  }
+
+  /** Returns whether the given table matches the filter. */
+  public boolean matches(String databaseName, String tableName) {
+    return matchesDatabase(databaseName)
+        && (!tableName().isPresent() || tableName().get().matcher(tableName).matches());
+  }
+
   public static Builder builder() {
     return new AutoValue_SchemaFilter.Builder();
   }
@@ -17,6 +17,7 @@ package com.google.cloud.bigquery.dwhassessment.extractiontool.db;
 
 import com.google.cloud.bigquery.dwhassessment.extractiontool.dumper.DataEntityManager;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import java.io.IOException;
 import java.sql.Connection;
@@ -65,6 +66,25 @@ public interface ScriptManager {
         0);
   }
 
+  /**
+   * Executes several small scripts over one connection and writes the output of each script into
+   * its own entity. If the database returns a result set for every statement of a multi-statement
+   * request, like Teradata, the scripts are sent as a single request; otherwise they are executed
+   * one after another. The outputs are neither chunked nor projected.
+   *
+   * @param connection The JDBC connection to the database.
+   * @param dryRun Whether to just perform a dry run, which just logs out the action to perform.
+   * @param sqlTemplateRenderers The template renderers of the scripts, by script name, in the order
+   *     in which to execute the scripts.
+   * @param dataEntityManager The data entity manager to use to write the output.
+   */
+  void executeScripts(
+      Connection connection,
+      boolean dryRun,
+      ImmutableMap<String, SqlTemplateRenderer> sqlTemplateRenderers,
+      DataEntityManager dataEntityManager)
+      throws SQLException, IOException;
+
   /** Gets a list of names of all available scripts. */
   ImmutableSet<String> getAllScriptNames();
 
@@ -15,6 +15,7 @@
  */
 package com.google.cloud.bigquery.dwhassessment.extractiontool.db;
 
+import static com.google.cloud.bigquery.dwhassessment.extractiontool.db.AvroHelper.getAvroSchema;
 import static com.google.cloud.bigquery.dwhassessment.extractiontool.db.AvroHelper.getUnadjustedTimestamp;
 import static com.google.cloud.bigquery.dwhassessment.extractiontool.db.AvroHelper.parseRowToAvro;
 import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
@@ -27,14 +28,20 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import java.io.IOException;
+import java.math.BigDecimal;
 import java.nio.file.Files;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Timestamp;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
 import java.util.logging.Logger;
 import org.apache.avro.Schema;
@@ -49,18 +56,46 @@ public class ScriptManagerImpl implements ScriptManager {
   private static final Logger LOGGER = Logger.getLogger(ScriptManagerImpl.class.getName());
   private static final String AVRO_SUFFIX = ".avro";
   private static final String TEMP_NOTATION = "_temp";
+  /** The database product name of Teradata, whose multi-statement requests return every result. */
+  private static final String TERADATA_PRODUCT_NAME = "Teradata";
+  /**
+   * Marks the values of the tie-breaking sorting columns of the last row in the name of a chunk
+   * that ends among rows with the same timestamp, e.g.
+   * "querylogs-...-20220101T000000S000000+12~3_0.avro".
+   */
+  private static final String KEY_NOTATION = "+";
+
+  private static final String KEY_SEPARATOR = "~";
+  /** Key of the AVRO file metadata holding the ratio of sampled queries, if any. */
+  @VisibleForTesting static final String SAMPLE_RATIO_METADATA_KEY = "sample_ratio";
 
   private final ImmutableMap<String, Supplier<String>> scriptsMap;
   private final ImmutableMap<String, ImmutableList<String>> sortingColumnsMap;
+  private final ImmutableMap<String, ImmutableList<String>> indexColumnsMap;
   private final ScriptRunner scriptRunner;
 
   public ScriptManagerImpl(
       ScriptRunner scriptRunner,
       ImmutableMap<String, Supplier<String>> scriptsMap,
       ImmutableMap<String, ImmutableList<String>> sortingColumnsMap) {
+    this(scriptRunner, scriptsMap, sortingColumnsMap, ImmutableMap.of());
+  }
+
+  /**
+   * Creates a script manager that writes an index next to every chunk.
+   *
+   * @param indexColumnsMap The columns whose statistics are indexed per script, besides the sorting
+   *     columns.
+   */
+  public ScriptManagerImpl(
+      ScriptRunner scriptRunner,
+      ImmutableMap<String, Supplier<String>> scriptsMap,
+      ImmutableMap<String, ImmutableList<String>> sortingColumnsMap,
+      ImmutableMap<String, ImmutableList<String>> indexColumnsMap) {
     this.scriptRunner = scriptRunner;
     this.scriptsMap = scriptsMap;
     this.sortingColumnsMap = sortingColumnsMap;
+    this.indexColumnsMap = indexColumnsMap;
   }
 
   @Override
@@ -79,39 +114,241 @@ public class ScriptManagerImpl implements ScriptManager {
             && sortingColumnsMap.containsKey(scriptName);
     ImmutableList<String> sortingColumns =
         chunkMode ? sortingColumnsMap.get(scriptName) : ImmutableList.of();
-    String script = getScript(sqlTemplateRenderer, scriptName, sortingColumns);
+    ColumnProjection columnProjection =
+        sqlTemplateRenderer.getSqlScriptVariablesBuilder().build().getColumnProjection();
     if (dryRun) {
-      LOGGER.info(String.format("Should execute script '%s':\n%s", scriptName, script));
+      LOGGER.info(
+          String.format(
+              "Should execute script '%s'%s:\n%s",
+              scriptName,
+              columnProjection.isIdentity() ? "" : " with projection " + columnProjection,
+              getStatement(sqlTemplateRenderer, scriptName, sortingColumns)));
       return;
     }
+    SqlStatement script =
+        columnProjection.isIdentity()
+            ? getStatement(sqlTemplateRenderer, scriptName, sortingColumns)
+            : getProjectedStatement(
+                connection, sqlTemplateRenderer, scriptName, columnProjection, sortingColumns);
     /* TODO(xshang): figure out how to set schema name and namespace in the schema extraction. */
     Schema schema =
         scriptRunner.extractSchema(connection, script, scriptName, /* namespace= */ "namespace");
+    String entityName = getEntityName(sqlTemplateRenderer, scriptName);
+    ImmutableMap<String, String> metadata = getOutputMetadata(sqlTemplateRenderer);
     if (chunkMode) {
-      ResultSet resultSet = connection.createStatement().executeQuery(script);
-      // Move to the first row.
-      if (!resultSet.next()) {
-        return;
-      }
-      Integer chunkNumber = startingChunkNumber;
-      String labelColumn = sortingColumns.get(0);
-      while (!resultSet.isAfterLast()) {
-        executeScriptChunk(
-            resultSet, schema, dataEntityManager, chunkRows, labelColumn, scriptName, chunkNumber);
-        chunkNumber++;
+      try (Statement statement = script.createStatement(connection);
+          ResultSet resultSet = script.executeQuery(statement)) {
+        // Move to the first row.
+        if (!resultSet.next()) {
+          return;
+        }
+        Integer chunkNumber = startingChunkNumber;
+        String labelColumn = sortingColumns.get(0);
+        ImmutableList<String> tieBreakingColumns = sortingColumns.subList(1, sortingColumns.size());
+        ImmutableList<String> indexColumns =
+            ImmutableList.<String>builder()
+                .addAll(sortingColumns)
+                .addAll(indexColumnsMap.getOrDefault(scriptName, ImmutableList.of()))
+                .build();
+        Utf8Interner utf8Interner = Utf8Interner.create();
+        while (!resultSet.isAfterLast()) {
+          executeScriptChunk(
+              resultSet,
+              utf8Interner,
+              schema,
+              metadata,
+              dataEntityManager,
+              chunkRows,
+              labelColumn,
+              tieBreakingColumns,
+              indexColumns,
+              entityName,
+              chunkNumber);
+          chunkNumber++;
+        }
       }
       return;
     }
-    executeScriptOneSwoop(connection, scriptName, script, schema, dataEntityManager);
+    writeEntity(
+        entityName,
+        schema,
+        metadata,
+        dataEntityManager,
+        recordConsumer ->
+            scriptRunner.executeScriptToAvro(connection, script, schema, recordConsumer));
+  }
+
+  @Override
+  public void executeScripts(
+      Connection connection,
+      boolean dryRun,
+      ImmutableMap<String, SqlTemplateRenderer> sqlTemplateRenderers,
+      DataEntityManager dataEntityManager)
+      throws SQLException, IOException {
+    Preconditions.checkArgument(!sqlTemplateRenderers.isEmpty(), "No scripts to execute.");
+    ImmutableMap.Builder<String, SqlStatement> statementsBuilder = ImmutableMap.builder();
+    for (Map.Entry<String, SqlTemplateRenderer> entry : sqlTemplateRenderers.entrySet()) {
+      Preconditions.checkArgument(
+          entry
+              .getValue()
+              .getSqlScriptVariablesBuilder()
+              .build()
+              .getColumnProjection()
+              .isIdentity(),
+          "Script %s has a column projection and cannot be executed with other scripts.",
+          entry.getKey());
+      statementsBuilder.put(
+          entry.getKey(), getStatement(entry.getValue(), entry.getKey(), ImmutableList.of()));
+    }
+    ImmutableMap<String, SqlStatement> statements = statementsBuilder.build();
+    if (dryRun) {
+      LOGGER.info(
+          String.format(
+              "Should execute scripts %s over one connection:\n%s",
+              String.join(", ", statements.keySet()), SqlStatement.join(statements.values())));
+      return;
+    }
+    if (statements.size() > 1 && supportsMultiStatementRequests(connection)) {
+      executeMultiStatementRequest(
+          connection,
+          SqlStatement.join(statements.values()),
+          sqlTemplateRenderers,
+          dataEntityManager);
+      return;
+    }
+    for (Map.Entry<String, SqlStatement> entry : statements.entrySet()) {
+      SqlStatement script = entry.getValue();
+      try (Statement statement = script.createStatement(connection);
+          ResultSet resultSet = script.executeQuery(statement)) {
+        writeResultSet(
+            resultSet, entry.getKey(), sqlTemplateRenderers.get(entry.getKey()), dataEntityManager);
+      }
+    }
+  }
+
+  /**
+   * Returns whether the database returns a result set for every statement of a multi-statement
+   * request. Other databases, e.g. HSQLDB, may execute all statements but return only the last
+   * result, which would be written into the wrong entity.
+   */
+  private static boolean supportsMultiStatementRequests(Connection connection) {
+    try {
+      return TERADATA_PRODUCT_NAME.equals(connection.getMetaData().getDatabaseProductName());
+    } catch (SQLException e) {
+      return false;
+    }
+  }
+
+  /** Executes the scripts as one request and writes each of its result sets into its entity. */
+  private static void executeMultiStatementRequest(
+      Connection connection,
+      SqlStatement request,
+      ImmutableMap<String, SqlTemplateRenderer> sqlTemplateRenderers,
+      DataEntityManager dataEntityManager)
+      throws SQLException, IOException {
+    try (Statement statement = request.createStatement(connection)) {
+      boolean isResultSet = request.execute(statement);
+      for (Map.Entry<String, SqlTemplateRenderer> entry : sqlTemplateRenderers.entrySet()) {
+        while (!isResultSet) {
+          if (statement.getUpdateCount() == -1) {
+            throw new SQLException(
+                String.format(
+                    "The request returned no result set for script '%s'.", entry.getKey()));
+          }
+          isResultSet = statement.getMoreResults();
+        }
+        try (ResultSet resultSet = statement.getResultSet()) {
+          writeResultSet(resultSet, entry.getKey(), entry.getValue(), dataEntityManager);
+        }
+        isResultSet = statement.getMoreResults();
+      }
+    }
+  }
+
+  /**
+   * Writes the rows of a result set into the entity of a script, with the schema of the result set,
+   * so that the script need not be executed again for its schema.
+   */
+  private static void writeResultSet(
+      ResultSet resultSet,
+      String scriptName,
+      SqlTemplateRenderer sqlTemplateRenderer,
+      DataEntityManager dataEntityManager)
+      throws SQLException, IOException {
+    Schema schema =
+        getAvroSchema(scriptName, /* namespace= */ "namespace", resultSet.getMetaData());
+    Utf8Interner utf8Interner = Utf8Interner.create();
+    writeEntity(
+        getEntityName(sqlTemplateRenderer, scriptName),
+        schema,
+        getOutputMetadata(sqlTemplateRenderer),
+        dataEntityManager,
+        recordConsumer -> {
+          while (resultSet.next()) {
+            recordConsumer.accept(parseRowToAvro(resultSet, schema, utf8Interner));
+          }
+        });
+  }
+
+  /**
+   * Returns the script with the column projection applied. Since derived tables must not be
+   * ordered, the script is rendered without sorting columns and ordered by the outer query.
+   */
+  private SqlStatement getProjectedStatement(
+      Connection connection,
+      SqlTemplateRenderer sqlTemplateRenderer,
+      String scriptName,
+      ColumnProjection columnProjection,
+      ImmutableList<String> sortingColumns)
+      throws SQLException {
+    SqlStatement script = getStatement(sqlTemplateRenderer, scriptName, ImmutableList.of());
+    Schema schema =
+        scriptRunner.extractSchema(
+            connection,
+            script.withSql(ColumnProjection::getColumnsScript),
+            scriptName,
+            /* namespace= */ "namespace");
+    return script.withSql(sql -> columnProjection.apply(sql, schema, sortingColumns));
+  }
+
+  /** Returns the name of the output entity, which differs from the script name for partitions. */
+  private static String getEntityName(SqlTemplateRenderer sqlTemplateRenderer, String scriptName) {
+    return sqlTemplateRenderer
+        .getSqlScriptVariablesBuilder()
+        .build()
+        .getQueryLogsVariables()
+        .hashPartition()
+        .map(hashPartition -> hashPartition.getEntityName(scriptName))
+        .orElse(scriptName);
+  }
+
+  /** Returns the metadata describing how the output was extracted, e.g. the sample ratio. */
+  private static ImmutableMap<String, String> getOutputMetadata(
+      SqlTemplateRenderer sqlTemplateRenderer) {
+    return sqlTemplateRenderer
+        .getSqlScriptVariablesBuilder()
+        .build()
+        .getQueryLogsVariables()
+        .sampleRatio()
+        .map(
+            sampleRatio ->
+                ImmutableMap.of(
+                    SAMPLE_RATIO_METADATA_KEY,
+                    Double.toString(HandlebarsHelpers.effectiveSampleRatio(sampleRatio))))
+        .orElse(ImmutableMap.of());
   }
 
   private void executeScriptChunk(
       ResultSet resultSet,
+      Utf8Interner utf8Interner,
       Schema schema,
+      ImmutableMap<String, String> metadata,
       DataEntityManager dataEntityManager,
       Integer chunkRows,
       String labelColumn,
-      String scriptName,
+      ImmutableList<String> tieBreakingColumns,
+      ImmutableList<String> indexColumns,
+      String entityName,
       Integer chunkNumber)
       throws SQLException, IOException {
     Timestamp previousTimestamp = new Timestamp(0);
@@ -119,20 +356,43 @@ public class ScriptManagerImpl implements ScriptManager {
     String firstRowStamp = getUtcTimeStringFromTimestamp(currentTimestamp);
     String tempFileName =
         String.format(
-            "%s-%s_%d%s%s", scriptName, firstRowStamp, chunkNumber, TEMP_NOTATION, AVRO_SUFFIX);
+            "%s-%s_%d%s%s", entityName, firstRowStamp, chunkNumber, TEMP_NOTATION, AVRO_SUFFIX);
+    ChunkIndexer chunkIndexer = ChunkIndexer.create(schema, indexColumns);
+    ImmutableList<String> lastKey = ImmutableList.of();
     try (ResultSetRecorder<GenericRecord> dumper =
         AvroResultSetRecorder.create(
-            schema, dataEntityManager.getEntityOutputStream(tempFileName))) {
+            schema,
+            dataEntityManager.getEntityOutputStream(tempFileName),
+            metadata,
+            chunkIndexer)) {
       int rowCount = 0;
-      while (rowCount < chunkRows || currentTimestamp.equals(previousTimestamp)) {
+      while (true) {
         // Process first, then advance the row.
-        dumper.add(parseRowToAvro(resultSet, schema));
+        dumper.add(parseRowToAvro(resultSet, schema, utf8Interner));
         rowCount++;
         previousTimestamp = currentTimestamp;
+        boolean full = rowCount >= chunkRows;
+        // The key is only needed for the rows after which the chunk may end.
+        List<String> previousKey =
+            full ? getTieBreakingKey(resultSet, tieBreakingColumns) : ImmutableList.of();
         if (!resultSet.next()) {
           break;
         }
         currentTimestamp = getUnadjustedTimestamp(resultSet, labelColumn);
+        if (!full) {
+          continue;
+        }
+        if (!currentTimestamp.equals(previousTimestamp)) {
+          break;
+        }
+        // Ends the chunk among rows with the same timestamp if the tie-breaking columns tell the
+        // rows apart, so that the next chunk can start right after the last row.
+        if (!tieBreakingColumns.isEmpty()
+            && !previousKey.contains(null)
+            && !previousKey.equals(getTieBreakingKey(resultSet, tieBreakingColumns))) {
+          lastKey = ImmutableList.copyOf(previousKey);
+          break;
+        }
       }
     } catch (IOException | SQLException e) {
       throw e;
@@ -141,27 +401,58 @@ public class ScriptManagerImpl implements ScriptManager {
       throw new IllegalStateException("Got unexpected exception.", e);
     }
     String lastRowStamp = getUtcTimeStringFromTimestamp(previousTimestamp);
+    if (!lastKey.isEmpty()) {
+      lastRowStamp += KEY_NOTATION + String.join(KEY_SEPARATOR, lastKey);
+    }
+    String fileName =
+        String.format(
+            "%s-%s-%s_%d%s", entityName, firstRowStamp, lastRowStamp, chunkNumber, AVRO_SUFFIX);
     Files.move(
         dataEntityManager.getAbsolutePath(tempFileName),
-        dataEntityManager.getAbsolutePath(
-            String.format(
-                "%s-%s-%s_%d%s",
-                scriptName, firstRowStamp, lastRowStamp, chunkNumber, AVRO_SUFFIX)),
+        dataEntityManager.getAbsolutePath(fileName),
+        ATOMIC_MOVE);
+    // The index is written after the chunk, so a chunk may lack its index, but an index never lacks
+    // its chunk.
+    String tempIndexName = fileName + ChunkIndexer.INDEX_SUFFIX + TEMP_NOTATION;
+    chunkIndexer.write(dataEntityManager.getEntityOutputStream(tempIndexName));
+    Files.move(
+        dataEntityManager.getAbsolutePath(tempIndexName),
+        dataEntityManager.getAbsolutePath(fileName + ChunkIndexer.INDEX_SUFFIX),
         ATOMIC_MOVE);
   }
 
-  private void executeScriptOneSwoop(
-      Connection connection,
-      String scriptName,
-      String script,
+  /**
+   * Returns the values of the tie-breaking columns of the current row as plain numbers, with null
+   * for null values.
+   */
+  private static List<String> getTieBreakingKey(
+      ResultSet resultSet, ImmutableList<String> tieBreakingColumns) throws SQLException {
+    List<String> key = new ArrayList<>(tieBreakingColumns.size());
+    for (String column : tieBreakingColumns) {
+      BigDecimal value = resultSet.getBigDecimal(column);
+      key.add(value == null ? null : value.toPlainString());
+    }
+    return key;
+  }
+
+  /** Produces the records of an output entity. */
+  private interface RecordSource {
+    void forEach(Consumer<GenericRecord> recordConsumer) throws SQLException;
+  }
+
+  /** Writes all records of a source into a single output file of an entity. */
+  private static void writeEntity(
+      String entityName,
       Schema schema,
-      DataEntityManager dataEntityManager)
+      ImmutableMap<String, String> metadata,
+      DataEntityManager dataEntityManager,
+      RecordSource recordSource)
       throws SQLException, IOException {
     String fileSuffix = dataEntityManager.isResumable() ? TEMP_NOTATION + AVRO_SUFFIX : AVRO_SUFFIX;
     try (ResultSetRecorder<GenericRecord> dumper =
         AvroResultSetRecorder.create(
-            schema, dataEntityManager.getEntityOutputStream(scriptName + fileSuffix))) {
-      scriptRunner.executeScriptToAvro(connection, script, schema, dumper::add);
+            schema, dataEntityManager.getEntityOutputStream(entityName + fileSuffix), metadata)) {
+      recordSource.forEach(dumper::add);
     } catch (IOException | SQLException e) {
       throw e;
     } catch (Exception e) {
@@ -174,13 +465,13 @@ public class ScriptManagerImpl implements ScriptManager {
       // safer to check against it.
       try {
         Files.move(
-            dataEntityManager.getAbsolutePath(scriptName + fileSuffix),
-            dataEntityManager.getAbsolutePath(scriptName + AVRO_SUFFIX),
+            dataEntityManager.getAbsolutePath(entityName + fileSuffix),
+            dataEntityManager.getAbsolutePath(entityName + AVRO_SUFFIX),
             ATOMIC_MOVE);
       } catch (IOException e) {
         Files.move(
-            dataEntityManager.getAbsolutePath(scriptName + fileSuffix),
-            dataEntityManager.getAbsolutePath(scriptName + AVRO_SUFFIX),
+            dataEntityManager.getAbsolutePath(entityName + fileSuffix),
+            dataEntityManager.getAbsolutePath(entityName + AVRO_SUFFIX),
             REPLACE_EXISTING);
       }
     }
@@ -205,13 +496,32 @@ public class ScriptManagerImpl implements ScriptManager {
       SqlTemplateRenderer sqlTemplateRenderer,
       String scriptName,
       ImmutableList<String> sortingColumns) {
+    return sqlTemplateRenderer.renderTemplate(
+        scriptName, getTemplate(sqlTemplateRenderer, scriptName, sortingColumns));
+  }
+
+  /**
+   * Like {@link #getScript}, but with the time windows as bind parameters if the renderer binds.
+   */
+  private SqlStatement getStatement(
+      SqlTemplateRenderer sqlTemplateRenderer,
+      String scriptName,
+      ImmutableList<String> sortingColumns) {
+    return sqlTemplateRenderer.renderStatement(
+        scriptName, getTemplate(sqlTemplateRenderer, scriptName, sortingColumns));
+  }
+
+  private String getTemplate(
+      SqlTemplateRenderer sqlTemplateRenderer,
+      String scriptName,
+      ImmutableList<String> sortingColumns) {
     Preconditions.checkArgument(
         scriptsMap.containsKey(scriptName),
         String.format("Script name %s is not available.", scriptName));
     if (!sortingColumns.isEmpty()) {
       sqlTemplateRenderer.getSqlScriptVariablesBuilder().setSortingColumns(sortingColumns);
     }
-    return sqlTemplateRenderer.renderTemplate(scriptName, scriptsMap.get(scriptName).get());
+    return scriptsMap.get(scriptName).get();
   }
 
   @Override
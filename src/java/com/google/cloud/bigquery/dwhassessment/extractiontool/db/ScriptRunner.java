@@ -40,6 +40,21 @@ public interface ScriptRunner {
       Consumer<GenericRecord> recordConsumer)
       throws SQLException;
 
+  /**
+   * Executes a statement against a DB connection and writes the output to a stream. A statement
+   * with bind parameters is executed as a prepared statement.
+   *
+   * @param connection The JDBC connection to the database.
+   * @param statement The rendered statement to execute.
+   * @param schema The schema corresponding to the statement.
+   */
+  void executeScriptToAvro(
+      Connection connection,
+      SqlStatement statement,
+      Schema schema,
+      Consumer<GenericRecord> recordConsumer)
+      throws SQLException;
+
   /**
    * Extracts the schema based on a SQL query. This method can extract the schema of a table by
    * selecting all columns from the table, e.g. SELECT * FROM TABLE.
@@ -52,4 +67,18 @@ public interface ScriptRunner {
    */
   Schema extractSchema(Connection connection, String sqlScript, String schemaName, String namespace)
       throws SQLException;
+
+  /**
+   * Extracts the schema of the result of a statement. A statement with bind parameters is executed
+   * as a prepared statement.
+   *
+   * @param connection The JDBC connection to the database.
+   * @param statement The rendered statement to execute.
+   * @param schemaName The name of the output schema.
+   * @param namespace The namespace of the output schema.
+   * @return the schema in Avro format.
+   */
+  Schema extractSchema(
+      Connection connection, SqlStatement statement, String schemaName, String namespace)
+      throws SQLException;
 }
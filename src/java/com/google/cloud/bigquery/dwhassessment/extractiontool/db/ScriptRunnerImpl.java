@@ -22,6 +22,7 @@ import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.function.Consumer;
 import org.apache.avro.Schema;
 import org.apache.avro.generic.GenericRecord;
@@ -39,9 +40,22 @@ public class ScriptRunnerImpl implements ScriptRunner {
       Schema schema,
       Consumer<GenericRecord> recordConsumer)
       throws SQLException {
-    ResultSet resultSet = connection.createStatement().executeQuery(sqlScript);
-    while (resultSet.next()) {
-      recordConsumer.accept(parseRowToAvro(resultSet, schema));
+    executeScriptToAvro(connection, SqlStatement.create(sqlScript), schema, recordConsumer);
+  }
+
+  @Override
+  public void executeScriptToAvro(
+      Connection connection,
+      SqlStatement sqlStatement,
+      Schema schema,
+      Consumer<GenericRecord> recordConsumer)
+      throws SQLException {
+    try (Statement statement = sqlStatement.createStatement(connection);
+        ResultSet resultSet = sqlStatement.executeQuery(statement)) {
+      Utf8Interner utf8Interner = Utf8Interner.create();
+      while (resultSet.next()) {
+        recordConsumer.accept(parseRowToAvro(resultSet, schema, utf8Interner));
+      }
     }
   }
 
@@ -49,7 +63,17 @@ public class ScriptRunnerImpl implements ScriptRunner {
   public Schema extractSchema(
       Connection connection, String sqlScript, String schemaName, String namespace)
       throws SQLException {
-    ResultSetMetaData metaData = connection.createStatement().executeQuery(sqlScript).getMetaData();
-    return getAvroSchema(schemaName, namespace, metaData);
+    return extractSchema(connection, SqlStatement.create(sqlScript), schemaName, namespace);
+  }
+
+  @Override
+  public Schema extractSchema(
+      Connection connection, SqlStatement sqlStatement, String schemaName, String namespace)
+      throws SQLException {
+    try (Statement statement = sqlStatement.createStatement(connection);
+        ResultSet resultSet = sqlStatement.executeQuery(statement)) {
+      ResultSetMetaData metaData = resultSet.getMetaData();
+      return getAvroSchema(schemaName, namespace, metaData);
+    }
   }
 }
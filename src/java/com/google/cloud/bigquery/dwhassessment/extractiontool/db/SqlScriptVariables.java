@@ -16,10 +16,13 @@
 package com.google.cloud.bigquery.dwhassessment.extractiontool.db;
 
 import com.google.auto.value.AutoValue;
+import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import java.util.List;
 import com.google.common.collect.ImmutableMap;
+import com.google.re2j.Matcher;
+import com.google.re2j.Pattern;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
@@ -31,7 +34,8 @@ public abstract class SqlScriptVariables {
     return new AutoValue_SqlScriptVariables.Builder()
         .setBaseDatabase("DBC")
         .setVars(ImmutableMap.of())
-        .setSortingColumns(ImmutableList.of());
+        .setSortingColumns(ImmutableList.of())
+        .setColumnProjection(ColumnProjection.builder().build());
   }
 
   public abstract String getBaseDatabase();
@@ -42,13 +46,22 @@ public abstract class SqlScriptVariables {
 
   public abstract Map<String, String> getVars();
 
+  public abstract ColumnProjection getColumnProjection();
+
   @AutoValue
   public abstract static class QueryLogsVariables {
 
     public static Builder builder() {
       return new AutoValue_SqlScriptVariables_QueryLogsVariables.Builder()
           .setNeedQueryText(true)
-          .setUsers(ImmutableSet.of());
+          .setUsers(ImmutableSet.of())
+          .setSummaryGrain(SummaryGrain.HOUR);
+    }
+
+    /** Time granularity at which query logs are aggregated by the summary script. */
+    public enum SummaryGrain {
+      HOUR,
+      DAY
     }
 
     public abstract boolean needQueryText();
@@ -72,28 +85,111 @@ public abstract class SqlScriptVariables {
       return users();
     }
 
+    public abstract Optional<HashPartition> hashPartition();
+    // Value accessor for handlebars.
+    public HashPartition getHashPartition() {
+      if (hashPartition().isPresent()) {
+        return hashPartition().get();
+      }
+      return null;
+    }
+
+    /**
+     * The fraction of queries to extract, selected deterministically by a hash of the query ID. The
+     * same queries are thus selected by all scripts supporting sampling.
+     */
+    public abstract Optional<Double> sampleRatio();
+    // Value accessor for handlebars.
+    public Double getSampleRatio() {
+      if (sampleRatio().isPresent()) {
+        return sampleRatio().get();
+      }
+      return null;
+    }
+
+    public abstract SummaryGrain summaryGrain();
+    // Value accessor for handlebars.
+    public boolean getHourlySummary() {
+      return summaryGrain() == SummaryGrain.HOUR;
+    }
+
     @AutoValue
     public abstract static class TimeRange {
       private static final String minTime = "0001-01-01 00:00:00+00:00";
       private static final String maxTime = "9999-12-31 23:59:59.99+00:00";
+      private static final Pattern NUMBER_PATTERN = Pattern.compile("-?\\d+(\\.\\d+)?");
 
       public static Builder builder() {
         return new AutoValue_SqlScriptVariables_QueryLogsVariables_TimeRange.Builder()
             .setStartTimestamp(minTime)
-            .setEndTimestamp(maxTime);
+            .setEndTimestamp(maxTime)
+            .setStartKey(ImmutableMap.of());
       }
 
       public abstract String getStartTimestamp();
 
       public abstract String getEndTimestamp();
 
+      /**
+       * The numeric values of the tie-breaking sorting columns, by column, after which rows at the
+       * start timestamp are selected. Empty to select all rows at the start timestamp.
+       */
+      public abstract ImmutableMap<String, String> getStartKey();
+
       @AutoValue.Builder
       public abstract static class Builder {
         public abstract Builder setStartTimestamp(String timestamp);
 
         public abstract Builder setEndTimestamp(String timestamp);
 
-        public abstract TimeRange build();
+        public abstract Builder setStartKey(ImmutableMap<String, String> startKey);
+
+        abstract TimeRange autoBuild();
+
+        public TimeRange build() {
+          TimeRange timeRange = autoBuild();
+          for (String value : timeRange.getStartKey().values()) {
+            Preconditions.checkArgument(
+                NUMBER_PATTERN.matcher(value).matches(), "Invalid start key value '%s'.", value);
+          }
+          return timeRange;
+        }
+      }
+    }
+
+    /**
+     * One of {@code count} disjoint slices of the query logs, selected by hashing the query ID.
+     * Slicing on the query ID keeps rows of querylogs, sql_logs and query_references that belong to
+     * the same query in the same partition.
+     */
+    @AutoValue
+    public abstract static class HashPartition {
+      private static final Pattern ENTITY_NAME_PATTERN =
+          Pattern.compile("(?P<scriptName>\\w+?)_p(?P<index>\\d+)");
+
+      public static HashPartition create(int count, int index) {
+        Preconditions.checkArgument(count > 0, "Partition count must be positive.");
+        Preconditions.checkArgument(
+            index >= 0 && index < count, "Partition index %s is out of range.", index);
+        return new AutoValue_SqlScriptVariables_QueryLogsVariables_HashPartition(count, index);
+      }
+
+      public abstract int getCount();
+
+      public abstract int getIndex();
+
+      /** Returns the name of the output entity holding this partition of the given script. */
+      public String getEntityName(String scriptName) {
+        return String.format("%s_p%d", scriptName, getIndex());
+      }
+
+      /**
+       * Returns the script name for an entity name as returned by {@link #getEntityName}, or the
+       * input itself if it does not denote a partition.
+       */
+      public static String getScriptName(String entityName) {
+        Matcher matcher = ENTITY_NAME_PATTERN.matcher(entityName);
+        return matcher.matches() ? matcher.group("scriptName") : entityName;
       }
     }
 
@@ -106,6 +202,12 @@ public abstract class SqlScriptVariables {
 
       public abstract Builder setUsers(Set<String> value);
 
+      public abstract Builder setHashPartition(HashPartition value);
+
+      public abstract Builder setSampleRatio(Double value);
+
+      public abstract Builder setSummaryGrain(SummaryGrain value);
+
       public abstract QueryLogsVariables build();
     }
   }
@@ -121,6 +223,8 @@ public abstract class SqlScriptVariables {
 
     public abstract Builder setVars(Map<String, String> variables);
 
+    public abstract Builder setColumnProjection(ColumnProjection columnProjection);
+
     public abstract SqlScriptVariables build();
   }
 }
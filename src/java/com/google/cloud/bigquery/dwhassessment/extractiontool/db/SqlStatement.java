@@ -0,0 +1,112 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigquery.dwhassessment.extractiontool.db;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.base.CharMatcher;
+import com.google.common.collect.ImmutableList;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+/**
+ * A rendered script with the values of its bind parameters, if it was rendered with bind
+ * parameters. A script with parameters is executed as a prepared statement, so that the database
+ * can reuse the plan of a query whose text repeats with other values, e.g. the next time window.
+ */
+@AutoValue
+public abstract class SqlStatement {
+
+  /** The SQL, with a ? placeholder for every parameter. */
+  public abstract String sql();
+
+  /** The values of the parameters, in the order of their placeholders. */
+  public abstract ImmutableList<Object> parameters();
+
+  public static SqlStatement create(String sql) {
+    return create(sql, ImmutableList.of());
+  }
+
+  public static SqlStatement create(String sql, List<Object> parameters) {
+    return new AutoValue_SqlStatement(sql, ImmutableList.copyOf(parameters));
+  }
+
+  /**
+   * Joins statements into a multi-statement request, which returns a result for every statement in
+   * order. The parameters of the request are those of the statements, in order.
+   */
+  public static SqlStatement join(Collection<SqlStatement> statements) {
+    List<String> sqls = new ArrayList<>(statements.size());
+    List<Object> parameters = new ArrayList<>();
+    for (SqlStatement statement : statements) {
+      sqls.add(CharMatcher.whitespace().or(CharMatcher.is(';')).trimTrailingFrom(statement.sql()));
+      parameters.addAll(statement.parameters());
+    }
+    // The statements end on a line of their own, in case the last line is a comment.
+    return create(String.join("\n;\n", sqls), parameters);
+  }
+
+  /** Returns the statement with its SQL changed, e.g. wrapped in a projection. */
+  public SqlStatement withSql(UnaryOperator<String> function) {
+    return create(function.apply(sql()), parameters());
+  }
+
+  /** Creates a statement to execute this one with, a prepared statement if it has parameters. */
+  public Statement createStatement(Connection connection) throws SQLException {
+    if (parameters().isEmpty()) {
+      return connection.createStatement();
+    }
+    PreparedStatement statement = connection.prepareStatement(sql());
+    for (int i = 0; i < parameters().size(); i++) {
+      statement.setObject(i + 1, parameters().get(i));
+    }
+    return statement;
+  }
+
+  /** Executes this statement on a statement created by {@link #createStatement}. */
+  public ResultSet executeQuery(Statement statement) throws SQLException {
+    if (parameters().isEmpty()) {
+      return statement.executeQuery(sql());
+    }
+    return ((PreparedStatement) statement).executeQuery();
+  }
+
+  /**
+   * Executes this statement, which may return several results, on a statement created by {@link
+   * #createStatement}.
+   *
+   * @return Whether the first result is a result set.
+   */
+  public boolean execute(Statement statement) throws SQLException {
+    if (parameters().isEmpty()) {
+      return statement.execute(sql());
+    }
+    return ((PreparedStatement) statement).execute();
+  }
+
+  @Override
+  public final String toString() {
+    return parameters().isEmpty()
+        ? sql()
+        : String.format("%s\nwith parameters %s", sql(), parameters());
+  }
+}
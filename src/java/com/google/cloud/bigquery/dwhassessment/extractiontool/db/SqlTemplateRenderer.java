@@ -26,6 +26,17 @@ public interface SqlTemplateRenderer {
    */
   String renderTemplate(String name, String sql);
 
+  /**
+   * Renders a template into a statement. If the renderer binds parameters, the time windows of the
+   * statement are ? placeholders whose values are returned with the statement, so that the SQL is
+   * the same for every window; otherwise the statement has the SQL of {@link #renderTemplate}.
+   *
+   * @param name The name of the template (only used for error messages).
+   * @param sql The sql template.
+   * @return The rendered statement.
+   */
+  SqlStatement renderStatement(String name, String sql);
+
   /**
    * Returns the current builder for SqlScriptVariables of the renderer.
    *
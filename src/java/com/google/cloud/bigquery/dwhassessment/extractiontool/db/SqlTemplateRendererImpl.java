@@ -15,31 +15,74 @@
  */
 package com.google.cloud.bigquery.dwhassessment.extractiontool.db;
 
+import com.github.jknack.handlebars.Context;
 import com.github.jknack.handlebars.Handlebars;
 import com.github.jknack.handlebars.HandlebarsException;
 import com.github.jknack.handlebars.Template;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public class SqlTemplateRendererImpl implements SqlTemplateRenderer {
 
-  private final Handlebars handlebars = new Handlebars();
+  private static final Handlebars handlebars =
+      new Handlebars().registerHelpers(HandlebarsHelpers.class);
+
+  // A renderer is created for every script execution, but compiling a template is far more
+  // expensive than applying it, so compiled templates are shared by all renderers.
+  private static final ConcurrentMap<String, Template> compiledTemplates =
+      new ConcurrentHashMap<>();
+
   private final SqlScriptVariables.Builder sqlScriptVariablesBuilder;
+  private final boolean bindParameters;
 
   public SqlTemplateRendererImpl(SqlScriptVariables.Builder sqlScriptVariablesBuilder) {
+    this(sqlScriptVariablesBuilder, /* bindParameters= */ false);
+  }
+
+  /**
+   * @param bindParameters Whether {@link #renderStatement} renders the time windows as bind
+   *     parameters.
+   */
+  public SqlTemplateRendererImpl(
+      SqlScriptVariables.Builder sqlScriptVariablesBuilder, boolean bindParameters) {
     this.sqlScriptVariablesBuilder = sqlScriptVariablesBuilder;
-    handlebars.registerHelpers(HandlebarsHelpers.class);
+    this.bindParameters = bindParameters;
   }
 
   @Override
   public String renderTemplate(String name, String sql) {
-    Template template;
-    try {
-      template = handlebars.compileInline(sql);
-    } catch (HandlebarsException | IOException e) {
-      throw new IllegalStateException(String.format("Failed to compile SQL template '%s'.", name));
+    return apply(name, sql, Context.newContext(sqlScriptVariablesBuilder.build()));
+  }
+
+  @Override
+  public SqlStatement renderStatement(String name, String sql) {
+    if (!bindParameters) {
+      return SqlStatement.create(renderTemplate(name, sql));
+    }
+    // The helpers add the value of every placeholder that they render to the list.
+    List<Object> parameters = new ArrayList<>();
+    Context context =
+        Context.newContext(sqlScriptVariablesBuilder.build())
+            .data(HandlebarsHelpers.BIND_PARAMETERS, parameters);
+    return SqlStatement.create(apply(name, sql, context), parameters);
+  }
+
+  private static String apply(String name, String sql, Context context) {
+    Template template = compiledTemplates.get(sql);
+    if (template == null) {
+      try {
+        template = handlebars.compileInline(sql);
+      } catch (HandlebarsException | IOException e) {
+        throw new IllegalStateException(
+            String.format("Failed to compile SQL template '%s'.", name));
+      }
+      compiledTemplates.putIfAbsent(sql, template);
     }
     try {
-      return template.apply(sqlScriptVariablesBuilder.build());
+      return template.apply(context);
     } catch (IOException e) {
       throw new IllegalStateException(String.format("Failed to apply SQL template '%s'.", name));
     }
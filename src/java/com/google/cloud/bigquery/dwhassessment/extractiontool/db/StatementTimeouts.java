@@ -0,0 +1,60 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigquery.dwhassessment.extractiontool.db;
+
+import com.google.auto.value.AutoValue;
+import java.time.Duration;
+import java.util.Optional;
+
+/** The time limits for the statements of a script, enforced by the {@link StatementWatchdog}. */
+@AutoValue
+public abstract class StatementTimeouts {
+
+  /** The time after which a statement is cancelled if its execution has not returned. */
+  public abstract Optional<Duration> executeTimeout();
+
+  /** The time after which a statement is cancelled if fetching the next row has not returned. */
+  public abstract Optional<Duration> fetchIdleTimeout();
+
+  /** Returns timeouts that never cancel a statement. */
+  public static StatementTimeouts none() {
+    return builder().build();
+  }
+
+  public static Builder builder() {
+    return new AutoValue_StatementTimeouts.Builder();
+  }
+
+  /** Returns whether no timeout is set. */
+  public boolean isEmpty() {
+    return !executeTimeout().isPresent() && !fetchIdleTimeout().isPresent();
+  }
+
+  public abstract Builder toBuilder();
+
+  @AutoValue.Builder
+  public abstract static class Builder {
+    public abstract Builder setExecuteTimeout(Duration executeTimeout);
+
+    public abstract Builder setExecuteTimeout(Optional<Duration> executeTimeout);
+
+    public abstract Builder setFetchIdleTimeout(Duration fetchIdleTimeout);
+
+    public abstract Builder setFetchIdleTimeout(Optional<Duration> fetchIdleTimeout);
+
+    public abstract StatementTimeouts build();
+  }
+}
@@ -0,0 +1,320 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigquery.dwhassessment.extractiontool.db;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.io.Closeable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Cancels the statements that exceed their {@link StatementTimeouts}, so that a query that hangs,
+ * e.g. behind a workload throttle of the database, cannot block the extraction forever.
+ *
+ * <p>The statements of a watched connection get the execute timeout as query timeout, which the
+ * database enforces if the driver supports it. In addition, a watchdog thread calls {@link
+ * Statement#cancel()} on every statement whose execution takes longer than the execute timeout or
+ * whose fetch of the next row takes longer than the fetch idle timeout. The time between fetches,
+ * in which the rows are written, does not count. The error with which the driver aborts a cancelled
+ * statement is thrown as {@link SQLTimeoutException}.
+ */
+public final class StatementWatchdog implements Closeable {
+
+  private static final Logger LOGGER = Logger.getLogger(StatementWatchdog.class.getName());
+  private static final Duration DEFAULT_CHECK_INTERVAL = Duration.ofSeconds(1);
+
+  private final Duration checkInterval;
+  private final Set<Watch> watches = ConcurrentHashMap.newKeySet();
+  private ScheduledExecutorService scheduler;
+
+  public StatementWatchdog() {
+    this(DEFAULT_CHECK_INTERVAL);
+  }
+
+  @VisibleForTesting
+  StatementWatchdog(Duration checkInterval) {
+    this.checkInterval = checkInterval;
+  }
+
+  /**
+   * Returns a connection whose statements are watched. Closing it closes the given connection.
+   *
+   * @param connection The connection to watch.
+   * @param name The name under which cancelled statements are reported, e.g. the script name.
+   * @param timeouts The timeouts of the statements. If empty, the connection is returned as it is.
+   */
+  public Connection watch(Connection connection, String name, StatementTimeouts timeouts) {
+    if (timeouts.isEmpty()) {
+      return connection;
+    }
+    startChecks();
+    return newProxy(Connection.class, new ConnectionHandler(connection, name, timeouts));
+  }
+
+  @Override
+  public synchronized void close() {
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+      scheduler = null;
+    }
+    watches.clear();
+  }
+
+  private synchronized void startChecks() {
+    if (scheduler != null) {
+      return;
+    }
+    scheduler =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              Thread thread = new Thread(runnable, "statement-watchdog");
+              thread.setDaemon(true);
+              return thread;
+            });
+    scheduler.scheduleWithFixedDelay(
+        this::check, checkInterval.toMillis(), checkInterval.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  private void check() {
+    long now = System.nanoTime();
+    for (Watch watch : watches) {
+      watch.cancelIfExpired(now);
+    }
+  }
+
+  private static <T> T newProxy(Class<T> type, InvocationHandler handler) {
+    return type.cast(
+        Proxy.newProxyInstance(
+            StatementWatchdog.class.getClassLoader(), new Class<?>[] {type}, handler));
+  }
+
+  private static Object invoke(Method method, Object target, Object[] args, Watch watch)
+      throws Throwable {
+    try {
+      return method.invoke(target, args);
+    } catch (InvocationTargetException e) {
+      if (watch != null && e.getCause() instanceof SQLException) {
+        throw watch.translate((SQLException) e.getCause());
+      }
+      throw e.getCause();
+    }
+  }
+
+  /** The state of a statement that the watchdog may have to cancel. */
+  private static final class Watch {
+
+    private final Statement statement;
+    private final String name;
+    private volatile boolean armed;
+    private volatile long deadlineNanos;
+    private volatile String pendingReason;
+    private volatile String cancelReason;
+
+    Watch(Statement statement, String name) {
+      this.statement = statement;
+      this.name = name;
+    }
+
+    /** Arms the watch until {@link #disarm()} if the timeout is present. */
+    void arm(Optional<Duration> timeout, String reasonFormat) {
+      if (!timeout.isPresent()) {
+        return;
+      }
+      pendingReason = String.format(reasonFormat, timeout.get());
+      deadlineNanos = System.nanoTime() + timeout.get().toNanos();
+      armed = true;
+    }
+
+    void disarm() {
+      armed = false;
+    }
+
+    void cancelIfExpired(long nowNanos) {
+      if (!armed || nowNanos - deadlineNanos < 0 || cancelReason != null) {
+        return;
+      }
+      cancelReason = pendingReason;
+      LOGGER.log(
+          Level.WARNING,
+          "Cancelling the statement of {0}, since {1}.",
+          new Object[] {name, cancelReason});
+      try {
+        statement.cancel();
+      } catch (SQLException e) {
+        LOGGER.log(Level.WARNING, String.format("Failed to cancel the statement of %s.", name), e);
+      }
+    }
+
+    SQLException translate(SQLException e) {
+      if (cancelReason == null || e instanceof SQLTimeoutException) {
+        return e;
+      }
+      return new SQLTimeoutException(
+          String.format("Cancelled the statement of %s, since %s.", name, cancelReason), e);
+    }
+  }
+
+  private final class ConnectionHandler implements InvocationHandler {
+
+    private final Connection connection;
+    private final String name;
+    private final StatementTimeouts timeouts;
+    private final Set<Watch> connectionWatches = ConcurrentHashMap.newKeySet();
+
+    ConnectionHandler(Connection connection, String name, StatementTimeouts timeouts) {
+      this.connection = connection;
+      this.name = name;
+      this.timeouts = timeouts;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      Object result = StatementWatchdog.invoke(method, connection, args, /* watch= */ null);
+      switch (method.getName()) {
+        case "createStatement":
+        case "prepareStatement":
+        case "prepareCall":
+          return watchStatement((Statement) result);
+        case "close":
+          watches.removeAll(connectionWatches);
+          connectionWatches.clear();
+          return result;
+        default:
+          return result;
+      }
+    }
+
+    private Statement watchStatement(Statement statement) throws SQLException {
+      if (timeouts.executeTimeout().isPresent()) {
+        // JDBC counts the query timeout in whole seconds; 0 would disable it.
+        long seconds = (timeouts.executeTimeout().get().toMillis() + 999) / 1000;
+        statement.setQueryTimeout((int) Math.max(1, Math.min(seconds, Integer.MAX_VALUE)));
+      }
+      Watch watch = new Watch(statement, name);
+      watches.add(watch);
+      connectionWatches.add(watch);
+      StatementHandler handler = new StatementHandler(statement, watch, this);
+      if (statement instanceof CallableStatement) {
+        return newProxy(CallableStatement.class, handler);
+      }
+      if (statement instanceof PreparedStatement) {
+        return newProxy(PreparedStatement.class, handler);
+      }
+      return newProxy(Statement.class, handler);
+    }
+
+    void unwatch(Watch watch) {
+      watches.remove(watch);
+      connectionWatches.remove(watch);
+    }
+  }
+
+  private static final class StatementHandler implements InvocationHandler {
+
+    private final Statement statement;
+    private final Watch watch;
+    private final ConnectionHandler connectionHandler;
+
+    StatementHandler(Statement statement, Watch watch, ConnectionHandler connectionHandler) {
+      this.statement = statement;
+      this.watch = watch;
+      this.connectionHandler = connectionHandler;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      String methodName = method.getName();
+      if (methodName.equals("close")) {
+        connectionHandler.unwatch(watch);
+        return StatementWatchdog.invoke(method, statement, args, watch);
+      }
+      Object result;
+      if (methodName.startsWith("execute")) {
+        watch.arm(
+            connectionHandler.timeouts.executeTimeout(), "the statement did not return within %s");
+        try {
+          result = StatementWatchdog.invoke(method, statement, args, watch);
+        } finally {
+          watch.disarm();
+        }
+      } else {
+        result = StatementWatchdog.invoke(method, statement, args, watch);
+      }
+      if (result instanceof ResultSet) {
+        return new WatchedResultSet(
+            (ResultSet) result,
+            watch,
+            (Statement) proxy,
+            connectionHandler.timeouts.fetchIdleTimeout());
+      }
+      return result;
+    }
+  }
+
+  /** A result set whose fetches of the next row are watched. */
+  private static final class WatchedResultSet extends ForwardingResultSet {
+
+    private final Watch watch;
+    private final Statement statementProxy;
+    private final Optional<Duration> fetchIdleTimeout;
+
+    WatchedResultSet(
+        ResultSet resultSet,
+        Watch watch,
+        Statement statementProxy,
+        Optional<Duration> fetchIdleTimeout) {
+      super(resultSet);
+      this.watch = watch;
+      this.statementProxy = statementProxy;
+      this.fetchIdleTimeout = fetchIdleTimeout;
+    }
+
+    @Override
+    public boolean next() throws SQLException {
+      watch.arm(fetchIdleTimeout, "no row arrived within %s");
+      try {
+        return delegate.next();
+      } catch (SQLException e) {
+        throw watch.translate(e);
+      } finally {
+        watch.disarm();
+      }
+    }
+
+    @Override
+    public Statement getStatement() {
+      return statementProxy;
+    }
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigquery.dwhassessment.extractiontool.db;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import org.apache.avro.util.Utf8;
+
+/**
+ * A bounded per-column cache of pre-encoded string values.
+ *
+ * <p>Columns such as UserName or StatementType only have a handful of distinct values. Interning
+ * them lets all rows share a single {@link Utf8} instance per value, which is encoded to UTF-8 only
+ * once. A column is no longer cached as soon as it exceeds the maximum number of distinct values,
+ * so that high-cardinality columns, e.g. query texts, do not fill up the memory.
+ *
+ * <p>Instances are not thread-safe and are meant to be used for a single result set.
+ */
+public final class Utf8Interner {
+
+  private static final int DEFAULT_MAX_VALUES_PER_COLUMN = 1024;
+  private static final int MAX_VALUE_LENGTH = 256;
+
+  private final int maxValuesPerColumn;
+  private final Map<Integer, Map<String, Utf8>> caches = new HashMap<>();
+  private final Set<Integer> uncachedColumns = new HashSet<>();
+
+  private Utf8Interner(int maxValuesPerColumn) {
+    this.maxValuesPerColumn = maxValuesPerColumn;
+  }
+
+  /** Creates an interner with the default bound of distinct values per column. */
+  public static Utf8Interner create() {
+    return new Utf8Interner(DEFAULT_MAX_VALUES_PER_COLUMN);
+  }
+
+  /** Creates an interner that keeps at most the given number of distinct values per column. */
+  public static Utf8Interner create(int maxValuesPerColumn) {
+    return new Utf8Interner(maxValuesPerColumn);
+  }
+
+  /**
+   * Returns the cached value equal to the given one, or the given value itself if the column is not
+   * cached.
+   *
+   * @param columnIndex The index of the column in the result set.
+   * @param value The value to intern.
+   * @return A {@link Utf8} or {@link String} equal to the given value.
+   */
+  public CharSequence intern(int columnIndex, String value) {
+    if (value == null || value.length() > MAX_VALUE_LENGTH) {
+      return value;
+    }
+    if (uncachedColumns.contains(columnIndex)) {
+      return value;
+    }
+    Map<String, Utf8> cache = caches.computeIfAbsent(columnIndex, index -> new HashMap<>());
+    Utf8 cachedValue = cache.get(value);
+    if (cachedValue != null) {
+      return cachedValue;
+    }
+    if (cache.size() >= maxValuesPerColumn) {
+      // The column has too many distinct values for caching to pay off.
+      caches.remove(columnIndex);
+      uncachedColumns.add(columnIndex);
+      return value;
+    }
+    Utf8 utf8 = new Utf8(value);
+    cache.put(value, utf8);
+    return utf8;
+  }
+}
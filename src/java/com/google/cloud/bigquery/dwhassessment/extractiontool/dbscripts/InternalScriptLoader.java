@@ -43,6 +43,7 @@ public class InternalScriptLoader implements ScriptLoader {
           "partitioning_constraints",
           "query_references",
           "querylogs",
+          "querylogs_summary",
           "roles",
           "sql_logs",
           "stats",
@@ -62,12 +63,51 @@ public class InternalScriptLoader implements ScriptLoader {
   @Override
   public ImmutableMap<String, ImmutableList<String>> getSortingColumnsMap() {
     return new ImmutableMap.Builder<String, ImmutableList<String>>()
-        .put("querylogs", ImmutableList.of("StartTime"))
-        .put("sql_logs", ImmutableList.of("CollectTimeStamp"))
-        .put("query_references", ImmutableList.of("CollectTimeStamp"))
+        .put("querylogs", ImmutableList.of("StartTime", "QueryID"))
+        .put("sql_logs", ImmutableList.of("CollectTimeStamp", "QueryID"))
+        .put("query_references", ImmutableList.of("CollectTimeStamp", "QueryID"))
         .build();
   }
 
+  @Override
+  public ImmutableMap<String, ImmutableList<String>> getIndexColumnsMap() {
+    return ImmutableMap.of("querylogs", ImmutableList.of("UserName", "StatementType", "ErrorCode"));
+  }
+
+  @Override
+  public ImmutableSet<String> getHashPartitionableScripts() {
+    return ImmutableSet.of("querylogs", "sql_logs", "query_references");
+  }
+
+  @Override
+  public ImmutableMap<String, Integer> getCostHints() {
+    // The logs grow with every query, the other scripts with the number of database objects.
+    return new ImmutableMap.Builder<String, Integer>()
+        .put("querylogs", 100)
+        .put("sql_logs", 80)
+        .put("query_references", 50)
+        .put("querylogs_summary", 20)
+        .put("columns", 10)
+        .put("tabletext", 10)
+        .put("stats", 5)
+        .put("tablesize", 5)
+        .build();
+  }
+
+  @Override
+  public ImmutableSet<String> getBatchableScripts() {
+    // The catalogs of roles, users and constraints, which grow with neither queries nor columns.
+    return ImmutableSet.of(
+        "all_ri_children", "all_ri_parents", "functioninfo", "roles", "stats", "users");
+  }
+
+  @Override
+  public ImmutableSet<String> getOptInScripts() {
+    // The summary scans the query logs once more; it is meant to replace querylogs, not to add to
+    // it.
+    return ImmutableSet.of("querylogs_summary");
+  }
+
   private Supplier<String> scriptLoader(String name) {
     URL scriptUrl = ScriptLoader.class.getResource(name);
     Preconditions.checkArgument(scriptUrl != null, "Resource '%s' does not exist.", name);
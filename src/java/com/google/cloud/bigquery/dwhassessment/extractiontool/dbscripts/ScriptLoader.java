@@ -17,11 +17,47 @@ package com.google.cloud.bigquery.dwhassessment.extractiontool.dbscripts;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import java.util.function.Supplier;
 
 public interface ScriptLoader {
 
   ImmutableMap<String, Supplier<String>> loadScripts();
 
+  /**
+   * Returns the columns by which the scripts that are saved in chunks sort their rows: the
+   * timestamp of the chunks, followed by the numeric columns that break ties between rows with the
+   * same timestamp.
+   */
   ImmutableMap<String, ImmutableList<String>> getSortingColumnsMap();
+
+  /**
+   * Returns the columns, besides the sorting columns, whose statistics are written into the index
+   * of every chunk of the script.
+   */
+  ImmutableMap<String, ImmutableList<String>> getIndexColumnsMap();
+
+  /**
+   * Returns the names of the scripts that can be split into hash partitions (and sampled) on the
+   * query ID.
+   */
+  ImmutableSet<String> getHashPartitionableScripts();
+
+  /**
+   * Returns the relative costs of the scripts, by which the scripts are ordered when no previous
+   * run recorded how long they take. Scripts without a cost count as the cheapest.
+   */
+  ImmutableMap<String, Integer> getCostHints();
+
+  /**
+   * Returns the names of the scripts that return few rows, so that they can be extracted together
+   * in a single request over one connection.
+   */
+  ImmutableSet<String> getBatchableScripts();
+
+  /**
+   * Returns the names of the scripts that are only executed when requested by name, e.g. with
+   * --sql-scripts, but not by default.
+   */
+  ImmutableSet<String> getOptInScripts();
 }
@@ -25,7 +25,7 @@ SELECT
   "FreqofUse",
   "TypeofUse"
 FROM {{#getTableName "DBQLObjTbl"}}{{/getTableName}} AS "QRF"
-{{#whereClauseWithTimeRange queryLogsVariables "QRF" "CollectTimeStamp"}}{{/whereClauseWithTimeRange}}
+{{#whereClauseWithTimeRange queryLogsVariables "QRF" "CollectTimeStamp" "QueryID"}}{{/whereClauseWithTimeRange}}
 {{#if sortingColumns}}
 ORDER BY {{#each sortingColumns}}"{{this}}"{{#unless @last}},{{/unless}}{{/each}} ASC NULLS FIRST
 {{/if}}
\ No newline at end of file
@@ -0,0 +1,41 @@
+-- Copyright 2021 Google LLC
+--
+-- Licensed under the Apache License, Version 2.0 (the "License");
+-- you may not use this file except in compliance with the License.
+-- You may obtain a copy of the License at
+--
+--     https://www.apache.org/licenses/LICENSE-2.0
+--
+-- Unless required by applicable law or agreed to in writing, software
+-- distributed under the License is distributed on an "AS IS" BASIS,
+-- WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+-- See the License for the specific language governing permissions and
+-- limitations under the License.
+
+-- This SQL aggregates the DBC.QryLogV table per user, statement type and hour (or day) of the
+-- query start time, instead of extracting every single query.
+SELECT
+  CAST(("QLV"."StartTime" AT TIME ZONE INTERVAL '0:00' HOUR TO MINUTE) AS DATE) AS "LogDate",
+{{#if queryLogsVariables.hourlySummary}}
+  EXTRACT(HOUR FROM ("QLV"."StartTime" AT TIME ZONE INTERVAL '0:00' HOUR TO MINUTE)) AS "LogHour",
+{{else}}
+  CAST(NULL AS INTEGER) AS "LogHour",
+{{/if}}
+  "QLV"."UserName",
+  "QLV"."StatementType",
+  COUNT(*) AS "QueryCount",
+  SUM("QLV"."AMPCPUTime") AS "TotalAMPCPUTime",
+  MAX("QLV"."AMPCPUTime") AS "MaxAMPCPUTime",
+  SUM("QLV"."TotalIOCount") AS "TotalIOCount",
+  SUM("QLV"."SpoolUsage") AS "TotalSpoolUsage",
+  MAX("QLV"."SpoolUsage") AS "MaxSpoolUsage"
+FROM {{#getTableName "QryLogV"}}{{/getTableName}} AS "QLV"
+{{#whereClauseForQuerylogs queryLogsVariables "QLV"}}{{/whereClauseForQuerylogs}}
+GROUP BY
+  CAST(("QLV"."StartTime" AT TIME ZONE INTERVAL '0:00' HOUR TO MINUTE) AS DATE),
+{{#if queryLogsVariables.hourlySummary}}
+  EXTRACT(HOUR FROM ("QLV"."StartTime" AT TIME ZONE INTERVAL '0:00' HOUR TO MINUTE)),
+{{/if}}
+  "QLV"."UserName",
+  "QLV"."StatementType"
+ORDER BY "LogDate", "LogHour", "UserName", "StatementType"
@@ -20,7 +20,7 @@ SELECT
   "{{#if vars.columnNameQueryID}}{{vars.columnNameQueryID}}{{else}}QueryID{{/if}}" AS "QueryID",
   {{#if queryLogsVariables.needQueryText}}"{{#if vars.columnNameQueryText}}{{vars.columnNameQueryText}}{{else}}SqlTextInfo{{/if}}"{{else}}'_'{{/if}} AS "SqlText"
 FROM {{#getTableName "QryLogSQLV"}}{{/getTableName}} AS "SQLV"
-{{#whereClauseWithTimeRange queryLogsVariables "SQLV" "CollectTimeStamp"}}{{/whereClauseWithTimeRange}}
+{{#whereClauseWithTimeRange queryLogsVariables "SQLV" "CollectTimeStamp" "QueryID"}}{{/whereClauseWithTimeRange}}
 {{#if sortingColumns}}
 ORDER BY {{#each sortingColumns}}"{{this}}"{{#unless @last}},{{/unless}}{{/each}} ASC NULLS FIRST
 {{/if}}
\ No newline at end of file
@@ -1,22 +1,73 @@
 package com.google.cloud.bigquery.dwhassessment.extractiontool.dumper;
 
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import com.google.common.annotations.VisibleForTesting;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.nio.file.Files;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
-/** A data entity manager that writes files to a given directory. */
+/**
+ * A data entity manager that writes files to a given directory.
+ *
+ * <p>The files are written by a dedicated I/O thread from reused direct buffers, so that a slow
+ * disk does not stall the threads that fetch the data. If syncOnCommit is set, closing a stream
+ * forces its data to the disk, so that a chunk that is committed by moving it to its final name
+ * after closing it is never found incomplete after a crash.
+ */
 public class DataEntityManagerDirectoryImpl implements DataEntityManager {
 
+  private static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
   private final Path basePath;
+  private final boolean syncOnCommit;
+  private final int bufferSize;
+  private final Queue<ByteBuffer> bufferPool = new ConcurrentLinkedQueue<>();
+  private final ExecutorService ioExecutor =
+      Executors.newSingleThreadExecutor(
+          runnable -> {
+            Thread thread = new Thread(runnable, "entity-writer");
+            thread.setDaemon(true);
+            return thread;
+          });
 
   public DataEntityManagerDirectoryImpl(Path basePath) {
+    this(basePath, /* syncOnCommit= */ false);
+  }
+
+  /**
+   * Creates a data entity manager.
+   *
+   * @param basePath The directory in which to write the files.
+   * @param syncOnCommit Whether closing a stream forces its data to the disk.
+   */
+  public DataEntityManagerDirectoryImpl(Path basePath, boolean syncOnCommit) {
+    this(basePath, syncOnCommit, DEFAULT_BUFFER_SIZE);
+  }
+
+  @VisibleForTesting
+  DataEntityManagerDirectoryImpl(Path basePath, boolean syncOnCommit, int bufferSize) {
     this.basePath = basePath;
+    this.syncOnCommit = syncOnCommit;
+    this.bufferSize = bufferSize;
   }
 
   @Override
   public OutputStream getEntityOutputStream(String name) throws IOException {
-    return Files.newOutputStream(basePath.resolve(name));
+    return new WriteBehindOutputStream(
+        FileChannel.open(basePath.resolve(name), CREATE, TRUNCATE_EXISTING, WRITE),
+        ioExecutor,
+        bufferPool,
+        bufferSize,
+        syncOnCommit);
   }
 
   @Override
@@ -30,5 +81,7 @@ public class DataEntityManagerDirectoryImpl implements DataEntityManager {
   }
 
   @Override
-  public void close() throws IOException {}
+  public void close() throws IOException {
+    ioExecutor.shutdown();
+  }
 }
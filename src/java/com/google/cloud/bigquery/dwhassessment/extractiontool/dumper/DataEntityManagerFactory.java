@@ -8,8 +8,35 @@ import java.util.function.Function;
 
 public class DataEntityManagerFactory implements Function<Path, DataEntityManager> {
 
+  private final boolean syncOnCommit;
+
+  public DataEntityManagerFactory() {
+    this(/* syncOnCommit= */ false);
+  }
+
+  /**
+   * Creates a factory.
+   *
+   * @param syncOnCommit Whether the files written to a directory are forced to the disk when they
+   *     are closed, before the chunks are moved to their final names.
+   */
+  public DataEntityManagerFactory(boolean syncOnCommit) {
+    this.syncOnCommit = syncOnCommit;
+  }
+
   @Override
   public DataEntityManager apply(Path path) {
+    return create(path, syncOnCommit);
+  }
+
+  /**
+   * Creates the manager of the output at a path: a zip file if the path ends with ".zip", a
+   * directory otherwise.
+   *
+   * @param syncOnCommit Whether the files written to a directory are forced to the disk when they
+   *     are closed, before the chunks are moved to their final names.
+   */
+  public static DataEntityManager create(Path path, boolean syncOnCommit) {
     if (path.toString().endsWith(".zip")) {
       Preconditions.checkArgument(
           Files.isDirectory(path.getParent()), "%s is not a directory.", path.getParent());
@@ -21,6 +48,6 @@ public class DataEntityManagerFactory implements Function<Path, DataEntityManage
       }
     }
     Preconditions.checkArgument(Files.isDirectory(path), "%s is not a directory.", path);
-    return new DataEntityManagerDirectoryImpl(path);
+    return new DataEntityManagerDirectoryImpl(path, syncOnCommit);
   }
 }
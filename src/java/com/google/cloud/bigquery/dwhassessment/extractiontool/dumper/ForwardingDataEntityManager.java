@@ -0,0 +1,53 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigquery.dwhassessment.extractiontool.dumper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+
+/**
+ * A data entity manager that forwards all calls to another data entity manager. Subclasses override
+ * the calls they observe, e.g. {@link #getEntityOutputStream(String)}.
+ */
+public abstract class ForwardingDataEntityManager implements DataEntityManager {
+
+  protected final DataEntityManager delegate;
+
+  protected ForwardingDataEntityManager(DataEntityManager delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public OutputStream getEntityOutputStream(String name) throws IOException {
+    return delegate.getEntityOutputStream(name);
+  }
+
+  @Override
+  public boolean isResumable() {
+    return delegate.isResumable();
+  }
+
+  @Override
+  public Path getAbsolutePath(String name) {
+    return delegate.getAbsolutePath(name);
+  }
+
+  @Override
+  public void close() throws IOException {
+    delegate.close();
+  }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigquery.dwhassessment.extractiontool.dumper;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * An output stream that writes to a file channel on an I/O thread, so that the writing thread only
+ * waits for the disk when it has filled two buffers faster than the disk takes them.
+ *
+ * <p>The data is collected in a direct buffer. A full buffer is written by the I/O thread while the
+ * other buffer is filled. {@link #flush()} does not wait for the disk: Avro flushes after every
+ * block, which would otherwise make every block a synchronous write. Errors of the I/O thread are
+ * thrown by the next write or by {@link #close()}.
+ */
+final class WriteBehindOutputStream extends OutputStream {
+
+  private final FileChannel channel;
+  private final ExecutorService ioExecutor;
+  private final Queue<ByteBuffer> bufferPool;
+  private final boolean syncOnClose;
+  private ByteBuffer currentBuffer;
+  private ByteBuffer writingBuffer;
+  private Future<?> pendingWrite;
+  private boolean closed;
+
+  /**
+   * Creates a stream.
+   *
+   * @param channel The channel to which to write. It is closed with the stream.
+   * @param ioExecutor The executor that writes the buffers, which must run the writes of one stream
+   *     in order.
+   * @param bufferPool The pool from which the buffers are taken and to which they are returned.
+   * @param bufferSize The size of the buffers that are allocated if the pool is empty.
+   * @param syncOnClose Whether to force the data to the disk before the stream is closed.
+   */
+  WriteBehindOutputStream(
+      FileChannel channel,
+      ExecutorService ioExecutor,
+      Queue<ByteBuffer> bufferPool,
+      int bufferSize,
+      boolean syncOnClose) {
+    this.channel = channel;
+    this.ioExecutor = ioExecutor;
+    this.bufferPool = bufferPool;
+    this.syncOnClose = syncOnClose;
+    this.currentBuffer = takeBuffer(bufferPool, bufferSize);
+    this.writingBuffer = takeBuffer(bufferPool, bufferSize);
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    checkOpen();
+    if (!currentBuffer.hasRemaining()) {
+      writeCurrentBuffer();
+    }
+    currentBuffer.put((byte) b);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    checkOpen();
+    while (len > 0) {
+      if (!currentBuffer.hasRemaining()) {
+        writeCurrentBuffer();
+      }
+      int count = Math.min(len, currentBuffer.remaining());
+      currentBuffer.put(b, off, count);
+      off += count;
+      len -= count;
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+    checkOpen();
+    if (pendingWrite != null && pendingWrite.isDone()) {
+      // Throws the error of the last write, if any.
+      awaitPendingWrite();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try (FileChannel channel = this.channel) {
+      if (currentBuffer.position() > 0) {
+        writeCurrentBuffer();
+      }
+      awaitPendingWrite();
+      if (syncOnClose) {
+        channel.force(/* metaData= */ true);
+      }
+    } finally {
+      // A buffer that the I/O thread may still use must not be reused.
+      if (pendingWrite == null || pendingWrite.isDone()) {
+        writingBuffer.clear();
+        bufferPool.add(writingBuffer);
+      }
+      currentBuffer.clear();
+      bufferPool.add(currentBuffer);
+    }
+  }
+
+  private void writeCurrentBuffer() throws IOException {
+    awaitPendingWrite();
+    ByteBuffer buffer = currentBuffer;
+    buffer.flip();
+    currentBuffer = writingBuffer;
+    currentBuffer.clear();
+    writingBuffer = buffer;
+    pendingWrite =
+        ioExecutor.submit(
+            () -> {
+              while (buffer.hasRemaining()) {
+                channel.write(buffer);
+              }
+              return null;
+            });
+  }
+
+  private void awaitPendingWrite() throws IOException {
+    if (pendingWrite == null) {
+      return;
+    }
+    try {
+      pendingWrite.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for the write to the file.");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException("Failed to write to the file.", e.getCause());
+    }
+    pendingWrite = null;
+  }
+
+  private void checkOpen() throws IOException {
+    if (closed) {
+      throw new IOException("The stream is closed.");
+    }
+  }
+
+  private static ByteBuffer takeBuffer(Queue<ByteBuffer> bufferPool, int bufferSize) {
+    ByteBuffer buffer = bufferPool.poll();
+    return buffer != null ? buffer : ByteBuffer.allocateDirect(bufferSize);
+  }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigquery.dwhassessment.extractiontool.executor;
+
+import com.google.cloud.bigquery.dwhassessment.extractiontool.dumper.DataEntityManager;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.dumper.ForwardingDataEntityManager;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.dumper.ForwardingOutputStream;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Stopwatch;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Limits the number of concurrent database sessions, adapting the limit to how the database copes
+ * with the load.
+ *
+ * <p>The limit starts at the minimum and grows by one session for every round of chunks, i.e. for
+ * as many chunks as there are sessions, that were written in time. It is halved when a session
+ * fails, when the database reports a load above the threshold, or when a chunk takes more than
+ * twice as long as the fastest recent chunks. New sessions wait until they fit into the limit.
+ * Sessions that run when the limit is lowered end at their next chunk boundary, with a {@link
+ * SessionYieldedException}, until the sessions fit into the limit again.
+ */
+final class AdaptiveSessionLimiter {
+
+  private static final Logger LOGGER = Logger.getLogger(AdaptiveSessionLimiter.class.getName());
+
+  private static final String AVRO_SUFFIX = ".avro";
+  // A chunk that takes longer than this factor times the baseline signals an overloaded database.
+  private static final double LATENCY_TOLERANCE = 2.0;
+  // How fast the baseline follows slower chunks, so that a single fast chunk is eventually
+  // forgotten.
+  private static final double BASELINE_DRIFT = 0.05;
+
+  private final int minSessions;
+  private final int maxSessions;
+  private int limit;
+  private int sessions;
+  private int samplesInRound;
+  private int samplesSinceDecrease;
+  private boolean overloaded;
+  private double baselineNanos = Double.NaN;
+
+  /**
+   * Creates a limiter.
+   *
+   * @param minSessions The number of sessions to which the limit is never lowered.
+   * @param maxSessions The number of sessions to which the limit is never raised.
+   */
+  AdaptiveSessionLimiter(int minSessions, int maxSessions) {
+    Preconditions.checkArgument(
+        minSessions > 0, "The minimum number of sessions must be positive.");
+    Preconditions.checkArgument(
+        maxSessions >= minSessions,
+        "The maximum number of sessions must not be lower than the minimum.");
+    this.minSessions = minSessions;
+    this.maxSessions = maxSessions;
+    this.limit = minSessions;
+  }
+
+  /** Waits until another session fits into the limit and counts it. */
+  synchronized void acquire() throws InterruptedException {
+    while (sessions >= limit) {
+      wait();
+    }
+    sessions++;
+  }
+
+  /** Ends a session that was counted by {@link #acquire()}. */
+  synchronized void release() {
+    sessions--;
+    notifyAll();
+  }
+
+  /**
+   * Ends a session that was counted by {@link #acquire()} if there are more sessions than the limit
+   * allows. Returns whether the session was ended.
+   */
+  synchronized boolean releaseIfOverLimit() {
+    if (sessions <= limit) {
+      return false;
+    }
+    release();
+    return true;
+  }
+
+  /** Returns the current limit. */
+  synchronized int getLimit() {
+    return limit;
+  }
+
+  /** Records the time that it took to fetch and write a chunk. */
+  synchronized void onChunk(Duration duration) {
+    double nanos = duration.toNanos();
+    if (Double.isNaN(baselineNanos) || nanos < baselineNanos) {
+      baselineNanos = nanos;
+    } else {
+      baselineNanos += (nanos - baselineNanos) * BASELINE_DRIFT;
+    }
+    samplesSinceDecrease++;
+    if (nanos > baselineNanos * LATENCY_TOLERANCE) {
+      // The chunks of sessions that started before the last decrease do not show its effect yet.
+      if (samplesSinceDecrease > limit) {
+        decrease("chunks slowed down");
+      }
+      return;
+    }
+    if (overloaded) {
+      return;
+    }
+    samplesInRound++;
+    if (samplesInRound >= limit && limit < maxSessions) {
+      limit++;
+      samplesInRound = 0;
+      LOGGER.log(Level.INFO, "Raised the number of sessions to {0}.", limit);
+      notifyAll();
+    }
+  }
+
+  /** Records that a session failed, e.g. because the database refused it. */
+  synchronized void onFailure() {
+    decrease("a session failed");
+  }
+
+  /**
+   * Records the load that the database reports. A load above the maximum lowers the limit and keeps
+   * it from growing until the load drops below the maximum.
+   */
+  synchronized void onLoad(double load, double maxLoad) {
+    overloaded = load > maxLoad;
+    if (overloaded) {
+      decrease(String.format("the database load %s exceeds %s", load, maxLoad));
+    }
+  }
+
+  /**
+   * Returns a data entity manager for the output of a session that records the time between opening
+   * and closing the output stream of every Avro file as the duration of a chunk.
+   *
+   * <p>Opening any Avro file but the first ends the session, with a {@link
+   * SessionYieldedException}, if there are more sessions than the limit allows. The earlier chunks
+   * are complete then, so that the session can be resumed from its last saved chunk.
+   */
+  DataEntityManager observe(DataEntityManager dataEntityManager) {
+    return new ForwardingDataEntityManager(dataEntityManager) {
+      private int openedChunks;
+
+      @Override
+      public OutputStream getEntityOutputStream(String name) throws IOException {
+        if (!name.endsWith(AVRO_SUFFIX)) {
+          return delegate.getEntityOutputStream(name);
+        }
+        if (openedChunks++ > 0 && releaseIfOverLimit()) {
+          throw new SessionYieldedException();
+        }
+        OutputStream outputStream = delegate.getEntityOutputStream(name);
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        return new ForwardingOutputStream(outputStream) {
+          private boolean closed;
+
+          @Override
+          public void close() throws IOException {
+            super.close();
+            if (!closed) {
+              closed = true;
+              onChunk(stopwatch.elapsed());
+            }
+          }
+        };
+      }
+    };
+  }
+
+  /**
+   * Thrown when a session ends at a chunk boundary to fit into a lowered limit. The session was
+   * released already.
+   */
+  static final class SessionYieldedException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    SessionYieldedException() {
+      super("The session ended to fit into the lowered limit of sessions.");
+    }
+  }
+
+  private void decrease(String reason) {
+    samplesInRound = 0;
+    samplesSinceDecrease = 0;
+    int newLimit = Math.max(minSessions, limit / 2);
+    if (newLimit < limit) {
+      limit = newLimit;
+      LOGGER.log(
+          Level.INFO,
+          "Lowered the number of sessions to {0}, since {1}.",
+          new Object[] {limit, reason});
+    }
+  }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigquery.dwhassessment.extractiontool.executor;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import org.apache.avro.file.DataFileConstants;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.DecoderFactory;
+
+/**
+ * Checks that Avro files are complete.
+ *
+ * <p>The Avro reader takes a file that ends in the middle of a block for a file that ends before
+ * that block, so a file that was cut off is only noticed by the missing sync marker at its end.
+ */
+final class AvroFiles {
+
+  private static final int SYNC_SIZE = DataFileConstants.SYNC_SIZE;
+
+  private AvroFiles() {}
+
+  /** Throws an IOException if the file does not end with the sync marker from its header. */
+  static void checkComplete(Path path) throws IOException {
+    byte[] syncMarker;
+    try (InputStream inputStream = Files.newInputStream(path)) {
+      syncMarker = readSyncMarker(inputStream);
+    }
+    ByteBuffer tail = ByteBuffer.allocate(SYNC_SIZE);
+    try (FileChannel channel = FileChannel.open(path)) {
+      long position = channel.size() - SYNC_SIZE;
+      while (tail.hasRemaining()) {
+        if (channel.read(tail, position + tail.position()) < 0) {
+          throw new EOFException();
+        }
+      }
+    }
+    checkSyncMarker(syncMarker, tail.array());
+  }
+
+  /** Reads the sync marker from the header of an Avro file. */
+  static byte[] readSyncMarker(InputStream inputStream) throws IOException {
+    BinaryDecoder decoder = DecoderFactory.get().directBinaryDecoder(inputStream, null);
+    // Skip the magic bytes and the metadata.
+    decoder.skipFixed(DataFileConstants.MAGIC.length);
+    for (long count = decoder.readMapStart(); count > 0; count = decoder.mapNext()) {
+      for (long i = 0; i < count; i++) {
+        decoder.skipString();
+        decoder.skipBytes();
+      }
+    }
+    byte[] syncMarker = new byte[SYNC_SIZE];
+    decoder.readFixed(syncMarker);
+    return syncMarker;
+  }
+
+  /** Throws an IOException if the last bytes of a file are not its sync marker. */
+  static void checkSyncMarker(byte[] syncMarker, byte[] tail) throws IOException {
+    if (!Arrays.equals(syncMarker, tail)) {
+      throw new IOException("The file does not end with a sync marker, so it is incomplete.");
+    }
+  }
+
+  /** Keeps the last bytes read from the stream, to check the end of a file that is streamed. */
+  static final class TailInputStream extends FilterInputStream {
+
+    private final byte[] tail = new byte[SYNC_SIZE];
+    private long count;
+
+    TailInputStream(InputStream inputStream) {
+      super(inputStream);
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b >= 0) {
+        tail[(int) (count++ % SYNC_SIZE)] = (byte) b;
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+      int read = super.read(buffer, offset, length);
+      for (int i = 0; i < read; i++) {
+        tail[(int) (count++ % SYNC_SIZE)] = buffer[offset + i];
+      }
+      return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      // Every byte has to pass through read to be kept.
+      byte[] buffer = new byte[(int) Math.min(n, 8192)];
+      return Math.max(read(buffer, 0, buffer.length), 0);
+    }
+
+    /** Returns the last bytes read, as many as a sync marker has. */
+    byte[] getTail() {
+      byte[] result = new byte[SYNC_SIZE];
+      for (int i = 0; i < SYNC_SIZE; i++) {
+        result[i] = tail[(int) ((count + i) % SYNC_SIZE)];
+      }
+      return result;
+    }
+  }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigquery.dwhassessment.extractiontool.executor;
+
+import com.google.auto.value.AutoValue;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/** Executor for the compaction of the chunks in the output of an extraction. */
+public interface CompactExecutor {
+
+  /** Arguments for the compact action. */
+  @AutoValue
+  abstract class Arguments {
+    /** The output directory of the extraction whose chunks to merge. */
+    public abstract Path inputPath();
+
+    /** The size in bytes up to which consecutive chunks are merged into one file. */
+    public abstract Long targetFileSize();
+
+    /** The number of scripts whose chunks are merged concurrently. */
+    public abstract Integer threads();
+
+    public static Builder builder() {
+      return new AutoValue_CompactExecutor_Arguments.Builder()
+          .setTargetFileSize(256L << 20)
+          .setThreads(8);
+    }
+
+    /** Builder for the Arguments. */
+    @AutoValue.Builder
+    public abstract static class Builder {
+      public abstract Builder setInputPath(Path inputPath);
+
+      public abstract Builder setTargetFileSize(Long targetFileSize);
+
+      public abstract Builder setThreads(Integer threads);
+
+      public abstract Arguments build();
+    }
+  }
+
+  /**
+   * Runs the compaction.
+   *
+   * @param arguments The arguments of the compaction.
+   * @return The exit code: 0 if the chunks of all scripts were merged or skipped, 1 otherwise.
+   */
+  int run(Arguments arguments) throws IOException;
+}
@@ -0,0 +1,329 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigquery.dwhassessment.extractiontool.executor;
+
+import static com.google.cloud.bigquery.dwhassessment.extractiontool.executor.SaveCheckerImpl.INPUT_CHUNK_PATTERN;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+
+import com.google.cloud.bigquery.dwhassessment.extractiontool.db.ChunkIndexer;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.google.re2j.Matcher;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import org.apache.avro.Schema;
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.file.DataFileConstants;
+import org.apache.avro.file.DataFileReader;
+import org.apache.avro.file.DataFileStream;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+
+/**
+ * Merges the chunks of the scripts in chunk mode into fewer, larger files.
+ *
+ * <p>Consecutive chunks of a script are merged until a file reaches the target size, as long as
+ * they have the same schema and metadata. The blocks of the chunks are copied as they are, without
+ * decoding the records, unless the chunks were compressed with different codecs. The merged files
+ * are named after the first timestamp of their first chunk and the last timestamp, and key if any,
+ * of their last chunk, and are numbered consecutively from 0, so that a later extraction resumes
+ * after them.
+ *
+ * <p>The index next to a chunk is renamed with the chunk if the chunk is not merged, and deleted
+ * otherwise, since the offsets of its blocks do not hold in the merged file.
+ *
+ * <p>The merged files are written under temporary names first. Only once all of them are written,
+ * the chunks are replaced by them. The chunks of different scripts are merged concurrently.
+ */
+public final class CompactExecutorImpl implements CompactExecutor {
+
+  private static final Logger LOGGER = Logger.getLogger(CompactExecutorImpl.class.getName());
+
+  private static final String TEMP_SUFFIX = "_temp.avro";
+
+  // Not an Avro suffix, so that an interrupted compaction does not leave files that are taken for
+  // chunks.
+  private static final String COMPACTING_SUFFIX = ".compacting";
+
+  @Override
+  public int run(Arguments arguments) throws IOException {
+    Preconditions.checkArgument(arguments.threads() > 0, "The number of threads must be positive.");
+    Preconditions.checkArgument(
+        arguments.targetFileSize() > 0, "The target file size must be positive.");
+    Map<String, List<Path>> chunksByEntity = new TreeMap<>();
+    Set<String> unfinishedEntities = new HashSet<>();
+    try (Stream<Path> paths = Files.list(arguments.inputPath())) {
+      for (Path path : (Iterable<Path>) paths.filter(Files::isRegularFile)::iterator) {
+        String fileName = path.getFileName().toString();
+        Matcher matcher = INPUT_CHUNK_PATTERN.matcher(fileName);
+        if (matcher.matches()) {
+          chunksByEntity
+              .computeIfAbsent(matcher.group("scriptName"), name -> new ArrayList<>())
+              .add(path);
+        } else if (fileName.endsWith(TEMP_SUFFIX) && fileName.contains("-")) {
+          unfinishedEntities.add(fileName.substring(0, fileName.indexOf('-')));
+        }
+      }
+    }
+
+    ExecutorService executorService = Executors.newFixedThreadPool(arguments.threads());
+    int failures = 0;
+    try {
+      Map<String, Future<?>> futures = new TreeMap<>();
+      for (Map.Entry<String, List<Path>> entity : chunksByEntity.entrySet()) {
+        if (unfinishedEntities.contains(entity.getKey())) {
+          LOGGER.log(
+              Level.WARNING,
+              "Skipping {0}, since one of its chunks is not finished. Resume the extraction first.",
+              entity.getKey());
+          continue;
+        }
+        futures.put(
+            entity.getKey(),
+            executorService.submit(
+                () -> {
+                  compactEntity(
+                      arguments.inputPath(),
+                      entity.getKey(),
+                      entity.getValue(),
+                      arguments.targetFileSize());
+                  return null;
+                }));
+      }
+      for (Map.Entry<String, Future<?>> future : futures.entrySet()) {
+        try {
+          Uninterruptibles.getUninterruptibly(future.getValue());
+        } catch (ExecutionException e) {
+          failures++;
+          LOGGER.log(
+              Level.SEVERE,
+              String.format("Failed to compact the chunks of %s.", future.getKey()),
+              e.getCause());
+        }
+      }
+    } finally {
+      executorService.shutdownNow();
+    }
+    return failures == 0 ? 0 : 1;
+  }
+
+  private static void compactEntity(
+      Path directory, String entityName, List<Path> paths, long targetFileSize) throws IOException {
+    List<Chunk> chunks = new ArrayList<>();
+    for (Path path : paths) {
+      chunks.add(Chunk.read(path));
+    }
+    chunks.sort(Comparator.comparingInt(chunk -> chunk.number));
+    Optional<String> problem = validateSequence(chunks);
+    if (problem.isPresent()) {
+      LOGGER.log(Level.WARNING, "Skipping {0}: {1}", new Object[] {entityName, problem.get()});
+      return;
+    }
+
+    List<List<Chunk>> groups = new ArrayList<>();
+    long groupSize = 0;
+    for (Chunk chunk : chunks) {
+      List<Chunk> group = groups.isEmpty() ? null : Iterables.getLast(groups);
+      if (group == null
+          || groupSize + chunk.size > targetFileSize
+          || !group.get(0).schema.equals(chunk.schema)
+          || !group.get(0).metadata.equals(chunk.metadata)) {
+        group = new ArrayList<>();
+        groups.add(group);
+        groupSize = 0;
+      }
+      group.add(chunk);
+      groupSize += chunk.size;
+    }
+    if (groups.size() == chunks.size()) {
+      LOGGER.log(Level.INFO, "Nothing to compact for {0}.", entityName);
+      return;
+    }
+
+    List<Path> targets = new ArrayList<>();
+    for (int i = 0; i < groups.size(); i++) {
+      List<Chunk> group = groups.get(i);
+      Path target =
+          directory.resolve(
+              String.format(
+                  "%s-%s-%s%s_%d.avro",
+                  entityName,
+                  group.get(0).firstTimestamp,
+                  Iterables.getLast(group).lastTimestamp,
+                  Iterables.getLast(group).lastKey.map(key -> "+" + key).orElse(""),
+                  i));
+      targets.add(target);
+      if (group.size() > 1) {
+        merge(group, directory.resolve(target.getFileName() + COMPACTING_SUFFIX));
+      }
+    }
+    // Every merged file has a lower number than the chunks after its own, so replacing the chunks
+    // in order never overwrites a chunk that is still needed.
+    for (int i = 0; i < groups.size(); i++) {
+      List<Chunk> group = groups.get(i);
+      Path target = targets.get(i);
+      if (group.size() == 1) {
+        Path path = group.get(0).path;
+        if (!path.equals(target)) {
+          Files.move(path, target, ATOMIC_MOVE);
+          Path index = getIndexPath(path);
+          if (Files.exists(index)) {
+            Files.move(index, getIndexPath(target), ATOMIC_MOVE);
+          }
+        }
+        continue;
+      }
+      Files.move(directory.resolve(target.getFileName() + COMPACTING_SUFFIX), target, ATOMIC_MOVE);
+      for (Chunk chunk : group) {
+        Files.delete(chunk.path);
+        Files.deleteIfExists(getIndexPath(chunk.path));
+      }
+    }
+    LOGGER.log(
+        Level.INFO,
+        "Compacted {0} chunks of {1} into {2}.",
+        new Object[] {chunks.size(), entityName, groups.size()});
+  }
+
+  private static Path getIndexPath(Path chunkPath) {
+    return chunkPath.resolveSibling(chunkPath.getFileName() + ChunkIndexer.INDEX_SUFFIX);
+  }
+
+  // The same rules as in SaveCheckerImpl, so that the merged files are valid if the chunks are.
+  private static Optional<String> validateSequence(List<Chunk> chunks) {
+    String previousLastTimestamp = "";
+    boolean previousHasKey = false;
+    for (int i = 0; i < chunks.size(); i++) {
+      Chunk chunk = chunks.get(i);
+      if (chunk.number != i) {
+        return Optional.of(String.format("chunk %d is missing.", i));
+      }
+      int startComparison = chunk.firstTimestamp.compareTo(previousLastTimestamp);
+      if (startComparison < 0
+          || (startComparison == 0 && !previousHasKey)
+          || chunk.lastTimestamp.compareTo(chunk.firstTimestamp) < 0) {
+        return Optional.of(
+            String.format("the time range of %s overlaps.", chunk.path.getFileName()));
+      }
+      previousLastTimestamp = chunk.lastTimestamp;
+      previousHasKey = chunk.lastKey.isPresent();
+    }
+    return Optional.empty();
+  }
+
+  private static void merge(List<Chunk> group, Path target) throws IOException {
+    Chunk first = group.get(0);
+    try (DataFileWriter<GenericRecord> writer =
+        new DataFileWriter<>(new GenericDatumWriter<GenericRecord>(first.schema))) {
+      writer.setCodec(CodecFactory.fromString(first.codec));
+      first.metadata.forEach(writer::setMeta);
+      writer.create(first.schema, Files.newOutputStream(target));
+      for (Chunk chunk : group) {
+        try (DataFileStream<GenericRecord> reader =
+            new DataFileStream<>(
+                new BufferedInputStream(Files.newInputStream(chunk.path)),
+                new GenericDatumReader<>())) {
+          // Copies the blocks without decoding them if the codecs are the same.
+          writer.appendAllFrom(reader, /* recompress= */ false);
+        }
+      }
+    }
+  }
+
+  /** A chunk file and what its header says about it. */
+  private static final class Chunk {
+
+    private final Path path;
+    private final int number;
+    private final String firstTimestamp;
+    private final String lastTimestamp;
+    private final Optional<String> lastKey;
+    private final long size;
+    private final Schema schema;
+    private final String codec;
+    private final ImmutableMap<String, String> metadata;
+
+    private Chunk(
+        Path path,
+        int number,
+        String firstTimestamp,
+        String lastTimestamp,
+        Optional<String> lastKey,
+        long size,
+        Schema schema,
+        String codec,
+        ImmutableMap<String, String> metadata) {
+      this.path = path;
+      this.number = number;
+      this.firstTimestamp = firstTimestamp;
+      this.lastTimestamp = lastTimestamp;
+      this.lastKey = lastKey;
+      this.size = size;
+      this.schema = schema;
+      this.codec = codec;
+      this.metadata = metadata;
+    }
+
+    static Chunk read(Path path) throws IOException {
+      // A chunk that was cut off would silently lose its last block in the merged file.
+      AvroFiles.checkComplete(path);
+      Matcher matcher = INPUT_CHUNK_PATTERN.matcher(path.getFileName().toString());
+      Preconditions.checkState(matcher.matches());
+      try (DataFileReader<GenericRecord> reader =
+          new DataFileReader<>(path.toFile(), new GenericDatumReader<>())) {
+        ImmutableMap.Builder<String, String> metadata = ImmutableMap.builder();
+        for (String key : reader.getMetaKeys()) {
+          if (!key.startsWith("avro.")) {
+            metadata.put(key, new String(reader.getMeta(key), UTF_8));
+          }
+        }
+        String codec = reader.getMetaString(DataFileConstants.CODEC);
+        return new Chunk(
+            path,
+            Integer.parseInt(matcher.group("chunkNumber")),
+            matcher.group(2),
+            matcher.group(3),
+            Optional.ofNullable(matcher.group("lastKey")),
+            Files.size(path),
+            reader.getSchema(),
+            codec == null ? DataFileConstants.NULL_CODEC : codec,
+            metadata.build());
+      }
+    }
+  }
+}
@@ -16,13 +16,17 @@
 package com.google.cloud.bigquery.dwhassessment.extractiontool.executor;
 
 import com.google.auto.value.AutoValue;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.db.ColumnProjection;
 import com.google.cloud.bigquery.dwhassessment.extractiontool.db.SchemaFilter;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.db.SqlScriptVariables.QueryLogsVariables.SummaryGrain;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.db.StatementTimeouts;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.sql.SQLException;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.List;
 import java.util.Map;
@@ -63,6 +67,9 @@ public interface ExtractExecutor {
     /** SQL scripts to run. */
     public abstract ImmutableList<String> sqlScripts();
 
+    /** Column projections per script. Scripts without a projection extract all columns. */
+    public abstract ImmutableMap<String, ColumnProjection> columnProjections();
+
     /** Optional variables for the scripts. */
     public abstract ImmutableMap<String, Map<String, String>> scriptVariables();
 
@@ -84,31 +91,139 @@ public interface ExtractExecutor {
     /** Whether to do a dry run. */
     public abstract boolean dryRun();
 
+    /**
+     * Whether to execute the scripts as prepared statements with their time windows as bind
+     * parameters, so that the database can reuse the plans of the repeated queries.
+     */
+    public abstract boolean bindParameters();
+
+    /**
+     * Whether to extract the small catalog scripts together, in a single request over one
+     * connection, instead of paying a logon and a round trip for each of them.
+     */
+    public abstract boolean batchSmallScripts();
+
+    /**
+     * Whether to force each output file to the disk before it is committed, so that a crash never
+     * leaves a committed chunk without its data.
+     */
+    public abstract boolean fsyncOnCommit();
+
     /** Number of records per chunk file (if chunk mode is available). */
     public abstract Integer chunkRows();
 
+    /**
+     * Number of hash partitions on the query ID into which supporting scripts are split. The
+     * partitions are extracted concurrently, each on its own connection. 1 disables partitioning.
+     */
+    public abstract Integer hashPartitions();
+
+    /**
+     * The maximum number of partitions to extract concurrently. If present, the number of
+     * concurrent sessions adapts between minSessions and this to the time the chunks take, to
+     * failed sessions and to the loadQuery. If absent, all partitions are extracted at once.
+     */
+    public abstract Optional<Integer> maxSessions();
+
+    /** The number of sessions below which the adaptive number of sessions never drops. */
+    public abstract Integer minSessions();
+
+    /**
+     * A query that returns the load of the database as a single number, e.g. the CPU usage from
+     * DBC.ResUsageSpma. It is polled during adaptive extraction, and a result above maxLoad lowers
+     * the number of sessions.
+     */
+    public abstract Optional<String> loadQuery();
+
+    /** The result of the loadQuery above which the number of sessions is lowered. */
+    public abstract Optional<Double> maxLoad();
+
+    /** The timeouts of the statements of the scripts without their own timeouts. */
+    public abstract StatementTimeouts statementTimeouts();
+
+    /** Timeouts of the statements per script, overriding statementTimeouts. */
+    public abstract ImmutableMap<String, StatementTimeouts> scriptStatementTimeouts();
+
+    /**
+     * Whether to continue with the next script when a script still times out after its retries. If
+     * false, the extraction fails.
+     */
+    public abstract boolean skipTimedOutScripts();
+
+    /** Returns the timeouts of the statements of the given script. */
+    public StatementTimeouts getStatementTimeouts(String scriptName) {
+      return scriptStatementTimeouts().getOrDefault(scriptName, statementTimeouts());
+    }
+
+    /**
+     * The number of bytes that the rows buffered by the database driver and the buffers of the
+     * output may take in total. If present, the fetch size of every statement is adapted to the
+     * width of its rows. If absent, the driver's default fetch size is used.
+     */
+    public abstract Optional<Long> memoryBudget();
+
+    /**
+     * The fraction of queries to extract from the query log scripts, selected by a hash of the
+     * query ID. If absent, all queries are extracted.
+     */
+    public abstract Optional<Double> sampleRatio();
+
     public abstract Optional<Instant> qryLogStartTime();
 
     public abstract Optional<Instant> qryLogEndTime();
 
     public abstract Set<String> qryLogUsers();
 
+    /** The time granularity of the aggregated query logs. */
+    public abstract SummaryGrain qryLogSummaryGrain();
+
+    /**
+     * The ID of this worker if several workers share the extraction into the same output directory.
+     * If absent, this is the only worker.
+     */
+    public abstract Optional<String> workerId();
+
+    /** The time after which the claim of a worker on a script expires if it is not renewed. */
+    public abstract Duration leaseDuration();
+
+    /**
+     * The interval at which to poll the query logs for new records after the initial extraction. If
+     * absent, the extraction ends after the initial extraction.
+     */
+    public abstract Optional<Duration> followInterval();
+
+    /** The number of polls after which to stop following. If absent, polling never stops. */
+    public abstract Optional<Integer> followCycles();
+
     public static Builder builder() {
       return new AutoValue_ExtractExecutor_Arguments.Builder()
           .setDryRun(false)
+          .setBindParameters(false)
+          .setBatchSmallScripts(false)
+          .setFsyncOnCommit(false)
           .setBaseDatabase("DBC")
           .setChunkRows(0)
+          .setHashPartitions(1)
+          .setMinSessions(1)
+          .setStatementTimeouts(StatementTimeouts.none())
+          .setScriptStatementTimeouts(ImmutableMap.of())
+          .setSkipTimedOutScripts(false)
           .setMode(RunMode.NORMAL)
           .setNeedQueryText(true)
           .setScriptVariables(ImmutableMap.of())
+          .setColumnProjections(ImmutableMap.of())
           .setScriptBaseDatabase(ImmutableMap.of())
           .setNeedJdbcSchemas(true)
           .setSchemaFilters(ImmutableList.of())
           .setSqlScripts(ImmutableList.of())
           .setSkipSqlScripts(ImmutableList.of())
-          .setQryLogUsers(ImmutableSet.of());
+          .setQryLogUsers(ImmutableSet.of())
+          .setQryLogSummaryGrain(SummaryGrain.HOUR)
+          .setLeaseDuration(Duration.ofMinutes(5));
     }
 
+    public abstract Builder toBuilder();
+
     @AutoValue.Builder
     public abstract static class Builder {
       public abstract Builder setDbConnectionProperties(Properties properties);
@@ -130,6 +245,9 @@ public interface ExtractExecutor {
       public abstract Builder setScriptVariables(
           ImmutableMap<String, Map<String, String>> variables);
 
+      public abstract Builder setColumnProjections(
+          ImmutableMap<String, ColumnProjection> columnProjections);
+
       public abstract Builder setNeedJdbcSchemas(boolean needJdbcSchemas);
 
       public abstract Builder setSchemaFilters(List<SchemaFilter> schemaFilters);
@@ -141,18 +259,65 @@ public interface ExtractExecutor {
 
       public abstract Builder setDryRun(boolean dryRun);
 
+      public abstract Builder setBindParameters(boolean bindParameters);
+
+      public abstract Builder setBatchSmallScripts(boolean batchSmallScripts);
+
+      public abstract Builder setFsyncOnCommit(boolean fsyncOnCommit);
+
       public abstract Builder setChunkRows(Integer chunkRows);
 
+      public abstract Builder setHashPartitions(Integer hashPartitions);
+
+      public abstract Builder setMaxSessions(Integer maxSessions);
+
+      public abstract Builder setMinSessions(Integer minSessions);
+
+      public abstract Builder setLoadQuery(String loadQuery);
+
+      public abstract Builder setMaxLoad(Double maxLoad);
+
+      public abstract Builder setStatementTimeouts(StatementTimeouts statementTimeouts);
+
+      public abstract Builder setScriptStatementTimeouts(
+          ImmutableMap<String, StatementTimeouts> scriptStatementTimeouts);
+
+      public abstract Builder setSkipTimedOutScripts(boolean skipTimedOutScripts);
+
+      public abstract Builder setMemoryBudget(Long memoryBudget);
+
+      public abstract Builder setSampleRatio(Double sampleRatio);
+
       public abstract Builder setQryLogStartTime(Instant timestampInUtc);
 
       public abstract Builder setQryLogEndTime(Instant timestampInUtc);
 
       public abstract Builder setQryLogUsers(Set<String> value);
 
+      public abstract Builder setQryLogSummaryGrain(SummaryGrain value);
+
+      public abstract Builder setWorkerId(String workerId);
+
+      public abstract Builder setLeaseDuration(Duration leaseDuration);
+
+      public abstract Builder setFollowInterval(Duration followInterval);
+
+      public abstract Builder setFollowCycles(Integer followCycles);
+
       public abstract Arguments build();
     }
   }
 
   /** Run the extract executor. */
   int run(Arguments arguments) throws SQLException, IOException;
+
+  /**
+   * Run the extract executor for several data warehouses at once.
+   *
+   * @param arguments The arguments for each data warehouse. Each must have its own output path.
+   * @param parallelism The maximum number of data warehouses to extract at the same time. The
+   *     sessions of each data warehouse are limited by its own arguments, and the memory budget is
+   *     shared.
+   */
+  int runAll(ImmutableList<Arguments> arguments, int parallelism) throws SQLException, IOException;
 }
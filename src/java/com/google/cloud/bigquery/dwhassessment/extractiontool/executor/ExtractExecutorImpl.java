@@ -18,36 +18,65 @@ package com.google.cloud.bigquery.dwhassessment.extractiontool.executor;
 import static com.google.cloud.bigquery.dwhassessment.extractiontool.db.AvroHelper.dumpResults;
 import static com.google.cloud.bigquery.dwhassessment.extractiontool.db.AvroHelper.getAvroSchema;
 import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
 
 import com.google.cloud.bigquery.dwhassessment.extractiontool.common.ChunkCheckpoint;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.db.AdaptiveFetchSizer;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.db.ColumnProjection;
 import com.google.cloud.bigquery.dwhassessment.extractiontool.db.SchemaFilter;
 import com.google.cloud.bigquery.dwhassessment.extractiontool.db.SchemaManager;
 import com.google.cloud.bigquery.dwhassessment.extractiontool.db.SchemaManager.SchemaKey;
 import com.google.cloud.bigquery.dwhassessment.extractiontool.db.ScriptManager;
 import com.google.cloud.bigquery.dwhassessment.extractiontool.db.SqlScriptVariables;
 import com.google.cloud.bigquery.dwhassessment.extractiontool.db.SqlScriptVariables.QueryLogsVariables;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.db.SqlScriptVariables.QueryLogsVariables.HashPartition;
 import com.google.cloud.bigquery.dwhassessment.extractiontool.db.SqlTemplateRenderer;
 import com.google.cloud.bigquery.dwhassessment.extractiontool.db.SqlTemplateRendererImpl;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.db.StatementWatchdog;
 import com.google.cloud.bigquery.dwhassessment.extractiontool.dumper.DataEntityManager;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.executor.AdaptiveSessionLimiter.SessionYieldedException;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.executor.LeaseManager.LeaseLostException;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Stopwatch;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Uninterruptibles;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
-import java.util.function.Function;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.IntStream;
 import org.apache.avro.Schema;
 import org.apache.avro.generic.GenericRecord;
 
@@ -57,23 +86,60 @@ public final class ExtractExecutorImpl implements ExtractExecutor {
   private static final DateTimeFormatter TERADATA_TIME_FORMATTER =
       DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss[.SSSSSS]xxx").withZone(ZoneOffset.UTC);
   private static final String AVRO_EXTENSION = "avro";
+  private static final String LEASE_DIRECTORY = ".leases";
+  private static final String SCHEMA_UNIT = "schema";
+  // The default interval at which Teradata flushes the query log caches into the DBQL tables.
+  private static final Duration FOLLOW_SETTLE_TIME = Duration.ofMinutes(10);
+  private static final int CONNECTION_VALIDATION_TIMEOUT_SECONDS = 10;
+  private static final int MAX_PARTITION_ATTEMPTS = 3;
+  private static final int MAX_TIMEOUT_ATTEMPTS = 3;
+  private static final int MAX_CONSECUTIVE_FAILED_POLLS = 5;
+  private static final Duration LOAD_POLL_INTERVAL = Duration.ofSeconds(30);
+  // The cost of scripts without a cost hint, relative to the cost hints.
+  private static final int DEFAULT_COST_HINT = 1;
+  // The two write-behind buffers of an output file and an Avro block of about 64 KiB.
+  private static final long SESSION_OUTPUT_BUFFER_BYTES = (2L << 20) + (128L << 10);
+  private static final long MIN_STATEMENT_MEMORY_BUDGET = 1L << 20;
 
   private static final Logger LOGGER = Logger.getLogger(ExtractExecutorImpl.class.getName());
 
   private final SchemaManager schemaManager;
   private final ScriptManager scriptManager;
   private final SaveChecker saveChecker;
-  private final Function<Path, DataEntityManager> dataEntityManagerFactory;
+  private final BiFunction<Path, Boolean, DataEntityManager> dataEntityManagerFactory;
+  private final ImmutableSet<String> hashPartitionableScripts;
+  private final ImmutableMap<String, Integer> costHints;
+  private final ImmutableSet<String> batchableScripts;
+  private final ImmutableSet<String> optInScripts;
 
+  /**
+   * Creates an executor.
+   *
+   * @param dataEntityManagerFactory Creates the manager of an output path, which forces the
+   *     committed files to the disk if the flag is set.
+   * @param hashPartitionableScripts The scripts that can be split into hash partitions.
+   * @param costHints The relative costs of the scripts, by which the scripts are ordered when no
+   *     previous run recorded their durations.
+   * @param batchableScripts The small scripts that are extracted together if requested.
+   * @param optInScripts The scripts that are only extracted when requested by name.
+   */
   public ExtractExecutorImpl(
       SchemaManager schemaManager,
       ScriptManager scriptManager,
       SaveChecker saveChecker,
-      Function<Path, DataEntityManager> dataEntityManagerFactory) {
+      BiFunction<Path, Boolean, DataEntityManager> dataEntityManagerFactory,
+      ImmutableSet<String> hashPartitionableScripts,
+      ImmutableMap<String, Integer> costHints,
+      ImmutableSet<String> batchableScripts,
+      ImmutableSet<String> optInScripts) {
     this.scriptManager = scriptManager;
     this.dataEntityManagerFactory = dataEntityManagerFactory;
     this.schemaManager = schemaManager;
     this.saveChecker = saveChecker;
+    this.hashPartitionableScripts = hashPartitionableScripts;
+    this.costHints = costHints;
+    this.batchableScripts = batchableScripts;
+    this.optInScripts = optInScripts;
   }
 
   private static void validateScriptNames(
@@ -107,7 +173,13 @@ public final class ExtractExecutorImpl implements ExtractExecutor {
     // Because both incremental and recovery runs assume that the user-specified timeranges do not
     // change between runs, the checkpoint time, if present, overwrites the user-specified start
     // time.
-    if (checkpoint != null) {
+    if (checkpoint != null && !checkpoint.lastSavedKey().isEmpty()) {
+      // The last chunk ended among rows with the same timestamp, so the run resumes at that
+      // timestamp, after the row with the saved key.
+      timeRangeBuilder
+          .setStartTimestamp(getTeradataTimestampFromInstant(checkpoint.lastSavedInstant()))
+          .setStartKey(checkpoint.lastSavedKey());
+    } else if (checkpoint != null) {
       timeRangeBuilder.setStartTimestamp(
           getTeradataTimestampFromInstant(checkpoint.lastSavedInstant().plusNanos(1000)));
     } else {
@@ -129,8 +201,13 @@ public final class ExtractExecutorImpl implements ExtractExecutor {
     Preconditions.checkArgument(
         arguments.mode().equals(RunMode.NORMAL) || arguments.prevRunPath().isPresent(),
         "Value prevRunPath is not defined while the mode is not NORMAL; this should not happen.");
+    // Each poll extracts up to the settle time before it, so a fixed end time cannot be honored.
+    Preconditions.checkArgument(
+        !arguments.followInterval().isPresent() || !arguments.qryLogEndTime().isPresent(),
+        "Following the query logs cannot be combined with an end time of the query logs.");
 
-    DataEntityManager dataEntityManager = dataEntityManagerFactory.apply(arguments.outputPath());
+    DataEntityManager dataEntityManager =
+        dataEntityManagerFactory.apply(arguments.outputPath(), arguments.fsyncOnCommit());
 
     // Determine the scripts to run.
     ImmutableSet<String> requestedScripts = getRequestedScripts(arguments);
@@ -140,35 +217,774 @@ public final class ExtractExecutorImpl implements ExtractExecutor {
             ? ImmutableMap.of()
             : saveChecker.getScriptCheckPoints(arguments.prevRunPath().get());
 
-    for (String scriptName : requestedScripts) {
+    ScriptHistory history = loadHistory(arguments);
+    List<String> timedOutUnits = new ArrayList<>();
+
+    if (arguments.workerId().isPresent()) {
+      runWorker(
+          arguments, requestedScripts, dataEntityManager, checkpoints, history, timedOutUnits);
+      dataEntityManager.close();
+      logTimedOutUnits(timedOutUnits);
+      LOGGER.log(Level.INFO, "Finished extraction.");
+      return 0;
+    }
+
+    // Followed scripts are extracted by the polls, which start right after the other scripts.
+    ImmutableSet<String> followedScripts =
+        arguments.followInterval().isPresent()
+            ? Sets.intersection(requestedScripts, hashPartitionableScripts).immutableCopy()
+            : ImmutableSet.of();
+
+    // The small scripts are extracted together after the others.
+    ImmutableSet<String> batchedScripts =
+        getBatchedScripts(arguments, Sets.difference(requestedScripts, followedScripts));
+
+    for (String scriptName :
+        orderLongestFirst(
+            history,
+            Sets.difference(requestedScripts, Sets.union(followedScripts, batchedScripts)))) {
       LOGGER.log(Level.INFO, "Start extracting {0}...", scriptName);
-      ChunkCheckpoint checkpoint = checkpoints.getOrDefault(scriptName, null);
-      SqlScriptVariables.QueryLogsVariables.Builder qryLogVarsBuilder =
-          SqlScriptVariables.QueryLogsVariables.builder()
-              .setNeedQueryText(arguments.needQueryText()).setUsers(arguments.qryLogUsers());
-      maybeAddTimeRange(qryLogVarsBuilder, arguments, checkpoint);
-      Connection connection =
-          DriverManager.getConnection(
-              arguments.dbConnectionAddress(), arguments.dbConnectionProperties());
-      SqlTemplateRenderer sqlTemplateRenderer =
-          getSqlTemplateRenderer(scriptName, arguments, qryLogVarsBuilder);
+      Stopwatch stopwatch = Stopwatch.createStarted();
+      try {
+        if (arguments.hashPartitions() > 1 && hashPartitionableScripts.contains(scriptName)) {
+          extractScriptPartitions(scriptName, arguments, dataEntityManager, checkpoints);
+        } else {
+          extractScriptRetryingTimeouts(
+              scriptName, Optional.empty(), arguments, dataEntityManager, checkpoints);
+        }
+      } catch (SQLTimeoutException e) {
+        skipTimedOutUnit(scriptName, e, arguments, timedOutUnits);
+        continue;
+      }
+      recordDuration(history, scriptName, stopwatch.elapsed(), arguments, dataEntityManager);
+      LOGGER.log(Level.INFO, "Finished extracting {0}.", scriptName);
+    }
+
+    if (!batchedScripts.isEmpty()) {
+      extractScriptBatch(batchedScripts, arguments, dataEntityManager, history, timedOutUnits);
+    }
+
+    maybeRunSchemaQueries(arguments, dataEntityManager);
+
+    if (!followedScripts.isEmpty()) {
+      follow(arguments, followedScripts, dataEntityManager, checkpoints);
+    }
+
+    dataEntityManager.close();
+    logTimedOutUnits(timedOutUnits);
+    LOGGER.log(Level.INFO, "Finished extraction.");
+    return 0;
+  }
+
+  @Override
+  public int runAll(ImmutableList<Arguments> arguments, int parallelism)
+      throws SQLException, IOException {
+    Preconditions.checkArgument(parallelism > 0, "The parallelism must be positive.");
+    ImmutableSet<Path> outputPaths =
+        arguments.stream().map(Arguments::outputPath).collect(toImmutableSet());
+    Preconditions.checkArgument(
+        outputPaths.size() == arguments.size(),
+        "Each data warehouse must be extracted to its own output path.");
+    if (arguments.isEmpty()) {
+      return 0;
+    }
+    int concurrentSources = Math.min(parallelism, arguments.size());
+    ExecutorService executorService = Executors.newFixedThreadPool(concurrentSources);
+    try {
+      ImmutableList.Builder<Future<?>> futures = ImmutableList.builder();
+      for (Arguments sourceArguments : arguments) {
+        // The concurrent data warehouses share the memory budget.
+        Arguments systemArguments =
+            sourceArguments.memoryBudget().isPresent()
+                ? sourceArguments.toBuilder()
+                    .setMemoryBudget(sourceArguments.memoryBudget().get() / concurrentSources)
+                    .build()
+                : sourceArguments;
+        futures.add(
+            executorService.submit(
+                () -> {
+                  LOGGER.log(
+                      Level.INFO,
+                      "Start extracting {0} into {1}...",
+                      new Object[] {
+                        systemArguments.dbConnectionAddress(), systemArguments.outputPath()
+                      });
+                  return run(systemArguments);
+                }));
+      }
+      awaitAll(futures.build());
+    } finally {
+      executorService.shutdownNow();
+    }
+    return 0;
+  }
+
+  private void extractScript(
+      String scriptName,
+      Optional<HashPartition> hashPartition,
+      Arguments arguments,
+      DataEntityManager dataEntityManager,
+      ImmutableMap<String, ChunkCheckpoint> checkpoints)
+      throws SQLException, IOException {
+    try (Connection connection =
+        DriverManager.getConnection(
+            arguments.dbConnectionAddress(), arguments.dbConnectionProperties())) {
+      extractScript(
+          scriptName, hashPartition, arguments, dataEntityManager, checkpoints, connection);
+    }
+  }
+
+  private void extractScript(
+      String scriptName,
+      Optional<HashPartition> hashPartition,
+      Arguments arguments,
+      DataEntityManager dataEntityManager,
+      ImmutableMap<String, ChunkCheckpoint> checkpoints,
+      Connection connection)
+      throws SQLException, IOException {
+    String entityName =
+        hashPartition.map(partition -> partition.getEntityName(scriptName)).orElse(scriptName);
+    ChunkCheckpoint checkpoint = checkpoints.getOrDefault(entityName, null);
+    SqlScriptVariables.QueryLogsVariables.Builder qryLogVarsBuilder =
+        getQueryLogsVariablesBuilder(arguments);
+    hashPartition.ifPresent(qryLogVarsBuilder::setHashPartition);
+    // Sampling hashes the query ID just like partitioning and is supported by the same scripts.
+    if (hashPartitionableScripts.contains(scriptName)) {
+      arguments.sampleRatio().ifPresent(qryLogVarsBuilder::setSampleRatio);
+    }
+    maybeAddTimeRange(qryLogVarsBuilder, arguments, checkpoint);
+    SqlTemplateRenderer sqlTemplateRenderer =
+        getSqlTemplateRenderer(scriptName, arguments, qryLogVarsBuilder);
+    // The watchdog stops watching the statements of the unit when it is closed, even on errors.
+    try (StatementWatchdog statementWatchdog = new StatementWatchdog()) {
+      Connection watchedConnection =
+          statementWatchdog.watch(
+              connection, entityName, arguments.getStatementTimeouts(scriptName));
+      if (arguments.memoryBudget().isPresent()) {
+        AdaptiveFetchSizer fetchSizer =
+            new AdaptiveFetchSizer(getStatementMemoryBudget(arguments, hashPartition.isPresent()));
+        watchedConnection = fetchSizer.watch(watchedConnection);
+        dataEntityManager = fetchSizer.observe(dataEntityManager);
+      }
       scriptManager.executeScript(
-          connection,
+          watchedConnection,
           arguments.dryRun(),
           sqlTemplateRenderer,
           scriptName,
           dataEntityManager,
           arguments.chunkRows(),
           checkpoint == null ? 0 : checkpoint.lastSavedChunkNumber() + 1);
+    }
+  }
+
+  /**
+   * Returns the requested scripts to extract together, if requested: the small scripts that have
+   * neither a column projection nor statement timeouts of their own.
+   */
+  private ImmutableSet<String> getBatchedScripts(Arguments arguments, Set<String> scriptNames) {
+    if (!arguments.batchSmallScripts() || arguments.workerId().isPresent()) {
+      return ImmutableSet.of();
+    }
+    return scriptNames.stream()
+        .filter(batchableScripts::contains)
+        .filter(scriptName -> !arguments.columnProjections().containsKey(scriptName))
+        .filter(scriptName -> !arguments.scriptStatementTimeouts().containsKey(scriptName))
+        .sorted()
+        .collect(toImmutableSet());
+  }
+
+  /**
+   * Extracts small scripts together over one connection, as a single request if the database
+   * supports it. The scripts share the duration of the request in the history, and are skipped
+   * together if it times out. Their few rows need no adaptive fetch size.
+   */
+  private void extractScriptBatch(
+      ImmutableSet<String> scriptNames,
+      Arguments arguments,
+      DataEntityManager dataEntityManager,
+      ScriptHistory history,
+      List<String> timedOutUnits)
+      throws SQLException, IOException {
+    String batchName = String.join(", ", scriptNames);
+    LOGGER.log(Level.INFO, "Start extracting {0} together...", batchName);
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    ImmutableMap.Builder<String, SqlTemplateRenderer> sqlTemplateRenderers = ImmutableMap.builder();
+    for (String scriptName : scriptNames) {
+      QueryLogsVariables.Builder qryLogVarsBuilder = getQueryLogsVariablesBuilder(arguments);
+      maybeAddTimeRange(qryLogVarsBuilder, arguments, /* checkpoint= */ null);
+      sqlTemplateRenderers.put(
+          scriptName, getSqlTemplateRenderer(scriptName, arguments, qryLogVarsBuilder));
+    }
+    try (Connection connection =
+            DriverManager.getConnection(
+                arguments.dbConnectionAddress(), arguments.dbConnectionProperties());
+        StatementWatchdog statementWatchdog = new StatementWatchdog()) {
+      scriptManager.executeScripts(
+          statementWatchdog.watch(connection, batchName, arguments.statementTimeouts()),
+          arguments.dryRun(),
+          sqlTemplateRenderers.build(),
+          dataEntityManager);
+    } catch (SQLTimeoutException e) {
+      for (String scriptName : scriptNames) {
+        skipTimedOutUnit(scriptName, e, arguments, timedOutUnits);
+      }
+      return;
+    }
+    Duration duration = stopwatch.elapsed().dividedBy(scriptNames.size());
+    for (String scriptName : scriptNames) {
+      recordDuration(history, scriptName, duration, arguments, dataEntityManager);
+    }
+    LOGGER.log(Level.INFO, "Finished extracting {0}.", batchName);
+  }
+
+  private static QueryLogsVariables.Builder getQueryLogsVariablesBuilder(Arguments arguments) {
+    return QueryLogsVariables.builder()
+        .setNeedQueryText(arguments.needQueryText())
+        .setUsers(arguments.qryLogUsers())
+        .setSummaryGrain(arguments.qryLogSummaryGrain());
+  }
+
+  /**
+   * Returns the number of bytes that the fetched rows of a statement may take. The memory budget is
+   * shared by the concurrent sessions of a partitioned script, and every session keeps some of it
+   * for its output buffers.
+   */
+  private static long getStatementMemoryBudget(Arguments arguments, boolean partitioned) {
+    int sessions = partitioned ? arguments.maxSessions().orElse(arguments.hashPartitions()) : 1;
+    long budget = arguments.memoryBudget().get() / sessions - SESSION_OUTPUT_BUFFER_BYTES;
+    if (budget < MIN_STATEMENT_MEMORY_BUDGET) {
+      LOGGER.log(
+          Level.WARNING,
+          "The memory budget is too small for {0} session(s). Fetching {1} bytes per session.",
+          new Object[] {sessions, MIN_STATEMENT_MEMORY_BUDGET});
+      return MIN_STATEMENT_MEMORY_BUDGET;
+    }
+    return budget;
+  }
+
+  /**
+   * Extracts a script or a partition of a script. If a statement times out, the extraction is
+   * retried from the last saved chunk, up to {@link #MAX_TIMEOUT_ATTEMPTS} times. Extractions into
+   * a zip file are not retried, since its entries cannot be replaced.
+   */
+  private void extractScriptRetryingTimeouts(
+      String scriptName,
+      Optional<HashPartition> hashPartition,
+      Arguments arguments,
+      DataEntityManager dataEntityManager,
+      ImmutableMap<String, ChunkCheckpoint> checkpoints)
+      throws SQLException, IOException {
+    String entityName =
+        hashPartition.map(partition -> partition.getEntityName(scriptName)).orElse(scriptName);
+    for (int attempt = 1; ; attempt++) {
+      try {
+        extractScript(
+            scriptName,
+            hashPartition,
+            arguments,
+            dataEntityManager,
+            attempt == 1
+                ? checkpoints
+                : getWorkUnitCheckpoints(entityName, arguments, checkpoints));
+        return;
+      } catch (SQLTimeoutException e) {
+        if (attempt >= MAX_TIMEOUT_ATTEMPTS || !dataEntityManager.isResumable()) {
+          throw e;
+        }
+        LOGGER.log(
+            Level.WARNING,
+            "Extracting {0} timed out: {1} Retrying from its last saved chunk.",
+            new Object[] {entityName, e.getMessage()});
+      }
+    }
+  }
+
+  /** Skips a script or a work unit that timed out if requested, or rethrows the timeout. */
+  private static void skipTimedOutUnit(
+      String unit, SQLTimeoutException e, Arguments arguments, List<String> timedOutUnits)
+      throws SQLTimeoutException {
+    if (!arguments.skipTimedOutScripts()) {
+      throw e;
+    }
+    LOGGER.log(Level.SEVERE, String.format("Skipping %s, which timed out.", unit), e);
+    timedOutUnits.add(unit);
+  }
+
+  private static void logTimedOutUnits(List<String> timedOutUnits) {
+    if (timedOutUnits.isEmpty()) {
+      return;
+    }
+    LOGGER.log(
+        Level.WARNING,
+        "The output of the following scripts is incomplete, since they timed out: {0}. Extract"
+            + " them again, e.g. with --run-mode RECOVERY.",
+        String.join(", ", timedOutUnits));
+  }
+
+  /**
+   * Extracts all hash partitions of a script concurrently. Every partition runs on its own
+   * connection and writes its own output entity (or chunk sequence).
+   */
+  private void extractScriptPartitions(
+      String scriptName,
+      Arguments arguments,
+      DataEntityManager dataEntityManager,
+      ImmutableMap<String, ChunkCheckpoint> checkpoints)
+      throws SQLException, IOException {
+    ImmutableList<HashPartition> partitions =
+        IntStream.range(0, arguments.hashPartitions())
+            .mapToObj(index -> HashPartition.create(arguments.hashPartitions(), index))
+            .collect(toImmutableList());
+    if (arguments.mode() == RunMode.RECOVERY) {
+      ImmutableSet<String> finishedPartitions =
+          saveChecker.getNamesOfFinishedScripts(
+              arguments.prevRunPath().get(),
+              partitions.stream()
+                  .map(partition -> partition.getEntityName(scriptName))
+                  .collect(toImmutableSet()),
+              AVRO_EXTENSION);
+      partitions =
+          partitions.stream()
+              .filter(
+                  partition -> !finishedPartitions.contains(partition.getEntityName(scriptName)))
+              .collect(toImmutableList());
+    }
+    if (partitions.isEmpty()) {
+      return;
+    }
+    if (arguments.maxSessions().isPresent() && dataEntityManager.isResumable()) {
+      extractPartitionsAdaptively(
+          scriptName, partitions, arguments, dataEntityManager, checkpoints);
+      return;
+    }
+    // Entities of a zip archive can only be written one at a time.
+    int threadCount = dataEntityManager.isResumable() ? partitions.size() : 1;
+    ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
+    try {
+      ImmutableList.Builder<Future<?>> futures = ImmutableList.builder();
+      for (HashPartition partition : partitions) {
+        futures.add(
+            executorService.submit(
+                () -> {
+                  LOGGER.log(
+                      Level.INFO,
+                      "Start extracting partition {0} of {1}...",
+                      new Object[] {partition.getIndex(), scriptName});
+                  extractScriptRetryingTimeouts(
+                      scriptName,
+                      Optional.of(partition),
+                      arguments,
+                      dataEntityManager,
+                      checkpoints);
+                  return null;
+                }));
+      }
+      awaitAll(futures.build());
+    } finally {
+      executorService.shutdownNow();
+    }
+  }
+
+  /**
+   * Extracts the partitions of a script with as many concurrent sessions as the adaptive limit
+   * allows. A partition whose session fails is retried from its last saved chunk, up to {@link
+   * #MAX_PARTITION_ATTEMPTS} times. A partition whose session ends at a chunk boundary because the
+   * limit was lowered is resumed from its last saved chunk once it fits into the limit again.
+   */
+  private void extractPartitionsAdaptively(
+      String scriptName,
+      ImmutableList<HashPartition> partitions,
+      Arguments arguments,
+      DataEntityManager dataEntityManager,
+      ImmutableMap<String, ChunkCheckpoint> checkpoints)
+      throws SQLException, IOException {
+    Preconditions.checkArgument(
+        arguments.loadQuery().isPresent() == arguments.maxLoad().isPresent(),
+        "The load query and the maximum load must be given together.");
+    int maxSessions = Math.min(arguments.maxSessions().get(), partitions.size());
+    AdaptiveSessionLimiter limiter =
+        new AdaptiveSessionLimiter(Math.min(arguments.minSessions(), maxSessions), maxSessions);
+    ExecutorService executorService = Executors.newFixedThreadPool(maxSessions);
+    ScheduledExecutorService loadPollerExecutor = Executors.newSingleThreadScheduledExecutor();
+    Optional<LoadPoller> loadPoller =
+        arguments.loadQuery().map(loadQuery -> new LoadPoller(arguments, loadQuery, limiter));
+    loadPoller.ifPresent(
+        poller ->
+            loadPollerExecutor.scheduleWithFixedDelay(
+                poller, /* initialDelay= */ 0, LOAD_POLL_INTERVAL.getSeconds(), TimeUnit.SECONDS));
+    try {
+      ImmutableList.Builder<Future<?>> futures = ImmutableList.builder();
+      for (HashPartition partition : partitions) {
+        String entityName = partition.getEntityName(scriptName);
+        futures.add(
+            executorService.submit(
+                () -> {
+                  boolean resume = false;
+                  for (int attempt = 1; ; ) {
+                    limiter.acquire();
+                    boolean yielded = false;
+                    try {
+                      LOGGER.log(
+                          Level.INFO,
+                          "Start extracting partition {0} of {1}...",
+                          new Object[] {partition.getIndex(), scriptName});
+                      extractScript(
+                          scriptName,
+                          Optional.of(partition),
+                          arguments,
+                          limiter.observe(dataEntityManager),
+                          resume
+                              ? getWorkUnitCheckpoints(entityName, arguments, checkpoints)
+                              : checkpoints);
+                      return null;
+                    } catch (SessionYieldedException e) {
+                      yielded = true;
+                      LOGGER.log(
+                          Level.INFO,
+                          "Paused extracting {0} to lower the number of sessions.",
+                          entityName);
+                    } catch (SQLException e) {
+                      limiter.onFailure();
+                      if (attempt++ >= MAX_PARTITION_ATTEMPTS) {
+                        throw e;
+                      }
+                      LOGGER.log(
+                          Level.WARNING,
+                          String.format(
+                              "Extracting %s failed. Retrying from its last saved chunk.",
+                              entityName),
+                          e);
+                    } finally {
+                      if (!yielded) {
+                        limiter.release();
+                      }
+                    }
+                    resume = true;
+                  }
+                }));
+      }
+      awaitAll(futures.build());
+    } finally {
+      executorService.shutdownNow();
+      loadPollerExecutor.shutdownNow();
+      loadPoller.ifPresent(LoadPoller::close);
+    }
+  }
+
+  /**
+   * Polls the load of the database on one connection, which is kept between polls and only reopened
+   * when it is no longer valid, so that polling does not log on for every poll.
+   */
+  private static final class LoadPoller implements Runnable {
+
+    private final Arguments arguments;
+    private final String loadQuery;
+    private final AdaptiveSessionLimiter limiter;
+    private Connection connection;
+    private boolean closed;
+
+    LoadPoller(Arguments arguments, String loadQuery, AdaptiveSessionLimiter limiter) {
+      this.arguments = arguments;
+      this.loadQuery = loadQuery;
+      this.limiter = limiter;
+    }
+
+    @Override
+    public void run() {
+      Connection pollConnection;
+      synchronized (this) {
+        if (closed) {
+          return;
+        }
+        try {
+          if (connection == null || !connection.isValid(CONNECTION_VALIDATION_TIMEOUT_SECONDS)) {
+            closeQuietly(connection);
+            connection = null;
+            connection =
+                DriverManager.getConnection(
+                    arguments.dbConnectionAddress(), arguments.dbConnectionProperties());
+          }
+        } catch (SQLException e) {
+          LOGGER.log(Level.WARNING, "Failed to connect to query the load of the database.", e);
+          return;
+        }
+        pollConnection = connection;
+      }
+      try (Statement statement = pollConnection.createStatement();
+          ResultSet resultSet = statement.executeQuery(loadQuery)) {
+        if (resultSet.next()) {
+          limiter.onLoad(resultSet.getDouble(1), arguments.maxLoad().get());
+        }
+      } catch (SQLException e) {
+        LOGGER.log(Level.WARNING, "Failed to query the load of the database.", e);
+      }
+    }
+
+    /** Closes the connection. Polls that start afterwards do nothing. */
+    synchronized void close() {
+      closed = true;
+      closeQuietly(connection);
+      connection = null;
+    }
+  }
+
+  /**
+   * Extracts the work units that no other worker has claimed. Each script, or each partition of a
+   * hash-partitioned script, is a unit of its own. Returns once all units are completed, by this or
+   * by other workers.
+   */
+  private void runWorker(
+      Arguments arguments,
+      ImmutableSet<String> requestedScripts,
+      DataEntityManager dataEntityManager,
+      ImmutableMap<String, ChunkCheckpoint> prevRunCheckpoints,
+      ScriptHistory history,
+      List<String> timedOutUnits)
+      throws SQLException, IOException {
+    Preconditions.checkState(
+        dataEntityManager.isResumable(),
+        "Several workers can only extract into a directory, not into a zip file.");
+    ImmutableMap.Builder<String, Optional<HashPartition>> unitsBuilder =
+        ImmutableMap.<String, Optional<HashPartition>>builder()
+            .putAll(getWorkUnits(arguments, requestedScripts));
+    if (arguments.needJdbcSchemas() && !arguments.dryRun()) {
+      unitsBuilder.put(SCHEMA_UNIT, Optional.empty());
+    }
+    ImmutableMap<String, Optional<HashPartition>> units = unitsBuilder.build();
+    Set<String> pendingUnits = new LinkedHashSet<>(orderLongestFirst(history, units.keySet()));
+    try (LeaseManager leaseManager =
+        LeaseManager.create(
+            arguments.outputPath().resolve(LEASE_DIRECTORY),
+            arguments.workerId().get(),
+            arguments.leaseDuration())) {
+      while (!pendingUnits.isEmpty()) {
+        boolean acquiredAny = false;
+        for (Iterator<String> iterator = pendingUnits.iterator(); iterator.hasNext(); ) {
+          String unit = iterator.next();
+          if (leaseManager.isCompleted(unit)) {
+            iterator.remove();
+            continue;
+          }
+          Optional<LeaseManager.Lease> lease = leaseManager.tryAcquire(unit);
+          if (!lease.isPresent()) {
+            continue;
+          }
+          acquiredAny = true;
+          LOGGER.log(Level.INFO, "Start extracting {0}...", unit);
+          Stopwatch stopwatch = Stopwatch.createStarted();
+          DataEntityManager fencedDataEntityManager = lease.get().fence(dataEntityManager);
+          try {
+            if (unit.equals(SCHEMA_UNIT)) {
+              maybeRunSchemaQueries(arguments, fencedDataEntityManager);
+            } else {
+              extractScriptRetryingTimeouts(
+                  HashPartition.getScriptName(unit),
+                  units.get(unit),
+                  arguments,
+                  fencedDataEntityManager,
+                  getWorkUnitCheckpoints(unit, arguments, prevRunCheckpoints));
+            }
+            lease.get().complete();
+            recordDuration(history, unit, stopwatch.elapsed(), arguments, dataEntityManager);
+            LOGGER.log(Level.INFO, "Finished extracting {0}.", unit);
+          } catch (SQLTimeoutException e) {
+            // The unit is left incomplete, so that other workers may still try it.
+            skipTimedOutUnit(unit, e, arguments, timedOutUnits);
+          } catch (LeaseLostException e) {
+            // The worker that took the unit over extracts it.
+            LOGGER.log(Level.WARNING, String.format("Abandoning %s.", unit), e);
+          } finally {
+            lease.get().release();
+          }
+          iterator.remove();
+        }
+        if (!acquiredAny && !pendingUnits.isEmpty()) {
+          // Wait for the other workers to finish or for their leases to expire.
+          Uninterruptibles.sleepUninterruptibly(arguments.leaseDuration().dividedBy(4));
+        }
+      }
+    }
+  }
+
+  private ImmutableMap<String, Optional<HashPartition>> getWorkUnits(
+      Arguments arguments, ImmutableSet<String> requestedScripts) {
+    ImmutableMap.Builder<String, Optional<HashPartition>> units = ImmutableMap.builder();
+    for (String scriptName : requestedScripts) {
+      if (arguments.hashPartitions() > 1 && hashPartitionableScripts.contains(scriptName)) {
+        for (int index = 0; index < arguments.hashPartitions(); index++) {
+          HashPartition partition = HashPartition.create(arguments.hashPartitions(), index);
+          units.put(partition.getEntityName(scriptName), Optional.of(partition));
+        }
+      } else {
+        units.put(scriptName, Optional.empty());
+      }
+    }
+    return units.build();
+  }
+
+  /**
+   * Polls the given scripts for new records at the follow interval. Every poll continues each
+   * script, or each partition of a hash-partitioned script, from its last saved chunk. The
+   * connection and the compiled templates are kept between polls.
+   *
+   * <p>A failed poll, e.g. because of a dropped connection or a statement timeout, is logged and
+   * retried in the next cycle on a new connection. Following fails only after {@value
+   * #MAX_CONSECUTIVE_FAILED_POLLS} consecutive polls failed.
+   */
+  private void follow(
+      Arguments arguments,
+      ImmutableSet<String> scriptNames,
+      DataEntityManager dataEntityManager,
+      ImmutableMap<String, ChunkCheckpoint> prevRunCheckpoints)
+      throws SQLException, IOException {
+    Preconditions.checkState(
+        dataEntityManager.isResumable() && arguments.chunkRows() > 0,
+        "Following the query logs requires chunked extraction into a directory.");
+    ImmutableMap<String, Optional<HashPartition>> entities = getWorkUnits(arguments, scriptNames);
+    Connection connection = null;
+    Instant nextPoll = Instant.now();
+    int failedPolls = 0;
+    try {
+      for (int cycle = 0;
+          !arguments.followCycles().isPresent() || cycle < arguments.followCycles().get();
+          cycle++) {
+        Duration untilNextPoll = Duration.between(Instant.now(), nextPoll);
+        if (!untilNextPoll.isNegative()) {
+          Uninterruptibles.sleepUninterruptibly(untilNextPoll);
+        }
+        Instant pollStart = Instant.now();
+        nextPoll = pollStart.plus(arguments.followInterval().get());
+        try {
+          if (connection == null || !connection.isValid(CONNECTION_VALIDATION_TIMEOUT_SECONDS)) {
+            closeQuietly(connection);
+            connection =
+                DriverManager.getConnection(
+                    arguments.dbConnectionAddress(), arguments.dbConnectionProperties());
+          }
+          // Records that are still buffered by the database would be skipped by the next poll, so
+          // only records older than the settle time are extracted.
+          Arguments pollArguments =
+              arguments.toBuilder().setQryLogEndTime(pollStart.minus(FOLLOW_SETTLE_TIME)).build();
+          for (Map.Entry<String, Optional<HashPartition>> entity : entities.entrySet()) {
+            extractScript(
+                HashPartition.getScriptName(entity.getKey()),
+                entity.getValue(),
+                pollArguments,
+                dataEntityManager,
+                getWorkUnitCheckpoints(entity.getKey(), arguments, prevRunCheckpoints),
+                connection);
+          }
+        } catch (SQLException e) {
+          closeQuietly(connection);
+          connection = null;
+          if (++failedPolls >= MAX_CONSECUTIVE_FAILED_POLLS) {
+            throw e;
+          }
+          LOGGER.log(
+              Level.WARNING,
+              String.format(
+                  "Poll %d of the query logs failed. Polling again at %s.", cycle, nextPoll),
+              e);
+          continue;
+        }
+        failedPolls = 0;
+        LOGGER.log(
+            Level.INFO,
+            "Finished poll {0} of the query logs. Polling again at {1}.",
+            new Object[] {cycle, nextPoll});
+      }
+    } finally {
+      closeQuietly(connection);
+    }
+  }
+
+  private static void closeQuietly(Connection connection) {
+    if (connection == null) {
+      return;
+    }
+    try {
       connection.close();
-      LOGGER.log(Level.INFO, "Finished extracting {0}.", scriptName);
+    } catch (SQLException e) {
+      LOGGER.log(Level.WARNING, "Failed to close the connection.", e);
     }
+  }
 
-    maybeRunSchemaQueries(arguments, dataEntityManager);
+  /**
+   * Returns the checkpoints from which to continue a unit. Chunks that a worker saved before its
+   * lease expired are continued, just like in a recovery run.
+   */
+  private ImmutableMap<String, ChunkCheckpoint> getWorkUnitCheckpoints(
+      String unit, Arguments arguments, ImmutableMap<String, ChunkCheckpoint> prevRunCheckpoints) {
+    if (arguments.chunkRows() < 1) {
+      return ImmutableMap.of();
+    }
+    ImmutableMap<String, ChunkCheckpoint> outputCheckpoints =
+        saveChecker.getScriptCheckPoints(arguments.outputPath());
+    if (outputCheckpoints.containsKey(unit)) {
+      return ImmutableMap.of(unit, outputCheckpoints.get(unit));
+    }
+    return prevRunCheckpoints;
+  }
 
-    dataEntityManager.close();
-    LOGGER.log(Level.INFO, "Finished extraction.");
-    return 0;
+  /**
+   * Loads the history of the output directory and, for incremental and recovery runs, of the
+   * previous run.
+   */
+  private static ScriptHistory loadHistory(Arguments arguments) {
+    ImmutableList.Builder<Path> directories = ImmutableList.builder();
+    if (Files.isDirectory(arguments.outputPath())) {
+      directories.add(arguments.outputPath());
+    }
+    arguments.prevRunPath().filter(Files::isDirectory).ifPresent(directories::add);
+    return ScriptHistory.load(directories.build());
+  }
+
+  /**
+   * Orders the scripts or work units by their durations in previous runs, longest first, and by
+   * their cost hints if they have no history.
+   */
+  private ImmutableList<String> orderLongestFirst(ScriptHistory history, Set<String> units) {
+    return history.orderLongestFirst(
+        units,
+        unit -> costHints.getOrDefault(HashPartition.getScriptName(unit), DEFAULT_COST_HINT));
+  }
+
+  /**
+   * Records the duration of a unit and saves the history into the output directory. The history
+   * only steers the order of the next runs, so failing to save it does not fail the extraction.
+   */
+  private static void recordDuration(
+      ScriptHistory history,
+      String unit,
+      Duration duration,
+      Arguments arguments,
+      DataEntityManager dataEntityManager) {
+    if (arguments.dryRun()) {
+      return;
+    }
+    history.record(unit, duration);
+    if (!dataEntityManager.isResumable()) {
+      return;
+    }
+    try {
+      history.save(arguments.outputPath());
+    } catch (IOException e) {
+      LOGGER.log(Level.WARNING, "Failed to save the durations of the scripts.", e);
+    }
+  }
+
+  /** Waits for all futures to complete and rethrows the first failure, if any. */
+  private static void awaitAll(ImmutableList<Future<?>> futures) throws SQLException, IOException {
+    for (Future<?> future : futures) {
+      try {
+        Uninterruptibles.getUninterruptibly(future);
+      } catch (ExecutionException e) {
+        Throwables.throwIfInstanceOf(e.getCause(), SQLException.class);
+        Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+        Throwables.throwIfUnchecked(e.getCause());
+        throw new IllegalStateException("Got unexpected exception.", e.getCause());
+      }
+    }
   }
 
   private SqlTemplateRenderer getSqlTemplateRenderer(
@@ -178,8 +994,12 @@ public final class ExtractExecutorImpl implements ExtractExecutor {
             .setBaseDatabase(
                 arguments.scriptBaseDatabase().getOrDefault(scriptName, arguments.baseDatabase()))
             .setQueryLogsVariables(qryLogVarsBuilder.build())
-            .setVars(arguments.scriptVariables().getOrDefault(scriptName, ImmutableMap.of()));
-    return new SqlTemplateRendererImpl(sqlScriptVariablesBuilder);
+            .setVars(arguments.scriptVariables().getOrDefault(scriptName, ImmutableMap.of()))
+            .setColumnProjection(
+                arguments
+                    .columnProjections()
+                    .getOrDefault(scriptName, ColumnProjection.builder().build()));
+    return new SqlTemplateRendererImpl(sqlScriptVariablesBuilder, arguments.bindParameters());
   }
 
   private void extractSchema(
@@ -219,7 +1039,9 @@ public final class ExtractExecutorImpl implements ExtractExecutor {
 
     ImmutableSet<String> requestedScripts =
         arguments.sqlScripts().isEmpty()
-            ? Sets.difference(allScriptNames, ImmutableSet.copyOf(arguments.skipSqlScripts()))
+            ? Sets.difference(
+                    Sets.difference(allScriptNames, optInScripts),
+                    ImmutableSet.copyOf(arguments.skipSqlScripts()))
                 .immutableCopy()
             : ImmutableSet.copyOf(arguments.sqlScripts());
     if (arguments.mode() == RunMode.RECOVERY) {
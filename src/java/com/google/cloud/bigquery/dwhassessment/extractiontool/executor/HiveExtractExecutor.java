@@ -0,0 +1,96 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigquery.dwhassessment.extractiontool.executor;
+
+import com.google.auto.value.AutoValue;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.db.SchemaFilter;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Properties;
+
+/** Executor for the extraction of Hive metadata. */
+public interface HiveExtractExecutor {
+
+  /** Arguments for the Hive extract action. */
+  @AutoValue
+  abstract class Arguments {
+    /**
+     * The JDBC address of the HiveServer2 to which to connect, or of the metastore database if
+     * {@link #readMetastore()} is set.
+     */
+    public abstract String dbConnectionAddress();
+
+    /** The JDBC connection properties. */
+    public abstract Properties dbConnectionProperties();
+
+    /** The path to which to write the output. Either a directory or a ZIP file. */
+    public abstract Path outputPath();
+
+    /** Filters on the tables to describe. If empty, all tables are described. */
+    public abstract ImmutableList<SchemaFilter> schemaFilters();
+
+    /** The number of statements that run concurrently, each on its own connection. */
+    public abstract Integer threads();
+
+    /** Whether to describe every partition of the partitioned tables. */
+    public abstract boolean describePartitions();
+
+    /**
+     * Whether to read the schemas in bulk from the database of the Hive metastore instead of
+     * describing every table via HiveServer2.
+     */
+    public abstract boolean readMetastore();
+
+    public static Builder builder() {
+      return new AutoValue_HiveExtractExecutor_Arguments.Builder()
+          .setSchemaFilters(ImmutableList.of())
+          .setThreads(8)
+          .setDescribePartitions(true)
+          .setReadMetastore(false);
+    }
+
+    /** Builder for the Arguments. */
+    @AutoValue.Builder
+    public abstract static class Builder {
+      public abstract Builder setDbConnectionAddress(String dbConnectionAddress);
+
+      public abstract Builder setDbConnectionProperties(Properties dbConnectionProperties);
+
+      public abstract Builder setOutputPath(Path outputPath);
+
+      public abstract Builder setSchemaFilters(List<SchemaFilter> schemaFilters);
+
+      public abstract Builder setThreads(Integer threads);
+
+      public abstract Builder setDescribePartitions(boolean describePartitions);
+
+      public abstract Builder setReadMetastore(boolean readMetastore);
+
+      public abstract Arguments build();
+    }
+  }
+
+  /**
+   * Runs the extraction.
+   *
+   * @param arguments The arguments of the extraction.
+   * @return The exit code.
+   */
+  int run(Arguments arguments) throws SQLException, IOException;
+}
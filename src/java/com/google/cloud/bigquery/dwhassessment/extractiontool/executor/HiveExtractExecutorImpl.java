@@ -0,0 +1,452 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigquery.dwhassessment.extractiontool.executor;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static java.util.stream.Collectors.joining;
+
+import com.google.cloud.bigquery.dwhassessment.extractiontool.db.AvroResultSetRecorder;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.db.HiveDescription;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.db.HiveMetastoreReader;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.db.ResultSetRecorder;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.db.SchemaFilter;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.db.SchemaManager.SchemaKey;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.dumper.DataEntityManager;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.Uninterruptibles;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.generic.GenericRecordBuilder;
+
+/**
+ * Extracts the metadata of a Hive data warehouse via HiveServer2.
+ *
+ * <p>The tables are listed with {@code SHOW DATABASES} and {@code SHOW TABLES}. Then every table,
+ * and every partition of the partitioned tables, is described with {@code DESCRIBE FORMATTED}.
+ * These statements are independent of each other and dominate the run time, so they run
+ * concurrently on a fixed number of threads, each with its own connection. Every description is
+ * written as a record into the entity {@value #TABLES_ENTITY} as soon as it is available.
+ *
+ * <p>Alternatively, the schemas are read in bulk from the database of the metastore with {@link
+ * HiveMetastoreReader} and written into the entity {@value #SCHEMAS_ENTITY}.
+ */
+public final class HiveExtractExecutorImpl implements HiveExtractExecutor {
+
+  private static final Logger LOGGER = Logger.getLogger(HiveExtractExecutorImpl.class.getName());
+
+  private static final int CONNECTION_VALIDATION_TIMEOUT_SECONDS = 10;
+
+  @VisibleForTesting static final String TABLES_ENTITY = "hive_tables.avro";
+
+  @VisibleForTesting static final String SCHEMAS_ENTITY = "hive_schemas.avro";
+
+  private static final Schema COLUMN_SCHEMA =
+      SchemaBuilder.record("HiveColumn")
+          .fields()
+          .requiredString("Name")
+          .requiredString("Type")
+          .optionalString("Comment")
+          .endRecord();
+
+  @VisibleForTesting
+  static final Schema TABLE_SCHEMA =
+      SchemaBuilder.record("HiveTable")
+          .fields()
+          .requiredString("DatabaseName")
+          .requiredString("TableName")
+          .optionalString("PartitionName")
+          .name("Columns")
+          .type()
+          .array()
+          .items(COLUMN_SCHEMA)
+          .noDefault()
+          .name("PartitionKeys")
+          .type()
+          .array()
+          .items(COLUMN_SCHEMA)
+          .noDefault()
+          .name("Details")
+          .type()
+          .map()
+          .values()
+          .stringType()
+          .noDefault()
+          .name("Parameters")
+          .type()
+          .map()
+          .values()
+          .stringType()
+          .noDefault()
+          .endRecord();
+
+  /** Opens a connection to HiveServer2. */
+  @VisibleForTesting
+  interface ConnectionFactory {
+    Connection connect(Arguments arguments) throws SQLException;
+  }
+
+  private final Function<Path, DataEntityManager> dataEntityManagerFactory;
+  private final ConnectionFactory connectionFactory;
+
+  public HiveExtractExecutorImpl(Function<Path, DataEntityManager> dataEntityManagerFactory) {
+    this(
+        dataEntityManagerFactory,
+        arguments ->
+            DriverManager.getConnection(
+                arguments.dbConnectionAddress(), arguments.dbConnectionProperties()));
+  }
+
+  @VisibleForTesting
+  HiveExtractExecutorImpl(
+      Function<Path, DataEntityManager> dataEntityManagerFactory,
+      ConnectionFactory connectionFactory) {
+    this.dataEntityManagerFactory = dataEntityManagerFactory;
+    this.connectionFactory = connectionFactory;
+  }
+
+  @Override
+  public int run(Arguments arguments) throws SQLException, IOException {
+    if (arguments.readMetastore()) {
+      return runMetastore(arguments);
+    }
+    Preconditions.checkArgument(arguments.threads() > 0, "The number of threads must be positive.");
+    ImmutableList<SchemaKey> tables;
+    try (Connection connection = connectionFactory.connect(arguments)) {
+      tables = listTables(connection, arguments.schemaFilters());
+    }
+    LOGGER.log(
+        Level.INFO,
+        "Describing {0} tables on {1} threads.",
+        new Object[] {tables.size(), arguments.threads()});
+
+    ExecutorService executorService = Executors.newFixedThreadPool(arguments.threads());
+    try (DataEntityManager dataEntityManager =
+            dataEntityManagerFactory.apply(arguments.outputPath());
+        ThreadConnections connections = new ThreadConnections(arguments);
+        AvroResultSetRecorder recorder =
+            AvroResultSetRecorder.create(
+                TABLE_SCHEMA, dataEntityManager.getEntityOutputStream(TABLES_ENTITY))) {
+      Describer describer = new Describer(connections, recorder);
+      List<Future<ImmutableList<String>>> tableFutures = new ArrayList<>();
+      for (SchemaKey table : tables) {
+        tableFutures.add(executorService.submit(() -> describer.describeTable(table, arguments)));
+      }
+      // The partitions of a table are only known once the table is described. All tables are
+      // queued already, so the threads stay busy while waiting for the tables in order.
+      List<Future<?>> partitionFutures = new ArrayList<>();
+      for (int i = 0; i < tables.size(); i++) {
+        SchemaKey table = tables.get(i);
+        for (String partition : await(tableFutures.get(i))) {
+          partitionFutures.add(
+              executorService.submit(() -> describer.describePartition(table, partition)));
+        }
+      }
+      for (Future<?> future : partitionFutures) {
+        await(future);
+      }
+      LOGGER.log(
+          Level.INFO,
+          "Described {0} tables and {1} partitions. {2} statements failed.",
+          new Object[] {tables.size(), partitionFutures.size(), describer.failures.get()});
+    } finally {
+      executorService.shutdownNow();
+    }
+    return 0;
+  }
+
+  private int runMetastore(Arguments arguments) throws SQLException, IOException {
+    try (Connection connection = connectionFactory.connect(arguments);
+        DataEntityManager dataEntityManager =
+            dataEntityManagerFactory.apply(arguments.outputPath());
+        AvroResultSetRecorder recorder =
+            AvroResultSetRecorder.create(
+                HiveMetastoreReader.SCHEMA,
+                dataEntityManager.getEntityOutputStream(SCHEMAS_ENTITY))) {
+      // Some drivers, e.g. the PostgreSQL one, only stream result sets within a transaction.
+      connection.setAutoCommit(false);
+      int tableCount =
+          new HiveMetastoreReader(arguments.schemaFilters()).read(connection, recorder);
+      LOGGER.log(Level.INFO, "Read {0} tables from the Hive metastore.", tableCount);
+    }
+    return 0;
+  }
+
+  private static ImmutableList<SchemaKey> listTables(
+      Connection connection, ImmutableList<SchemaFilter> filters) throws SQLException {
+    ImmutableList.Builder<SchemaKey> tables = ImmutableList.builder();
+    for (String database : query(connection, "SHOW DATABASES")) {
+      if (!filters.isEmpty() && filters.stream().noneMatch(f -> f.matchesDatabase(database))) {
+        continue;
+      }
+      for (String table : query(connection, "SHOW TABLES IN " + quoteIdentifier(database))) {
+        if (filters.isEmpty() || filters.stream().anyMatch(f -> f.matches(database, table))) {
+          tables.add(SchemaKey.create(database, table));
+        }
+      }
+    }
+    return tables.build();
+  }
+
+  private static ImmutableList<String> query(Connection connection, String sql)
+      throws SQLException {
+    ImmutableList.Builder<String> values = ImmutableList.builder();
+    try (Statement statement = connection.createStatement();
+        ResultSet resultSet = statement.executeQuery(sql)) {
+      while (resultSet.next()) {
+        values.add(resultSet.getString(1));
+      }
+    }
+    return values.build();
+  }
+
+  private static <T> T await(Future<T> future) throws SQLException, IOException {
+    try {
+      return Uninterruptibles.getUninterruptibly(future);
+    } catch (ExecutionException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), SQLException.class);
+      Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new IllegalStateException("Got unexpected exception.", e.getCause());
+    }
+  }
+
+  /**
+   * Returns the partition specification for a partition name as listed by {@code SHOW PARTITIONS},
+   * e.g. {@code (`year`='2021', `month`='7')} for {@code year=2021/month=7}.
+   */
+  @VisibleForTesting
+  static String getPartitionSpec(String partitionName) {
+    return Splitter.on('/').splitToList(partitionName).stream()
+        .map(
+            keyValue -> {
+              int separator = keyValue.indexOf('=');
+              Preconditions.checkArgument(
+                  separator > 0, "Got invalid partition name '%s'.", partitionName);
+              return String.format(
+                  "%s=%s",
+                  quoteIdentifier(unescapePathName(keyValue.substring(0, separator))),
+                  quoteString(unescapePathName(keyValue.substring(separator + 1))));
+            })
+        .collect(joining(", ", "(", ")"));
+  }
+
+  // Hive escapes special characters in partition names as %XX.
+  private static String unescapePathName(String name) {
+    if (name.indexOf('%') < 0) {
+      return name;
+    }
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    for (int i = 0; i < name.length(); i++) {
+      char c = name.charAt(i);
+      if (c == '%' && i + 2 < name.length() && isHexDigits(name, i + 1)) {
+        bytes.write(Integer.parseInt(name.substring(i + 1, i + 3), 16));
+        i += 2;
+      } else {
+        byte[] encoded = String.valueOf(c).getBytes(StandardCharsets.UTF_8);
+        bytes.write(encoded, 0, encoded.length);
+      }
+    }
+    return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  private static boolean isHexDigits(String name, int start) {
+    return Character.digit(name.charAt(start), 16) >= 0
+        && Character.digit(name.charAt(start + 1), 16) >= 0;
+  }
+
+  private static String getTableName(SchemaKey table) {
+    return quoteIdentifier(table.databaseName()) + "." + quoteIdentifier(table.tableName());
+  }
+
+  private static String quoteIdentifier(String identifier) {
+    return "`" + identifier.replace("`", "``") + "`";
+  }
+
+  private static String quoteString(String value) {
+    return "'" + value.replace("\\", "\\\\").replace("'", "\\'") + "'";
+  }
+
+  private static List<GenericRecord> toRecords(ImmutableList<HiveDescription.Column> columns) {
+    return columns.stream()
+        .map(
+            column ->
+                new GenericRecordBuilder(COLUMN_SCHEMA)
+                    .set("Name", column.name())
+                    .set("Type", column.type())
+                    .set("Comment", column.comment().orElse(null))
+                    .build())
+        .collect(toImmutableList());
+  }
+
+  /** Describes tables and partitions and records the descriptions. Used by several threads. */
+  private static final class Describer {
+
+    private final ThreadConnections connections;
+    private final ResultSetRecorder<GenericRecord> recorder;
+    private final AtomicInteger failures = new AtomicInteger();
+
+    Describer(ThreadConnections connections, ResultSetRecorder<GenericRecord> recorder) {
+      this.connections = connections;
+      this.recorder = recorder;
+    }
+
+    /** Describes the table and returns the names of the partitions to describe. */
+    ImmutableList<String> describeTable(SchemaKey table, Arguments arguments) {
+      Optional<HiveDescription> description =
+          describe(table, Optional.empty(), "DESCRIBE FORMATTED " + getTableName(table));
+      if (!description.isPresent()
+          || description.get().partitionKeys().isEmpty()
+          || !arguments.describePartitions()) {
+        return ImmutableList.of();
+      }
+      try {
+        return query(connections.get(), "SHOW PARTITIONS " + getTableName(table));
+      } catch (SQLException e) {
+        handleFailure(String.format("list the partitions of %s", getTableName(table)), e);
+        return ImmutableList.of();
+      }
+    }
+
+    void describePartition(SchemaKey table, String partition) {
+      describe(
+          table,
+          Optional.of(partition),
+          String.format(
+              "DESCRIBE FORMATTED %s PARTITION %s",
+              getTableName(table), getPartitionSpec(partition)));
+    }
+
+    private Optional<HiveDescription> describe(
+        SchemaKey table, Optional<String> partition, String sql) {
+      HiveDescription description;
+      try (Statement statement = connections.get().createStatement();
+          ResultSet resultSet = statement.executeQuery(sql)) {
+        description = HiveDescription.parse(resultSet);
+      } catch (SQLException e) {
+        handleFailure(String.format("run '%s'", sql), e);
+        return Optional.empty();
+      }
+      GenericData.Record record =
+          new GenericRecordBuilder(TABLE_SCHEMA)
+              .set("DatabaseName", table.databaseName())
+              .set("TableName", table.tableName())
+              .set("PartitionName", partition.orElse(null))
+              .set("Columns", toRecords(description.columns()))
+              .set("PartitionKeys", toRecords(description.partitionKeys()))
+              .set("Details", description.details())
+              .set("Parameters", description.parameters())
+              .build();
+      synchronized (recorder) {
+        recorder.add(record);
+      }
+      return Optional.of(description);
+    }
+
+    // A single table that cannot be described, e.g. due to missing privileges or a broken view,
+    // must not end the extraction of all others.
+    private void handleFailure(String action, SQLException e) {
+      failures.incrementAndGet();
+      LOGGER.log(Level.WARNING, String.format("Failed to %s.", action), e);
+      connections.resetIfBroken();
+    }
+  }
+
+  /**
+   * Gives every thread its own connection, since a HiveServer2 connection runs one statement at a
+   * time.
+   */
+  private final class ThreadConnections implements AutoCloseable {
+
+    private final Arguments arguments;
+    private final List<Connection> connections = Collections.synchronizedList(new ArrayList<>());
+    private final ThreadLocal<Connection> threadConnection = new ThreadLocal<>();
+
+    ThreadConnections(Arguments arguments) {
+      this.arguments = arguments;
+    }
+
+    Connection get() throws SQLException {
+      Connection connection = threadConnection.get();
+      if (connection == null) {
+        connection = connectionFactory.connect(arguments);
+        connections.add(connection);
+        threadConnection.set(connection);
+      }
+      return connection;
+    }
+
+    /** Drops the connection of this thread if it is no longer usable after a failure. */
+    void resetIfBroken() {
+      Connection connection = threadConnection.get();
+      if (connection != null && !isValid(connection)) {
+        threadConnection.remove();
+        connections.remove(connection);
+        closeQuietly(connection);
+      }
+    }
+
+    @Override
+    public void close() {
+      synchronized (connections) {
+        connections.forEach(HiveExtractExecutorImpl::closeQuietly);
+        connections.clear();
+      }
+    }
+  }
+
+  private static boolean isValid(Connection connection) {
+    try {
+      return connection.isValid(CONNECTION_VALIDATION_TIMEOUT_SECONDS);
+    } catch (SQLException e) {
+      return false;
+    }
+  }
+
+  private static void closeQuietly(Connection connection) {
+    try {
+      connection.close();
+    } catch (SQLException e) {
+      LOGGER.log(Level.WARNING, "Failed to close the connection.", e);
+    }
+  }
+}
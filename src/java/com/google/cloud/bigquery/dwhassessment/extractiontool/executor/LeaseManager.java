@@ -0,0 +1,398 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigquery.dwhassessment.extractiontool.executor;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.cloud.bigquery.dwhassessment.extractiontool.dumper.DataEntityManager;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.dumper.ForwardingDataEntityManager;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.dumper.ForwardingOutputStream;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Coordinates several workers that extract into the same output directory.
+ *
+ * <p>A unit of work, e.g. a script or a hash partition of a script, is claimed by creating the
+ * lease file {@code <unit>.lease} in the lease directory. Creating the file fails if it already
+ * exists, so only one worker can hold a lease at a time. The lease holder periodically renews the
+ * lease by updating the modification time of the file. A lease that has not been renewed for the
+ * lease duration is regarded as expired, e.g. because its worker crashed, and may be reclaimed by
+ * any other worker. Finished units are marked with a {@code <unit>.done} file.
+ *
+ * <p>An expired lease is reclaimed in place: the reclaiming worker first creates the marker {@code
+ * <unit>.lease.<renewal>.reclaim} for the last renewal of the lease, which only one worker can
+ * create, and then atomically replaces the lease file with its own. The lease file thus never
+ * disappears while it is reclaimed, and a renewal in the meantime keeps the lease with its holder.
+ *
+ * <p>The modification time is set by the clock of the lease holder and compared with the clock of
+ * the reclaiming worker, so a lease only expires {@link #MAX_CLOCK_SKEW} after the lease duration.
+ * The clocks of the workers must not differ by more than that.
+ *
+ * <p>A worker that was paused for longer than that may find its lease reclaimed. {@link
+ * Lease#fence(DataEntityManager)} stops the output of such a worker before it commits another file.
+ */
+public final class LeaseManager implements Closeable {
+
+  private static final Logger LOGGER = Logger.getLogger(LeaseManager.class.getName());
+  private static final String LEASE_EXTENSION = ".lease";
+  private static final String DONE_EXTENSION = ".done";
+  private static final String RECLAIM_EXTENSION = ".reclaim";
+  private static final String TEMP_NOTATION = "_temp";
+  private static final String AVRO_SUFFIX = ".avro";
+  /** The largest difference between the clocks of the workers that leases tolerate. */
+  @VisibleForTesting static final Duration MAX_CLOCK_SKEW = Duration.ofSeconds(30);
+
+  private final Path leaseDirectory;
+  private final String workerId;
+  private final Duration leaseDuration;
+  private final Clock clock;
+  private final ScheduledExecutorService renewalExecutor;
+
+  @VisibleForTesting
+  LeaseManager(
+      Path leaseDirectory,
+      String workerId,
+      Duration leaseDuration,
+      Clock clock,
+      ScheduledExecutorService renewalExecutor) {
+    Preconditions.checkArgument(
+        !leaseDuration.isNegative() && !leaseDuration.isZero(),
+        "The lease duration must be positive.");
+    this.leaseDirectory = leaseDirectory;
+    this.workerId = workerId;
+    this.leaseDuration = leaseDuration;
+    this.clock = clock;
+    this.renewalExecutor = renewalExecutor;
+  }
+
+  /**
+   * Creates a lease manager.
+   *
+   * @param leaseDirectory The directory holding the lease files. It is created if it is missing.
+   * @param workerId The ID of this worker, which must be unique among all workers.
+   * @param leaseDuration The time after which a lease that has not been renewed expires.
+   */
+  public static LeaseManager create(Path leaseDirectory, String workerId, Duration leaseDuration)
+      throws IOException {
+    Files.createDirectories(leaseDirectory);
+    return new LeaseManager(
+        leaseDirectory,
+        workerId,
+        leaseDuration,
+        Clock.systemUTC(),
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              Thread thread = new Thread(runnable, "lease-renewal");
+              thread.setDaemon(true);
+              return thread;
+            }));
+  }
+
+  /** Returns whether any worker has completed the given unit. */
+  public boolean isCompleted(String unit) {
+    return Files.exists(getDonePath(unit));
+  }
+
+  /**
+   * Tries to claim the given unit. Expired leases of other workers are reclaimed.
+   *
+   * @return The lease, or empty if the unit is completed or leased by another worker.
+   */
+  public Optional<Lease> tryAcquire(String unit) throws IOException {
+    if (isCompleted(unit)) {
+      return Optional.empty();
+    }
+    Path leasePath = getLeasePath(unit);
+    if (!tryCreateLease(leasePath) && !tryReclaimExpiredLease(unit, leasePath)) {
+      return Optional.empty();
+    }
+    // Another worker may have completed the unit between the first check and the creation.
+    if (isCompleted(unit)) {
+      Files.deleteIfExists(leasePath);
+      return Optional.empty();
+    }
+    Lease lease = new Lease(unit, leasePath);
+    long renewalMillis = Math.max(1, leaseDuration.toMillis() / 3);
+    lease.renewal =
+        renewalExecutor.scheduleAtFixedRate(
+            lease::renewOrLog, renewalMillis, renewalMillis, TimeUnit.MILLISECONDS);
+    return Optional.of(lease);
+  }
+
+  @Override
+  public void close() {
+    renewalExecutor.shutdownNow();
+  }
+
+  private boolean tryCreateLease(Path leasePath) throws IOException {
+    try {
+      Files.write(leasePath, workerId.getBytes(UTF_8), StandardOpenOption.CREATE_NEW);
+    } catch (FileAlreadyExistsException e) {
+      return false;
+    }
+    Files.setLastModifiedTime(leasePath, FileTime.from(clock.instant()));
+    return true;
+  }
+
+  private boolean tryReclaimExpiredLease(String unit, Path leasePath) throws IOException {
+    Optional<FileTime> renewal = getModifiedTime(leasePath);
+    if (!renewal.isPresent() || !isExpired(renewal.get())) {
+      return false;
+    }
+    // Only the worker that creates the marker of the last renewal may reclaim the lease.
+    Path markerPath = getReclaimPath(unit, renewal.get());
+    while (!tryCreateLease(markerPath)) {
+      Optional<FileTime> markerCreation = getModifiedTime(markerPath);
+      if (!markerCreation.isPresent() || !isExpired(markerCreation.get())) {
+        return false;
+      }
+      // The worker that created the marker stopped before it reclaimed the lease.
+      markerPath = getReclaimPath(unit, markerCreation.get());
+    }
+    try {
+      // The holder may have renewed the lease before the marker was created.
+      if (!renewal.equals(getModifiedTime(leasePath))) {
+        return false;
+      }
+      LOGGER.log(
+          Level.WARNING,
+          "Reclaiming the expired lease of {0} held by worker {1}.",
+          new Object[] {unit, readOwner(leasePath).orElse("")});
+      Path tempPath = Files.createTempFile(leaseDirectory, unit + LEASE_EXTENSION, "." + workerId);
+      try {
+        Files.write(tempPath, workerId.getBytes(UTF_8));
+        Files.setLastModifiedTime(tempPath, FileTime.from(clock.instant()));
+        Files.move(tempPath, leasePath, StandardCopyOption.ATOMIC_MOVE);
+      } finally {
+        Files.deleteIfExists(tempPath);
+      }
+      return true;
+    } finally {
+      Files.deleteIfExists(markerPath);
+    }
+  }
+
+  private boolean isExpired(FileTime lastRenewal) {
+    return lastRenewal
+        .toInstant()
+        .plus(leaseDuration)
+        .plus(MAX_CLOCK_SKEW)
+        .isBefore(clock.instant());
+  }
+
+  private static Optional<FileTime> getModifiedTime(Path path) throws IOException {
+    try {
+      return Optional.of(Files.getLastModifiedTime(path));
+    } catch (NoSuchFileException e) {
+      return Optional.empty();
+    }
+  }
+
+  /** Returns the owner of the lease, or empty if the lease file is missing. */
+  private static Optional<String> readOwner(Path leasePath) throws IOException {
+    try {
+      return Optional.of(new String(Files.readAllBytes(leasePath), UTF_8));
+    } catch (NoSuchFileException e) {
+      return Optional.empty();
+    }
+  }
+
+  /** Inserts the ID of this worker before the temporary notation of a file name, if any. */
+  private String getWorkerName(String name) {
+    String base =
+        name.endsWith(AVRO_SUFFIX) ? name.substring(0, name.length() - AVRO_SUFFIX.length()) : name;
+    if (!base.endsWith(TEMP_NOTATION)) {
+      return name;
+    }
+    return base.substring(0, base.length() - TEMP_NOTATION.length())
+        + "."
+        + workerId
+        + name.substring(base.length() - TEMP_NOTATION.length());
+  }
+
+  private Path getLeasePath(String unit) {
+    return leaseDirectory.resolve(unit + LEASE_EXTENSION);
+  }
+
+  private Path getDonePath(String unit) {
+    return leaseDirectory.resolve(unit + DONE_EXTENSION);
+  }
+
+  private Path getReclaimPath(String unit, FileTime renewal) {
+    return leaseDirectory.resolve(
+        unit + LEASE_EXTENSION + "." + renewal.toMillis() + RECLAIM_EXTENSION);
+  }
+
+  /** A claim of a unit of work by this worker. */
+  public final class Lease {
+
+    private final String unit;
+    private final Path leasePath;
+    private ScheduledFuture<?> renewal;
+    private boolean ended;
+    private volatile boolean lost;
+
+    private Lease(String unit, Path leasePath) {
+      this.unit = unit;
+      this.leasePath = leasePath;
+    }
+
+    public String getUnit() {
+      return unit;
+    }
+
+    /** Extends the lease by the lease duration. A missing lease file is created again. */
+    @VisibleForTesting
+    synchronized void renew() throws IOException {
+      checkOwnership();
+      try {
+        Files.setLastModifiedTime(leasePath, FileTime.from(clock.instant()));
+      } catch (NoSuchFileException e) {
+        if (!tryCreateLease(leasePath)) {
+          // Another worker acquired the unit after the lease file disappeared.
+          checkOwnership();
+        }
+      }
+    }
+
+    /**
+     * Returns a data entity manager that writes the output of the unit only while the lease is
+     * held. Opening and closing an output stream fail with a {@link LeaseLostException} once the
+     * lease was lost, so that the file is not committed. Temporary files get the ID of the worker
+     * in their names, so that they never clash with those of another worker that took the unit
+     * over.
+     */
+    public DataEntityManager fence(DataEntityManager dataEntityManager) {
+      return new ForwardingDataEntityManager(dataEntityManager) {
+        @Override
+        public OutputStream getEntityOutputStream(String name) throws IOException {
+          checkHeld();
+          return new ForwardingOutputStream(delegate.getEntityOutputStream(getWorkerName(name))) {
+            @Override
+            public void close() throws IOException {
+              super.close();
+              // The caller commits the file after closing it.
+              checkHeld();
+            }
+          };
+        }
+
+        @Override
+        public Path getAbsolutePath(String name) {
+          return delegate.getAbsolutePath(getWorkerName(name));
+        }
+      };
+    }
+
+    /** Throws a {@link LeaseLostException} if another worker took the unit over. */
+    public void checkHeld() throws IOException {
+      if (lost) {
+        throw newLeaseLostException();
+      }
+      checkOwnership();
+    }
+
+    /** Marks the unit as completed and ends the lease. */
+    public synchronized void complete() throws IOException {
+      Preconditions.checkState(!ended, "The lease of %s has already ended.", unit);
+      checkOwnership();
+      Files.write(getDonePath(unit), workerId.getBytes(UTF_8));
+      end();
+    }
+
+    /** Ends the lease without completing the unit, so that other workers can claim it. */
+    public synchronized void release() throws IOException {
+      if (ended) {
+        return;
+      }
+      if (readOwner(leasePath).orElse(workerId).equals(workerId)) {
+        end();
+      } else {
+        renewal.cancel(false);
+        ended = true;
+      }
+    }
+
+    private void end() throws IOException {
+      renewal.cancel(false);
+      ended = true;
+      Files.deleteIfExists(leasePath);
+    }
+
+    /**
+     * Throws a {@link LeaseLostException} if another worker owns the lease. A missing lease file
+     * does not count as a loss, since no other worker owns it.
+     */
+    private void checkOwnership() throws IOException {
+      if (!readOwner(leasePath).orElse(workerId).equals(workerId)) {
+        lost = true;
+        throw newLeaseLostException();
+      }
+    }
+
+    private LeaseLostException newLeaseLostException() {
+      return new LeaseLostException(
+          String.format(
+              "Worker %s lost the lease of %s, which another worker may have reclaimed. Make sure"
+                  + " the lease duration exceeds any pause of the workers.",
+              workerId, unit));
+    }
+
+    private synchronized void renewOrLog() {
+      if (ended || lost) {
+        return;
+      }
+      try {
+        renew();
+      } catch (LeaseLostException e) {
+        renewal.cancel(false);
+        LOGGER.log(Level.WARNING, e.getMessage());
+      } catch (IOException | RuntimeException e) {
+        LOGGER.log(Level.WARNING, String.format("Failed to renew the lease of %s.", unit), e);
+      }
+    }
+  }
+
+  /** Thrown when a worker finds that another worker took over the unit of its lease. */
+  public static final class LeaseLostException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    LeaseLostException(String message) {
+      super(message);
+    }
+  }
+}
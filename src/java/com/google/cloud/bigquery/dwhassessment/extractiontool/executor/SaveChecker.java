@@ -29,7 +29,8 @@ public interface SaveChecker {
 
   /**
    * @param path The directory or file path containing records from the previous run(s).
-   * @return The <scriptName, chunkCheckPoint> map indicating where the new run should start from.
+   * @return The <entityName, chunkCheckPoint> map indicating where the new run should start from.
+   *     The entity name is the script name, or the partition name for hash-partitioned scripts.
    */
   ImmutableMap<String, ChunkCheckpoint> getScriptCheckPoints(Path path);
 
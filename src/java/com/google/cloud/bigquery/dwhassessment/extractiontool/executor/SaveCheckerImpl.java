@@ -21,6 +21,8 @@ import static java.util.stream.Collectors.mapping;
 import static java.util.stream.Collectors.collectingAndThen;
 
 import com.google.cloud.bigquery.dwhassessment.extractiontool.common.ChunkCheckpoint;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.db.SqlScriptVariables.QueryLogsVariables.HashPartition;
+import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
@@ -53,9 +55,12 @@ public class SaveCheckerImpl implements SaveChecker {
   // where "input_type" is one of the assessment avro files, the two timestamps are the first and
   // last timestamps, and “n” is the index of the chunk,
   // respectively. See go/chunked-dwh-assessment-extraction-dd for further details.
-  private static final Pattern INPUT_CHUNK_PATTERN =
+  // A chunk that ends among rows with the same last timestamp carries the values of the
+  // tie-breaking sorting columns of its last row after the last timestamp, e.g. "+12~3".
+  static final Pattern INPUT_CHUNK_PATTERN =
       Pattern.compile(
-          "(?P<scriptName>[\\w_]+)-(\\d{8}T\\d{6}S\\d{6})-(\\d{8}T\\d{6}S\\d{6})_(?P<chunkNumber>\\d+)\\.avro");
+          "(?P<scriptName>[\\w_]+)-(\\d{8}T\\d{6}S\\d{6})-(\\d{8}T\\d{6}S\\d{6})"
+              + "(?:\\+(?P<lastKey>-?[\\d.]+(?:~-?[\\d.]+)*))?_(?P<chunkNumber>\\d+)\\.avro");
 
   // TODO(cyulysses-corp): collect different date-time parser/formatters into the same place for
   // reliable references.
@@ -99,7 +104,7 @@ public class SaveCheckerImpl implements SaveChecker {
     }
   }
 
-  private static Instant getInstantFromFilenameTimestamp(String timestamp) {
+  static Instant getInstantFromFilenameTimestamp(String timestamp) {
     return ZonedDateTime.of(
             chunkTimestampFormatter.parse(timestamp, LocalDateTime::from), ZoneOffset.UTC)
         .toInstant();
@@ -109,9 +114,12 @@ public class SaveCheckerImpl implements SaveChecker {
   public ImmutableMap<String, ChunkCheckpoint> getScriptCheckPoints(Path path) {
     Map<String, List<Matcher>> fileMap = getFileMapSortingEachGroupByChunkNumber(path);
     ImmutableMap.Builder<String, ChunkCheckpoint> checkPointsMapBuilder = ImmutableMap.builder();
-    for (String scriptName : sortingColumnsMap.keySet()) {
-      if (fileMap.containsKey(scriptName) && !fileMap.get(scriptName).isEmpty()) {
-        List<Matcher> matchers = fileMap.get(scriptName);
+    // Hash-partitioned scripts write one chunk sequence per partition, so checkpoints are tracked
+    // per output entity rather than per script.
+    for (String entityName : fileMap.keySet()) {
+      if (sortingColumnsMap.containsKey(HashPartition.getScriptName(entityName))
+          && !fileMap.get(entityName).isEmpty()) {
+        List<Matcher> matchers = fileMap.get(entityName);
         // Note that the validator only validates information contained in the file names.
         // The timestamp comparisons are only done lexicographically without checking whether each
         // timestamp can be parsed. This is because the probability of having incorrectly generated
@@ -130,10 +138,14 @@ public class SaveCheckerImpl implements SaveChecker {
               e);
         }
         checkPointsMapBuilder.put(
-            scriptName,
+            entityName,
             ChunkCheckpoint.builder()
                 .setLastSavedInstant(lastInstant)
                 .setLastSavedChunkNumber(Integer.parseInt(lastMatcher.group("chunkNumber")))
+                .setLastSavedKey(
+                    getLastKey(
+                        lastMatcher,
+                        sortingColumnsMap.get(HashPartition.getScriptName(entityName))))
                 .build());
       }
     }
@@ -148,8 +160,34 @@ public class SaveCheckerImpl implements SaveChecker {
         .collect(ImmutableSet.toImmutableSet());
   }
 
+  /**
+   * Returns the values of the tie-breaking sorting columns of the last row of a chunk, by column,
+   * or an empty map if the chunk did not end among rows with the same timestamp.
+   */
+  private static ImmutableMap<String, String> getLastKey(
+      Matcher matcher, ImmutableList<String> sortingColumns) {
+    String lastKey = matcher.group("lastKey");
+    if (lastKey == null) {
+      return ImmutableMap.of();
+    }
+    List<String> values = Splitter.on('~').splitToList(lastKey);
+    if (values.size() != sortingColumns.size() - 1) {
+      throw new IllegalStateException(
+          String.format(
+              "The file name %s has %d key values, but the script has %d tie-breaking sorting"
+                  + " columns. Aborting.",
+              matcher.group(), values.size(), sortingColumns.size() - 1));
+    }
+    ImmutableMap.Builder<String, String> key = ImmutableMap.builder();
+    for (int i = 0; i < values.size(); i++) {
+      key.put(sortingColumns.get(i + 1), values.get(i));
+    }
+    return key.build();
+  }
+
   private static void validateSortedChunkSequence(List<Matcher> matchers) {
     String prevEnding = "-10000000T000000S000000";
+    boolean prevEndingHasKey = false;
     int prevChunkIndex = -1;
     String prevFileName = "(beginning)";
     String fileName, firstTimestamp, lastTimestamp, chunkIndex;
@@ -157,7 +195,7 @@ public class SaveCheckerImpl implements SaveChecker {
       fileName = matcher.group();
       firstTimestamp = matcher.group(2);
       lastTimestamp = matcher.group(3);
-      chunkIndex = matcher.group(4);
+      chunkIndex = matcher.group("chunkNumber");
 
       // Check that the chunk numbers of two consecutive chunk are also consecutive.
       if (Integer.parseInt(chunkIndex) - prevChunkIndex != 1) {
@@ -168,8 +206,11 @@ public class SaveCheckerImpl implements SaveChecker {
                     + " Aborting.",
                 fileName, prevChunkIndex));
       }
-      // Check that there is no overlap between the timeranges of two consecutive chunks.
-      if (firstTimestamp.compareTo(prevEnding) <= 0) {
+      // Check that there is no overlap between the timeranges of two consecutive chunks. A chunk
+      // may start at the last timestamp of the previous chunk only if the previous chunk ended
+      // among rows with that timestamp.
+      int startComparison = firstTimestamp.compareTo(prevEnding);
+      if (startComparison < 0 || (startComparison == 0 && !prevEndingHasKey)) {
         throw new IllegalStateException(
             String.format(
                 "The first time stamp of file %s is no later than the last time stamp of the"
@@ -188,6 +229,7 @@ public class SaveCheckerImpl implements SaveChecker {
       prevChunkIndex++;
       prevFileName = fileName;
       prevEnding = lastTimestamp;
+      prevEndingHasKey = matcher.group("lastKey") != null;
     }
   }
 }
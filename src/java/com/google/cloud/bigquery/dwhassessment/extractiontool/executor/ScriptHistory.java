@@ -0,0 +1,197 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigquery.dwhassessment.extractiontool.executor;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.function.ToIntFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The durations of the units of work, i.e. of the scripts and of the hash partitions of scripts, in
+ * previous runs.
+ *
+ * <p>The durations are kept in the file {@value #FILE_NAME} of the output directory, as the
+ * milliseconds per unit, so that every run continues the history of the run whose output it reads
+ * or extends. The history is used to start the longest units first, so that no long unit starts at
+ * the end of a run and extends it.
+ */
+final class ScriptHistory {
+
+  static final String FILE_NAME = ".history.properties";
+  static final String LOCK_FILE_NAME = FILE_NAME + ".lock";
+
+  private static final Logger LOGGER = Logger.getLogger(ScriptHistory.class.getName());
+  private static final String TEMP_SUFFIX = "_temp";
+  private static final Duration LOCK_RETRY_INTERVAL = Duration.ofMillis(50);
+  private static final Duration LOCK_TIMEOUT = Duration.ofSeconds(30);
+  private static final Duration STALE_LOCK_AGE = Duration.ofMinutes(1);
+
+  private final Map<String, Long> loadedMillis;
+  private final Map<String, Long> recordedMillis = new HashMap<>();
+
+  private ScriptHistory(Map<String, Long> loadedMillis) {
+    this.loadedMillis = loadedMillis;
+  }
+
+  /**
+   * Loads the history from the given directories. A directory without history is skipped; the
+   * durations of an earlier directory take precedence over those of a later one.
+   */
+  static ScriptHistory load(ImmutableList<Path> directories) {
+    Map<String, Long> millis = new HashMap<>();
+    for (Path directory : directories.reverse()) {
+      millis.putAll(read(directory.resolve(FILE_NAME)));
+    }
+    return new ScriptHistory(millis);
+  }
+
+  /** Returns the duration of the unit in the last run that extracted it, if any. */
+  synchronized Optional<Duration> getDuration(String unit) {
+    Long millis = recordedMillis.getOrDefault(unit, loadedMillis.get(unit));
+    return Optional.ofNullable(millis).map(Duration::ofMillis);
+  }
+
+  /** Records the duration of a unit of this run. */
+  synchronized void record(String unit, Duration duration) {
+    recordedMillis.put(unit, duration.toMillis());
+  }
+
+  /**
+   * Orders the units so that the longest units come first. Units without history come before all
+   * others, ordered by their cost hints, since nothing bounds how long they take.
+   *
+   * @param units The units to order.
+   * @param costHint The relative cost of a unit without history.
+   */
+  synchronized ImmutableList<String> orderLongestFirst(
+      Collection<String> units, ToIntFunction<String> costHint) {
+    Comparator<String> byHistory =
+        Comparator.comparing(
+            (String unit) -> getDuration(unit).orElse(null),
+            Comparator.nullsFirst(Comparator.reverseOrder()));
+    return units.stream()
+        .sorted(byHistory.thenComparing(Comparator.comparingInt(costHint).reversed()))
+        .collect(toImmutableList());
+  }
+
+  /**
+   * Writes the history into the given directory. The durations recorded by this run replace those
+   * in the file; the other durations of the file, e.g. those recorded by other workers, are kept.
+   * Workers that share the directory merge their durations one at a time, under the lock file
+   * {@value #LOCK_FILE_NAME}.
+   */
+  synchronized void save(Path directory) throws IOException {
+    Path path = directory.resolve(FILE_NAME);
+    Path lockPath = directory.resolve(LOCK_FILE_NAME);
+    lock(lockPath);
+    try {
+      Map<String, Long> millis = new HashMap<>(loadedMillis);
+      millis.putAll(read(path));
+      millis.putAll(recordedMillis);
+      Properties properties = new Properties();
+      millis.forEach((unit, value) -> properties.setProperty(unit, Long.toString(value)));
+      Path tempPath = Files.createTempFile(directory, FILE_NAME, TEMP_SUFFIX);
+      try {
+        try (Writer writer = Files.newBufferedWriter(tempPath, UTF_8)) {
+          properties.store(writer, "The durations of the scripts in milliseconds.");
+        }
+        Files.move(tempPath, path, StandardCopyOption.ATOMIC_MOVE);
+      } finally {
+        Files.deleteIfExists(tempPath);
+      }
+    } finally {
+      Files.deleteIfExists(lockPath);
+    }
+  }
+
+  /**
+   * Creates the lock file, waiting while another worker holds it. A lock file older than {@link
+   * #STALE_LOCK_AGE} was left behind by a worker that stopped while saving, and is removed.
+   */
+  private static void lock(Path lockPath) throws IOException {
+    Instant deadline = Instant.now().plus(LOCK_TIMEOUT);
+    while (true) {
+      try {
+        Files.createFile(lockPath);
+        return;
+      } catch (FileAlreadyExistsException e) {
+        if (Instant.now().isAfter(deadline)) {
+          throw new IOException(String.format("Timed out waiting for the lock %s.", lockPath), e);
+        }
+      }
+      try {
+        Instant lockedAt = Files.getLastModifiedTime(lockPath).toInstant();
+        if (lockedAt.plus(STALE_LOCK_AGE).isBefore(Instant.now())) {
+          LOGGER.log(Level.WARNING, "Removing the stale lock {0}.", lockPath);
+          Files.deleteIfExists(lockPath);
+          continue;
+        }
+      } catch (NoSuchFileException e) {
+        // The other worker released the lock in the meantime.
+        continue;
+      }
+      try {
+        Thread.sleep(LOCK_RETRY_INTERVAL.toMillis());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting for the lock " + lockPath);
+      }
+    }
+  }
+
+  private static Map<String, Long> read(Path path) {
+    Map<String, Long> millis = new HashMap<>();
+    if (!Files.isRegularFile(path)) {
+      return millis;
+    }
+    Properties properties = new Properties();
+    try (Reader reader = Files.newBufferedReader(path, UTF_8)) {
+      properties.load(reader);
+    } catch (IOException | IllegalArgumentException e) {
+      LOGGER.log(Level.WARNING, String.format("Ignoring the unreadable history %s.", path), e);
+      return millis;
+    }
+    for (String unit : properties.stringPropertyNames()) {
+      try {
+        millis.put(unit, Long.parseLong(properties.getProperty(unit)));
+      } catch (NumberFormatException e) {
+        LOGGER.log(Level.WARNING, "Ignoring the invalid duration of {0}.", unit);
+      }
+    }
+    return millis;
+  }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigquery.dwhassessment.extractiontool.executor;
+
+import com.google.auto.value.AutoValue;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/** Executor for the verification of the output of an extraction. */
+public interface VerifyExecutor {
+
+  /** Arguments for the verify action. */
+  @AutoValue
+  abstract class Arguments {
+    /** The output of the extraction to verify. Either a directory or a ZIP file. */
+    public abstract Path inputPath();
+
+    /** The number of threads that read the files concurrently. */
+    public abstract Integer threads();
+
+    public static Builder builder() {
+      return new AutoValue_VerifyExecutor_Arguments.Builder().setThreads(8);
+    }
+
+    /** Builder for the Arguments. */
+    @AutoValue.Builder
+    public abstract static class Builder {
+      public abstract Builder setInputPath(Path inputPath);
+
+      public abstract Builder setThreads(Integer threads);
+
+      public abstract Arguments build();
+    }
+  }
+
+  /**
+   * Runs the verification.
+   *
+   * @param arguments The arguments of the verification.
+   * @return The exit code: 0 if the output is consistent, 1 otherwise.
+   */
+  int run(Arguments arguments) throws IOException;
+}
@@ -0,0 +1,477 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigquery.dwhassessment.extractiontool.executor;
+
+import static com.google.cloud.bigquery.dwhassessment.extractiontool.executor.SaveCheckerImpl.INPUT_CHUNK_PATTERN;
+import static com.google.cloud.bigquery.dwhassessment.extractiontool.executor.SaveCheckerImpl.getInstantFromFilenameTimestamp;
+
+import com.google.cloud.bigquery.dwhassessment.extractiontool.db.SqlScriptVariables.QueryLogsVariables.HashPartition;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.google.re2j.Matcher;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.file.DataFileReader;
+import org.apache.avro.file.DataFileStream;
+import org.apache.avro.file.SeekableFileInput;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericRecord;
+
+/**
+ * Verifies the output of an extraction by reading every Avro file in it.
+ *
+ * <p>The files in a directory are split into ranges of {@value #DEFAULT_SPLIT_BYTES} bytes, and
+ * every range is read from the first sync marker in it up to the first sync marker after it, so
+ * that a large file is read by several threads at once. Only the sorting column is decoded; the
+ * other columns are skipped, which still checks that every block can be decompressed and decoded.
+ * The entries of a ZIP file cannot be read at an offset, so every entry is read as a whole.
+ *
+ * <p>For the chunks of a script in chunk mode, it checks that:
+ *
+ * <ul>
+ *   <li>the chunk numbers are consecutive and all chunks have the same schema;
+ *   <li>every chunk has rows, and the rows are sorted by the sorting column;
+ *   <li>the first and the last row match the timestamps in the file name;
+ *   <li>the time ranges of consecutive chunks do not overlap, except for the last timestamp of a
+ *       chunk that ended among rows with the same timestamp.
+ * </ul>
+ */
+public final class VerifyExecutorImpl implements VerifyExecutor {
+
+  private static final Logger LOGGER = Logger.getLogger(VerifyExecutorImpl.class.getName());
+
+  private static final long DEFAULT_SPLIT_BYTES = 64L << 20;
+
+  private static final String AVRO_SUFFIX = ".avro";
+
+  private static final String TEMP_SUFFIX = "_temp" + AVRO_SUFFIX;
+
+  private final ImmutableMap<String, ImmutableList<String>> sortingColumnsMap;
+  private final long splitBytes;
+
+  public VerifyExecutorImpl(ImmutableMap<String, ImmutableList<String>> sortingColumnsMap) {
+    this(sortingColumnsMap, DEFAULT_SPLIT_BYTES);
+  }
+
+  @VisibleForTesting
+  VerifyExecutorImpl(
+      ImmutableMap<String, ImmutableList<String>> sortingColumnsMap, long splitBytes) {
+    this.sortingColumnsMap = sortingColumnsMap;
+    this.splitBytes = splitBytes;
+  }
+
+  @Override
+  public int run(Arguments arguments) throws IOException {
+    Preconditions.checkArgument(arguments.threads() > 0, "The number of threads must be positive.");
+    Path inputPath = arguments.inputPath();
+    List<String> problems = new ArrayList<>();
+    List<OutputFile> files = new ArrayList<>();
+    ExecutorService executorService = Executors.newFixedThreadPool(arguments.threads());
+    try {
+      if (Files.isDirectory(inputPath)) {
+        try (Stream<Path> paths = Files.walk(inputPath)) {
+          for (Path path : (Iterable<Path>) paths.filter(Files::isRegularFile).sorted()::iterator) {
+            Optional<OutputFile> file =
+                createOutputFile(
+                    inputPath.relativize(path).toString(), path.getFileName().toString(), problems);
+            if (file.isPresent()) {
+              submitSplits(file.get(), path, executorService);
+              files.add(file.get());
+            }
+          }
+        }
+        verifyEntities(files, problems);
+      } else {
+        try (ZipFile zipFile = new ZipFile(inputPath.toFile())) {
+          for (ZipEntry entry : Collections.list(zipFile.entries())) {
+            if (entry.isDirectory()) {
+              continue;
+            }
+            String name = entry.getName();
+            Optional<OutputFile> file =
+                createOutputFile(name, name.substring(name.lastIndexOf('/') + 1), problems);
+            if (file.isPresent()) {
+              String labelColumn = file.get().labelColumn;
+              file.get()
+                  .splits
+                  .add(executorService.submit(() -> readEntry(zipFile, entry, labelColumn)));
+              files.add(file.get());
+            }
+          }
+          // The entries must be read before the ZIP file is closed.
+          verifyEntities(files, problems);
+        }
+      }
+    } finally {
+      executorService.shutdownNow();
+    }
+
+    if (!problems.isEmpty()) {
+      for (String problem : problems) {
+        LOGGER.log(Level.SEVERE, problem);
+      }
+      LOGGER.log(
+          Level.SEVERE,
+          "Found {0} problems in {1} files of {2}.",
+          new Object[] {problems.size(), files.size(), inputPath});
+      return 1;
+    }
+    LOGGER.log(Level.INFO, "Verified {0} files of {1}.", new Object[] {files.size(), inputPath});
+    return 0;
+  }
+
+  private Optional<OutputFile> createOutputFile(
+      String name, String fileName, List<String> problems) {
+    if (!name.endsWith(AVRO_SUFFIX)) {
+      return Optional.empty();
+    }
+    if (name.endsWith(TEMP_SUFFIX)) {
+      problems.add(String.format("%s was not finished. Resume the extraction.", name));
+      return Optional.empty();
+    }
+    Matcher matcher = INPUT_CHUNK_PATTERN.matcher(fileName);
+    if (!matcher.matches()) {
+      return Optional.of(
+          new OutputFile(
+              name,
+              fileName.substring(0, fileName.length() - AVRO_SUFFIX.length()),
+              /* chunkNumber= */ -1,
+              /* firstInstant= */ null,
+              /* lastInstant= */ null,
+              /* endsInTie= */ false,
+              /* labelColumn= */ null));
+    }
+    String entityName = matcher.group("scriptName");
+    ImmutableList<String> sortingColumns =
+        sortingColumnsMap.getOrDefault(HashPartition.getScriptName(entityName), ImmutableList.of());
+    try {
+      return Optional.of(
+          new OutputFile(
+              name,
+              entityName,
+              Integer.parseInt(matcher.group("chunkNumber")),
+              getInstantFromFilenameTimestamp(matcher.group(2)),
+              getInstantFromFilenameTimestamp(matcher.group(3)),
+              matcher.group("lastKey") != null,
+              sortingColumns.isEmpty() ? null : sortingColumns.get(0)));
+    } catch (DateTimeParseException | NumberFormatException e) {
+      problems.add(String.format("%s has an invalid chunk name: %s", name, e.getMessage()));
+      return Optional.empty();
+    }
+  }
+
+  private void submitSplits(OutputFile file, Path path, ExecutorService executorService)
+      throws IOException {
+    long size = Files.size(path);
+    long start = 0;
+    do {
+      long splitStart = start;
+      long splitEnd = Math.min(start + splitBytes, size);
+      file.splits.add(
+          executorService.submit(
+              () -> readSplit(path, splitStart, splitEnd, splitEnd == size, file.labelColumn)));
+      start = splitEnd;
+    } while (start < size);
+  }
+
+  private static SplitSummary readSplit(
+      Path path, long start, long end, boolean lastSplit, String labelColumn) throws IOException {
+    GenericDatumReader<GenericRecord> datumReader = new GenericDatumReader<>();
+    SplitSummary summary;
+    try (DataFileReader<GenericRecord> reader =
+        new DataFileReader<>(new SeekableFileInput(path.toFile()), datumReader)) {
+      // Every block belongs to the split in which the sync marker in front of it starts.
+      reader.sync(start);
+      summary = readRecords(reader, datumReader, labelColumn, () -> reader.pastSync(end));
+    }
+    if (lastSplit) {
+      AvroFiles.checkComplete(path);
+    }
+    return summary;
+  }
+
+  private static SplitSummary readEntry(ZipFile zipFile, ZipEntry entry, String labelColumn)
+      throws IOException {
+    byte[] syncMarker;
+    try (InputStream inputStream = zipFile.getInputStream(entry)) {
+      syncMarker = AvroFiles.readSyncMarker(inputStream);
+    }
+    GenericDatumReader<GenericRecord> datumReader = new GenericDatumReader<>();
+    AvroFiles.TailInputStream tailInputStream =
+        new AvroFiles.TailInputStream(zipFile.getInputStream(entry));
+    try (DataFileStream<GenericRecord> reader =
+        new DataFileStream<>(tailInputStream, datumReader)) {
+      SplitSummary summary = readRecords(reader, datumReader, labelColumn, () -> false);
+      AvroFiles.checkSyncMarker(syncMarker, tailInputStream.getTail());
+      return summary;
+    }
+  }
+
+  private static SplitSummary readRecords(
+      DataFileStream<GenericRecord> reader,
+      GenericDatumReader<GenericRecord> datumReader,
+      String labelColumn,
+      SplitEnd splitEnd)
+      throws IOException {
+    Schema schema = reader.getSchema();
+    Schema.Field labelField = labelColumn == null ? null : getField(schema, labelColumn);
+    // The datum reader skips all the columns that are not in the projection.
+    SchemaBuilder.FieldAssembler<Schema> projection =
+        SchemaBuilder.record(schema.getName()).namespace(schema.getNamespace()).fields();
+    if (labelField != null) {
+      projection.name(labelField.name()).type(labelField.schema()).noDefault();
+    }
+    datumReader.setExpected(projection.endRecord());
+
+    SplitSummary summary = new SplitSummary(schema, labelField != null);
+    GenericRecord record = null;
+    while (reader.hasNext() && !splitEnd.reached()) {
+      record = reader.next(record);
+      summary.rowCount++;
+      if (labelField == null) {
+        continue;
+      }
+      Long value = (Long) record.get(0);
+      if (value == null) {
+        summary.nullRows++;
+        continue;
+      }
+      if (summary.first == null) {
+        summary.first = value;
+      } else if (value < summary.last) {
+        summary.unsortedRows++;
+      }
+      summary.last = value;
+    }
+    return summary;
+  }
+
+  private static Schema.Field getField(Schema schema, String columnName) {
+    // The column names in the schema have the case returned by the JDBC driver.
+    return schema.getFields().stream()
+        .filter(field -> field.name().equalsIgnoreCase(columnName))
+        .findFirst()
+        .orElse(null);
+  }
+
+  private static void verifyEntities(List<OutputFile> files, List<String> problems) {
+    Map<String, List<OutputFile>> entities = new TreeMap<>();
+    for (OutputFile file : files) {
+      entities.computeIfAbsent(file.entityName, name -> new ArrayList<>()).add(file);
+    }
+    for (Map.Entry<String, List<OutputFile>> entity : entities.entrySet()) {
+      List<OutputFile> entityFiles = entity.getValue();
+      entityFiles.sort(Comparator.comparingInt(file -> file.chunkNumber));
+      long rowCount = 0;
+      OutputFile firstFile = null;
+      Schema firstSchema = null;
+      OutputFile previousFile = null;
+      SplitSummary previousSummary = null;
+      int expectedChunkNumber = 0;
+      for (OutputFile file : entityFiles) {
+        if (file.isChunk()) {
+          if (file.chunkNumber != expectedChunkNumber) {
+            problems.add(
+                String.format(
+                    "%s: expected chunk %d, possibly indicating missing files.",
+                    file.name, expectedChunkNumber));
+          }
+          expectedChunkNumber = file.chunkNumber + 1;
+        }
+        Optional<SplitSummary> optionalSummary = verifyFile(file, problems);
+        if (!optionalSummary.isPresent()) {
+          previousSummary = null;
+          continue;
+        }
+        SplitSummary summary = optionalSummary.get();
+        rowCount += summary.rowCount;
+        if (firstSchema == null) {
+          firstFile = file;
+          firstSchema = summary.schema;
+        } else if (!firstSchema.equals(summary.schema)) {
+          problems.add(
+              String.format(
+                  "%s: the schema differs from the one of %s.", file.name, firstFile.name));
+        }
+        // A chunk that ended among rows with the same timestamp is followed by the rest of them.
+        if (previousSummary != null
+            && previousSummary.last != null
+            && summary.first != null
+            && (summary.first < previousSummary.last
+                || (summary.first.equals(previousSummary.last) && !previousFile.endsInTie))) {
+          problems.add(
+              String.format(
+                  "%s: the first row is no later than the last row of %s.",
+                  file.name, previousFile.name));
+        }
+        previousFile = file;
+        previousSummary = summary;
+      }
+      LOGGER.log(
+          Level.INFO,
+          "{0}: {1} files, {2} rows.",
+          new Object[] {entity.getKey(), entityFiles.size(), rowCount});
+    }
+  }
+
+  private static Optional<SplitSummary> verifyFile(OutputFile file, List<String> problems) {
+    SplitSummary summary = null;
+    for (Future<SplitSummary> split : file.splits) {
+      try {
+        SplitSummary splitSummary = Uninterruptibles.getUninterruptibly(split);
+        if (summary == null) {
+          summary = splitSummary;
+        } else {
+          summary.append(splitSummary);
+        }
+      } catch (ExecutionException e) {
+        problems.add(String.format("%s is not readable: %s", file.name, e.getCause()));
+        return Optional.empty();
+      }
+    }
+    if (file.isChunk() && file.labelColumn != null) {
+      if (!summary.hasLabel) {
+        problems.add(
+            String.format("%s: the sorting column %s is missing.", file.name, file.labelColumn));
+      } else if (summary.rowCount == 0) {
+        problems.add(String.format("%s: the chunk has no rows.", file.name));
+      } else {
+        if (summary.nullRows > 0) {
+          problems.add(
+              String.format(
+                  "%s: %d rows have no value in %s.",
+                  file.name, summary.nullRows, file.labelColumn));
+        }
+        if (summary.unsortedRows > 0) {
+          problems.add(
+              String.format(
+                  "%s: %d rows are not sorted by %s.",
+                  file.name, summary.unsortedRows, file.labelColumn));
+        }
+        // The file name has microseconds, while the rows have milliseconds.
+        checkTimestamp(file, "first", summary.first, file.firstInstant, problems);
+        checkTimestamp(file, "last", summary.last, file.lastInstant, problems);
+      }
+    }
+    return Optional.of(summary);
+  }
+
+  private static void checkTimestamp(
+      OutputFile file, String row, Long value, Instant expected, List<String> problems) {
+    if (value != null && value != expected.toEpochMilli()) {
+      problems.add(
+          String.format(
+              "%s: the %s row has %s %s, but the file name has %s.",
+              file.name, row, file.labelColumn, Instant.ofEpochMilli(value), expected));
+    }
+  }
+
+  /** Tells whether the reader reached the end of its split. */
+  private interface SplitEnd {
+    boolean reached() throws IOException;
+  }
+
+  /** An Avro file of the output and the summaries of its splits, in order. */
+  private static final class OutputFile {
+
+    private final String name;
+    private final String entityName;
+    private final int chunkNumber;
+    private final Instant firstInstant;
+    private final Instant lastInstant;
+    private final boolean endsInTie;
+    private final String labelColumn;
+    private final List<Future<SplitSummary>> splits = new ArrayList<>();
+
+    OutputFile(
+        String name,
+        String entityName,
+        int chunkNumber,
+        Instant firstInstant,
+        Instant lastInstant,
+        boolean endsInTie,
+        String labelColumn) {
+      this.name = name;
+      this.entityName = entityName;
+      this.chunkNumber = chunkNumber;
+      this.firstInstant = firstInstant;
+      this.lastInstant = lastInstant;
+      this.endsInTie = endsInTie;
+      this.labelColumn = labelColumn;
+    }
+
+    boolean isChunk() {
+      return chunkNumber >= 0;
+    }
+  }
+
+  /** What was read from a split of a file, or from a whole file once the splits are appended. */
+  private static final class SplitSummary {
+
+    private final Schema schema;
+    private final boolean hasLabel;
+    private long rowCount;
+    private long nullRows;
+    private long unsortedRows;
+    private Long first;
+    private Long last;
+
+    SplitSummary(Schema schema, boolean hasLabel) {
+      this.schema = schema;
+      this.hasLabel = hasLabel;
+    }
+
+    void append(SplitSummary next) {
+      rowCount += next.rowCount;
+      nullRows += next.nullRows;
+      unsortedRows += next.unsortedRows;
+      if (last != null && next.first != null && next.first < last) {
+        unsortedRows++;
+      }
+      if (first == null) {
+        first = next.first;
+      }
+      if (next.last != null) {
+        last = next.last;
+      }
+    }
+  }
+}
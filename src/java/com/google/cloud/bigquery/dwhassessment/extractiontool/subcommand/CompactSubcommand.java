@@ -0,0 +1,103 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigquery.dwhassessment.extractiontool.subcommand;
+
+import com.google.cloud.bigquery.dwhassessment.extractiontool.executor.CompactExecutor;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.Callable;
+import java.util.function.Supplier;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Model.CommandSpec;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.ParameterException;
+import picocli.CommandLine.Spec;
+
+/** Subclass for the compact action of the extraction tool. */
+@Command(
+    name = "compact",
+    description = "Subcommand to merge the chunks of an extraction into fewer, larger files")
+public final class CompactSubcommand implements Callable<Integer> {
+
+  private final Supplier<CompactExecutor> executorSupplier;
+  private final CompactExecutor.Arguments.Builder argumentsBuilder =
+      CompactExecutor.Arguments.builder();
+
+  @Spec CommandSpec spec;
+
+  @Option(
+      names = {"-h", "--help"},
+      usageHelp = true)
+  private boolean help;
+
+  @Option(
+      names = {"--input", "-i"},
+      required = true,
+      description = {
+        "The output directory of the extraction whose chunks to merge.",
+        "Do not run it while an extraction writes into the directory."
+      })
+  private String inputPathString;
+
+  @Option(
+      names = "--target-size-mb",
+      defaultValue = "256",
+      description = {
+        "The size in MiB up to which consecutive chunks of a script are merged into one file."
+            + " Default: ${DEFAULT-VALUE}"
+      })
+  private void setTargetSizeMb(Integer targetSizeMb) {
+    if (targetSizeMb < 1) {
+      throw new ParameterException(
+          spec.commandLine(), "--target-size-mb must be a positive integer.");
+    }
+    argumentsBuilder.setTargetFileSize((long) targetSizeMb << 20);
+  }
+
+  @Option(
+      names = "--threads",
+      defaultValue = "8",
+      description = {
+        "The number of scripts whose chunks are merged at the same time. Default: ${DEFAULT-VALUE}"
+      })
+  private void setThreads(Integer threads) {
+    if (threads < 1) {
+      throw new ParameterException(spec.commandLine(), "--threads must be a positive integer.");
+    }
+    argumentsBuilder.setThreads(threads);
+  }
+
+  public CompactSubcommand(Supplier<CompactExecutor> executorSupplier) {
+    this.executorSupplier = executorSupplier;
+  }
+
+  private CompactExecutor.Arguments getValidatedArguments() {
+    Path path = Paths.get(inputPathString);
+    if (!Files.isDirectory(path)) {
+      throw new ParameterException(
+          spec.commandLine(),
+          String.format("--input must specify a directory, but '%s' is not a directory.", path));
+    }
+    return argumentsBuilder.setInputPath(path).build();
+  }
+
+  @Override
+  public Integer call() throws IOException {
+    return executorSupplier.get().run(getValidatedArguments());
+  }
+}
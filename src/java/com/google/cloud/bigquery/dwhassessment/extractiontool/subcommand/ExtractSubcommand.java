@@ -15,8 +15,12 @@
  */
 package com.google.cloud.bigquery.dwhassessment.extractiontool.subcommand;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.db.ColumnProjection;
 import com.google.cloud.bigquery.dwhassessment.extractiontool.db.SchemaFilter;
 import com.google.cloud.bigquery.dwhassessment.extractiontool.db.ScriptManager;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.db.SqlScriptVariables.QueryLogsVariables.SummaryGrain;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.db.StatementTimeouts;
 import com.google.cloud.bigquery.dwhassessment.extractiontool.executor.ExtractExecutor;
 import com.google.cloud.bigquery.dwhassessment.extractiontool.executor.ExtractExecutor.RunMode;
 import com.google.common.base.Joiner;
@@ -24,6 +28,7 @@ import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
 import com.google.common.collect.Sets;
 import com.google.common.collect.Sets.SetView;
 import com.google.re2j.Pattern;
@@ -40,8 +45,10 @@ import java.time.format.DateTimeParseException;
 import java.time.temporal.TemporalAccessor;
 import java.time.zone.ZoneRulesException;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.Callable;
@@ -56,10 +63,27 @@ import picocli.CommandLine.Spec;
 @Command(name = "td-extract", description = "Subcommand to extract from a Teradata data warehouse")
 public final class ExtractSubcommand implements Callable<Integer> {
 
+  private static final Pattern SOURCE_NAME_PATTERN = Pattern.compile("[A-Za-z0-9_-]+");
+  // The key of the timeouts that apply to all scripts without their own timeouts.
+  private static final String ALL_SCRIPTS = "";
+
   private final Supplier<ExtractExecutor> executorSupplier;
   private final ScriptManager scriptManager;
   private final ExtractExecutor.Arguments.Builder argumentsBuilder =
       ExtractExecutor.Arguments.builder();
+  private ImmutableSetMultimap<String, String> includeColumns = ImmutableSetMultimap.of();
+  private ImmutableSetMultimap<String, String> excludeColumns = ImmutableSetMultimap.of();
+  private ImmutableMap<String, Integer> maxTextLength = ImmutableMap.of();
+  private String baseDatabase = "DBC";
+  private ImmutableMap<String, String> scriptBaseDatabase = ImmutableMap.of();
+  private Path prevRunPath;
+  private int parallelSources;
+  private String workerId;
+  private Duration followInterval;
+  private Integer maxSessions;
+  private int minSessions = 1;
+  private ImmutableMap<String, Duration> queryTimeouts = ImmutableMap.of();
+  private ImmutableMap<String, Duration> fetchIdleTimeouts = ImmutableMap.of();
 
   private Instant getUtcInstantFromDatetimeAndZone(String dateTime, String zoneId) {
     DateTimeFormatter flexibleFormatter =
@@ -94,32 +118,68 @@ public final class ExtractSubcommand implements Callable<Integer> {
 
   @Option(
       names = "--db-address",
-      required = true,
       description = {
-        "JDBC address of the Teradata data warehouse.",
+        "JDBC address of the Teradata data warehouse. Required unless --sources-file is given.",
         "Example: jdbc:teradata://storage.my-animalclinic.example"
       })
   private String dbAddress;
 
-  @Option(names = "--db-user", required = true, description = "The user name for the database.")
+  @Option(
+      names = "--db-user",
+      description = "The user name for the database. Required unless --sources-file is given.")
   private String dbUserName;
 
   @Option(
       names = "--db-password",
       description = {
         "The password for the database. If --db-password is not followed by a string, you will be",
-        " prompted to enter the password interactively, masked."
+        " prompted to enter the password interactively, masked.",
+        "With --sources-file, this is the password of all sources that do not define their own."
       },
       arity = "0..1",
-      required = true,
       interactive = true)
-  private String dbPassword = "";
+  private String dbPassword;
+
+  @Option(
+      names = "--sources-file",
+      description = {
+        "Extract several data warehouses at once. The file holds a JSON array with one object per"
+            + " data warehouse, with the fields 'name', 'dbAddress', 'dbUser' and optionally"
+            + " 'dbPassword', 'baseDb' and 'scriptBaseDb' (an object mapping script names to"
+            + " databases). Example:",
+        "  [{\"name\": \"prod\", \"dbAddress\": \"jdbc:teradata://prod.example\","
+            + " \"dbUser\": \"dbc\", \"baseDb\": \"DBC\"}]",
+        "The output of each data warehouse is written into the subdirectory '<name>' of --output,"
+            + " or into the ZIP file '<output>_<name>.zip' if --output ends in '.zip'. Likewise,"
+            + " --prev-run-path is resolved per data warehouse. Cannot be combined with"
+            + " --db-address and --db-user."
+      })
+  private String sourcesFileString;
+
+  @Option(
+      names = "--parallel-sources",
+      defaultValue = "4",
+      description = {
+        "The number of data warehouses from --sources-file that are extracted at the same time."
+            + " Default: ${DEFAULT-VALUE}",
+        "The sessions of --hash-partitions and --max-sessions are limited for each data"
+            + " warehouse on its own, since each of them has its own database, so the tool may"
+            + " open this many times as many sessions. --memory-budget-mb is shared by them."
+      })
+  private void setParallelSources(Integer parallelSources) {
+    if (parallelSources < 1) {
+      throw new ParameterException(
+          spec.commandLine(), "--parallel-sources must be a positive integer.");
+    }
+    this.parallelSources = parallelSources;
+  }
 
   @Option(
       names = "--base-db",
       defaultValue = "DBC",
       description = "The base database from which to extract the metadata.")
   private void setBaseDatabase(String baseDatabase) {
+    this.baseDatabase = baseDatabase;
     argumentsBuilder.setBaseDatabase(baseDatabase);
   }
 
@@ -135,7 +195,8 @@ public final class ExtractSubcommand implements Callable<Integer> {
           spec.commandLine(),
           String.format("Got unknown script(s): %s", Joiner.on(", ").join(unknownScripts)));
     }
-    argumentsBuilder.setScriptBaseDatabase(ImmutableMap.copyOf(scriptBaseDatabase));
+    this.scriptBaseDatabase = ImmutableMap.copyOf(scriptBaseDatabase);
+    argumentsBuilder.setScriptBaseDatabase(this.scriptBaseDatabase);
   }
 
   @Option(
@@ -164,6 +225,46 @@ public final class ExtractSubcommand implements Callable<Integer> {
     argumentsBuilder.setScriptVariables(ImmutableMap.copyOf(scriptVars));
   }
 
+  @Option(
+      names = "--include-columns",
+      split = ",",
+      description = {
+        "Only extract the given columns for a script. The column c of a script b is specified like"
+            + " this: b.c",
+        "Columns by which chunked scripts are sorted are always extracted. Cannot be combined with"
+            + " --exclude-columns for the same script."
+      })
+  private void setIncludeColumns(List<String> columns) {
+    includeColumns = parseScriptColumns("--include-columns", columns);
+  }
+
+  @Option(
+      names = "--exclude-columns",
+      split = ",",
+      description = {
+        "Do not extract the given columns for a script. The column c of a script b is specified"
+            + " like this: b.c"
+      })
+  private void setExcludeColumns(List<String> columns) {
+    excludeColumns = parseScriptColumns("--exclude-columns", columns);
+  }
+
+  @Option(
+      names = "--max-text-length",
+      split = ",",
+      description = {
+        "Truncate all text columns of a script to the given number of characters. The maximum"
+            + " length n for a script b is set like this: b=n"
+      })
+  private void setMaxTextLength(Map<String, Integer> maxTextLength) {
+    validateScriptNames(maxTextLength.keySet());
+    if (maxTextLength.values().stream().anyMatch(length -> length < 1)) {
+      throw new ParameterException(
+          spec.commandLine(), "--max-text-length must be a positive integer.");
+    }
+    this.maxTextLength = ImmutableMap.copyOf(maxTextLength);
+  }
+
   @Option(
       names = "--time-zone",
       defaultValue = "Z",
@@ -211,6 +312,39 @@ public final class ExtractSubcommand implements Callable<Integer> {
     argumentsBuilder.setDryRun(dryRun);
   }
 
+  @Option(
+      names = "--bind-parameters",
+      description = {
+        "Execute the scripts as prepared statements, with the timestamps of their time ranges as"
+            + " bind parameters. The text of a query is then the same for every chunk, time window"
+            + " and incremental run, so that the database can reuse its plan instead of parsing and"
+            + " optimizing it again."
+      })
+  private void setBindParameters(boolean bindParameters) {
+    argumentsBuilder.setBindParameters(bindParameters);
+  }
+
+  @Option(
+      names = "--batch-small-scripts",
+      description = {
+        "Extract the small catalog scripts, e.g. roles and users, together over one connection. On"
+            + " Teradata, they are sent as a single multi-statement request, so that they share the"
+            + " logon and the round trip instead of paying for each script."
+      })
+  private void setBatchSmallScripts(boolean batchSmallScripts) {
+    argumentsBuilder.setBatchSmallScripts(batchSmallScripts);
+  }
+
+  @Option(
+      names = "--fsync-on-commit",
+      description = {
+        "Force each output file to the disk before it is committed, so that a crash cannot leave a"
+            + " committed chunk without its data. This makes the extraction slower on slow disks."
+      })
+  private void setFsyncOnCommit(boolean fsyncOnCommit) {
+    argumentsBuilder.setFsyncOnCommit(fsyncOnCommit);
+  }
+
   @Option(
       names = "--rows-per-chunk",
       defaultValue = "0",
@@ -222,6 +356,224 @@ public final class ExtractSubcommand implements Callable<Integer> {
       })
   private Integer chunkRows;
 
+  @Option(
+      names = "--hash-partitions",
+      defaultValue = "1",
+      description = {
+        "If larger than 1, the query log scripts (querylogs, sql_logs and query_references) are"
+            + " split into this many partitions by a hash of the QueryID, which are extracted"
+            + " concurrently on separate connections. Each partition is written to its own"
+            + " output, named '<scriptname>_p<index>'. Unlike time ranges, hash partitions stay"
+            + " evenly sized regardless of how the queries are distributed over time.",
+        "For INCREMENTAL and RECOVERY runs, use the same number of partitions as in the previous"
+            + " run(s)."
+      })
+  private void setHashPartitions(Integer hashPartitions) {
+    if (hashPartitions < 1) {
+      throw new ParameterException(
+          spec.commandLine(), "--hash-partitions must be a positive integer.");
+    }
+    argumentsBuilder.setHashPartitions(hashPartitions);
+  }
+
+  @Option(
+      names = "--max-sessions",
+      description = {
+        "If specified, the partitions of --hash-partitions are extracted by an adaptive number of"
+            + " concurrent sessions between --min-sessions and this. The number grows while the"
+            + " chunks are written at a steady pace and is halved when chunks slow down, when a"
+            + " session fails or when --load-query exceeds --max-load. When it is lowered, the"
+            + " sessions above it end after their current chunk of --rows-per-chunk and resume"
+            + " later. A failed partition is retried from its last saved chunk.",
+        "By default, all partitions are extracted at once."
+      })
+  private void setMaxSessions(Integer maxSessions) {
+    if (maxSessions < 1) {
+      throw new ParameterException(
+          spec.commandLine(), "--max-sessions must be a positive integer.");
+    }
+    this.maxSessions = maxSessions;
+    argumentsBuilder.setMaxSessions(maxSessions);
+  }
+
+  @Option(
+      names = "--min-sessions",
+      defaultValue = "1",
+      description =
+          "The number of sessions with which the adaptive extraction of --max-sessions starts and"
+              + " below which it never drops. Default: ${DEFAULT-VALUE}")
+  private void setMinSessions(Integer minSessions) {
+    if (minSessions < 1) {
+      throw new ParameterException(
+          spec.commandLine(), "--min-sessions must be a positive integer.");
+    }
+    this.minSessions = minSessions;
+    argumentsBuilder.setMinSessions(minSessions);
+  }
+
+  @Option(
+      names = "--load-query",
+      description = {
+        "A query that returns the load of the database as a single number, polled every 30"
+            + " seconds during the adaptive extraction of --max-sessions. Example:"
+            + " \"SELECT AVG(CPUUServ + CPUUExec) / NULLIFZERO(AVG(CPUUServ + CPUUExec +"
+            + " CPUIdle + CPUIoWait)) FROM DBC.ResUsageSpma WHERE TheDate = CURRENT_DATE\"",
+        "Requires --max-load."
+      })
+  private String loadQuery;
+
+  @Option(
+      names = "--max-load",
+      description = "The result of --load-query above which the number of sessions is lowered.")
+  private Double maxLoad;
+
+  @Option(
+      names = "--query-timeout-minutes",
+      split = ",",
+      description = {
+        "Cancel a statement whose execution takes longer than the given number of minutes. The"
+            + " timeout n for all scripts is set like this: n, and for a script b like this: b=n.",
+        "A script that timed out is retried twice, continuing from its last saved chunk if it is"
+            + " extracted in chunks into a directory. By default, statements never time out."
+      })
+  private void setQueryTimeoutMinutes(List<String> values) {
+    queryTimeouts = parseScriptMinutes("--query-timeout-minutes", values);
+  }
+
+  @Option(
+      names = "--fetch-idle-timeout-minutes",
+      split = ",",
+      description = {
+        "Cancel a statement if fetching its next row takes longer than the given number of"
+            + " minutes, e.g. because the database stalls it. The timeout is set like the one of"
+            + " --query-timeout-minutes, and a script that timed out is retried likewise."
+      })
+  private void setFetchIdleTimeoutMinutes(List<String> values) {
+    fetchIdleTimeouts = parseScriptMinutes("--fetch-idle-timeout-minutes", values);
+  }
+
+  @Option(
+      names = "--skip-timed-out-scripts",
+      description = {
+        "Continue with the next script when a script still times out after its retries, and list"
+            + " the incomplete scripts at the end. By default, the extraction fails."
+      })
+  private boolean skipTimedOutScripts;
+
+  @Option(
+      names = "--memory-budget-mb",
+      description = {
+        "The memory in MB that the rows fetched from the database and the output buffers may take"
+            + " in total. The fetch size of every statement is then set from the declared width of"
+            + " its columns and adapted to the size of the rows written so far, and the budget is"
+            + " shared by concurrent sessions and data warehouses. Set it well below the maximum"
+            + " heap size (-Xmx), which also holds the rest of the tool.",
+        "By default, the database driver's default fetch size is used."
+      })
+  private void setMemoryBudgetMb(Integer memoryBudgetMb) {
+    if (memoryBudgetMb < 1) {
+      throw new ParameterException(
+          spec.commandLine(), "--memory-budget-mb must be a positive integer.");
+    }
+    argumentsBuilder.setMemoryBudget((long) memoryBudgetMb << 20);
+  }
+
+  @Option(
+      names = "--sample",
+      description = {
+        "If specified, only this fraction of the queries (between 0.0001 and 1) is extracted by the"
+            + " query log scripts (querylogs, sql_logs and query_references). Example: 0.01.",
+        "The queries are selected deterministically by a hash of the QueryID, so that the"
+            + " extracted entities can still be joined. The ratio is recorded as 'sample_ratio' in"
+            + " the metadata of the output files, rounded to the resolution of the hash (1/65536)."
+      })
+  private void setSampleRatio(Double sampleRatio) {
+    if (sampleRatio < 0.0001 || sampleRatio > 1) {
+      throw new ParameterException(
+          spec.commandLine(), "--sample must be a fraction between 0.0001 and 1.");
+    }
+    argumentsBuilder.setSampleRatio(sampleRatio);
+  }
+
+  @Option(
+      names = "--worker-id",
+      description = {
+        "Share the extraction with other workers, e.g. instances of this tool on other hosts,"
+            + " that use the same --output directory and the same options. Each worker must have"
+            + " a unique ID.",
+        "The workers claim scripts, or the partitions of scripts with --hash-partitions, through"
+            + " lease files in the subdirectory '.leases' of --output. If a worker stops renewing"
+            + " its leases, e.g. because it crashed, another worker reclaims its work and"
+            + " continues from its last saved chunk."
+      })
+  private void setWorkerId(String workerId) {
+    if (!SOURCE_NAME_PATTERN.matches(workerId)) {
+      throw new ParameterException(
+          spec.commandLine(),
+          String.format(
+              "Got invalid worker ID '%s'. IDs may only contain letters, digits, '_' and '-'.",
+              workerId));
+    }
+    this.workerId = workerId;
+    argumentsBuilder.setWorkerId(workerId);
+  }
+
+  @Option(
+      names = "--lease-seconds",
+      defaultValue = "300",
+      description = {
+        "The number of seconds after which the lease of a worker expires if it is not renewed."
+            + " Leases are renewed while the worker is alive. Other workers wait 30 more seconds"
+            + " before reclaiming an expired lease, to tolerate clock skew between the hosts."
+            + " Default: ${DEFAULT-VALUE}"
+      })
+  private void setLeaseSeconds(Integer leaseSeconds) {
+    if (leaseSeconds < 1) {
+      throw new ParameterException(
+          spec.commandLine(), "--lease-seconds must be a positive integer.");
+    }
+    argumentsBuilder.setLeaseDuration(Duration.ofSeconds(leaseSeconds));
+  }
+
+  @Option(
+      names = "--follow",
+      description = {
+        "Keep running after the extraction and poll the query log scripts (querylogs, sql_logs"
+            + " and query_references) for new records every --follow-interval-minutes. Each poll"
+            + " continues from the last saved chunk and appends new chunks, reusing the connection"
+            + " and the compiled scripts. Records younger than 10 minutes, which the database may"
+            + " not have flushed yet, are left for the next poll. A failed poll is retried on a"
+            + " new connection in the next cycle; following stops after 5 consecutive failed"
+            + " polls.",
+        "Requires --rows-per-chunk and an output directory. Cannot be combined with"
+            + " --qrylog-timerange-end or --worker-id."
+      })
+  private boolean follow;
+
+  @Option(
+      names = "--follow-interval-minutes",
+      defaultValue = "15",
+      description =
+          "The number of minutes between two polls with --follow. Default: ${DEFAULT-VALUE}")
+  private void setFollowIntervalMinutes(Integer followIntervalMinutes) {
+    if (followIntervalMinutes < 1) {
+      throw new ParameterException(
+          spec.commandLine(), "--follow-interval-minutes must be a positive integer.");
+    }
+    this.followInterval = Duration.ofMinutes(followIntervalMinutes);
+  }
+
+  @Option(
+      names = "--follow-cycles",
+      description = "Stop after this many polls with --follow. By default, polling never stops.")
+  private void setFollowCycles(Integer followCycles) {
+    if (followCycles < 1) {
+      throw new ParameterException(
+          spec.commandLine(), "--follow-cycles must be a positive integer.");
+    }
+    argumentsBuilder.setFollowCycles(followCycles);
+  }
+
   @Option(
       names = {"--output", "-o"},
       required = true,
@@ -280,7 +632,7 @@ public final class ExtractSubcommand implements Callable<Integer> {
       split = ",\\s*",
       description = {
         "The list of scripts to execute.",
-        "By default, all available scripts will be executed."
+        "By default, all available scripts except querylogs_summary will be executed."
       })
   void setSqlScripts(List<String> sqlScripts) {
     for (String sqlScript : sqlScripts) {
@@ -296,7 +648,7 @@ public final class ExtractSubcommand implements Callable<Integer> {
       split = ",\\s*",
       description = {
         "The list of scripts to skip.",
-        "By default, all available scripts will be executed."
+        "By default, all available scripts except querylogs_summary will be executed."
       })
   void setSkipSqlScripts(List<String> skipSqlScripts) {
     for (String skipSqlScript : skipSqlScripts) {
@@ -315,6 +667,20 @@ public final class ExtractSubcommand implements Callable<Integer> {
     argumentsBuilder.setQryLogUsers(users);
   }
 
+  @Option(
+      names = "--qrylog-summary-grain",
+      defaultValue = "HOUR",
+      description = {
+        "The time granularity of the aggregated query logs extracted by the querylogs_summary"
+            + " script. Available values: ${COMPLETION-CANDIDATES}. Default: ${DEFAULT-VALUE}",
+        "The aggregation is done by the database, which makes querylogs_summary far cheaper to"
+            + " extract than querylogs. To extract only the summary, use"
+            + " '--sql-scripts querylogs_summary'."
+      })
+  void setQryLogSummaryGrain(SummaryGrain summaryGrain) {
+    argumentsBuilder.setQryLogSummaryGrain(summaryGrain);
+  }
+
   @Option(
       names = "--need-jdbc-schemas",
       negatable = true,
@@ -353,6 +719,129 @@ public final class ExtractSubcommand implements Callable<Integer> {
   }
 
   private ExtractExecutor.Arguments getValidatedArguments() {
+    if (dbAddress == null) {
+      throw new ParameterException(
+          spec.commandLine(), "Missing required option: '--db-address=<dbAddress>'");
+    }
+    if (dbUserName == null) {
+      throw new ParameterException(
+          spec.commandLine(), "Missing required option: '--db-user=<dbUserName>'");
+    }
+    if (dbPassword == null) {
+      throw new ParameterException(spec.commandLine(), "Missing required option: '--db-password'");
+    }
+    setValidatedCommonArguments();
+    return buildValidatedArguments(dbAddress, dbUserName, dbPassword);
+  }
+
+  private ImmutableList<ExtractExecutor.Arguments> getValidatedSourceArguments() {
+    if (dbAddress != null || dbUserName != null) {
+      throw new ParameterException(
+          spec.commandLine(),
+          "The option --sources-file cannot be combined with --db-address or --db-user.");
+    }
+    ImmutableList<SourceDefinition> sources = readSourcesFile();
+    setValidatedCommonArguments();
+    Path outputPath = Paths.get(outputPathString);
+    ImmutableList.Builder<ExtractExecutor.Arguments> arguments = ImmutableList.builder();
+    for (SourceDefinition source : sources) {
+      argumentsBuilder
+          .setOutputPath(getSourceOutputPath(outputPath, source.name))
+          .setBaseDatabase(source.baseDb == null ? baseDatabase : source.baseDb)
+          .setScriptBaseDatabase(
+              source.scriptBaseDb == null
+                  ? scriptBaseDatabase
+                  : ImmutableMap.copyOf(source.scriptBaseDb));
+      if (prevRunPath != null) {
+        Path sourcePrevRunPath = prevRunPath.resolve(source.name);
+        if (!Files.isDirectory(sourcePrevRunPath)) {
+          throw new ParameterException(
+              spec.commandLine(),
+              String.format(
+                  "The previous run path '%s' of source '%s' is not a directory.",
+                  sourcePrevRunPath, source.name));
+        }
+        argumentsBuilder.setPrevRunPath(sourcePrevRunPath);
+      }
+      String password = source.dbPassword == null ? dbPassword : source.dbPassword;
+      if (password == null) {
+        throw new ParameterException(
+            spec.commandLine(),
+            String.format(
+                "No password given for source '%s'. Set its 'dbPassword' or use --db-password.",
+                source.name));
+      }
+      arguments.add(buildValidatedArguments(source.dbAddress, source.dbUser, password));
+    }
+    return arguments.build();
+  }
+
+  private ImmutableList<SourceDefinition> readSourcesFile() {
+    Path sourcesFile = Paths.get(sourcesFileString);
+    ImmutableList<SourceDefinition> sources;
+    try {
+      sources =
+          ImmutableList.copyOf(
+              new ObjectMapper().readValue(sourcesFile.toFile(), SourceDefinition[].class));
+    } catch (IOException e) {
+      throw new ParameterException(
+          spec.commandLine(),
+          String.format("Unable to read --sources-file '%s': %s", sourcesFile, e.getMessage()),
+          e);
+    }
+    if (sources.isEmpty()) {
+      throw new ParameterException(
+          spec.commandLine(), String.format("No sources defined in '%s'.", sourcesFile));
+    }
+    Set<String> names = new HashSet<>();
+    for (SourceDefinition source : sources) {
+      if (source.name == null || !SOURCE_NAME_PATTERN.matches(source.name)) {
+        throw new ParameterException(
+            spec.commandLine(),
+            String.format(
+                "Got invalid source name '%s'. Names may only contain letters, digits, '_' and"
+                    + " '-'.",
+                source.name));
+      }
+      if (!names.add(source.name)) {
+        throw new ParameterException(
+            spec.commandLine(), String.format("Got duplicate source name '%s'.", source.name));
+      }
+      if (source.dbAddress == null || source.dbUser == null) {
+        throw new ParameterException(
+            spec.commandLine(),
+            String.format("Source '%s' must define 'dbAddress' and 'dbUser'.", source.name));
+      }
+      if (source.scriptBaseDb != null) {
+        validateScriptNames(source.scriptBaseDb.keySet());
+      }
+    }
+    return sources;
+  }
+
+  private Path getSourceOutputPath(Path outputPath, String sourceName) {
+    String outputPathString = outputPath.toString();
+    if (outputPathString.endsWith(".zip")) {
+      return Paths.get(
+          String.format(
+              "%s_%s.zip",
+              outputPathString.substring(0, outputPathString.length() - ".zip".length()),
+              sourceName));
+    }
+    Path sourceOutputPath = outputPath.resolve(sourceName);
+    try {
+      Files.createDirectories(sourceOutputPath);
+    } catch (IOException e) {
+      throw new ParameterException(
+          spec.commandLine(),
+          String.format(
+              "Unable to create the output directory '%s': %s", sourceOutputPath, e.getMessage()),
+          e);
+    }
+    return sourceOutputPath;
+  }
+
+  private void setValidatedCommonArguments() {
     argumentsBuilder.setNeedQueryText(true).setNeedJdbcSchemas(true);
     if (needQueryText != null) {
       argumentsBuilder.setNeedQueryText(needQueryText);
@@ -372,32 +861,46 @@ public final class ExtractSubcommand implements Callable<Integer> {
       default:
         throw new ParameterException(spec.commandLine(), "Unknown mode specified.");
     }
+    if (follow) {
+      validateAndSetFollow();
+    }
+    validateAndSetSessions();
+    setStatementTimeouts();
+    if (workerId != null && outputPathString.endsWith(".zip")) {
+      throw new ParameterException(
+          spec.commandLine(), "--worker-id requires --output to be a directory.");
+    }
     validateAndSetOutputPath();
     argumentsBuilder.setMode(mode).setChunkRows(chunkRows);
 
+    if (!Strings.isNullOrEmpty(startTimeString)) {
+      argumentsBuilder.setQryLogStartTime(
+          getUtcInstantFromDatetimeAndZone(startTimeString, timeZone));
+    }
+    if (!Strings.isNullOrEmpty(endTimeString)) {
+      argumentsBuilder.setQryLogEndTime(getUtcInstantFromDatetimeAndZone(endTimeString, timeZone));
+    }
+
+    argumentsBuilder.setColumnProjections(getColumnProjections());
+  }
+
+  private ExtractExecutor.Arguments buildValidatedArguments(
+      String address, String userName, String password) {
     try {
-      DriverManager.getConnection(dbAddress, dbUserName, dbPassword);
+      DriverManager.getConnection(address, userName, password);
     } catch (SQLException e) {
       throw new ParameterException(
           spec.commandLine(),
-          String.format("Unable to connect to '%s': %s", dbAddress, e.getMessage()),
+          String.format("Unable to connect to '%s': %s", address, e.getMessage()),
           e);
     }
 
     Properties connectionProperties = new Properties();
-    connectionProperties.put("user", dbUserName);
-    connectionProperties.put("password", dbPassword);
+    connectionProperties.put("user", userName);
+    connectionProperties.put("password", password);
     argumentsBuilder
         .setDbConnectionProperties(connectionProperties)
-        .setDbConnectionAddress(dbAddress);
-
-    if (!Strings.isNullOrEmpty(startTimeString)) {
-      argumentsBuilder.setQryLogStartTime(
-          getUtcInstantFromDatetimeAndZone(startTimeString, timeZone));
-    }
-    if (!Strings.isNullOrEmpty(endTimeString)) {
-      argumentsBuilder.setQryLogEndTime(getUtcInstantFromDatetimeAndZone(endTimeString, timeZone));
-    }
+        .setDbConnectionAddress(address);
 
     ExtractExecutor.Arguments arguments = argumentsBuilder.build();
     if (!arguments.sqlScripts().isEmpty() && !arguments.skipSqlScripts().isEmpty()) {
@@ -408,6 +911,62 @@ public final class ExtractSubcommand implements Callable<Integer> {
     return arguments;
   }
 
+  private ImmutableMap<String, ColumnProjection> getColumnProjections() {
+    SetView<String> conflictingScripts =
+        Sets.intersection(includeColumns.keySet(), excludeColumns.keySet());
+    if (!conflictingScripts.isEmpty()) {
+      throw new ParameterException(
+          spec.commandLine(),
+          String.format(
+              "The options --include-columns and --exclude-columns are mutually exclusive per"
+                  + " script, but both were given for: %s",
+              Joiner.on(", ").join(conflictingScripts)));
+    }
+    ImmutableMap.Builder<String, ColumnProjection> columnProjections = ImmutableMap.builder();
+    for (String scriptName :
+        Sets.union(
+            Sets.union(includeColumns.keySet(), excludeColumns.keySet()), maxTextLength.keySet())) {
+      ColumnProjection.Builder columnProjection =
+          ColumnProjection.builder()
+              .setIncludeColumns(includeColumns.get(scriptName))
+              .setExcludeColumns(excludeColumns.get(scriptName));
+      if (maxTextLength.containsKey(scriptName)) {
+        columnProjection.setMaxTextLength(maxTextLength.get(scriptName));
+      }
+      columnProjections.put(scriptName, columnProjection.build());
+    }
+    return columnProjections.build();
+  }
+
+  /** Parses values of the form {@code <script>.<column>} into a multimap keyed by script. */
+  private ImmutableSetMultimap<String, String> parseScriptColumns(
+      String optionName, List<String> values) {
+    ImmutableSetMultimap.Builder<String, String> scriptColumns = ImmutableSetMultimap.builder();
+    for (String value : values) {
+      String[] parts = value.split("\\.", 2);
+      if (parts.length != 2 || parts[0].isEmpty() || parts[1].isEmpty()) {
+        throw new ParameterException(
+            spec.commandLine(),
+            String.format(
+                "Got invalid value '%s' for %s. Expected <script>.<column>.", value, optionName));
+      }
+      scriptColumns.put(parts[0], parts[1]);
+    }
+    ImmutableSetMultimap<String, String> result = scriptColumns.build();
+    validateScriptNames(result.keySet());
+    return result;
+  }
+
+  private void validateScriptNames(Set<String> scriptNames) {
+    ImmutableSet<String> allScriptNames = ImmutableSet.copyOf(scriptManager.getAllScriptNames());
+    SetView<String> unknownScripts = Sets.difference(scriptNames, allScriptNames);
+    if (!unknownScripts.isEmpty()) {
+      throw new ParameterException(
+          spec.commandLine(),
+          String.format("Got unknown script(s): %s", Joiner.on(", ").join(unknownScripts)));
+    }
+  }
+
   private void validateAndSetOutputPath() {
     Path path = Paths.get(outputPathString);
     if (path.toString().endsWith(".zip") && !Files.isDirectory(path.getParent())) {
@@ -422,6 +981,92 @@ public final class ExtractSubcommand implements Callable<Integer> {
     argumentsBuilder.setOutputPath(path);
   }
 
+  private void validateAndSetSessions() {
+    if (maxSessions != null && minSessions > maxSessions) {
+      throw new ParameterException(
+          spec.commandLine(), "--min-sessions must not be larger than --max-sessions.");
+    }
+    if ((loadQuery == null) != (maxLoad == null)) {
+      throw new ParameterException(
+          spec.commandLine(), "--load-query and --max-load must be specified together.");
+    }
+    if (loadQuery != null) {
+      if (maxSessions == null) {
+        throw new ParameterException(spec.commandLine(), "--load-query requires --max-sessions.");
+      }
+      argumentsBuilder.setLoadQuery(loadQuery).setMaxLoad(maxLoad);
+    }
+  }
+
+  private void setStatementTimeouts() {
+    ImmutableMap.Builder<String, StatementTimeouts> scriptStatementTimeouts =
+        ImmutableMap.builder();
+    for (String scriptName : Sets.union(queryTimeouts.keySet(), fetchIdleTimeouts.keySet())) {
+      if (!scriptName.equals(ALL_SCRIPTS)) {
+        scriptStatementTimeouts.put(scriptName, getStatementTimeouts(scriptName));
+      }
+    }
+    argumentsBuilder
+        .setStatementTimeouts(getStatementTimeouts(ALL_SCRIPTS))
+        .setScriptStatementTimeouts(scriptStatementTimeouts.build())
+        .setSkipTimedOutScripts(skipTimedOutScripts);
+  }
+
+  private StatementTimeouts getStatementTimeouts(String scriptName) {
+    return StatementTimeouts.builder()
+        .setExecuteTimeout(
+            Optional.ofNullable(
+                queryTimeouts.getOrDefault(scriptName, queryTimeouts.get(ALL_SCRIPTS))))
+        .setFetchIdleTimeout(
+            Optional.ofNullable(
+                fetchIdleTimeouts.getOrDefault(scriptName, fetchIdleTimeouts.get(ALL_SCRIPTS))))
+        .build();
+  }
+
+  /**
+   * Parses values of the form {@code <minutes>} or {@code <script>=<minutes>} into durations keyed
+   * by script, with the key {@link #ALL_SCRIPTS} for the former.
+   */
+  private ImmutableMap<String, Duration> parseScriptMinutes(
+      String optionName, List<String> values) {
+    Map<String, Duration> durations = new HashMap<>();
+    for (String value : values) {
+      String[] parts = value.split("=", 2);
+      String scriptName = parts.length == 2 ? parts[0].trim() : ALL_SCRIPTS;
+      int minutes;
+      try {
+        minutes = Integer.parseInt(parts[parts.length - 1].trim());
+      } catch (NumberFormatException e) {
+        minutes = 0;
+      }
+      if (minutes < 1) {
+        throw new ParameterException(
+            spec.commandLine(), String.format("%s must be a positive integer.", optionName));
+      }
+      durations.put(scriptName, Duration.ofMinutes(minutes));
+    }
+    validateScriptNames(Sets.difference(durations.keySet(), ImmutableSet.of(ALL_SCRIPTS)));
+    return ImmutableMap.copyOf(durations);
+  }
+
+  private void validateAndSetFollow() {
+    if (chunkRows < 1 || outputPathString.endsWith(".zip")) {
+      throw new ParameterException(
+          spec.commandLine(),
+          "--follow requires chunked processing into a directory. Set --rows-per-chunk to a"
+              + " positive integer and --output to a directory.");
+    }
+    if (!Strings.isNullOrEmpty(endTimeString)) {
+      throw new ParameterException(
+          spec.commandLine(), "--follow cannot be combined with --qrylog-timerange-end.");
+    }
+    if (workerId != null) {
+      throw new ParameterException(
+          spec.commandLine(), "--follow cannot be combined with --worker-id.");
+    }
+    argumentsBuilder.setFollowInterval(followInterval);
+  }
+
   private void validateAndSetPrevRunPathIncrementalMode() {
     if (chunkRows < 1) {
       throw new ParameterException(
@@ -444,6 +1089,7 @@ public final class ExtractSubcommand implements Callable<Integer> {
           String.format(
               "--prev-run-path must specify a directory, but '%s' is not a directory.", path));
     }
+    prevRunPath = path;
     argumentsBuilder.setPrevRunPath(path);
   }
 
@@ -459,11 +1105,25 @@ public final class ExtractSubcommand implements Callable<Integer> {
           spec.commandLine(),
           String.format("The path '%s' you specified is not a directory.", path));
     }
+    prevRunPath = path;
     argumentsBuilder.setPrevRunPath(path);
   }
 
   @Override
   public Integer call() throws IOException, SQLException {
+    if (sourcesFileString != null) {
+      return executorSupplier.get().runAll(getValidatedSourceArguments(), parallelSources);
+    }
     return executorSupplier.get().run(getValidatedArguments());
   }
+
+  /** A data warehouse to extract, as defined in the --sources-file. */
+  static final class SourceDefinition {
+    public String name;
+    public String dbAddress;
+    public String dbUser;
+    public String dbPassword;
+    public String baseDb;
+    public Map<String, String> scriptBaseDb;
+  }
 }
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigquery.dwhassessment.extractiontool.subcommand;
+
+import com.google.cloud.bigquery.dwhassessment.extractiontool.db.SchemaFilter;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.executor.HiveExtractExecutor;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.function.Supplier;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Model.CommandSpec;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.ParameterException;
+import picocli.CommandLine.Spec;
+
+/** Subclass for the Hive extract action of the extraction tool. */
+@Command(name = "hive-extract", description = "Subcommand to extract from a Hive data warehouse")
+public final class HiveExtractSubcommand implements Callable<Integer> {
+
+  private final Supplier<HiveExtractExecutor> executorSupplier;
+  private final HiveExtractExecutor.Arguments.Builder argumentsBuilder =
+      HiveExtractExecutor.Arguments.builder();
+
+  @Spec CommandSpec spec;
+
+  @Option(
+      names = {"-h", "--help"},
+      usageHelp = true)
+  private boolean help;
+
+  @Option(
+      names = "--db-address",
+      required = true,
+      description = {
+        "JDBC address of the HiveServer2, or of the metastore database with --metastore. The JDBC"
+            + " driver must be on the class path.",
+        "Example: jdbc:hive2://hive.my-animalclinic.example:10000/default"
+      })
+  private String dbAddress;
+
+  @Option(names = "--db-user", description = "The user name for the database, if required.")
+  private String dbUserName;
+
+  @Option(
+      names = "--db-password",
+      description = {
+        "The password for the database, if required. If --db-password is not followed by a string,",
+        " you will be prompted to enter the password interactively, masked."
+      },
+      arity = "0..1",
+      interactive = true)
+  private String dbPassword;
+
+  @Option(
+      names = {"--output", "-o"},
+      required = true,
+      description = {
+        "Output path to which to write the extracted information.",
+        "The output is written into a ZIP file if the output path ends in '.zip'.",
+        "Otherwise, the output path must be an existing directory."
+      })
+  private String outputPathString;
+
+  @Option(
+      names = "--threads",
+      defaultValue = "8",
+      description = {
+        "The number of DESCRIBE statements that run at the same time, each on its own connection."
+            + " Default: ${DEFAULT-VALUE}"
+      })
+  private void setThreads(Integer threads) {
+    if (threads < 1) {
+      throw new ParameterException(spec.commandLine(), "--threads must be a positive integer.");
+    }
+    argumentsBuilder.setThreads(threads);
+  }
+
+  @Option(
+      names = "--describe-partitions",
+      negatable = true,
+      description = {
+        "Whether to describe every partition of the partitioned tables. Default true.",
+        "Tables with many partitions take one statement per partition."
+      })
+  // See ExtractSubcommand.needQueryText for why the default is applied in getValidatedArguments.
+  private Boolean describePartitions;
+
+  @Option(
+      names = "--metastore",
+      description = {
+        "Read the schemas in bulk from the database of the Hive metastore, e.g.",
+        "  jdbc:mysql://metastore.my-animalclinic.example/hive",
+        "instead of describing every table via HiveServer2. The schemas are written into"
+            + " hive_schemas.avro. --threads and --describe-partitions do not apply."
+      })
+  private boolean readMetastore;
+
+  @Option(
+      names = "--schema-filter",
+      description = {
+        "The filter on the tables to describe. By default, all tables are described.",
+        "Example:",
+        "  db:(abc|def),table:public_.*",
+        "  Only describe tables in the database abc or def that have the prefix public_.",
+        "Multiple filters can be defined by repeating the option. At least one",
+        "filter has to match (i.e. OR logic)."
+      })
+  void setSchemaFilters(List<SchemaFilter> schemaFilters) {
+    argumentsBuilder.setSchemaFilters(schemaFilters);
+  }
+
+  public HiveExtractSubcommand(Supplier<HiveExtractExecutor> executorSupplier) {
+    this.executorSupplier = executorSupplier;
+  }
+
+  private HiveExtractExecutor.Arguments getValidatedArguments() {
+    Path path = Paths.get(outputPathString);
+    if (path.toString().endsWith(".zip")) {
+      Path parent = path.toAbsolutePath().getParent();
+      if (!Files.isDirectory(parent)) {
+        throw new ParameterException(
+            spec.commandLine(),
+            String.format("Parent path of --output '%s' is not a directory.", parent));
+      }
+    } else if (!Files.isDirectory(path)) {
+      throw new ParameterException(
+          spec.commandLine(),
+          String.format("--output must specify a directory, but '%s' is not a directory.", path));
+    }
+
+    Properties connectionProperties = new Properties();
+    if (dbUserName != null) {
+      connectionProperties.put("user", dbUserName);
+    }
+    if (dbPassword != null) {
+      connectionProperties.put("password", dbPassword);
+    }
+    try {
+      // The connection is only opened to validate the address and the credentials.
+      DriverManager.getConnection(dbAddress, connectionProperties).close();
+    } catch (SQLException e) {
+      throw new ParameterException(
+          spec.commandLine(),
+          String.format("Unable to connect to '%s': %s", dbAddress, e.getMessage()),
+          e);
+    }
+    return argumentsBuilder
+        .setDbConnectionAddress(dbAddress)
+        .setDbConnectionProperties(connectionProperties)
+        .setOutputPath(path)
+        .setDescribePartitions(describePartitions == null || describePartitions)
+        .setReadMetastore(readMetastore)
+        .build();
+  }
+
+  @Override
+  public Integer call() throws IOException, SQLException {
+    return executorSupplier.get().run(getValidatedArguments());
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigquery.dwhassessment.extractiontool.subcommand;
+
+import com.google.cloud.bigquery.dwhassessment.extractiontool.executor.VerifyExecutor;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.Callable;
+import java.util.function.Supplier;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Model.CommandSpec;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.ParameterException;
+import picocli.CommandLine.Spec;
+
+/** Subclass for the verify action of the extraction tool. */
+@Command(
+    name = "verify",
+    description = "Subcommand to verify that the output of an extraction is complete and readable")
+public final class VerifySubcommand implements Callable<Integer> {
+
+  private final Supplier<VerifyExecutor> executorSupplier;
+  private final VerifyExecutor.Arguments.Builder argumentsBuilder =
+      VerifyExecutor.Arguments.builder();
+
+  @Spec CommandSpec spec;
+
+  @Option(
+      names = {"-h", "--help"},
+      usageHelp = true)
+  private boolean help;
+
+  @Option(
+      names = {"--input", "-i"},
+      required = true,
+      description = {
+        "The output of the extraction to verify, i.e. the directory or the ZIP file that was",
+        "passed as --output to the extract subcommand."
+      })
+  private String inputPathString;
+
+  @Option(
+      names = "--threads",
+      defaultValue = "8",
+      description = {
+        "The number of threads that read the files at the same time. Large files are split so that"
+            + " several threads read them. Default: ${DEFAULT-VALUE}"
+      })
+  private void setThreads(Integer threads) {
+    if (threads < 1) {
+      throw new ParameterException(spec.commandLine(), "--threads must be a positive integer.");
+    }
+    argumentsBuilder.setThreads(threads);
+  }
+
+  public VerifySubcommand(Supplier<VerifyExecutor> executorSupplier) {
+    this.executorSupplier = executorSupplier;
+  }
+
+  private VerifyExecutor.Arguments getValidatedArguments() {
+    Path path = Paths.get(inputPathString);
+    if (path.toString().endsWith(".zip")) {
+      if (!Files.isRegularFile(path)) {
+        throw new ParameterException(
+            spec.commandLine(), String.format("--input '%s' is not a file.", path));
+      }
+    } else if (!Files.isDirectory(path)) {
+      throw new ParameterException(
+          spec.commandLine(),
+          String.format("--input must specify a directory, but '%s' is not a directory.", path));
+    }
+    return argumentsBuilder.setInputPath(path).build();
+  }
+
+  @Override
+  public Integer call() throws IOException {
+    return executorSupplier.get().run(getValidatedArguments());
+  }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigquery.dwhassessment.extractiontool.db;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.cloud.bigquery.dwhassessment.extractiontool.dumper.DataEntityManager;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class AdaptiveFetchSizerTest {
+
+  // A VARCHAR(1000) and an INTEGER column.
+  private static final long DECLARED_ROW_WIDTH = (24 + 2 * 1000) + 24;
+
+  private final AdaptiveFetchSizer fetchSizer = new AdaptiveFetchSizer(100 * DECLARED_ROW_WIDTH);
+  private Connection connection;
+  private Statement statement;
+  private ResultSet resultSet;
+
+  @Before
+  public void setUp() throws SQLException {
+    connection = mock(Connection.class);
+    statement = mock(Statement.class);
+    resultSet = mock(ResultSet.class);
+    ResultSetMetaData metaData = mock(ResultSetMetaData.class);
+    when(connection.createStatement()).thenReturn(statement);
+    when(statement.executeQuery(anyString())).thenReturn(resultSet);
+    when(resultSet.getMetaData()).thenReturn(metaData);
+    when(resultSet.next()).thenReturn(true);
+    when(metaData.getColumnCount()).thenReturn(2);
+    when(metaData.getColumnType(1)).thenReturn(Types.VARCHAR);
+    when(metaData.getPrecision(1)).thenReturn(1000);
+    when(metaData.getColumnType(2)).thenReturn(Types.INTEGER);
+    when(metaData.getPrecision(2)).thenReturn(10);
+  }
+
+  @Test
+  public void executeQuery_setsFetchSizeFromDeclaredRowWidth() throws SQLException {
+    Connection watchedConnection = fetchSizer.watch(connection);
+
+    try (Statement watchedStatement = watchedConnection.createStatement()) {
+      ResultSet watchedResultSet = watchedStatement.executeQuery("SELECT * FROM t");
+      assertThat(watchedResultSet.getStatement()).isSameInstanceAs(watchedStatement);
+    }
+
+    verify(statement, never()).setFetchSize(anyInt());
+    verify(resultSet).setFetchSize(100);
+  }
+
+  @Test
+  public void next_raisesFetchSizeForSmallerEncodedRows() throws SQLException, IOException {
+    DataEntityManager dataEntityManager = mock(DataEntityManager.class);
+    when(dataEntityManager.getEntityOutputStream(anyString()))
+        .thenReturn(new ByteArrayOutputStream());
+    Connection watchedConnection = fetchSizer.watch(connection);
+    ResultSet watchedResultSet =
+        watchedConnection.createStatement().executeQuery("SELECT * FROM t");
+
+    for (int row = 0; row < 50; row++) {
+      watchedResultSet.next();
+    }
+    try (OutputStream outputStream =
+        fetchSizer.observe(dataEntityManager).getEntityOutputStream("script.avro")) {
+      outputStream.write(new byte[50 * 64]);
+    }
+    for (int row = 0; row < 50; row++) {
+      watchedResultSet.next();
+    }
+
+    // Twice the encoded size of 64 bytes per row.
+    verify(resultSet).setFetchSize((int) (100 * DECLARED_ROW_WIDTH / 128));
+  }
+
+  @Test
+  public void next_ignoresBytesOfUnflushedBlocks() throws SQLException, IOException {
+    DataEntityManager dataEntityManager = mock(DataEntityManager.class);
+    when(dataEntityManager.getEntityOutputStream(anyString()))
+        .thenReturn(new ByteArrayOutputStream());
+    Connection watchedConnection = fetchSizer.watch(connection);
+    ResultSet watchedResultSet =
+        watchedConnection.createStatement().executeQuery("SELECT * FROM t");
+    OutputStream outputStream =
+        fetchSizer.observe(dataEntityManager).getEntityOutputStream("script.avro");
+
+    for (int row = 0; row < 50; row++) {
+      watchedResultSet.next();
+    }
+    // Only a part of the block of the 50 rows reaches the stream.
+    outputStream.write(new byte[10 * 64]);
+    for (int row = 0; row < 50; row++) {
+      watchedResultSet.next();
+    }
+
+    verify(resultSet).setFetchSize(100);
+    verify(resultSet).setFetchSize(anyInt());
+  }
+
+  @Test
+  public void next_ignoresOtherFiles() throws SQLException, IOException {
+    DataEntityManager dataEntityManager = mock(DataEntityManager.class);
+    when(dataEntityManager.getEntityOutputStream(anyString()))
+        .thenReturn(new ByteArrayOutputStream());
+    Connection watchedConnection = fetchSizer.watch(connection);
+    ResultSet watchedResultSet =
+        watchedConnection.createStatement().executeQuery("SELECT * FROM t");
+
+    for (int row = 0; row < 50; row++) {
+      watchedResultSet.next();
+    }
+    try (OutputStream outputStream =
+        fetchSizer.observe(dataEntityManager).getEntityOutputStream("script.avro.index_temp")) {
+      outputStream.write(new byte[50 * 64]);
+    }
+    for (int row = 0; row < 50; row++) {
+      watchedResultSet.next();
+    }
+
+    verify(resultSet).setFetchSize(100);
+    verify(resultSet, never()).setFetchSize((int) (100 * DECLARED_ROW_WIDTH / 128));
+  }
+
+  @Test
+  public void createStatement_usesRowWidthOfEarlierStatement() throws SQLException {
+    Connection watchedConnection = fetchSizer.watch(connection);
+    watchedConnection.createStatement().executeQuery("SELECT * FROM t");
+
+    watchedConnection.createStatement();
+
+    verify(statement).setFetchSize(100);
+  }
+
+  @Test
+  public void getFetchSize_isCapped() throws SQLException {
+    AdaptiveFetchSizer largeFetchSizer = new AdaptiveFetchSizer(Long.MAX_VALUE);
+
+    largeFetchSizer.watch(connection).createStatement().executeQuery("SELECT * FROM t");
+
+    assertThat(largeFetchSizer.getFetchSize()).isEqualTo(AdaptiveFetchSizer.MAX_FETCH_SIZE);
+  }
+}
@@ -163,6 +163,39 @@ public final class AvroHelperTest {
     }
   }
 
+  @Test
+  public void parseRowToAvro_withUtf8Interner_sharesStringValues() throws Exception {
+    Schema testSchema = new Schema.Parser().parse(SIMPLE_TEST_SCHEMA);
+    Utf8Interner utf8Interner = Utf8Interner.create();
+    ResultSet resultSet =
+        connection
+            .createStatement()
+            .executeQuery("SELECT * FROM SIMPLE_TABLE UNION ALL SELECT * FROM SIMPLE_TABLE");
+
+    resultSet.next();
+    GenericRecord firstResult = parseRowToAvro(resultSet, testSchema, utf8Interner);
+    resultSet.next();
+    GenericRecord secondResult = parseRowToAvro(resultSet, testSchema, utf8Interner);
+
+    assertThat(firstResult)
+        .isEqualTo(
+            new GenericRecordBuilder(testSchema)
+                .set("ID", 0)
+                .set("NAME", "name_0")
+                .set("CHAR_COL", "  two  words")
+                .build());
+    assertThat(secondResult.get("NAME")).isSameInstanceAs(firstResult.get("NAME"));
+    assertThat(secondResult.get("CHAR_COL")).isSameInstanceAs(firstResult.get("CHAR_COL"));
+  }
+
+  @Test
+  public void trimTrailingSpaces_success() {
+    assertThat(AvroHelper.trimTrailingSpaces(" a b \t\r\n ")).isEqualTo(" a b");
+    assertThat(AvroHelper.trimTrailingSpaces("a")).isEqualTo("a");
+    assertThat(AvroHelper.trimTrailingSpaces("   ")).isEmpty();
+    assertThat(AvroHelper.trimTrailingSpaces(null)).isNull();
+  }
+
   @Test
   public void dumpResultsTest() throws Exception {
     ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
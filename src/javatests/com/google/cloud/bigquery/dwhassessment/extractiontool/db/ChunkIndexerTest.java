@@ -0,0 +1,151 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigquery.dwhassessment.extractiontool.db;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.util.stream.Collectors.toList;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.file.DataFileReader;
+import org.apache.avro.file.SeekableByteArrayInput;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.generic.GenericRecordBuilder;
+import org.apache.avro.util.Utf8;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class ChunkIndexerTest {
+
+  private static final Schema SCHEMA =
+      SchemaBuilder.record("querylogs")
+          .namespace("namespace")
+          .fields()
+          .optionalLong("StartTime")
+          .optionalString("UserName")
+          .optionalBytes("QueryID")
+          .optionalInt("ErrorCode")
+          .endRecord();
+
+  private static final ImmutableList<String> COLUMNS =
+      ImmutableList.of("starttime", "UserName", "QueryID", "Missing");
+
+  @Test
+  public void write_chunkStatistics() throws IOException {
+    ChunkIndexer indexer = new ChunkIndexer(SCHEMA, COLUMNS, /* blockRows= */ 2);
+    ByteArrayOutputStream chunk = new ByteArrayOutputStream();
+
+    writeChunk(chunk, indexer, 5);
+
+    GenericRecord index = readIndex(indexer);
+    assertThat(index.get("rowCount")).isEqualTo(5L);
+    GenericRecord columns = (GenericRecord) index.get("columns");
+    assertThat(columns.getSchema().getFields().stream().map(Schema.Field::name).collect(toList()))
+        .containsExactly("StartTime", "UserName", "QueryID")
+        .inOrder();
+    assertStatistics(columns, "StartTime", 1000L, 5000L, 0L);
+    assertStatistics(columns, "UserName", new Utf8("user1"), new Utf8("user2"), 1L);
+    assertStatistics(columns, "QueryID", null, null, 0L);
+  }
+
+  @Test
+  public void write_blocksStartAtSyncMarkers() throws IOException {
+    ChunkIndexer indexer = new ChunkIndexer(SCHEMA, COLUMNS, /* blockRows= */ 2);
+    ByteArrayOutputStream chunk = new ByteArrayOutputStream();
+
+    writeChunk(chunk, indexer, 5);
+
+    @SuppressWarnings("unchecked")
+    List<GenericRecord> blocks = (List<GenericRecord>) readIndex(indexer).get("blocks");
+    assertThat(blocks).hasSize(3);
+    try (DataFileReader<GenericRecord> reader =
+        new DataFileReader<>(
+            new SeekableByteArrayInput(chunk.toByteArray()), new GenericDatumReader<>())) {
+      for (int i = 0; i < blocks.size(); i++) {
+        GenericRecord block = blocks.get(i);
+        assertThat(block.get("rowCount")).isEqualTo(i < 2 ? 2L : 1L);
+        GenericRecord columns = (GenericRecord) block.get("columns");
+        long firstStartTime = (i * 2 + 1) * 1000L;
+        assertStatistics(
+            columns,
+            "StartTime",
+            firstStartTime,
+            Math.min(firstStartTime + 1000L, 5000L),
+            /* nullCount= */ 0L);
+        reader.seek((Long) block.get("offset"));
+        assertThat(reader.next().get("StartTime")).isEqualTo(firstStartTime);
+      }
+    }
+  }
+
+  @Test
+  public void write_emptyChunk() throws IOException {
+    ChunkIndexer indexer = new ChunkIndexer(SCHEMA, COLUMNS, /* blockRows= */ 2);
+
+    writeChunk(new ByteArrayOutputStream(), indexer, 0);
+
+    GenericRecord index = readIndex(indexer);
+    assertThat(index.get("rowCount")).isEqualTo(0L);
+    assertThat((List<?>) index.get("blocks")).isEmpty();
+    assertStatistics((GenericRecord) index.get("columns"), "StartTime", null, null, 0L);
+  }
+
+  private static void writeChunk(ByteArrayOutputStream chunk, ChunkIndexer indexer, int rows)
+      throws IOException {
+    try (AvroResultSetRecorder recorder =
+        AvroResultSetRecorder.create(SCHEMA, chunk, ImmutableMap.of(), indexer)) {
+      for (int i = 1; i <= rows; i++) {
+        recorder.add(
+            new GenericRecordBuilder(SCHEMA)
+                .set("StartTime", i * 1000L)
+                .set("UserName", i == 3 ? null : "user" + (i % 3))
+                .set("QueryID", ByteBuffer.wrap(new byte[] {(byte) i}))
+                .set("ErrorCode", i)
+                .build());
+      }
+    }
+  }
+
+  private static GenericRecord readIndex(ChunkIndexer indexer) throws IOException {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    indexer.write(outputStream);
+    try (DataFileReader<GenericRecord> reader =
+        new DataFileReader<>(
+            new SeekableByteArrayInput(outputStream.toByteArray()), new GenericDatumReader<>())) {
+      assertThat(reader.getSchema()).isEqualTo(indexer.getIndexSchema());
+      GenericRecord index = reader.next();
+      assertThat(reader.hasNext()).isFalse();
+      return index;
+    }
+  }
+
+  private static void assertStatistics(
+      GenericRecord columns, String column, Object min, Object max, long nullCount) {
+    GenericRecord statistics = (GenericRecord) columns.get(column);
+    assertThat(statistics.get("min")).isEqualTo(min);
+    assertThat(statistics.get("max")).isEqualTo(max);
+    assertThat(statistics.get("nullCount")).isEqualTo(nullCount);
+  }
+}
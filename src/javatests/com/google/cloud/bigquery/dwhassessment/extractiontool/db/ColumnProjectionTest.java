@@ -0,0 +1,124 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigquery.dwhassessment.extractiontool.db;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class ColumnProjectionTest {
+
+  private static final String SCRIPT = "SELECT * FROM T";
+  private static final Schema SCHEMA =
+      SchemaBuilder.record("test")
+          .fields()
+          .name("ID")
+          .type()
+          .optional()
+          .intType()
+          .name("Name")
+          .type()
+          .optional()
+          .stringType()
+          .name("Text")
+          .type()
+          .optional()
+          .stringType()
+          .name("StartTime")
+          .type()
+          .optional()
+          .longType()
+          .endRecord();
+
+  @Test
+  public void isIdentity_default_true() {
+    assertThat(ColumnProjection.builder().build().isIdentity()).isTrue();
+  }
+
+  @Test
+  public void isIdentity_withMaxTextLength_false() {
+    assertThat(ColumnProjection.builder().setMaxTextLength(10).build().isIdentity()).isFalse();
+  }
+
+  @Test
+  public void apply_includeColumns_success() {
+    ColumnProjection projection =
+        ColumnProjection.builder().setIncludeColumns(ImmutableSet.of("id", "Text")).build();
+
+    assertThat(projection.apply(SCRIPT, SCHEMA, ImmutableList.of()))
+        .isEqualTo("SELECT\n  \"ID\",\n  \"Text\"\nFROM (\nSELECT * FROM T\n) AS \"Projection\"");
+  }
+
+  @Test
+  public void apply_excludeColumnsAndMaxTextLength_success() {
+    ColumnProjection projection =
+        ColumnProjection.builder()
+            .setExcludeColumns(ImmutableSet.of("Name"))
+            .setMaxTextLength(100)
+            .build();
+
+    assertThat(projection.apply(SCRIPT, SCHEMA, ImmutableList.of()))
+        .isEqualTo(
+            "SELECT\n"
+                + "  \"ID\",\n"
+                + "  SUBSTR(\"Text\", 1, 100) AS \"Text\",\n"
+                + "  \"StartTime\"\n"
+                + "FROM (\nSELECT * FROM T\n) AS \"Projection\"");
+  }
+
+  @Test
+  public void apply_sortingColumns_keptAndOrdered() {
+    ColumnProjection projection =
+        ColumnProjection.builder().setIncludeColumns(ImmutableSet.of("ID")).build();
+
+    assertThat(projection.apply(SCRIPT, SCHEMA, ImmutableList.of("StartTime")))
+        .isEqualTo(
+            "SELECT\n  \"ID\",\n  \"StartTime\"\nFROM (\nSELECT * FROM T\n) AS \"Projection\"\n"
+                + "ORDER BY \"StartTime\" ASC NULLS FIRST");
+  }
+
+  @Test
+  public void apply_unknownColumn_fail() {
+    ColumnProjection projection =
+        ColumnProjection.builder().setExcludeColumns(ImmutableSet.of("ID", "Unknown")).build();
+
+    IllegalArgumentException e =
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> projection.apply(SCRIPT, SCHEMA, ImmutableList.of()));
+
+    assertThat(e).hasMessageThat().isEqualTo("Cannot exclude unknown column(s): Unknown");
+  }
+
+  @Test
+  public void apply_allColumnsExcluded_fail() {
+    ColumnProjection projection =
+        ColumnProjection.builder()
+            .setExcludeColumns(ImmutableSet.of("ID", "Name", "Text", "StartTime"))
+            .build();
+
+    assertThrows(
+        IllegalStateException.class, () -> projection.apply(SCRIPT, SCHEMA, ImmutableList.of()));
+  }
+}
@@ -13,9 +13,11 @@ import com.github.jknack.handlebars.Context;
 import com.github.jknack.handlebars.Handlebars;
 import com.github.jknack.handlebars.Options;
 import com.google.cloud.bigquery.dwhassessment.extractiontool.db.SqlScriptVariables.QueryLogsVariables;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.db.SqlScriptVariables.QueryLogsVariables.HashPartition;
 import com.google.cloud.bigquery.dwhassessment.extractiontool.db.SqlScriptVariables.QueryLogsVariables.TimeRange;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import java.util.Map;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
@@ -141,6 +143,59 @@ public final class HandlebarsHelpersTest {
                 + "\"testTableAlias\".\"UserName\" IN ('user1','user2')");
   }
 
+  @Test
+  public void whereClauseForQuerylogs_timeRangeAndHashPartition_success() {
+    QueryLogsVariables queryLogsVariables =
+        QueryLogsVariables.builder()
+            .setTimeRange(
+                TimeRange.builder()
+                    .setStartTimestamp("StartTimestamp")
+                    .setEndTimestamp("EndTimeStamp")
+                    .build())
+            .setHashPartition(HashPartition.create(8, 3))
+            .build();
+    Options options =
+        getOptions(
+            SqlScriptVariables.builder().setQueryLogsVariables(queryLogsVariables).build(),
+            COMMAND_PARAMS);
+
+    // Act
+    CharSequence result = whereClauseForQuerylogs(queryLogsVariables, options);
+
+    // Assert
+    assertThat(result)
+        .isEqualTo(
+            "\nWHERE\n"
+                + "\"testTableAlias\".\"StartTime\" BETWEEN TIMESTAMP 'StartTimestamp' AND"
+                + " TIMESTAMP 'EndTimeStamp'"
+                + "\nAND\n"
+                + "MOD(HASHBUCKET(HASHROW(\"testTableAlias\".\"QueryID\")), 8) = 3");
+  }
+
+  @Test
+  public void whereClauseForQuerylogs_usersAndSample_success() {
+    QueryLogsVariables queryLogsVariables =
+        QueryLogsVariables.builder()
+            .setUsers(ImmutableSet.of("user"))
+            .setSampleRatio(0.025)
+            .build();
+    Options options =
+        getOptions(
+            SqlScriptVariables.builder().setQueryLogsVariables(queryLogsVariables).build(),
+            COMMAND_PARAMS);
+
+    // Act
+    CharSequence result = whereClauseForQuerylogs(queryLogsVariables, options);
+
+    // Assert
+    assertThat(result)
+        .isEqualTo(
+            "\nWHERE\n"
+                + "\"testTableAlias\".\"UserName\" IN ('user')"
+                + "\nAND\n"
+                + "MOD(HASHBUCKET(HASHROW(\"testTableAlias\".\"QueryID\")), 65536) < 1638");
+  }
+
   @Test
   public void whereClauseWithTimeRange_noPassedParameter_fail() {
     QueryLogsVariables queryLogsVariables = QueryLogsVariables.builder().build();
@@ -194,6 +249,206 @@ public final class HandlebarsHelpersTest {
                 + " TIMESTAMP 'EndTimeStamp'");
   }
 
+  @Test
+  public void whereClauseWithTimeRange_withStartKey_success() {
+    QueryLogsVariables queryLogsVariables =
+        QueryLogsVariables.builder()
+            .setTimeRange(
+                TimeRange.builder()
+                    .setStartTimestamp("StartTimestamp")
+                    .setEndTimestamp("EndTimeStamp")
+                    .setStartKey(ImmutableMap.of("QueryID", "12", "RowNo", "3"))
+                    .build())
+            .build();
+    Options options =
+        getOptions(
+            SqlScriptVariables.builder()
+                .setVars(ImmutableMap.of("columnNameQueryID", "OtherQueryID"))
+                .setQueryLogsVariables(queryLogsVariables)
+                .build(),
+            COMMAND_PARAMS);
+
+    // Act
+    CharSequence result = whereClauseWithTimeRange(queryLogsVariables, options);
+
+    // Assert
+    assertThat(result)
+        .isEqualTo(
+            "WHERE \"testTableAlias\".\"testColumnName\" BETWEEN TIMESTAMP 'StartTimestamp' AND"
+                + " TIMESTAMP 'EndTimeStamp' AND (\"testTableAlias\".\"testColumnName\" >"
+                + " TIMESTAMP 'StartTimestamp' OR \"testTableAlias\".\"OtherQueryID\" > 12 OR"
+                + " (\"testTableAlias\".\"OtherQueryID\" = 12 AND"
+                + " (\"testTableAlias\".\"RowNo\" > 3)))");
+  }
+
+  @Test
+  public void whereClauseWithTimeRange_withPartitionColumnVariable_addsPartitionClause() {
+    QueryLogsVariables queryLogsVariables =
+        QueryLogsVariables.builder()
+            .setTimeRange(
+                TimeRange.builder()
+                    .setStartTimestamp("2022-01-01 00:00:00+00:00")
+                    .setEndTimestamp("2022-01-31 23:59:59.999999+00:00")
+                    .build())
+            .build();
+    Options options =
+        getOptions(
+            SqlScriptVariables.builder()
+                .setVars(ImmutableMap.of("partitionColumn", "LogDate"))
+                .setQueryLogsVariables(queryLogsVariables)
+                .build(),
+            COMMAND_PARAMS);
+
+    // Act
+    CharSequence result = whereClauseWithTimeRange(queryLogsVariables, options);
+
+    // Assert
+    assertThat(result)
+        .isEqualTo(
+            "WHERE \"testTableAlias\".\"testColumnName\" BETWEEN TIMESTAMP '2022-01-01"
+                + " 00:00:00+00:00' AND TIMESTAMP '2022-01-31 23:59:59.999999+00:00' AND"
+                + " \"testTableAlias\".\"LogDate\" BETWEEN DATE '2021-12-31' AND DATE"
+                + " '2022-02-01'");
+  }
+
+  @Test
+  public void whereClauseForQuerylogs_withPartitionColumnOption_addsPartitionClause() {
+    QueryLogsVariables queryLogsVariables =
+        QueryLogsVariables.builder()
+            .setTimeRange(
+                TimeRange.builder().setStartTimestamp("2022-01-01 00:00:00+00:00").build())
+            .build();
+    Options options =
+        getOptions(
+            SqlScriptVariables.builder().setQueryLogsVariables(queryLogsVariables).build(),
+            new Object[] {"QLV"},
+            ImmutableMap.of("partitionColumn", "LogDate"));
+
+    // Act
+    CharSequence result = whereClauseForQuerylogs(queryLogsVariables, options);
+
+    // Assert
+    assertThat(result)
+        .isEqualTo(
+            "\nWHERE\n\"QLV\".\"StartTime\" BETWEEN TIMESTAMP '2022-01-01 00:00:00+00:00' AND"
+                + " TIMESTAMP '9999-12-31 23:59:59.99+00:00' AND \"QLV\".\"LogDate\" BETWEEN"
+                + " DATE '2021-12-31' AND DATE '9999-12-31'");
+  }
+
+  @Test
+  public void whereClauseWithTimeRange_partitionColumnWithUnboundedTimeRange_noPartitionClause() {
+    QueryLogsVariables queryLogsVariables =
+        QueryLogsVariables.builder().setTimeRange(TimeRange.builder().build()).build();
+    Options options =
+        getOptions(
+            SqlScriptVariables.builder()
+                .setVars(ImmutableMap.of("partitionColumn", "LogDate"))
+                .setQueryLogsVariables(queryLogsVariables)
+                .build(),
+            COMMAND_PARAMS);
+
+    // Act
+    CharSequence result = whereClauseWithTimeRange(queryLogsVariables, options);
+
+    // Assert
+    assertThat(result)
+        .isEqualTo(
+            "WHERE \"testTableAlias\".\"testColumnName\" BETWEEN TIMESTAMP '0001-01-01"
+                + " 00:00:00+00:00' AND TIMESTAMP '9999-12-31 23:59:59.99+00:00'");
+  }
+
+  @Test
+  public void timeRange_nonNumericStartKey_fail() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> TimeRange.builder().setStartKey(ImmutableMap.of("QueryID", "1 OR 1=1")).build());
+  }
+
+  @Test
+  public void whereClauseWithTimeRange_withHashPartition_success() {
+    QueryLogsVariables queryLogsVariables =
+        QueryLogsVariables.builder()
+            .setTimeRange(
+                TimeRange.builder()
+                    .setStartTimestamp("StartTimestamp")
+                    .setEndTimestamp("EndTimeStamp")
+                    .build())
+            .setHashPartition(HashPartition.create(4, 0))
+            .build();
+    Options options =
+        getOptions(
+            SqlScriptVariables.builder().setQueryLogsVariables(queryLogsVariables).build(),
+            new Object[] {"testTableAlias", "testColumnName", "QueryID"});
+
+    // Act
+    CharSequence result = whereClauseWithTimeRange(queryLogsVariables, options);
+
+    // Assert
+    assertThat(result)
+        .isEqualTo(
+            "WHERE \"testTableAlias\".\"testColumnName\" BETWEEN TIMESTAMP 'StartTimestamp' AND"
+                + " TIMESTAMP 'EndTimeStamp'"
+                + " AND MOD(HASHBUCKET(HASHROW(\"testTableAlias\".\"QueryID\")), 4) = 0");
+  }
+
+  @Test
+  public void whereClauseWithTimeRange_withHashPartitionAndSample_success() {
+    QueryLogsVariables queryLogsVariables =
+        QueryLogsVariables.builder()
+            .setHashPartition(HashPartition.create(4, 2))
+            .setSampleRatio(0.5)
+            .build();
+    Options options =
+        getOptions(
+            SqlScriptVariables.builder().setQueryLogsVariables(queryLogsVariables).build(),
+            new Object[] {"testTableAlias", "testColumnName", "QueryID"});
+
+    // Act
+    CharSequence result = whereClauseWithTimeRange(queryLogsVariables, options);
+
+    // Assert
+    assertThat(result)
+        .isEqualTo(
+            "WHERE MOD(HASHBUCKET(HASHROW(\"testTableAlias\".\"QueryID\")), 4) = 2"
+                + " AND MOD(HASHBUCKET(HASHROW(\"testTableAlias\".\"QueryID\")), 65536) < 32768");
+  }
+
+  @Test
+  public void whereClauseWithTimeRange_sampleWithoutQueryIdColumn_ignored() {
+    QueryLogsVariables queryLogsVariables =
+        QueryLogsVariables.builder().setSampleRatio(0.5).build();
+    Options options =
+        getOptions(
+            SqlScriptVariables.builder().setQueryLogsVariables(queryLogsVariables).build(),
+            COMMAND_PARAMS);
+
+    // Act
+    CharSequence result = whereClauseWithTimeRange(queryLogsVariables, options);
+
+    // Assert
+    assertThat(result).isEqualTo("");
+  }
+
+  @Test
+  public void whereClauseWithTimeRange_hashPartitionOnOverwrittenColumn_success() {
+    QueryLogsVariables queryLogsVariables =
+        QueryLogsVariables.builder().setHashPartition(HashPartition.create(4, 1)).build();
+    Options options =
+        getOptions(
+            SqlScriptVariables.builder()
+                .setVars(ImmutableMap.of("columnNameQueryID", "OtherQueryID"))
+                .setQueryLogsVariables(queryLogsVariables)
+                .build(),
+            new Object[] {"testTableAlias", "testColumnName", "QueryID"});
+
+    // Act
+    CharSequence result = whereClauseWithTimeRange(queryLogsVariables, options);
+
+    // Assert
+    assertThat(result)
+        .isEqualTo("WHERE MOD(HASHBUCKET(HASHROW(\"testTableAlias\".\"OtherQueryID\")), 4) = 1");
+  }
+
   @Test
   public void whereClauseWithTimeRange_emptyTableAlias_fail() {
     QueryLogsVariables queryLogsVariables = QueryLogsVariables.builder().build();
@@ -298,11 +553,16 @@ public final class HandlebarsHelpersTest {
   }
 
   private Options getOptions(SqlScriptVariables model, Object[] params) {
+    return getOptions(model, params, ImmutableMap.of());
+  }
+
+  private Options getOptions(SqlScriptVariables model, Object[] params, Map<String, Object> hash) {
     Handlebars handlebars = mock(Handlebars.class);
     Context context = Context.newContext(model);
 
     return new Options.Builder(handlebars, "helperName", VAR, context, EMPTY)
         .setParams(params)
+        .setHash(hash)
         .build();
   }
 }
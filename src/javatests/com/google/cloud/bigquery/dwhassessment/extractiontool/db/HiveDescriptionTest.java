@@ -0,0 +1,149 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigquery.dwhassessment.extractiontool.db;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.cloud.bigquery.dwhassessment.extractiontool.db.HiveDescription.Column;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class HiveDescriptionTest {
+
+  private Connection connection;
+
+  @Before
+  public void setUp() throws SQLException {
+    connection = DriverManager.getConnection("jdbc:hsqldb:mem:hive-description-test");
+    connection
+        .createStatement()
+        .execute(
+            "CREATE TABLE describe_output (idx INT, col_name VARCHAR(100),"
+                + " data_type VARCHAR(100), col_comment VARCHAR(100))");
+  }
+
+  @After
+  public void tearDown() throws SQLException {
+    connection.createStatement().execute("DROP TABLE describe_output");
+    connection.close();
+  }
+
+  @Test
+  public void parse_partitionedTable() throws SQLException {
+    ResultSet resultSet =
+        describeOutput(
+            new String[] {"# col_name            ", "data_type           ", "comment"},
+            new String[] {"id                  ", "int                 ", "order id"},
+            new String[] {"amount              ", "decimal(10,2)       ", null},
+            new String[] {"", null, null},
+            new String[] {"# Partition Information", null, null},
+            new String[] {"# col_name            ", "data_type           ", "comment"},
+            new String[] {"dt                  ", "string              ", null},
+            new String[] {"", null, null},
+            new String[] {"# Detailed Table Information", null, null},
+            new String[] {"Database:           ", "sales               ", null},
+            new String[] {"Owner:              ", "hive                ", null},
+            new String[] {"Location:           ", "hdfs://nn:8020/warehouse/sales.db/orders", null},
+            new String[] {"Table Type:         ", "MANAGED_TABLE       ", null},
+            new String[] {"Table Parameters:", null, null},
+            new String[] {"", "numFiles            ", "4                   "},
+            new String[] {"", "totalSize           ", "1024                "},
+            new String[] {"", null, null},
+            new String[] {"# Storage Information", null, null},
+            new String[] {
+              "SerDe Library:      ", "org.apache.hadoop.hive.ql.io.orc.OrcSerde", null
+            },
+            new String[] {"Storage Desc Params:", null, null},
+            new String[] {"", "serialization.format", "1                   "});
+
+    HiveDescription description = HiveDescription.parse(resultSet);
+
+    assertThat(description.columns())
+        .containsExactly(
+            Column.create("id", "int", "order id"), Column.create("amount", "decimal(10,2)", ""))
+        .inOrder();
+    assertThat(description.partitionKeys()).containsExactly(Column.create("dt", "string", ""));
+    assertThat(description.details())
+        .containsExactly(
+            "Database", "sales",
+            "Owner", "hive",
+            "Location", "hdfs://nn:8020/warehouse/sales.db/orders",
+            "Table Type", "MANAGED_TABLE",
+            "SerDe Library", "org.apache.hadoop.hive.ql.io.orc.OrcSerde")
+        .inOrder();
+    assertThat(description.parameters()).containsExactly("numFiles", "4", "totalSize", "1024");
+  }
+
+  @Test
+  public void parse_partition() throws SQLException {
+    ResultSet resultSet =
+        describeOutput(
+            new String[] {"# col_name            ", "data_type           ", "comment"},
+            new String[] {"id                  ", "int                 ", null},
+            new String[] {"", null, null},
+            new String[] {"# Partition Information", null, null},
+            new String[] {"# col_name            ", "data_type           ", "comment"},
+            new String[] {"dt                  ", "string              ", null},
+            new String[] {"", null, null},
+            new String[] {"# Detailed Partition Information", null, null},
+            new String[] {"Partition Value:    ", "[2021-07-01]        ", null},
+            new String[] {"Location:           ", "hdfs://nn:8020/orders/dt=2021-07-01", null},
+            new String[] {"Partition Parameters:", null, null},
+            new String[] {"", "numRows             ", "42                  "});
+
+    HiveDescription description = HiveDescription.parse(resultSet);
+
+    assertThat(description.details())
+        .containsExactly(
+            "Partition Value", "[2021-07-01]",
+            "Location", "hdfs://nn:8020/orders/dt=2021-07-01");
+    assertThat(description.parameters()).containsExactly("numRows", "42");
+  }
+
+  @Test
+  public void parse_emptyResult() throws SQLException {
+    HiveDescription description = HiveDescription.parse(describeOutput());
+
+    assertThat(description.columns()).isEmpty();
+    assertThat(description.partitionKeys()).isEmpty();
+    assertThat(description.details()).isEmpty();
+    assertThat(description.parameters()).isEmpty();
+  }
+
+  private ResultSet describeOutput(String[]... rows) throws SQLException {
+    PreparedStatement insert =
+        connection.prepareStatement("INSERT INTO describe_output VALUES (?, ?, ?, ?)");
+    for (int i = 0; i < rows.length; i++) {
+      insert.setInt(1, i);
+      insert.setString(2, rows[i][0]);
+      insert.setString(3, rows[i][1]);
+      insert.setString(4, rows[i][2]);
+      insert.execute();
+    }
+    return connection
+        .createStatement()
+        .executeQuery("SELECT col_name, data_type, col_comment FROM describe_output ORDER BY idx");
+  }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigquery.dwhassessment.extractiontool.db;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.re2j.Pattern;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.avro.generic.GenericRecord;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class HiveMetastoreReaderTest {
+
+  private Connection connection;
+
+  @Before
+  public void setUp() throws SQLException {
+    // A subset of the metastore schema, as created by the Hive schematool.
+    connection = DriverManager.getConnection("jdbc:hsqldb:mem:hive-metastore-test");
+    try (Statement statement = connection.createStatement()) {
+      statement.execute(
+          "CREATE TABLE DBS (DB_ID BIGINT, NAME VARCHAR(128), DB_LOCATION_URI VARCHAR(4000))");
+      statement.execute(
+          "CREATE TABLE TBLS (TBL_ID BIGINT, DB_ID BIGINT, SD_ID BIGINT, TBL_NAME VARCHAR(256),"
+              + " TBL_TYPE VARCHAR(128), OWNER VARCHAR(767), CREATE_TIME INT,"
+              + " LAST_ACCESS_TIME INT)");
+      statement.execute("CREATE TABLE SDS (SD_ID BIGINT, CD_ID BIGINT, LOCATION VARCHAR(4000))");
+      statement.execute(
+          "CREATE TABLE COLUMNS_V2 (CD_ID BIGINT, COLUMN_NAME VARCHAR(767),"
+              + " TYPE_NAME VARCHAR(4000), INTEGER_IDX INT)");
+      statement.execute(
+          "CREATE TABLE PARTITION_KEYS (TBL_ID BIGINT, PKEY_NAME VARCHAR(128),"
+              + " PKEY_TYPE VARCHAR(767), INTEGER_IDX INT)");
+      statement.execute(
+          "CREATE TABLE PARTITIONS (PART_ID BIGINT, TBL_ID BIGINT, SD_ID BIGINT,"
+              + " PART_NAME VARCHAR(767))");
+
+      statement.execute("INSERT INTO DBS VALUES (1, 'sales', '/sales.db'), (2, 'tmp', '/tmp.db')");
+      statement.execute(
+          "INSERT INTO TBLS VALUES"
+              + " (10, 1, 100, 'orders', 'MANAGED_TABLE', 'hive', 1625097600, 0),"
+              + " (11, 1, 101, 'customers', 'EXTERNAL_TABLE', 'etl', 1625097601, 1625184000),"
+              + " (12, 2, 102, 'scratch', 'MANAGED_TABLE', 'hive', 1625097602, 0)");
+      statement.execute(
+          "INSERT INTO SDS VALUES (100, 1000, '/sales.db/orders'),"
+              + " (101, 1001, '/sales.db/customers'), (102, 1002, '/tmp.db/scratch'),"
+              + " (200, 1000, '/sales.db/orders/dt=2021-07-01'),"
+              + " (201, 1000, '/sales.db/orders/dt=2021-07-02')");
+      statement.execute(
+          "INSERT INTO COLUMNS_V2 VALUES (1000, 'amount', 'decimal(10,2)', 1),"
+              + " (1000, 'id', 'int', 0), (1001, 'name', 'string', 0), (1002, 'x', 'int', 0)");
+      statement.execute("INSERT INTO PARTITION_KEYS VALUES (10, 'dt', 'string', 0)");
+      statement.execute(
+          "INSERT INTO PARTITIONS VALUES (20, 10, 201, 'dt=2021-07-02'),"
+              + " (21, 10, 200, 'dt=2021-07-01')");
+    }
+  }
+
+  @After
+  public void tearDown() throws SQLException {
+    try (Statement statement = connection.createStatement()) {
+      statement.execute("DROP SCHEMA PUBLIC CASCADE");
+    }
+    connection.close();
+  }
+
+  @Test
+  public void read_allTables() throws SQLException {
+    ListRecorder records = new ListRecorder();
+
+    int tableCount = new HiveMetastoreReader(ImmutableList.of()).read(connection, records);
+
+    assertThat(tableCount).isEqualTo(3);
+    assertThat(records.records).hasSize(3);
+    GenericRecord orders = records.records.get(0);
+    assertThat(orders.get("schemaName")).isEqualTo("sales");
+    assertThat(orders.get("name")).isEqualTo("orders");
+    assertThat(orders.get("type")).isEqualTo("MANAGED_TABLE");
+    assertThat(orders.get("createTime")).isEqualTo(1625097600L);
+    assertThat(orders.get("lastAccessTime")).isEqualTo(0L);
+    assertThat(orders.get("owner")).isEqualTo("hive");
+    assertThat(orders.get("location")).isEqualTo("/sales.db/orders");
+    assertThat(orders.get("fields").toString())
+        .isEqualTo(
+            "[{\"name\": \"id\", \"type\": \"int\"},"
+                + " {\"name\": \"amount\", \"type\": \"decimal(10,2)\"}]");
+    assertThat(orders.get("partitionKeys").toString())
+        .isEqualTo("[{\"name\": \"dt\", \"type\": \"string\"}]");
+    assertThat(orders.get("partitions").toString())
+        .isEqualTo(
+            "[{\"name\": \"dt=2021-07-01\", \"location\": \"/sales.db/orders/dt=2021-07-01\"},"
+                + " {\"name\": \"dt=2021-07-02\", \"location\":"
+                + " \"/sales.db/orders/dt=2021-07-02\"}]");
+    GenericRecord customers = records.records.get(1);
+    assertThat(customers.get("name")).isEqualTo("customers");
+    assertThat(customers.get("lastAccessTime")).isEqualTo(1625184000L);
+    assertThat(customers.get("fields").toString())
+        .isEqualTo("[{\"name\": \"name\", \"type\": \"string\"}]");
+    assertThat(customers.get("partitionKeys").toString()).isEqualTo("[]");
+    assertThat(customers.get("partitions").toString()).isEqualTo("[]");
+    assertThat(records.records.get(2).get("schemaName")).isEqualTo("tmp");
+  }
+
+  @Test
+  public void read_filteredTables() throws SQLException {
+    ListRecorder records = new ListRecorder();
+    SchemaFilter filter =
+        SchemaFilter.builder()
+            .setDatabaseName(Pattern.compile("sales"))
+            .setTableName(Pattern.compile("cust.*"))
+            .build();
+
+    int tableCount = new HiveMetastoreReader(ImmutableList.of(filter)).read(connection, records);
+
+    assertThat(tableCount).isEqualTo(1);
+    assertThat(records.records.get(0).get("name")).isEqualTo("customers");
+  }
+
+  /** Keeps the records in memory. */
+  private static final class ListRecorder implements ResultSetRecorder<GenericRecord> {
+
+    private final List<GenericRecord> records = new ArrayList<>();
+
+    @Override
+    public void add(GenericRecord record) {
+      records.add(record);
+    }
+
+    @Override
+    public void close() {}
+  }
+}
@@ -135,6 +135,109 @@ public final class ScriptManagerImplTest {
     assertThrows(NoSuchElementException.class, reader::next);
   }
 
+  @Test
+  public void executeScript_withSampleRatio_recordsEffectiveSampleRatioInMetadata()
+      throws Exception {
+    scriptManager = new ScriptManagerImpl(scriptRunner, scriptsMap, sortingColumnsMap);
+    Connection connection = DriverManager.getConnection("jdbc:hsqldb:mem:db_sample");
+    Statement baseStmt = connection.createStatement();
+    baseStmt.execute("CREATE Table TestTable (" + "ID INTEGER," + "NAME VARCHAR(100)" + ")");
+    baseStmt.close();
+    connection.commit();
+    SqlTemplateRenderer sampleSqlTemplateRenderer =
+        new SqlTemplateRendererImpl(
+            SqlScriptVariables.builder()
+                .setBaseDatabase("test-db")
+                .setQueryLogsVariables(
+                    SqlScriptVariables.QueryLogsVariables.builder().setSampleRatio(0.01).build()));
+
+    scriptManager.executeScript(
+        connection,
+        /*dryRun=*/ false,
+        sampleSqlTemplateRenderer,
+        "default",
+        new FakeDataEntityManagerImpl(outputStream),
+        5000,
+        0);
+
+    DatumReader<Record> datumReader = new GenericDatumReader<>();
+    DataFileReader<Record> reader =
+        new DataFileReader<>(new SeekableByteArrayInput(outputStream.toByteArray()), datumReader);
+    // 655 of the 65536 sample buckets are selected.
+    assertThat(reader.getMetaString(ScriptManagerImpl.SAMPLE_RATIO_METADATA_KEY))
+        .isEqualTo("0.0099945068359375");
+  }
+
+  @Test
+  public void executeScript_withColumnProjection_success() throws Exception {
+    scriptManager = new ScriptManagerImpl(scriptRunner, scriptsMap, sortingColumnsMap);
+    Connection connection = DriverManager.getConnection("jdbc:hsqldb:mem:db_projection");
+    Statement baseStmt = connection.createStatement();
+    baseStmt.execute("CREATE Table TestTable (" + "ID INTEGER," + "NAME VARCHAR(100)" + ")");
+    baseStmt.execute("INSERT INTO TestTable VALUES (0, 'name_0')");
+    baseStmt.close();
+    connection.commit();
+    SqlTemplateRenderer projectingSqlTemplateRenderer =
+        new SqlTemplateRendererImpl(
+            SqlScriptVariables.builder()
+                .setBaseDatabase("test-db")
+                .setQueryLogsVariables(SqlScriptVariables.QueryLogsVariables.builder().build())
+                .setColumnProjection(
+                    ColumnProjection.builder()
+                        .setIncludeColumns(ImmutableSet.of("NAME"))
+                        .setMaxTextLength(4)
+                        .build()));
+
+    scriptManager.executeScript(
+        connection,
+        /*dryRun=*/ false,
+        projectingSqlTemplateRenderer,
+        "default",
+        new FakeDataEntityManagerImpl(outputStream),
+        5000,
+        0);
+
+    DatumReader<Record> datumReader = new GenericDatumReader<>();
+    DataFileReader<Record> reader =
+        new DataFileReader<>(new SeekableByteArrayInput(outputStream.toByteArray()), datumReader);
+    Record record = reader.next();
+    assertThat(record.getSchema().getFields()).hasSize(1);
+    assertThat(record.get("NAME").toString()).isEqualTo("name");
+  }
+
+  @Test
+  public void executeScript_writeChunkedWithColumnProjection_keepsSortingColumn() throws Exception {
+    scriptManager = new ScriptManagerImpl(scriptRunner, scriptsMap, sortingColumnsMap);
+    Connection connection = DriverManager.getConnection("jdbc:hsqldb:mem:db_projection_chunked");
+    prepareDataWithSortingTimestamps(connection);
+    DataEntityManager dataEntityManagerTmp = new FakeDataEntityManagerImpl("tmpTest");
+    SqlTemplateRenderer projectingSqlTemplateRenderer =
+        new SqlTemplateRendererImpl(
+            SqlScriptVariables.builder()
+                .setBaseDatabase("test-db")
+                .setQueryLogsVariables(SqlScriptVariables.QueryLogsVariables.builder().build())
+                .setColumnProjection(
+                    ColumnProjection.builder().setExcludeColumns(ImmutableSet.of("ID")).build()));
+
+    scriptManager.executeScript(
+        connection,
+        /*dryRun=*/ false,
+        projectingSqlTemplateRenderer,
+        "default_chunked",
+        dataEntityManagerTmp,
+        /*chunkRows=*/ 3,
+        /*startingChunkNumber=*/ 0);
+
+    DataFileReader<Record> readerForFirstChunk =
+        getAssertingReaderForAvroResults(
+            dataEntityManagerTmp.getAbsolutePath(
+                "default_chunked-20080808T200808S007000-20080808T200810S007000_0.avro"));
+    Record record = readerForFirstChunk.next();
+    assertThat(record.getSchema().getFields()).hasSize(1);
+    assertThat(record.get("TIMESTAMPS"))
+        .isEqualTo(Instant.parse("2008-08-08T20:08:08.007000000Z").toEpochMilli());
+  }
+
   @Test
   public void getAllScriptNames_fail() throws Exception {
     scriptManager = new ScriptManagerImpl(scriptRunner, scriptsMap, sortingColumnsMap);
@@ -182,6 +285,61 @@ public final class ScriptManagerImplTest {
         .isEqualTo(baseScript + "\nORDER BY SORTING_COLUMN ASC NULLS FIRST\n");
   }
 
+  @Test
+  public void executeScripts_writesEachScriptIntoItsOwnEntity() throws Exception {
+    scriptManager =
+        new ScriptManagerImpl(
+            scriptRunner,
+            ImmutableMap.of(
+                "ids",
+                () -> "SELECT ID FROM TestTable",
+                "names",
+                () -> "SELECT NAME FROM TestTable WHERE ID > 0"),
+            sortingColumnsMap);
+    Connection connection = DriverManager.getConnection("jdbc:hsqldb:mem:db_batch");
+    Statement baseStmt = connection.createStatement();
+    baseStmt.execute("CREATE Table TestTable (ID INTEGER, NAME VARCHAR(100))");
+    baseStmt.execute("INSERT INTO TestTable VALUES (0, 'name_0'), (1, 'name_1')");
+    baseStmt.close();
+    connection.commit();
+    DataEntityManager dataEntityManager = new FakeDataEntityManagerImpl("batchTest");
+
+    scriptManager.executeScripts(
+        connection,
+        /*dryRun=*/ false,
+        ImmutableMap.of("ids", sqlTemplateRenderer, "names", sqlTemplateRenderer),
+        dataEntityManager);
+
+    try (DataFileReader<Record> reader =
+        getAssertingReaderForAvroResults(dataEntityManager.getAbsolutePath("ids.avro"))) {
+      assertThat(reader.getSchema().getName()).isEqualTo("ids");
+      assertThat(reader.next().get("ID")).isEqualTo(0);
+      assertThat(reader.next().get("ID")).isEqualTo(1);
+      assertFalse(reader.hasNext());
+    }
+    try (DataFileReader<Record> reader =
+        getAssertingReaderForAvroResults(dataEntityManager.getAbsolutePath("names.avro"))) {
+      assertThat(reader.getSchema().getName()).isEqualTo("names");
+      assertThat(reader.next().get("NAME").toString()).isEqualTo("name_1");
+      assertFalse(reader.hasNext());
+    }
+  }
+
+  @Test
+  public void executeScripts_dryRun_writesNothing() throws Exception {
+    scriptManager = new ScriptManagerImpl(scriptRunner, scriptsMap, sortingColumnsMap);
+    Connection connection = DriverManager.getConnection("jdbc:hsqldb:mem:db_batch_dry_run");
+    DataEntityManager dataEntityManager = new FakeDataEntityManagerImpl("batchDryRunTest");
+
+    scriptManager.executeScripts(
+        connection,
+        /*dryRun=*/ true,
+        ImmutableMap.of("default", sqlTemplateRenderer),
+        dataEntityManager);
+
+    assertThat(Files.list(dataEntityManager.getAbsolutePath("")).count()).isEqualTo(0);
+  }
+
   @Test
   public void getScript_fail() {
     scriptManager = new ScriptManagerImpl(scriptRunner, scriptsMap, sortingColumnsMap);
@@ -294,11 +452,17 @@ public final class ScriptManagerImplTest {
     ImmutableList<String> expectedFiles =
         ImmutableList.<String>builder()
             .add("default_chunked-20080808T200808S007000-20080808T200810S007000_0.avro")
+            .add("default_chunked-20080808T200808S007000-20080808T200810S007000_0.avro.index")
             .add("default_chunked-20080808T200811S007000-20080808T200813S007000_1.avro")
+            .add("default_chunked-20080808T200811S007000-20080808T200813S007000_1.avro.index")
             .add("default_chunked-20080808T200814S007000-20080808T200816S007000_2.avro")
+            .add("default_chunked-20080808T200814S007000-20080808T200816S007000_2.avro.index")
             .add("default_chunked-20080808T200817S007000-20080808T200819S007000_3.avro")
+            .add("default_chunked-20080808T200817S007000-20080808T200819S007000_3.avro.index")
             .add("default_chunked-20080808T200820S007000-20080808T200822S007000_4.avro")
+            .add("default_chunked-20080808T200820S007000-20080808T200822S007000_4.avro.index")
             .add("default_chunked-20080808T200823S007000-20080808T200824S007000_5.avro")
+            .add("default_chunked-20080808T200823S007000-20080808T200824S007000_5.avro.index")
             .build();
     DataEntityManager dataEntityManagerTmp = new FakeDataEntityManagerImpl("tmpTest");
 
@@ -355,6 +519,46 @@ public final class ScriptManagerImplTest {
     assertFalse(readerForLastChunk.hasNext());
   }
 
+  @Test
+  public void executeScript_writeChunked_writesIndexOfChunk() throws Exception {
+    scriptManager =
+        new ScriptManagerImpl(
+            scriptRunner,
+            scriptsMap,
+            sortingColumnsMap,
+            ImmutableMap.of("default_chunked", ImmutableList.of("ID")));
+    Connection connection = DriverManager.getConnection("jdbc:hsqldb:mem:db_index");
+    prepareDataWithSortingTimestamps(connection);
+    DataEntityManager dataEntityManagerTmp = new FakeDataEntityManagerImpl("tmpTest");
+
+    scriptManager.executeScript(
+        connection,
+        /*dryRun=*/ false,
+        sqlTemplateRenderer,
+        "default_chunked",
+        dataEntityManagerTmp,
+        /*chunkRows=*/ 3,
+        /*startingChunkNumber=*/ 0);
+
+    DataFileReader<Record> indexReader =
+        getAssertingReaderForAvroResults(
+            dataEntityManagerTmp.getAbsolutePath(
+                "default_chunked-20080808T200811S007000-20080808T200813S007000_1.avro.index"));
+    Record index = indexReader.next();
+    assertFalse(indexReader.hasNext());
+    assertThat(index.get("rowCount")).isEqualTo(3L);
+    Record columns = (Record) index.get("columns");
+    Record timestamps = (Record) columns.get("TIMESTAMPS");
+    assertThat(timestamps.get("min"))
+        .isEqualTo(Instant.parse("2008-08-08T20:08:11.007Z").toEpochMilli());
+    assertThat(timestamps.get("max"))
+        .isEqualTo(Instant.parse("2008-08-08T20:08:13.007Z").toEpochMilli());
+    assertThat(timestamps.get("nullCount")).isEqualTo(0L);
+    Record ids = (Record) columns.get("ID");
+    assertThat(ids.get("min")).isEqualTo(3);
+    assertThat(ids.get("max")).isEqualTo(5);
+  }
+
   @Test
   public void executeScript_writeChunked_sameTimestampsSameChunk() throws Exception {
     scriptManager = new ScriptManagerImpl(scriptRunner, scriptsMap, sortingColumnsMap);
@@ -410,6 +614,65 @@ public final class ScriptManagerImplTest {
     assertFalse(readerForSecondChunk.hasNext());
   }
 
+  @Test
+  public void executeScript_writeChunkedWithTieBreakingColumn_splitsSameTimestamps()
+      throws Exception {
+    scriptManager =
+        new ScriptManagerImpl(
+            scriptRunner,
+            scriptsMap,
+            ImmutableMap.of("default_chunked", ImmutableList.of("TIMESTAMPS", "ID")));
+    Connection connection = DriverManager.getConnection("jdbc:hsqldb:mem:db_tie_breaking");
+    DataEntityManager dataEntityManagerTmp = new FakeDataEntityManagerImpl("tmpTest");
+    Statement baseStmt = connection.createStatement();
+    baseStmt.execute(
+        "CREATE Table TestTable ("
+            + "ID INTEGER,"
+            + "TIMESTAMPS TIMESTAMP(6) WITH TIME ZONE"
+            + ")");
+    for (int id : new int[] {5, 3, 4, 2, 1, 1}) {
+      baseStmt.execute(
+          String.format(
+              "INSERT INTO TestTable VALUES (%d, TIMESTAMP '2007-07-07 20:07:07.007001' AT TIME"
+                  + " ZONE INTERVAL '0:00' HOUR TO MINUTE)",
+              id));
+    }
+    baseStmt.close();
+    connection.commit();
+
+    scriptManager.executeScript(
+        connection,
+        /*dryRun=*/ false,
+        sqlTemplateRenderer,
+        "default_chunked",
+        dataEntityManagerTmp,
+        /*chunkRows=*/ 2,
+        /*startingChunkNumber=*/ 0);
+
+    // The rows with the same ID stay in the same chunk; the last chunk ends with the last row.
+    DataFileReader<Record> readerForFirstChunk =
+        getAssertingReaderForAvroResults(
+            dataEntityManagerTmp.getAbsolutePath(
+                "default_chunked-20070707T200707S007001-20070707T200707S007001+1_0.avro"));
+    DataFileReader<Record> readerForSecondChunk =
+        getAssertingReaderForAvroResults(
+            dataEntityManagerTmp.getAbsolutePath(
+                "default_chunked-20070707T200707S007001-20070707T200707S007001+3_1.avro"));
+    DataFileReader<Record> readerForThirdChunk =
+        getAssertingReaderForAvroResults(
+            dataEntityManagerTmp.getAbsolutePath(
+                "default_chunked-20070707T200707S007001-20070707T200707S007001_2.avro"));
+    assertThat(readerForFirstChunk.next().get(0)).isEqualTo(1);
+    assertThat(readerForFirstChunk.next().get(0)).isEqualTo(1);
+    assertFalse(readerForFirstChunk.hasNext());
+    assertThat(readerForSecondChunk.next().get(0)).isEqualTo(2);
+    assertThat(readerForSecondChunk.next().get(0)).isEqualTo(3);
+    assertFalse(readerForSecondChunk.hasNext());
+    assertThat(readerForThirdChunk.next().get(0)).isEqualTo(4);
+    assertThat(readerForThirdChunk.next().get(0)).isEqualTo(5);
+    assertFalse(readerForThirdChunk.hasNext());
+  }
+
   @Test
   public void executeScript_writeChunked_withContinuingChunkNumber() throws Exception {
     scriptManager = new ScriptManagerImpl(scriptRunner, scriptsMap, sortingColumnsMap);
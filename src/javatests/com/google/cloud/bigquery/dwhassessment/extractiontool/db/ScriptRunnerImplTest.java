@@ -19,6 +19,7 @@ import static com.google.common.truth.Truth.assertThat;
 
 import com.google.common.collect.ImmutableList;
 import java.io.IOException;
+import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
 import java.sql.Connection;
@@ -93,6 +94,31 @@ public final class ScriptRunnerImplTest {
     assertThat(records).containsExactly(expectedRecord);
   }
 
+  @Test
+  public void executeScriptToAvro_statementWithParameters_bindsParameters() throws SQLException {
+    Connection connection = DriverManager.getConnection("jdbc:hsqldb:mem:db_bind_parameters");
+    Statement baseStmt = connection.createStatement();
+    baseStmt.execute(
+        "CREATE TABLE T0 (ID INTEGER, NAME VARCHAR(100), TS TIMESTAMP(6) WITH TIME ZONE)");
+    baseStmt.execute("INSERT INTO T0 VALUES (0, 'name_0', TIMESTAMP '2022-01-01 00:00:00+00:00')");
+    baseStmt.execute("INSERT INTO T0 VALUES (1, 'name_1', TIMESTAMP '2022-01-02 00:00:00+00:00')");
+    baseStmt.execute("INSERT INTO T0 VALUES (2, 'name_2', TIMESTAMP '2022-01-02 00:00:00+00:00')");
+    baseStmt.close();
+    connection.commit();
+    SqlStatement statement =
+        SqlStatement.create(
+            "SELECT ID, NAME FROM T0 WHERE TS >= CAST(? AS TIMESTAMP(6) WITH TIME ZONE) AND ID > ?",
+            ImmutableList.of("2022-01-01 12:00:00.000000+00:00", new BigDecimal(1)));
+
+    Schema schema = scriptRunner.extractSchema(connection, statement, "test_name", "test.schema");
+    ImmutableList.Builder<GenericRecord> records = ImmutableList.builder();
+    scriptRunner.executeScriptToAvro(connection, statement, schema, records::add);
+
+    assertThat(records.build())
+        .containsExactly(
+            new GenericRecordBuilder(schema).set("ID", 2).set("NAME", "name_2").build());
+  }
+
   @Test
   public void executeScriptToAvro_nullValues_success() throws SQLException {
     Connection connection = DriverManager.getConnection("jdbc:hsqldb:mem:test_db");
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigquery.dwhassessment.extractiontool.db;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class SqlStatementTest {
+
+  @Test
+  public void join_separatesStatementsAndConcatenatesParameters() {
+    SqlStatement request =
+        SqlStatement.join(
+            ImmutableList.of(
+                SqlStatement.create("SELECT a FROM t WHERE b > ?;\n", ImmutableList.of(1)),
+                SqlStatement.create("SELECT c FROM u"),
+                SqlStatement.create("SELECT d FROM v WHERE e < ? -- last", ImmutableList.of(2))));
+
+    assertThat(request.sql())
+        .isEqualTo(
+            "SELECT a FROM t WHERE b > ?\n"
+                + ";\n"
+                + "SELECT c FROM u\n"
+                + ";\n"
+                + "SELECT d FROM v WHERE e < ? -- last");
+    assertThat(request.parameters()).containsExactly(1, 2).inOrder();
+  }
+
+  @Test
+  public void join_singleStatement_keepsStatement() {
+    SqlStatement request = SqlStatement.join(ImmutableList.of(SqlStatement.create("SELECT 1")));
+
+    assertThat(request).isEqualTo(SqlStatement.create("SELECT 1"));
+  }
+}
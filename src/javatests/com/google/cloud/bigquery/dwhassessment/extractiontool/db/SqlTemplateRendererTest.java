@@ -20,6 +20,8 @@ import static com.google.common.truth.Truth.assertThat;
 import static org.junit.Assert.assertThrows;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.math.BigDecimal;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -100,6 +102,67 @@ public class SqlTemplateRendererTest {
                 + "AND TIMESTAMP '2022-01-01 23:23:46'\nORDER BY COLUMN1,COLUMN2 ASC NULLS FIRST");
   }
 
+  @Test
+  public void renderStatement_bindParameters_rendersPlaceholders() {
+    underTest =
+        new SqlTemplateRendererImpl(
+            baseVariablesBuilder.setQueryLogsVariables(
+                QueryLogsVariables.builder()
+                    .setTimeRange(
+                        QueryLogsVariables.TimeRange.builder()
+                            .setStartTimestamp("2021-01-01 23:23:46.123456+00:00")
+                            .setEndTimestamp("2022-01-01 23:23:46+00:00")
+                            .setStartKey(ImmutableMap.of("ID", "12"))
+                            .build())
+                    .build()),
+            /* bindParameters= */ true);
+
+    SqlStatement statement =
+        underTest.renderStatement(
+            /* name= */ "test",
+            /* sql= */ "SELECT t.a AS b FROM \"{{baseDatabase}}\".bar AS t"
+                + " {{#whereClauseWithTimeRange queryLogsVariables \"t\""
+                + " \"ts\"}}{{/whereClauseWithTimeRange}}");
+
+    assertThat(statement.sql())
+        .isEqualTo(
+            "SELECT t.a AS b FROM \"test-db\".bar AS t WHERE \"t\".\"ts\" BETWEEN CAST(? AS"
+                + " TIMESTAMP(6) WITH TIME ZONE) AND CAST(? AS TIMESTAMP(6) WITH TIME ZONE) AND"
+                + " (\"t\".\"ts\" > CAST(? AS TIMESTAMP(6) WITH TIME ZONE) OR \"t\".\"ID\" > ?)");
+    assertThat(statement.parameters())
+        .containsExactly(
+            "2021-01-01 23:23:46.123456+00:00",
+            "2022-01-01 23:23:46.000000+00:00",
+            "2021-01-01 23:23:46.123456+00:00",
+            new BigDecimal("12"))
+        .inOrder();
+  }
+
+  @Test
+  public void renderStatement_noBindParameters_rendersLiterals() {
+    underTest =
+        new SqlTemplateRendererImpl(
+            baseVariablesBuilder.setQueryLogsVariables(
+                QueryLogsVariables.builder()
+                    .setTimeRange(
+                        QueryLogsVariables.TimeRange.builder()
+                            .setStartTimestamp("2021-01-01 23:23:46+00:00")
+                            .build())
+                    .build()));
+
+    SqlStatement statement =
+        underTest.renderStatement(
+            /* name= */ "test",
+            /* sql= */ "SELECT a FROM bar AS t {{#whereClauseWithTimeRange queryLogsVariables \"t\""
+                + " \"ts\"}}{{/whereClauseWithTimeRange}}");
+
+    assertThat(statement.sql())
+        .isEqualTo(
+            "SELECT a FROM bar AS t WHERE \"t\".\"ts\" BETWEEN TIMESTAMP '2021-01-01"
+                + " 23:23:46+00:00' AND TIMESTAMP '9999-12-31 23:59:59.99+00:00'");
+    assertThat(statement.parameters()).isEmpty();
+  }
+
   @Test
   public void render_invalidTemplateThrows() {
     underTest =
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigquery.dwhassessment.extractiontool.db;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class StatementWatchdogTest {
+
+  private static final StatementTimeouts TIMEOUTS =
+      StatementTimeouts.builder()
+          .setExecuteTimeout(Duration.ofMillis(100))
+          .setFetchIdleTimeout(Duration.ofMillis(100))
+          .build();
+
+  private final StatementWatchdog watchdog = new StatementWatchdog(Duration.ofMillis(10));
+  private final CountDownLatch cancelled = new CountDownLatch(1);
+  private Connection connection;
+  private Statement statement;
+  private ResultSet resultSet;
+
+  @Before
+  public void setUp() throws SQLException {
+    connection = mock(Connection.class);
+    statement = mock(Statement.class);
+    resultSet = mock(ResultSet.class);
+    when(connection.createStatement()).thenReturn(statement);
+    when(statement.executeQuery(anyString())).thenReturn(resultSet);
+    doAnswer(
+            invocation -> {
+              cancelled.countDown();
+              return null;
+            })
+        .when(statement)
+        .cancel();
+  }
+
+  @After
+  public void tearDown() {
+    watchdog.close();
+  }
+
+  @Test
+  public void watch_withoutTimeouts_returnsConnection() {
+    assertThat(watchdog.watch(connection, "script", StatementTimeouts.none()))
+        .isSameInstanceAs(connection);
+  }
+
+  @Test
+  public void createStatement_setsQueryTimeout() throws SQLException {
+    try (Connection connection =
+            watchdog.watch(
+                DriverManager.getConnection("jdbc:hsqldb:mem:watchdog.example"),
+                "script",
+                StatementTimeouts.builder().setExecuteTimeout(Duration.ofSeconds(90)).build());
+        Statement statement = connection.createStatement()) {
+      assertThat(statement.getQueryTimeout()).isEqualTo(90);
+    }
+  }
+
+  @Test
+  public void executeQuery_cancelsHungStatement() throws SQLException {
+    when(statement.executeQuery(anyString())).thenAnswer(invocation -> awaitCancel());
+    Statement watchedStatement = watchdog.watch(connection, "script", TIMEOUTS).createStatement();
+
+    SQLTimeoutException e =
+        assertThrows(SQLTimeoutException.class, () -> watchedStatement.executeQuery("SELECT 1"));
+
+    assertThat(e.getMessage()).contains("script");
+    assertThat(e.getMessage()).contains("the statement did not return within PT0.1S");
+  }
+
+  @Test
+  public void next_cancelsIdleFetch() throws SQLException {
+    when(resultSet.next()).thenReturn(true).thenAnswer(invocation -> awaitCancel());
+    ResultSet watchedResultSet =
+        watchdog.watch(connection, "script", TIMEOUTS).createStatement().executeQuery("SELECT 1");
+
+    assertThat(watchedResultSet.next()).isTrue();
+    SQLTimeoutException e = assertThrows(SQLTimeoutException.class, watchedResultSet::next);
+
+    assertThat(e.getMessage()).contains("no row arrived within PT0.1S");
+  }
+
+  @Test
+  public void next_ignoresTimeBetweenFetches() throws Exception {
+    when(resultSet.next()).thenReturn(true, true, false);
+    ResultSet watchedResultSet =
+        watchdog.watch(connection, "script", TIMEOUTS).createStatement().executeQuery("SELECT 1");
+
+    while (watchedResultSet.next()) {
+      Thread.sleep(300);
+    }
+
+    verify(statement, never()).cancel();
+  }
+
+  @Test
+  public void next_keepsErrorsOfStatementsThatWereNotCancelled() throws SQLException {
+    SQLException error = new SQLException("Connection reset.");
+    when(resultSet.next()).thenThrow(error);
+    ResultSet watchedResultSet =
+        watchdog.watch(connection, "script", TIMEOUTS).createStatement().executeQuery("SELECT 1");
+
+    assertThat((Throwable) assertThrows(SQLException.class, watchedResultSet::next))
+        .isSameInstanceAs(error);
+    verify(statement, never()).cancel();
+  }
+
+  @Test
+  public void resultSet_forwardsValuesAndReturnsWatchedStatement() throws SQLException {
+    when(resultSet.getString(1)).thenReturn("value");
+    Statement watchedStatement = watchdog.watch(connection, "script", TIMEOUTS).createStatement();
+    ResultSet watchedResultSet = watchedStatement.executeQuery("SELECT 1");
+
+    assertThat(watchedResultSet.getString(1)).isEqualTo("value");
+    assertThat(watchedResultSet.getStatement()).isSameInstanceAs(watchedStatement);
+  }
+
+  private Object awaitCancel() throws Exception {
+    if (!cancelled.await(10, TimeUnit.SECONDS)) {
+      throw new IllegalStateException("The statement was not cancelled.");
+    }
+    throw new SQLException("The statement was cancelled.");
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigquery.dwhassessment.extractiontool.db;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.base.Strings;
+import org.apache.avro.util.Utf8;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class Utf8InternerTest {
+
+  @Test
+  public void intern_repeatedValue_returnsSameInstance() {
+    Utf8Interner interner = Utf8Interner.create();
+
+    CharSequence first = interner.intern(1, new String("user"));
+    CharSequence second = interner.intern(1, new String("user"));
+
+    assertThat(first).isInstanceOf(Utf8.class);
+    assertThat(first.toString()).isEqualTo("user");
+    assertThat(second).isSameInstanceAs(first);
+  }
+
+  @Test
+  public void intern_differentColumns_cachedSeparately() {
+    Utf8Interner interner = Utf8Interner.create();
+
+    assertThat(interner.intern(1, "value")).isNotSameInstanceAs(interner.intern(2, "value"));
+  }
+
+  @Test
+  public void intern_null_returnsNull() {
+    assertThat(Utf8Interner.create().intern(1, null)).isNull();
+  }
+
+  @Test
+  public void intern_longValue_notCached() {
+    String longValue = Strings.repeat("x", 1000);
+
+    assertThat(Utf8Interner.create().intern(1, longValue)).isSameInstanceAs(longValue);
+  }
+
+  @Test
+  public void intern_tooManyDistinctValues_columnNoLongerCached() {
+    Utf8Interner interner = Utf8Interner.create(2);
+    interner.intern(1, "a");
+    interner.intern(1, "b");
+
+    assertThat(interner.intern(1, "c")).isEqualTo("c");
+    assertThat(interner.intern(1, "a")).isEqualTo("a");
+    assertThat(interner.intern(2, "a")).isInstanceOf(Utf8.class);
+  }
+}
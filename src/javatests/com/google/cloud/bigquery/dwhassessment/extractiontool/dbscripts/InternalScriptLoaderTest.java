@@ -19,6 +19,7 @@ import static com.google.common.truth.Truth.assertThat;
 
 import com.google.cloud.bigquery.dwhassessment.extractiontool.db.*;
 import com.google.cloud.bigquery.dwhassessment.extractiontool.db.SqlScriptVariables.QueryLogsVariables;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.db.SqlScriptVariables.QueryLogsVariables.SummaryGrain;
 import com.google.cloud.bigquery.dwhassessment.extractiontool.dumper.FakeDataEntityManagerImpl;
 import com.google.cloud.bigquery.dwhassessment.extractiontool.faketd.TeradataSimulator;
 import com.google.common.collect.ImmutableList;
@@ -474,6 +475,59 @@ public class InternalScriptLoaderTest {
     assertThat(records).containsExactly(expectedQueryLogsRecord1, expectedQueryLogsRecord2);
   }
 
+  @Test
+  public void loadScripts_queryLogsSummary() throws IOException, SQLException {
+    String scriptName = "querylogs_summary";
+    String sqlScript = getScript(scriptName);
+    Schema schema = scriptRunner.extractSchema(connection, sqlScript, scriptName, "namespace");
+
+    ImmutableList<GenericRecord> records = executeScriptToAvro(sqlScript, schema);
+
+    assertThat(records)
+        .containsExactly(
+            baseExpectedQueryLogsSummaryRecordBuilder(schema)
+                .set("LogHour", 18)
+                .set("UserName", "user0")
+                .build(),
+            baseExpectedQueryLogsSummaryRecordBuilder(schema)
+                .set("LogHour", 23)
+                .set("UserName", "user1")
+                .build())
+        .inOrder();
+  }
+
+  @Test
+  public void loadScripts_queryLogsSummary_dailyWithUserFilter() throws SQLException {
+    String scriptName = "querylogs_summary";
+    SqlTemplateRenderer sqlTemplateRendererDaily =
+        new SqlTemplateRendererImpl(
+            SqlScriptVariables.builder()
+                .setBaseDatabase("DBC")
+                .setQueryLogsVariables(
+                    SqlScriptVariables.QueryLogsVariables.builder()
+                        .setSummaryGrain(SummaryGrain.DAY)
+                        .setUsers(ImmutableSet.of("user1"))
+                        .build()));
+    String sqlScript = getScript(scriptName, sqlTemplateRendererDaily);
+    Schema schema = scriptRunner.extractSchema(connection, sqlScript, scriptName, "namespace");
+
+    ImmutableList<GenericRecord> records = executeScriptToAvro(sqlScript, schema);
+
+    assertThat(records)
+        .containsExactly(
+            baseExpectedQueryLogsSummaryRecordBuilder(schema).set("UserName", "user1").build());
+  }
+
+  private GenericRecordBuilder baseExpectedQueryLogsSummaryRecordBuilder(Schema schema) {
+    return new GenericRecordBuilder(schema)
+        .set("LogDate", Instant.parse("2021-07-01T00:00:00Z").toEpochMilli())
+        .set("StatementType", "Select")
+        .set("QueryCount", 1L)
+        .set("TotalAMPCPUTime", 1.23)
+        .set("MaxAMPCPUTime", 1.23)
+        .set("TotalIOCount", 1234.56);
+  }
+
   @Test
   public void loadScripts_sqlLogs() throws IOException, SQLException {
     String scriptName = "sql_logs";
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigquery.dwhassessment.extractiontool.dumper;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static org.junit.Assert.assertThrows;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class WriteBehindOutputStreamTest {
+
+  private final ExecutorService ioExecutor = Executors.newSingleThreadExecutor();
+  private final Queue<ByteBuffer> bufferPool = new ArrayDeque<>();
+  private Path path;
+
+  @Before
+  public void setUp() throws IOException {
+    path = Files.createTempFile("write-behind-output-stream-test", ".avro");
+  }
+
+  @After
+  public void tearDown() {
+    ioExecutor.shutdownNow();
+  }
+
+  @Test
+  public void write_spansManyBuffers() throws IOException {
+    byte[] expected = new byte[1000];
+    for (int i = 0; i < expected.length; i++) {
+      expected[i] = (byte) i;
+    }
+
+    try (OutputStream outputStream = createStream(/* syncOnClose= */ false)) {
+      outputStream.write(expected[0]);
+      outputStream.write(expected, 1, 500);
+      outputStream.flush();
+      for (int i = 501; i < 600; i++) {
+        outputStream.write(expected[i]);
+      }
+      outputStream.write(expected, 600, 400);
+    }
+
+    assertThat(Files.readAllBytes(path)).isEqualTo(expected);
+  }
+
+  @Test
+  public void close_syncsAndReturnsBuffers() throws IOException {
+    OutputStream outputStream = createStream(/* syncOnClose= */ true);
+    assertThat(bufferPool).isEmpty();
+
+    outputStream.write(new byte[] {1, 2, 3});
+    outputStream.close();
+    outputStream.close();
+
+    assertThat(Files.readAllBytes(path)).isEqualTo(new byte[] {1, 2, 3});
+    assertThat(bufferPool).hasSize(2);
+    assertThrows(IOException.class, () -> outputStream.write(4));
+  }
+
+  @Test
+  public void write_reportsFailedWrite() throws IOException {
+    OutputStream outputStream =
+        new WriteBehindOutputStream(
+            FileChannel.open(path, READ), ioExecutor, bufferPool, 8, /* syncOnClose= */ false);
+
+    // The second full buffer waits for the write of the first one.
+    assertThrows(IOException.class, () -> outputStream.write(new byte[20]));
+    assertThrows(IOException.class, outputStream::close);
+  }
+
+  private OutputStream createStream(boolean syncOnClose) throws IOException {
+    return new WriteBehindOutputStream(
+        FileChannel.open(path, WRITE), ioExecutor, bufferPool, /* bufferSize= */ 8, syncOnClose);
+  }
+}
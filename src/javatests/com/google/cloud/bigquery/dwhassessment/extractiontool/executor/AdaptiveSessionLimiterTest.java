@@ -0,0 +1,177 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigquery.dwhassessment.extractiontool.executor;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import com.google.cloud.bigquery.dwhassessment.extractiontool.dumper.DataEntityManager;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.dumper.DataEntityManagerDirectoryImpl;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.executor.AdaptiveSessionLimiter.SessionYieldedException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class AdaptiveSessionLimiterTest {
+
+  private static final Duration CHUNK_DURATION = Duration.ofSeconds(10);
+
+  @Test
+  public void onChunk_raisesLimitByOnePerRound() {
+    AdaptiveSessionLimiter limiter = new AdaptiveSessionLimiter(1, 4);
+
+    limiter.onChunk(CHUNK_DURATION);
+    assertThat(limiter.getLimit()).isEqualTo(2);
+    limiter.onChunk(CHUNK_DURATION);
+    assertThat(limiter.getLimit()).isEqualTo(2);
+    limiter.onChunk(CHUNK_DURATION);
+    assertThat(limiter.getLimit()).isEqualTo(3);
+    for (int i = 0; i < 10; i++) {
+      limiter.onChunk(CHUNK_DURATION);
+    }
+    assertThat(limiter.getLimit()).isEqualTo(4);
+  }
+
+  @Test
+  public void onChunk_halvesLimitOnSlowChunks() {
+    AdaptiveSessionLimiter limiter = raiseToMax(1, 8);
+
+    limiter.onChunk(CHUNK_DURATION.multipliedBy(5));
+
+    assertThat(limiter.getLimit()).isEqualTo(4);
+    // The chunks of the sessions that were already running do not lower the limit again.
+    for (int i = 0; i < 4; i++) {
+      limiter.onChunk(CHUNK_DURATION.multipliedBy(5));
+    }
+    assertThat(limiter.getLimit()).isEqualTo(4);
+    limiter.onChunk(CHUNK_DURATION.multipliedBy(5));
+    assertThat(limiter.getLimit()).isEqualTo(2);
+  }
+
+  @Test
+  public void onFailure_neverLowersLimitBelowMinimum() {
+    AdaptiveSessionLimiter limiter = raiseToMax(3, 8);
+
+    limiter.onFailure();
+    assertThat(limiter.getLimit()).isEqualTo(4);
+    limiter.onFailure();
+    assertThat(limiter.getLimit()).isEqualTo(3);
+  }
+
+  @Test
+  public void onLoad_stopsGrowthWhileOverloaded() {
+    AdaptiveSessionLimiter limiter = new AdaptiveSessionLimiter(1, 8);
+    limiter.onChunk(CHUNK_DURATION);
+    limiter.onChunk(CHUNK_DURATION);
+    limiter.onChunk(CHUNK_DURATION);
+    assertThat(limiter.getLimit()).isEqualTo(3);
+
+    limiter.onLoad(0.95, 0.9);
+    assertThat(limiter.getLimit()).isEqualTo(1);
+    for (int i = 0; i < 10; i++) {
+      limiter.onChunk(CHUNK_DURATION);
+    }
+    assertThat(limiter.getLimit()).isEqualTo(1);
+
+    limiter.onLoad(0.5, 0.9);
+    limiter.onChunk(CHUNK_DURATION);
+    assertThat(limiter.getLimit()).isEqualTo(2);
+  }
+
+  @Test
+  public void acquire_waitsForLimit() throws Exception {
+    AdaptiveSessionLimiter limiter = new AdaptiveSessionLimiter(1, 2);
+    limiter.acquire();
+    CountDownLatch acquired = new CountDownLatch(1);
+    Thread thread =
+        new Thread(
+            () -> {
+              try {
+                limiter.acquire();
+                acquired.countDown();
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+            });
+    thread.start();
+
+    assertThat(acquired.await(100, TimeUnit.MILLISECONDS)).isFalse();
+    limiter.onChunk(CHUNK_DURATION);
+    assertThat(acquired.await(10, TimeUnit.SECONDS)).isTrue();
+    thread.join();
+  }
+
+  @Test
+  public void observe_recordsDurationOfAvroFiles() throws IOException {
+    AdaptiveSessionLimiter limiter = new AdaptiveSessionLimiter(1, 2);
+    Path directory = Files.createTempDirectory("adaptive-session-limiter-test");
+    try (DataEntityManager dataEntityManager =
+        limiter.observe(new DataEntityManagerDirectoryImpl(directory))) {
+      try (OutputStream outputStream = dataEntityManager.getEntityOutputStream("a.avro.index")) {
+        outputStream.write(1);
+      }
+      assertThat(limiter.getLimit()).isEqualTo(1);
+      OutputStream outputStream = dataEntityManager.getEntityOutputStream("a_temp.avro");
+      outputStream.write(new byte[] {1, 2});
+      outputStream.close();
+      outputStream.close();
+    }
+
+    assertThat(limiter.getLimit()).isEqualTo(2);
+    assertThat(Files.readAllBytes(directory.resolve("a_temp.avro"))).isEqualTo(new byte[] {1, 2});
+  }
+
+  @Test
+  public void observe_endsSessionsOverLoweredLimitAtChunkBoundary() throws Exception {
+    AdaptiveSessionLimiter limiter = raiseToMax(1, 2);
+    limiter.acquire();
+    limiter.acquire();
+    Path directory = Files.createTempDirectory("adaptive-session-limiter-test");
+    DataEntityManager first = limiter.observe(new DataEntityManagerDirectoryImpl(directory));
+    DataEntityManager second = limiter.observe(new DataEntityManagerDirectoryImpl(directory));
+    first.getEntityOutputStream("a_0_temp.avro").close();
+    second.getEntityOutputStream("b_0_temp.avro").close();
+
+    limiter.onFailure();
+
+    assertThrows(SessionYieldedException.class, () -> first.getEntityOutputStream("a_1_temp.avro"));
+    assertThat(Files.exists(directory.resolve("a_1_temp.avro"))).isFalse();
+    // The remaining session fits into the limit.
+    second.getEntityOutputStream("b_1_temp.avro").close();
+    assertThat(limiter.releaseIfOverLimit()).isFalse();
+  }
+
+  @Test
+  public void create_failOnMinimumAboveMaximum() {
+    assertThrows(IllegalArgumentException.class, () -> new AdaptiveSessionLimiter(3, 2));
+  }
+
+  private static AdaptiveSessionLimiter raiseToMax(int minSessions, int maxSessions) {
+    AdaptiveSessionLimiter limiter = new AdaptiveSessionLimiter(minSessions, maxSessions);
+    while (limiter.getLimit() < maxSessions) {
+      limiter.onChunk(CHUNK_DURATION);
+    }
+    return limiter;
+  }
+}
@@ -0,0 +1,311 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigquery.dwhassessment.extractiontool.executor;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.util.stream.Collectors.toList;
+
+import com.google.cloud.bigquery.dwhassessment.extractiontool.common.ChunkCheckpoint;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.file.DataFileReader;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.generic.GenericRecordBuilder;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class CompactExecutorImplTest {
+
+  private static final Schema SCHEMA =
+      SchemaBuilder.record("querylogs")
+          .namespace("namespace")
+          .fields()
+          .optionalString("QueryText")
+          .optionalLong("StartTime")
+          .endRecord();
+
+  private static final Schema OTHER_SCHEMA =
+      SchemaBuilder.record("querylogs")
+          .namespace("namespace")
+          .fields()
+          .optionalString("QueryText")
+          .optionalString("QueryBand")
+          .optionalLong("StartTime")
+          .endRecord();
+
+  private final CompactExecutorImpl executor = new CompactExecutorImpl();
+  private Path outputPath;
+
+  @Before
+  public void setUp() throws IOException {
+    outputPath = Files.createTempDirectory("compact-executor-test");
+  }
+
+  @Test
+  public void run_mergesAllChunks() throws IOException {
+    writeChunk("querylogs", 0, 0, 10, SCHEMA);
+    writeChunk("querylogs", 1, 10, 20, SCHEMA);
+    writeChunk("querylogs", 2, 20, 30, SCHEMA);
+
+    assertThat(runCompact(1 << 20)).isEqualTo(0);
+
+    assertThat(listFiles())
+        .containsExactly("querylogs-20210701T000000S000000-20210701T000029S000000_0.avro");
+    assertThat(readValues("querylogs-20210701T000000S000000-20210701T000029S000000_0.avro"))
+        .isEqualTo(getValues(0, 30));
+  }
+
+  @Test
+  public void run_mergesUpToTargetSize() throws IOException {
+    for (int i = 0; i < 5; i++) {
+      writeChunk("querylogs", i, i * 10, i * 10 + 10, SCHEMA);
+    }
+    long chunkSize = Files.size(outputPath.resolve(getChunkName("querylogs", 0, 0, 10)));
+
+    assertThat(runCompact(2 * chunkSize + chunkSize / 2)).isEqualTo(0);
+
+    assertThat(listFiles())
+        .containsExactly(
+            "querylogs-20210701T000000S000000-20210701T000019S000000_0.avro",
+            "querylogs-20210701T000020S000000-20210701T000039S000000_1.avro",
+            "querylogs-20210701T000040S000000-20210701T000049S000000_2.avro");
+    List<Long> values = new ArrayList<>();
+    for (String fileName : listFiles()) {
+      values.addAll(readValues(fileName));
+    }
+    assertThat(values).isEqualTo(getValues(0, 50));
+    // A later extraction resumes after the merged files.
+    ImmutableMap<String, ChunkCheckpoint> checkpoints =
+        new SaveCheckerImpl(ImmutableMap.of("querylogs", ImmutableList.of("StartTime")))
+            .getScriptCheckPoints(outputPath);
+    assertThat(checkpoints.get("querylogs").lastSavedChunkNumber()).isEqualTo(2);
+    assertThat(checkpoints.get("querylogs").lastSavedInstant())
+        .isEqualTo(Instant.parse("2021-07-01T00:00:49Z"));
+  }
+
+  @Test
+  public void run_keepsCodecAndMetadata() throws IOException {
+    writeChunk("querylogs", 0, 0, 10, SCHEMA);
+    writeChunk("querylogs", 1, 10, 20, SCHEMA);
+
+    assertThat(runCompact(1 << 20)).isEqualTo(0);
+
+    try (DataFileReader<GenericRecord> reader =
+        new DataFileReader<>(
+            outputPath
+                .resolve("querylogs-20210701T000000S000000-20210701T000019S000000_0.avro")
+                .toFile(),
+            new GenericDatumReader<>())) {
+      assertThat(reader.getMetaString("avro.codec")).isEqualTo("deflate");
+      assertThat(reader.getMetaString("sample_ratio")).isEqualTo("0.5");
+      assertThat(reader.getSchema()).isEqualTo(SCHEMA);
+    }
+  }
+
+  @Test
+  public void run_startsNewFileOnSchemaChange() throws IOException {
+    writeChunk("querylogs", 0, 0, 10, SCHEMA);
+    writeChunk("querylogs", 1, 10, 20, SCHEMA);
+    writeChunk("querylogs", 2, 20, 30, OTHER_SCHEMA);
+    writeChunk("querylogs", 3, 30, 40, OTHER_SCHEMA);
+
+    assertThat(runCompact(1 << 20)).isEqualTo(0);
+
+    assertThat(listFiles())
+        .containsExactly(
+            "querylogs-20210701T000000S000000-20210701T000019S000000_0.avro",
+            "querylogs-20210701T000020S000000-20210701T000039S000000_1.avro");
+  }
+
+  @Test
+  public void run_renumbersChunksThatAreNotMerged() throws IOException {
+    writeChunk("querylogs", 0, 0, 10, SCHEMA);
+    writeChunk("querylogs", 1, 10, 20, SCHEMA);
+    writeChunk("querylogs", 2, 20, 30, OTHER_SCHEMA);
+
+    assertThat(runCompact(1 << 20)).isEqualTo(0);
+
+    assertThat(listFiles())
+        .containsExactly(
+            "querylogs-20210701T000000S000000-20210701T000019S000000_0.avro",
+            getChunkName("querylogs", 1, 20, 30));
+    assertThat(readValues(getChunkName("querylogs", 1, 20, 30))).isEqualTo(getValues(20, 30));
+  }
+
+  @Test
+  public void run_compactsPartitionsSeparately() throws IOException {
+    writeChunk("querylogs_h0of2", 0, 0, 10, SCHEMA);
+    writeChunk("querylogs_h0of2", 1, 10, 20, SCHEMA);
+    writeChunk("querylogs_h1of2", 0, 5, 15, SCHEMA);
+    writeChunk("querylogs_h1of2", 1, 15, 25, SCHEMA);
+
+    assertThat(runCompact(1 << 20)).isEqualTo(0);
+
+    assertThat(listFiles())
+        .containsExactly(
+            "querylogs_h0of2-20210701T000000S000000-20210701T000019S000000_0.avro",
+            "querylogs_h1of2-20210701T000005S000000-20210701T000024S000000_0.avro");
+  }
+
+  @Test
+  public void run_keepsIndexOnlyOfChunksThatAreNotMerged() throws IOException {
+    writeChunk("querylogs", 0, 0, 10, SCHEMA);
+    writeChunk("querylogs", 1, 10, 20, SCHEMA);
+    writeChunk("querylogs", 2, 20, 30, OTHER_SCHEMA);
+    for (int i = 0; i < 3; i++) {
+      Files.write(
+          outputPath.resolve(getChunkName("querylogs", i, i * 10, i * 10 + 10) + ".index"),
+          new byte[] {(byte) i});
+    }
+
+    assertThat(runCompact(1 << 20)).isEqualTo(0);
+
+    assertThat(listFiles())
+        .containsExactly(
+            "querylogs-20210701T000000S000000-20210701T000019S000000_0.avro",
+            getChunkName("querylogs", 1, 20, 30),
+            getChunkName("querylogs", 1, 20, 30) + ".index");
+    assertThat(
+            Files.readAllBytes(outputPath.resolve(getChunkName("querylogs", 1, 20, 30) + ".index")))
+        .isEqualTo(new byte[] {2});
+  }
+
+  @Test
+  public void run_skipsScriptWithMissingChunk() throws IOException {
+    writeChunk("querylogs", 0, 0, 10, SCHEMA);
+    writeChunk("querylogs", 2, 20, 30, SCHEMA);
+
+    assertThat(runCompact(1 << 20)).isEqualTo(0);
+
+    assertThat(listFiles())
+        .containsExactly(getChunkName("querylogs", 0, 0, 10), getChunkName("querylogs", 2, 20, 30));
+  }
+
+  @Test
+  public void run_skipsScriptWithUnfinishedChunk() throws IOException {
+    writeChunk("querylogs", 0, 0, 10, SCHEMA);
+    writeChunk("querylogs", 1, 10, 20, SCHEMA);
+    Files.createFile(outputPath.resolve("querylogs-20210701T000020S000000_2_temp.avro"));
+    writeChunk("sql_logs", 0, 0, 10, SCHEMA);
+    writeChunk("sql_logs", 1, 10, 20, SCHEMA);
+
+    assertThat(runCompact(1 << 20)).isEqualTo(0);
+
+    assertThat(listFiles())
+        .containsExactly(
+            getChunkName("querylogs", 0, 0, 10),
+            getChunkName("querylogs", 1, 10, 20),
+            "querylogs-20210701T000020S000000_2_temp.avro",
+            "sql_logs-20210701T000000S000000-20210701T000019S000000_0.avro");
+  }
+
+  @Test
+  public void run_failsOnIncompleteChunk() throws IOException {
+    writeChunk("querylogs", 0, 0, 10, SCHEMA);
+    writeChunk("querylogs", 1, 10, 20, SCHEMA);
+    Path chunk = outputPath.resolve(getChunkName("querylogs", 1, 10, 20));
+    byte[] bytes = Files.readAllBytes(chunk);
+    Files.write(chunk, Arrays.copyOf(bytes, bytes.length - 10));
+
+    assertThat(runCompact(1 << 20)).isEqualTo(1);
+
+    assertThat(listFiles())
+        .containsExactly(getChunkName("querylogs", 0, 0, 10), getChunkName("querylogs", 1, 10, 20));
+  }
+
+  private int runCompact(long targetFileSize) throws IOException {
+    return executor.run(
+        CompactExecutor.Arguments.builder()
+            .setInputPath(outputPath)
+            .setTargetFileSize(targetFileSize)
+            .setThreads(2)
+            .build());
+  }
+
+  private List<String> listFiles() throws IOException {
+    try (Stream<Path> paths = Files.list(outputPath)) {
+      return paths.map(path -> path.getFileName().toString()).sorted().collect(toList());
+    }
+  }
+
+  private List<Long> readValues(String fileName) throws IOException {
+    List<Long> values = new ArrayList<>();
+    File file = outputPath.resolve(fileName).toFile();
+    try (DataFileReader<GenericRecord> reader =
+        new DataFileReader<>(file, new GenericDatumReader<>())) {
+      for (GenericRecord record : reader) {
+        values.add((Long) record.get("StartTime"));
+      }
+    }
+    return values;
+  }
+
+  private static List<Long> getValues(int fromSecond, int toSecond) {
+    List<Long> values = new ArrayList<>();
+    for (int second = fromSecond; second < toSecond; second++) {
+      values.add(Instant.parse("2021-07-01T00:00:00Z").plusSeconds(second).toEpochMilli());
+    }
+    return values;
+  }
+
+  private static String getChunkName(
+      String entityName, int chunkNumber, int fromSecond, int toSecond) {
+    return String.format(
+        "%s-20210701T0000%02dS000000-20210701T0000%02dS000000_%d.avro",
+        entityName, fromSecond, toSecond - 1, chunkNumber);
+  }
+
+  private void writeChunk(
+      String entityName, int chunkNumber, int fromSecond, int toSecond, Schema schema)
+      throws IOException {
+    Path path = outputPath.resolve(getChunkName(entityName, chunkNumber, fromSecond, toSecond));
+    try (OutputStream outputStream = Files.newOutputStream(path);
+        DataFileWriter<GenericRecord> writer =
+            new DataFileWriter<>(new GenericDatumWriter<GenericRecord>(schema))) {
+      writer.setCodec(CodecFactory.deflateCodec(6));
+      writer.setMeta("sample_ratio", "0.5");
+      // Small blocks, so that every chunk has several blocks to copy.
+      writer.setSyncInterval(64);
+      writer.create(schema, outputStream);
+      for (long value : getValues(fromSecond, toSecond)) {
+        writer.append(
+            new GenericRecordBuilder(schema)
+                .set("QueryText", "SELECT " + value)
+                .set("StartTime", value)
+                .build());
+      }
+    }
+  }
+}
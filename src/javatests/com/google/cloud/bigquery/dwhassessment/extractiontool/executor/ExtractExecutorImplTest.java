@@ -16,41 +16,67 @@
 package com.google.cloud.bigquery.dwhassessment.extractiontool.executor;
 
 import static com.google.cloud.bigquery.dwhassessment.extractiontool.executor.ExtractExecutorImpl.getTeradataTimestampFromInstant;
+import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.junit.Assert.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
 import com.google.cloud.bigquery.dwhassessment.extractiontool.common.ChunkCheckpoint;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.db.ColumnProjection;
 import com.google.cloud.bigquery.dwhassessment.extractiontool.db.SchemaFilter;
 import com.google.cloud.bigquery.dwhassessment.extractiontool.db.SchemaManager;
 import com.google.cloud.bigquery.dwhassessment.extractiontool.db.SchemaManager.SchemaKey;
 import com.google.cloud.bigquery.dwhassessment.extractiontool.db.ScriptManager;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.db.SqlScriptVariables.QueryLogsVariables.HashPartition;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.db.SqlScriptVariables.QueryLogsVariables.TimeRange;
 import com.google.cloud.bigquery.dwhassessment.extractiontool.db.SqlTemplateRenderer;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.db.StatementTimeouts;
 import com.google.cloud.bigquery.dwhassessment.extractiontool.dumper.DataEntityManager;
 import com.google.cloud.bigquery.dwhassessment.extractiontool.executor.ExtractExecutor.Arguments;
 import com.google.cloud.bigquery.dwhassessment.extractiontool.executor.ExtractExecutor.RunMode;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.executor.LeaseManager.LeaseLostException;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.re2j.Pattern;
 import java.io.ByteArrayOutputStream;
+import java.io.Reader;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
 import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import org.apache.avro.Schema;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 
 @RunWith(JUnit4.class)
 public final class ExtractExecutorImplTest {
@@ -70,7 +96,14 @@ public final class ExtractExecutorImplTest {
     saveChecker = mock(SaveChecker.class);
     executor =
         new ExtractExecutorImpl(
-            schemaManager, scriptManager, saveChecker, path -> dataEntityManager);
+            schemaManager,
+            scriptManager,
+            saveChecker,
+            (path, syncOnCommit) -> dataEntityManager,
+            ImmutableSet.of("partitionable"),
+            ImmutableMap.of(),
+            ImmutableSet.of(),
+            ImmutableSet.of());
     properties = new Properties();
     properties.put("user", "");
     properties.put("password", "");
@@ -252,6 +285,56 @@ public final class ExtractExecutorImplTest {
     verifyNoMoreInteractions(saveChecker);
   }
 
+  @Test
+  public void run_incrementalModeAfterChunkEndingInTie_resumesAtLastKey() throws Exception {
+    when(scriptManager.getAllScriptNames()).thenReturn(ImmutableSet.of("test_script_0"));
+    when(schemaManager.getSchemaKeys(any(Connection.class), eq(ImmutableList.of())))
+        .thenReturn(ImmutableSet.of());
+    Instant testInstant = Instant.parse("2007-07-07T20:07:07.007000000Z");
+    when(saveChecker.getScriptCheckPoints(any(Path.class)))
+        .thenReturn(
+            ImmutableMap.of(
+                "test_script_0",
+                ChunkCheckpoint.builder()
+                    .setLastSavedChunkNumber(1)
+                    .setLastSavedInstant(testInstant)
+                    .setLastSavedKey(ImmutableMap.of("QueryID", "12"))
+                    .build()));
+    Arguments arguments =
+        Arguments.builder()
+            .setDbConnectionProperties(properties)
+            .setDbConnectionAddress("jdbc:hsqldb:mem:my-animalclinic.example")
+            .setOutputPath(Paths.get("/tmp"))
+            .setMode(RunMode.INCREMENTAL)
+            .setChunkRows(5000)
+            .setPrevRunPath(Paths.get("test_path"))
+            .build();
+
+    assertThat(executor.run(arguments)).isEqualTo(0);
+
+    verify(scriptManager)
+        .executeScript(
+            any(Connection.class),
+            /*dryRun=*/ eq(false),
+            argThat(
+                (SqlTemplateRenderer renderer) -> {
+                  TimeRange timeRange =
+                      renderer
+                          .getSqlScriptVariablesBuilder()
+                          .build()
+                          .getQueryLogsVariables()
+                          .getTimeRange();
+                  return timeRange
+                          .getStartTimestamp()
+                          .equals(getTeradataTimestampFromInstant(testInstant))
+                      && timeRange.getStartKey().equals(ImmutableMap.of("QueryID", "12"));
+                }),
+            /*scriptName=*/ eq("test_script_0"),
+            eq(dataEntityManager),
+            eq(5000),
+            eq(1 + 1));
+  }
+
   @Test
   public void run_recoveryModeNoChunk_success() throws Exception {
     ImmutableSet<String> targetScripts = ImmutableSet.of("script_no_record", "script_with_record");
@@ -264,174 +347,1295 @@ public final class ExtractExecutorImplTest {
     Arguments arguments =
         Arguments.builder()
             .setDbConnectionProperties(properties)
-            .setDbConnectionAddress("jdbc:hsqldb:mem:recovery-mode-no-chunk.example")
-            .setOutputPath(Paths.get("/tmp"))
-            .setMode(RunMode.RECOVERY)
-            .setChunkRows(0)
-            .setPrevRunPath(Paths.get("test_path"))
+            .setDbConnectionAddress("jdbc:hsqldb:mem:recovery-mode-no-chunk.example")
+            .setOutputPath(Paths.get("/tmp"))
+            .setMode(RunMode.RECOVERY)
+            .setChunkRows(0)
+            .setPrevRunPath(Paths.get("test_path"))
+            .build();
+
+    assertThat(executor.run(arguments)).isEqualTo(0);
+
+    verify(scriptManager).getAllScriptNames();
+    verify(scriptManager)
+        .executeScript(
+            any(Connection.class),
+            /*dryRun=*/ eq(false),
+            any(SqlTemplateRenderer.class),
+            /*scriptName=*/ eq("script_no_record"),
+            eq(dataEntityManager),
+            eq(0),
+            eq(0));
+    verify(saveChecker)
+        .getNamesOfFinishedScripts(eq(Paths.get("test_path")), eq(targetScripts), eq("avro"));
+    verifyNoMoreInteractions(saveChecker);
+  }
+
+  @Test
+  public void run_recoveryModeChunked_success() throws Exception {
+    ImmutableSet<String> targetScripts =
+        ImmutableSet.of("script_chunk_record", "script_with_record");
+    when(scriptManager.getAllScriptNames()).thenReturn(targetScripts);
+    when(schemaManager.getSchemaKeys(any(Connection.class), eq(ImmutableList.of())))
+        .thenReturn(ImmutableSet.of());
+    Instant testInstant0 = Instant.parse("2007-07-07T20:07:07.007000000Z");
+    when(saveChecker.getScriptCheckPoints(any(Path.class)))
+        .thenReturn(
+            ImmutableMap.of(
+                "script_chunk_record",
+                ChunkCheckpoint.builder()
+                    .setLastSavedChunkNumber(1)
+                    .setLastSavedInstant(testInstant0)
+                    .build()));
+    when(saveChecker.getNamesOfFinishedScripts(
+            any(Path.class), eq(targetScripts), any(String.class)))
+        .thenReturn(ImmutableSet.of("script_with_record"));
+    Arguments arguments =
+        Arguments.builder()
+            .setDbConnectionProperties(properties)
+            .setDbConnectionAddress("jdbc:hsqldb:mem:recovery-mode-chunked.example")
+            .setOutputPath(Paths.get("/tmp"))
+            .setMode(RunMode.RECOVERY)
+            .setChunkRows(5000)
+            .setPrevRunPath(Paths.get("test_path"))
+            .build();
+
+    assertThat(executor.run(arguments)).isEqualTo(0);
+
+    verify(scriptManager).getAllScriptNames();
+    verify(scriptManager)
+        .executeScript(
+            any(Connection.class),
+            /*dryRun=*/ eq(false),
+            any(SqlTemplateRenderer.class),
+            /*scriptName=*/ eq("script_chunk_record"),
+            eq(dataEntityManager),
+            eq(5000),
+            eq(1 + 1));
+    verify(saveChecker).getScriptCheckPoints(Paths.get("test_path"));
+    verify(saveChecker)
+        .getNamesOfFinishedScripts(eq(Paths.get("test_path")), eq(targetScripts), eq("avro"));
+  }
+
+  @Test
+  public void run_noNeedQueryText_success() throws Exception {
+    when(scriptManager.getAllScriptNames()).thenReturn(ImmutableSet.of("test_script"));
+    when(schemaManager.getSchemaKeys(any(Connection.class), eq(ImmutableList.of())))
+        .thenReturn(ImmutableSet.of());
+    Arguments arguments =
+        Arguments.builder()
+            .setNeedQueryText(false)
+            .setDbConnectionProperties(properties)
+            .setDbConnectionAddress("jdbc:hsqldb:mem:my-animalclinic.example")
+            .setOutputPath(Paths.get("/tmp"))
+            .build();
+
+    assertThat(executor.run(arguments)).isEqualTo(0);
+
+    verify(scriptManager).getAllScriptNames();
+    verify(scriptManager)
+        .executeScript(
+            any(Connection.class),
+            /*dryRun=*/ eq(false),
+            argThat(
+                (SqlTemplateRenderer renderer) ->
+                    !renderer
+                        .getSqlScriptVariablesBuilder()
+                        .build()
+                        .getQueryLogsVariables()
+                        .getNeedQueryText()),
+            /*scriptName=*/ eq("test_script"),
+            eq(dataEntityManager),
+            eq(0),
+            eq(0));
+    verifyNoMoreInteractions(scriptManager);
+  }
+
+  @Test
+  public void run_saveCheckerNotInvokedIfRunChunked() throws Exception {
+    when(scriptManager.getAllScriptNames()).thenReturn(ImmutableSet.of("test_script"));
+    when(schemaManager.getSchemaKeys(any(Connection.class), eq(ImmutableList.of())))
+        .thenReturn(ImmutableSet.of());
+    // saveChecker should not be invoked with chunk number < 1 regardless of mode.
+    when(saveChecker.getScriptCheckPoints(Paths.get("test_path"))).thenReturn(ImmutableMap.of());
+    Arguments arguments =
+        Arguments.builder()
+            .setDbConnectionProperties(properties)
+            .setDbConnectionAddress("jdbc:hsqldb:mem:my-animalclinic.example")
+            .setOutputPath(Paths.get("/tmp"))
+            .setMode(RunMode.INCREMENTAL)
+            .setChunkRows(0)
+            .setPrevRunPath(Paths.get("test_path"))
+            .build();
+
+    assertThat(executor.run(arguments)).isEqualTo(0);
+
+    verify(scriptManager).getAllScriptNames();
+    verify(scriptManager)
+        .executeScript(
+            any(Connection.class),
+            /*dryRun=*/ eq(false),
+            any(SqlTemplateRenderer.class),
+            /*scriptName=*/ eq("test_script"),
+            eq(dataEntityManager),
+            eq(0),
+            eq(0));
+    verifyNoMoreInteractions(scriptManager);
+    verifyNoMoreInteractions(saveChecker);
+  }
+
+  @Test
+  public void run_normalModeChunked_success() throws Exception {
+    when(scriptManager.getAllScriptNames()).thenReturn(ImmutableSet.of("test_script"));
+    when(schemaManager.getSchemaKeys(any(Connection.class), eq(ImmutableList.of())))
+        .thenReturn(ImmutableSet.of());
+    // saveChecker should not be invoked in normal mode regardless of chunk number.
+    when(saveChecker.getScriptCheckPoints(Paths.get("test_path"))).thenReturn(ImmutableMap.of());
+    Arguments arguments =
+        Arguments.builder()
+            .setDbConnectionProperties(properties)
+            .setDbConnectionAddress("jdbc:hsqldb:mem:my-animalclinic.example")
+            .setOutputPath(Paths.get("/tmp"))
+            .setMode(RunMode.NORMAL)
+            .setChunkRows(5)
+            .setPrevRunPath(Paths.get("test_path"))
+            .build();
+
+    assertThat(executor.run(arguments)).isEqualTo(0);
+
+    verify(scriptManager).getAllScriptNames();
+    verify(scriptManager)
+        .executeScript(
+            any(Connection.class),
+            /*dryRun=*/ eq(false),
+            any(SqlTemplateRenderer.class),
+            /*scriptName=*/ eq("test_script"),
+            eq(dataEntityManager),
+            eq(5),
+            eq(0));
+    verifyNoMoreInteractions(scriptManager);
+    verifyNoMoreInteractions(saveChecker);
+  }
+
+  @Test
+  public void run_hashPartitions_success() throws Exception {
+    when(scriptManager.getAllScriptNames())
+        .thenReturn(ImmutableSet.of("partitionable", "not_partitionable"));
+    when(schemaManager.getSchemaKeys(any(Connection.class), eq(ImmutableList.of())))
+        .thenReturn(ImmutableSet.of());
+    when(dataEntityManager.isResumable()).thenReturn(true);
+    Arguments arguments =
+        Arguments.builder()
+            .setDbConnectionProperties(properties)
+            .setDbConnectionAddress("jdbc:hsqldb:mem:hash-partitions.example")
+            .setOutputPath(Paths.get("/tmp"))
+            .setHashPartitions(3)
+            .build();
+
+    assertThat(executor.run(arguments)).isEqualTo(0);
+
+    ArgumentCaptor<SqlTemplateRenderer> rendererCaptor =
+        ArgumentCaptor.forClass(SqlTemplateRenderer.class);
+    verify(scriptManager, times(3))
+        .executeScript(
+            any(Connection.class),
+            /*dryRun=*/ eq(false),
+            rendererCaptor.capture(),
+            /*scriptName=*/ eq("partitionable"),
+            eq(dataEntityManager),
+            eq(0),
+            eq(0));
+    assertThat(
+            rendererCaptor.getAllValues().stream()
+                .map(
+                    renderer ->
+                        renderer
+                            .getSqlScriptVariablesBuilder()
+                            .build()
+                            .getQueryLogsVariables()
+                            .getHashPartition())
+                .collect(toImmutableList()))
+        .containsExactly(
+            HashPartition.create(3, 0), HashPartition.create(3, 1), HashPartition.create(3, 2));
+    verify(scriptManager)
+        .executeScript(
+            any(Connection.class),
+            /*dryRun=*/ eq(false),
+            argThat(
+                (SqlTemplateRenderer renderer) ->
+                    !renderer
+                        .getSqlScriptVariablesBuilder()
+                        .build()
+                        .getQueryLogsVariables()
+                        .hashPartition()
+                        .isPresent()),
+            /*scriptName=*/ eq("not_partitionable"),
+            eq(dataEntityManager),
+            eq(0),
+            eq(0));
+  }
+
+  @Test
+  public void run_maxSessions_retriesFailedPartition() throws Exception {
+    when(scriptManager.getAllScriptNames()).thenReturn(ImmutableSet.of("partitionable"));
+    when(dataEntityManager.isResumable()).thenReturn(true);
+    doThrow(new SQLException("Too many sessions."))
+        .doNothing()
+        .when(scriptManager)
+        .executeScript(
+            any(Connection.class),
+            anyBoolean(),
+            any(SqlTemplateRenderer.class),
+            anyString(),
+            any(DataEntityManager.class),
+            anyInt(),
+            anyInt());
+    Arguments arguments =
+        Arguments.builder()
+            .setDbConnectionProperties(properties)
+            .setDbConnectionAddress("jdbc:hsqldb:mem:max-sessions.example")
+            .setOutputPath(Paths.get("/tmp"))
+            .setHashPartitions(2)
+            .setMaxSessions(2)
+            .setNeedJdbcSchemas(false)
+            .build();
+
+    assertThat(executor.run(arguments)).isEqualTo(0);
+
+    verify(scriptManager, times(3))
+        .executeScript(
+            any(Connection.class),
+            /*dryRun=*/ eq(false),
+            any(SqlTemplateRenderer.class),
+            /*scriptName=*/ eq("partitionable"),
+            any(DataEntityManager.class),
+            eq(0),
+            eq(0));
+  }
+
+  @Test
+  public void run_maxSessions_failsAfterRepeatedFailures() throws Exception {
+    when(scriptManager.getAllScriptNames()).thenReturn(ImmutableSet.of("partitionable"));
+    when(dataEntityManager.isResumable()).thenReturn(true);
+    doThrow(new SQLException("Too many sessions."))
+        .when(scriptManager)
+        .executeScript(
+            any(Connection.class),
+            anyBoolean(),
+            any(SqlTemplateRenderer.class),
+            anyString(),
+            any(DataEntityManager.class),
+            anyInt(),
+            anyInt());
+    Arguments arguments =
+        Arguments.builder()
+            .setDbConnectionProperties(properties)
+            .setDbConnectionAddress("jdbc:hsqldb:mem:max-sessions-fail.example")
+            .setOutputPath(Paths.get("/tmp"))
+            .setHashPartitions(2)
+            .setMaxSessions(1)
+            .setNeedJdbcSchemas(false)
+            .build();
+
+    assertThrows(SQLException.class, () -> executor.run(arguments));
+
+    // The other partition may or may not have started before the failure stopped the run.
+    verify(scriptManager, atLeast(3))
+        .executeScript(
+            any(Connection.class),
+            /*dryRun=*/ eq(false),
+            any(SqlTemplateRenderer.class),
+            /*scriptName=*/ eq("partitionable"),
+            any(DataEntityManager.class),
+            eq(0),
+            eq(0));
+  }
+
+  @Test
+  public void run_sampleRatio_onlyAppliedToSupportingScripts() throws Exception {
+    when(scriptManager.getAllScriptNames())
+        .thenReturn(ImmutableSet.of("partitionable", "not_partitionable"));
+    when(schemaManager.getSchemaKeys(any(Connection.class), eq(ImmutableList.of())))
+        .thenReturn(ImmutableSet.of());
+    Arguments arguments =
+        Arguments.builder()
+            .setDbConnectionProperties(properties)
+            .setDbConnectionAddress("jdbc:hsqldb:mem:sample-ratio.example")
+            .setOutputPath(Paths.get("/tmp"))
+            .setSampleRatio(0.1)
+            .build();
+
+    assertThat(executor.run(arguments)).isEqualTo(0);
+
+    verify(scriptManager)
+        .executeScript(
+            any(Connection.class),
+            /*dryRun=*/ eq(false),
+            argThat(
+                (SqlTemplateRenderer renderer) ->
+                    renderer
+                        .getSqlScriptVariablesBuilder()
+                        .build()
+                        .getQueryLogsVariables()
+                        .sampleRatio()
+                        .equals(Optional.of(0.1))),
+            /*scriptName=*/ eq("partitionable"),
+            eq(dataEntityManager),
+            eq(0),
+            eq(0));
+    verify(scriptManager)
+        .executeScript(
+            any(Connection.class),
+            /*dryRun=*/ eq(false),
+            argThat(
+                (SqlTemplateRenderer renderer) ->
+                    !renderer
+                        .getSqlScriptVariablesBuilder()
+                        .build()
+                        .getQueryLogsVariables()
+                        .sampleRatio()
+                        .isPresent()),
+            /*scriptName=*/ eq("not_partitionable"),
+            eq(dataEntityManager),
+            eq(0),
+            eq(0));
+  }
+
+  @Test
+  public void run_hashPartitionsIncrementalMode_continuesEachPartition() throws Exception {
+    when(scriptManager.getAllScriptNames()).thenReturn(ImmutableSet.of("partitionable"));
+    when(schemaManager.getSchemaKeys(any(Connection.class), eq(ImmutableList.of())))
+        .thenReturn(ImmutableSet.of());
+    when(dataEntityManager.isResumable()).thenReturn(true);
+    when(saveChecker.getScriptCheckPoints(any(Path.class)))
+        .thenReturn(
+            ImmutableMap.of(
+                "partitionable_p1",
+                ChunkCheckpoint.builder()
+                    .setLastSavedChunkNumber(4)
+                    .setLastSavedInstant(Instant.parse("2007-07-07T20:07:07.007000000Z"))
+                    .build()));
+    Arguments arguments =
+        Arguments.builder()
+            .setDbConnectionProperties(properties)
+            .setDbConnectionAddress("jdbc:hsqldb:mem:hash-partitions-incremental.example")
+            .setOutputPath(Paths.get("/tmp"))
+            .setMode(RunMode.INCREMENTAL)
+            .setChunkRows(100)
+            .setPrevRunPath(Paths.get("test_path"))
+            .setHashPartitions(2)
+            .build();
+
+    assertThat(executor.run(arguments)).isEqualTo(0);
+
+    verify(scriptManager)
+        .executeScript(
+            any(Connection.class),
+            /*dryRun=*/ eq(false),
+            argThat(
+                (SqlTemplateRenderer renderer) ->
+                    renderer
+                        .getSqlScriptVariablesBuilder()
+                        .build()
+                        .getQueryLogsVariables()
+                        .getHashPartition()
+                        .equals(HashPartition.create(2, 0))),
+            /*scriptName=*/ eq("partitionable"),
+            eq(dataEntityManager),
+            eq(100),
+            eq(0));
+    verify(scriptManager)
+        .executeScript(
+            any(Connection.class),
+            /*dryRun=*/ eq(false),
+            argThat(
+                (SqlTemplateRenderer renderer) ->
+                    renderer
+                        .getSqlScriptVariablesBuilder()
+                        .build()
+                        .getQueryLogsVariables()
+                        .getHashPartition()
+                        .equals(HashPartition.create(2, 1))),
+            /*scriptName=*/ eq("partitionable"),
+            eq(dataEntityManager),
+            eq(100),
+            eq(4 + 1));
+  }
+
+  @Test
+  public void runAll_extractsEachSourceIntoItsOwnOutput() throws Exception {
+    Set<Path> outputPaths = ConcurrentHashMap.newKeySet();
+    executor =
+        new ExtractExecutorImpl(
+            schemaManager,
+            scriptManager,
+            saveChecker,
+            (path, syncOnCommit) -> {
+              outputPaths.add(path);
+              return dataEntityManager;
+            },
+            ImmutableSet.of(),
+            ImmutableMap.of(),
+            ImmutableSet.of(),
+            ImmutableSet.of());
+    when(scriptManager.getAllScriptNames()).thenReturn(ImmutableSet.of("one"));
+    Arguments.Builder argumentsBuilder =
+        Arguments.builder().setDbConnectionProperties(properties).setNeedJdbcSchemas(false);
+
+    assertThat(
+            executor.runAll(
+                ImmutableList.of(
+                    argumentsBuilder
+                        .setDbConnectionAddress("jdbc:hsqldb:mem:source-a.example")
+                        .setOutputPath(Paths.get("/tmp/a"))
+                        .setBaseDatabase("BaseA")
+                        .build(),
+                    argumentsBuilder
+                        .setDbConnectionAddress("jdbc:hsqldb:mem:source-b.example")
+                        .setOutputPath(Paths.get("/tmp/b"))
+                        .setBaseDatabase("BaseB")
+                        .build()),
+                /*parallelism=*/ 2))
+        .isEqualTo(0);
+
+    assertThat(outputPaths).containsExactly(Paths.get("/tmp/a"), Paths.get("/tmp/b"));
+    ArgumentCaptor<SqlTemplateRenderer> rendererCaptor =
+        ArgumentCaptor.forClass(SqlTemplateRenderer.class);
+    verify(scriptManager, times(2))
+        .executeScript(
+            any(Connection.class),
+            /*dryRun=*/ eq(false),
+            rendererCaptor.capture(),
+            /*scriptName=*/ eq("one"),
+            eq(dataEntityManager),
+            eq(0),
+            eq(0));
+    assertThat(
+            rendererCaptor.getAllValues().stream()
+                .map(renderer -> renderer.getSqlScriptVariablesBuilder().build().getBaseDatabase())
+                .collect(toImmutableList()))
+        .containsExactly("BaseA", "BaseB");
+    verify(dataEntityManager, times(2)).close();
+  }
+
+  @Test
+  public void run_fsyncOnCommit_createsSyncingOutput() throws Exception {
+    List<Boolean> syncFlags = new ArrayList<>();
+    executor =
+        new ExtractExecutorImpl(
+            schemaManager,
+            scriptManager,
+            saveChecker,
+            (path, syncOnCommit) -> {
+              syncFlags.add(syncOnCommit);
+              return dataEntityManager;
+            },
+            ImmutableSet.of(),
+            ImmutableMap.of(),
+            ImmutableSet.of(),
+            ImmutableSet.of());
+    when(scriptManager.getAllScriptNames()).thenReturn(ImmutableSet.of("one"));
+    Arguments.Builder argumentsBuilder =
+        Arguments.builder()
+            .setDbConnectionProperties(properties)
+            .setDbConnectionAddress("jdbc:hsqldb:mem:my-animalclinic.example")
+            .setOutputPath(Paths.get("/tmp"))
+            .setNeedJdbcSchemas(false);
+
+    executor.run(argumentsBuilder.build());
+    executor.run(argumentsBuilder.setFsyncOnCommit(true).build());
+
+    assertThat(syncFlags).containsExactly(false, true).inOrder();
+  }
+
+  @Test
+  public void runAll_failOnSharedOutputPath() {
+    Arguments arguments =
+        Arguments.builder()
+            .setDbConnectionProperties(properties)
+            .setDbConnectionAddress("jdbc:hsqldb:mem:source-a.example")
+            .setOutputPath(Paths.get("/tmp"))
+            .build();
+
+    IllegalArgumentException e =
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> executor.runAll(ImmutableList.of(arguments, arguments), /*parallelism=*/ 2));
+
+    assertThat(e).hasMessageThat().contains("its own output path");
+    verifyNoMoreInteractions(scriptManager);
+  }
+
+  @Test
+  public void run_withoutHistory_startsScriptsWithHighestCostHintFirst() throws Exception {
+    Path outputPath = Files.createTempDirectory("extract-history-test");
+    when(scriptManager.getAllScriptNames()).thenReturn(ImmutableSet.of("one", "two", "three"));
+    when(dataEntityManager.isResumable()).thenReturn(true);
+    executor =
+        new ExtractExecutorImpl(
+            schemaManager,
+            scriptManager,
+            saveChecker,
+            (path, syncOnCommit) -> dataEntityManager,
+            ImmutableSet.of("partitionable"),
+            ImmutableMap.of("two", 10, "three", 5),
+            ImmutableSet.of(),
+            ImmutableSet.of());
+
+    assertThat(
+            executor.run(
+                Arguments.builder()
+                    .setDbConnectionProperties(properties)
+                    .setDbConnectionAddress("jdbc:hsqldb:mem:cost-hints.example")
+                    .setOutputPath(outputPath)
+                    .setNeedJdbcSchemas(false)
+                    .build()))
+        .isEqualTo(0);
+
+    verifyScriptOrder("two", "three", "one");
+    Properties history = new Properties();
+    try (Reader reader = Files.newBufferedReader(outputPath.resolve(".history.properties"))) {
+      history.load(reader);
+    }
+    assertThat(history.stringPropertyNames()).containsExactly("one", "two", "three");
+  }
+
+  @Test
+  public void run_withHistory_startsLongestScriptFirst() throws Exception {
+    Path outputPath = Files.createTempDirectory("extract-history-test");
+    Path prevRunPath = Files.createTempDirectory("extract-history-test");
+    Files.write(
+        prevRunPath.resolve(".history.properties"),
+        ImmutableList.of("one=30000", "two=100", "three=2000"));
+    when(scriptManager.getAllScriptNames()).thenReturn(ImmutableSet.of("one", "two", "three"));
+    executor =
+        new ExtractExecutorImpl(
+            schemaManager,
+            scriptManager,
+            saveChecker,
+            (path, syncOnCommit) -> dataEntityManager,
+            ImmutableSet.of("partitionable"),
+            ImmutableMap.of("two", 10),
+            ImmutableSet.of(),
+            ImmutableSet.of());
+
+    assertThat(
+            executor.run(
+                Arguments.builder()
+                    .setDbConnectionProperties(properties)
+                    .setDbConnectionAddress("jdbc:hsqldb:mem:history.example")
+                    .setOutputPath(outputPath)
+                    .setMode(RunMode.INCREMENTAL)
+                    .setPrevRunPath(prevRunPath)
+                    .setNeedJdbcSchemas(false)
+                    .build()))
+        .isEqualTo(0);
+
+    verifyScriptOrder("one", "three", "two");
+  }
+
+  @Test
+  public void run_allScripts_skipsOptInScripts() throws Exception {
+    when(scriptManager.getAllScriptNames()).thenReturn(ImmutableSet.of("one", "summary"));
+    executor =
+        new ExtractExecutorImpl(
+            schemaManager,
+            scriptManager,
+            saveChecker,
+            (path, syncOnCommit) -> dataEntityManager,
+            ImmutableSet.of("partitionable"),
+            ImmutableMap.of(),
+            ImmutableSet.of(),
+            ImmutableSet.of("summary"));
+
+    executor.run(
+        Arguments.builder()
+            .setDbConnectionProperties(properties)
+            .setDbConnectionAddress("jdbc:hsqldb:mem:opt-in.example")
+            .setOutputPath(Paths.get("/tmp"))
+            .setNeedJdbcSchemas(false)
+            .build());
+
+    verify(scriptManager)
+        .executeScript(
+            any(Connection.class),
+            anyBoolean(),
+            any(SqlTemplateRenderer.class),
+            /*scriptName=*/ eq("one"),
+            eq(dataEntityManager),
+            anyInt(),
+            anyInt());
+    verify(scriptManager).getAllScriptNames();
+    verifyNoMoreInteractions(scriptManager);
+  }
+
+  @Test
+  public void run_optInScriptRequestedByName_extractsIt() throws Exception {
+    when(scriptManager.getAllScriptNames()).thenReturn(ImmutableSet.of("one", "summary"));
+    executor =
+        new ExtractExecutorImpl(
+            schemaManager,
+            scriptManager,
+            saveChecker,
+            (path, syncOnCommit) -> dataEntityManager,
+            ImmutableSet.of("partitionable"),
+            ImmutableMap.of(),
+            ImmutableSet.of(),
+            ImmutableSet.of("summary"));
+
+    executor.run(
+        Arguments.builder()
+            .setDbConnectionProperties(properties)
+            .setDbConnectionAddress("jdbc:hsqldb:mem:opt-in-requested.example")
+            .setOutputPath(Paths.get("/tmp"))
+            .setSqlScripts(ImmutableList.of("summary"))
+            .setNeedJdbcSchemas(false)
+            .build());
+
+    verify(scriptManager)
+        .executeScript(
+            any(Connection.class),
+            anyBoolean(),
+            any(SqlTemplateRenderer.class),
+            /*scriptName=*/ eq("summary"),
+            eq(dataEntityManager),
+            anyInt(),
+            anyInt());
+  }
+
+  @Test
+  public void run_batchSmallScripts_extractsSmallScriptsTogether() throws Exception {
+    when(scriptManager.getAllScriptNames()).thenReturn(ImmutableSet.of("one", "users", "roles"));
+    executor =
+        new ExtractExecutorImpl(
+            schemaManager,
+            scriptManager,
+            saveChecker,
+            (path, syncOnCommit) -> dataEntityManager,
+            ImmutableSet.of("partitionable"),
+            ImmutableMap.of(),
+            ImmutableSet.of("roles", "users"),
+            ImmutableSet.of());
+
+    assertThat(
+            executor.run(
+                Arguments.builder()
+                    .setDbConnectionProperties(properties)
+                    .setDbConnectionAddress("jdbc:hsqldb:mem:batch.example")
+                    .setOutputPath(Paths.get("/tmp"))
+                    .setBatchSmallScripts(true)
+                    .setNeedJdbcSchemas(false)
+                    .build()))
+        .isEqualTo(0);
+
+    verify(scriptManager)
+        .executeScript(
+            any(Connection.class),
+            /*dryRun=*/ eq(false),
+            any(SqlTemplateRenderer.class),
+            /*scriptName=*/ eq("one"),
+            eq(dataEntityManager),
+            eq(0),
+            eq(0));
+    verify(scriptManager)
+        .executeScripts(
+            any(Connection.class),
+            /*dryRun=*/ eq(false),
+            argThat(
+                renderers ->
+                    renderers.keySet().asList().equals(ImmutableList.of("roles", "users"))),
+            eq(dataEntityManager));
+    verify(scriptManager).getAllScriptNames();
+    verifyNoMoreInteractions(scriptManager);
+  }
+
+  @Test
+  public void run_batchSmallScriptsWithProjection_extractsProjectedScriptAlone() throws Exception {
+    when(scriptManager.getAllScriptNames()).thenReturn(ImmutableSet.of("users", "roles"));
+    executor =
+        new ExtractExecutorImpl(
+            schemaManager,
+            scriptManager,
+            saveChecker,
+            (path, syncOnCommit) -> dataEntityManager,
+            ImmutableSet.of("partitionable"),
+            ImmutableMap.of(),
+            ImmutableSet.of("roles", "users"),
+            ImmutableSet.of());
+
+    assertThat(
+            executor.run(
+                Arguments.builder()
+                    .setDbConnectionProperties(properties)
+                    .setDbConnectionAddress("jdbc:hsqldb:mem:batch-projection.example")
+                    .setOutputPath(Paths.get("/tmp"))
+                    .setBatchSmallScripts(true)
+                    .setColumnProjections(
+                        ImmutableMap.of(
+                            "users",
+                            ColumnProjection.builder()
+                                .setExcludeColumns(ImmutableSet.of("CreatorName"))
+                                .build()))
+                    .setNeedJdbcSchemas(false)
+                    .build()))
+        .isEqualTo(0);
+
+    verify(scriptManager)
+        .executeScript(
+            any(Connection.class),
+            /*dryRun=*/ eq(false),
+            any(SqlTemplateRenderer.class),
+            /*scriptName=*/ eq("users"),
+            eq(dataEntityManager),
+            eq(0),
+            eq(0));
+    verify(scriptManager)
+        .executeScripts(
+            any(Connection.class),
+            /*dryRun=*/ eq(false),
+            argThat(renderers -> renderers.keySet().equals(ImmutableSet.of("roles"))),
+            eq(dataEntityManager));
+  }
+
+  @Test
+  public void run_timeout_retriesFromLastSavedChunk() throws Exception {
+    Path outputPath = Files.createTempDirectory("extract-timeout-test");
+    when(scriptManager.getAllScriptNames()).thenReturn(ImmutableSet.of("one"));
+    when(dataEntityManager.isResumable()).thenReturn(true);
+    when(saveChecker.getScriptCheckPoints(outputPath))
+        .thenReturn(
+            ImmutableMap.of(
+                "one",
+                ChunkCheckpoint.builder()
+                    .setLastSavedChunkNumber(3)
+                    .setLastSavedInstant(Instant.parse("2022-01-24T14:52:00Z"))
+                    .build()));
+    doThrow(new SQLTimeoutException("Cancelled the statement of one."))
+        .doNothing()
+        .when(scriptManager)
+        .executeScript(
+            any(Connection.class),
+            anyBoolean(),
+            any(SqlTemplateRenderer.class),
+            anyString(),
+            any(DataEntityManager.class),
+            anyInt(),
+            anyInt());
+
+    assertThat(
+            executor.run(
+                Arguments.builder()
+                    .setDbConnectionProperties(properties)
+                    .setDbConnectionAddress("jdbc:hsqldb:mem:timeout-retry.example")
+                    .setOutputPath(outputPath)
+                    .setChunkRows(100)
+                    .setNeedJdbcSchemas(false)
+                    .build()))
+        .isEqualTo(0);
+
+    InOrder inOrder = inOrder(scriptManager);
+    inOrder
+        .verify(scriptManager)
+        .executeScript(
+            any(Connection.class),
+            /*dryRun=*/ eq(false),
+            any(SqlTemplateRenderer.class),
+            /*scriptName=*/ eq("one"),
+            eq(dataEntityManager),
+            eq(100),
+            eq(0));
+    inOrder
+        .verify(scriptManager)
+        .executeScript(
+            any(Connection.class),
+            /*dryRun=*/ eq(false),
+            any(SqlTemplateRenderer.class),
+            /*scriptName=*/ eq("one"),
+            eq(dataEntityManager),
+            eq(100),
+            eq(4));
+  }
+
+  @Test
+  public void run_timeout_skipsScriptIfRequested() throws Exception {
+    when(scriptManager.getAllScriptNames()).thenReturn(ImmutableSet.of("one", "two"));
+    when(dataEntityManager.isResumable()).thenReturn(true);
+    doThrow(new SQLTimeoutException("Cancelled the statement of one."))
+        .when(scriptManager)
+        .executeScript(
+            any(Connection.class),
+            anyBoolean(),
+            any(SqlTemplateRenderer.class),
+            eq("one"),
+            any(DataEntityManager.class),
+            anyInt(),
+            anyInt());
+
+    assertThat(
+            executor.run(
+                Arguments.builder()
+                    .setDbConnectionProperties(properties)
+                    .setDbConnectionAddress("jdbc:hsqldb:mem:timeout-skip.example")
+                    .setOutputPath(Files.createTempDirectory("extract-timeout-test"))
+                    .setSkipTimedOutScripts(true)
+                    .setNeedJdbcSchemas(false)
+                    .build()))
+        .isEqualTo(0);
+
+    verify(scriptManager, times(3))
+        .executeScript(
+            any(Connection.class),
+            /*dryRun=*/ eq(false),
+            any(SqlTemplateRenderer.class),
+            /*scriptName=*/ eq("one"),
+            eq(dataEntityManager),
+            eq(0),
+            eq(0));
+    verify(scriptManager)
+        .executeScript(
+            any(Connection.class),
+            /*dryRun=*/ eq(false),
+            any(SqlTemplateRenderer.class),
+            /*scriptName=*/ eq("two"),
+            eq(dataEntityManager),
+            eq(0),
+            eq(0));
+  }
+
+  @Test
+  public void run_failedScriptWithStatementTimeouts_stopsStatementWatchdog() throws Exception {
+    when(scriptManager.getAllScriptNames()).thenReturn(ImmutableSet.of("one"));
+    doThrow(new SQLException("Connection reset."))
+        .when(scriptManager)
+        .executeScript(
+            any(Connection.class),
+            anyBoolean(),
+            any(SqlTemplateRenderer.class),
+            eq("one"),
+            any(DataEntityManager.class),
+            anyInt(),
+            anyInt());
+
+    assertThrows(
+        SQLException.class,
+        () ->
+            executor.run(
+                Arguments.builder()
+                    .setDbConnectionProperties(properties)
+                    .setDbConnectionAddress("jdbc:hsqldb:mem:watchdog-stop.example")
+                    .setOutputPath(Paths.get("/tmp"))
+                    .setStatementTimeouts(
+                        StatementTimeouts.builder()
+                            .setExecuteTimeout(Duration.ofMinutes(1))
+                            .build())
+                    .setNeedJdbcSchemas(false)
+                    .build()));
+
+    for (Thread thread : Thread.getAllStackTraces().keySet()) {
+      if (thread.getName().equals("statement-watchdog")) {
+        thread.join(/* millis= */ 5000);
+        assertThat(thread.isAlive()).isFalse();
+      }
+    }
+  }
+
+  @Test
+  public void run_timeout_failsWithoutRetryIntoZipFile() throws Exception {
+    when(scriptManager.getAllScriptNames()).thenReturn(ImmutableSet.of("one", "two"));
+    doThrow(new SQLTimeoutException("Cancelled the statement of one."))
+        .when(scriptManager)
+        .executeScript(
+            any(Connection.class),
+            anyBoolean(),
+            any(SqlTemplateRenderer.class),
+            eq("one"),
+            any(DataEntityManager.class),
+            anyInt(),
+            anyInt());
+    Arguments arguments =
+        Arguments.builder()
+            .setDbConnectionProperties(properties)
+            .setDbConnectionAddress("jdbc:hsqldb:mem:timeout-fail.example")
+            .setOutputPath(Paths.get("/tmp/output.zip"))
+            .setSqlScripts(ImmutableList.of("one"))
+            .setNeedJdbcSchemas(false)
             .build();
 
-    assertThat(executor.run(arguments)).isEqualTo(0);
+    assertThrows(SQLTimeoutException.class, () -> executor.run(arguments));
 
-    verify(scriptManager).getAllScriptNames();
     verify(scriptManager)
         .executeScript(
             any(Connection.class),
             /*dryRun=*/ eq(false),
             any(SqlTemplateRenderer.class),
-            /*scriptName=*/ eq("script_no_record"),
+            /*scriptName=*/ eq("one"),
             eq(dataEntityManager),
             eq(0),
             eq(0));
-    verify(saveChecker)
-        .getNamesOfFinishedScripts(eq(Paths.get("test_path")), eq(targetScripts), eq("avro"));
-    verifyNoMoreInteractions(saveChecker);
   }
 
   @Test
-  public void run_recoveryModeChunked_success() throws Exception {
-    ImmutableSet<String> targetScripts =
-        ImmutableSet.of("script_chunk_record", "script_with_record");
-    when(scriptManager.getAllScriptNames()).thenReturn(targetScripts);
-    when(schemaManager.getSchemaKeys(any(Connection.class), eq(ImmutableList.of())))
-        .thenReturn(ImmutableSet.of());
-    Instant testInstant0 = Instant.parse("2007-07-07T20:07:07.007000000Z");
-    when(saveChecker.getScriptCheckPoints(any(Path.class)))
+  public void run_worker_skipsUnitsCompletedByOtherWorkers() throws Exception {
+    Path outputPath = Files.createTempDirectory("extract-worker-test");
+    Files.createDirectories(outputPath.resolve(".leases"));
+    Files.createFile(outputPath.resolve(".leases/one.done"));
+    when(scriptManager.getAllScriptNames()).thenReturn(ImmutableSet.of("one", "two"));
+    when(dataEntityManager.isResumable()).thenReturn(true);
+
+    assertThat(
+            executor.run(
+                Arguments.builder()
+                    .setDbConnectionProperties(properties)
+                    .setDbConnectionAddress("jdbc:hsqldb:mem:worker.example")
+                    .setOutputPath(outputPath)
+                    .setNeedJdbcSchemas(false)
+                    .setWorkerId("worker-a")
+                    .build()))
+        .isEqualTo(0);
+
+    verify(scriptManager).getAllScriptNames();
+    verify(scriptManager)
+        .executeScript(
+            any(Connection.class),
+            /*dryRun=*/ eq(false),
+            any(SqlTemplateRenderer.class),
+            /*scriptName=*/ eq("two"),
+            any(DataEntityManager.class),
+            eq(0),
+            eq(0));
+    verifyNoMoreInteractions(scriptManager);
+    assertThat(Files.exists(outputPath.resolve(".leases/two.done"))).isTrue();
+    assertThat(Files.exists(outputPath.resolve(".leases/two.lease"))).isFalse();
+  }
+
+  @Test
+  public void run_worker_abandonsUnitWhenLeaseIsLost() throws Exception {
+    Path outputPath = Files.createTempDirectory("extract-worker-test");
+    when(scriptManager.getAllScriptNames()).thenReturn(ImmutableSet.of("one", "two"));
+    when(dataEntityManager.isResumable()).thenReturn(true);
+    doThrow(new LeaseLostException("The lease of one was taken over by worker-b."))
+        .when(scriptManager)
+        .executeScript(
+            any(Connection.class),
+            anyBoolean(),
+            any(SqlTemplateRenderer.class),
+            eq("one"),
+            any(DataEntityManager.class),
+            anyInt(),
+            anyInt());
+
+    assertThat(
+            executor.run(
+                Arguments.builder()
+                    .setDbConnectionProperties(properties)
+                    .setDbConnectionAddress("jdbc:hsqldb:mem:worker.example")
+                    .setOutputPath(outputPath)
+                    .setNeedJdbcSchemas(false)
+                    .setWorkerId("worker-a")
+                    .build()))
+        .isEqualTo(0);
+
+    verify(scriptManager)
+        .executeScript(
+            any(Connection.class),
+            /*dryRun=*/ eq(false),
+            any(SqlTemplateRenderer.class),
+            /*scriptName=*/ eq("two"),
+            any(DataEntityManager.class),
+            eq(0),
+            eq(0));
+    assertThat(Files.exists(outputPath.resolve(".leases/one.done"))).isFalse();
+    assertThat(Files.exists(outputPath.resolve(".leases/two.done"))).isTrue();
+  }
+
+  @Test
+  public void run_worker_reclaimsExpiredLeaseFromLastSavedChunk() throws Exception {
+    Path outputPath = Files.createTempDirectory("extract-worker-test");
+    Path leasePath = outputPath.resolve(".leases/partitionable_p1.lease");
+    Files.createDirectories(leasePath.getParent());
+    Files.write(leasePath, "crashed-worker".getBytes(UTF_8));
+    Files.setLastModifiedTime(leasePath, FileTime.from(Instant.parse("2021-07-01T00:00:00Z")));
+    when(scriptManager.getAllScriptNames()).thenReturn(ImmutableSet.of("partitionable"));
+    when(dataEntityManager.isResumable()).thenReturn(true);
+    when(saveChecker.getScriptCheckPoints(outputPath))
         .thenReturn(
             ImmutableMap.of(
-                "script_chunk_record",
+                "partitionable_p1",
                 ChunkCheckpoint.builder()
-                    .setLastSavedChunkNumber(1)
-                    .setLastSavedInstant(testInstant0)
+                    .setLastSavedChunkNumber(2)
+                    .setLastSavedInstant(Instant.parse("2021-07-01T12:00:00Z"))
                     .build()));
-    when(saveChecker.getNamesOfFinishedScripts(
-            any(Path.class), eq(targetScripts), any(String.class)))
-        .thenReturn(ImmutableSet.of("script_with_record"));
-    Arguments arguments =
-        Arguments.builder()
-            .setDbConnectionProperties(properties)
-            .setDbConnectionAddress("jdbc:hsqldb:mem:recovery-mode-chunked.example")
-            .setOutputPath(Paths.get("/tmp"))
-            .setMode(RunMode.RECOVERY)
-            .setChunkRows(5000)
-            .setPrevRunPath(Paths.get("test_path"))
-            .build();
 
-    assertThat(executor.run(arguments)).isEqualTo(0);
+    assertThat(
+            executor.run(
+                Arguments.builder()
+                    .setDbConnectionProperties(properties)
+                    .setDbConnectionAddress("jdbc:hsqldb:mem:worker.example")
+                    .setOutputPath(outputPath)
+                    .setNeedJdbcSchemas(false)
+                    .setChunkRows(5)
+                    .setHashPartitions(2)
+                    .setWorkerId("worker-a")
+                    .build()))
+        .isEqualTo(0);
 
-    verify(scriptManager).getAllScriptNames();
     verify(scriptManager)
         .executeScript(
             any(Connection.class),
             /*dryRun=*/ eq(false),
             any(SqlTemplateRenderer.class),
-            /*scriptName=*/ eq("script_chunk_record"),
-            eq(dataEntityManager),
-            eq(5000),
-            eq(1 + 1));
-    verify(saveChecker).getScriptCheckPoints(Paths.get("test_path"));
-    verify(saveChecker)
-        .getNamesOfFinishedScripts(eq(Paths.get("test_path")), eq(targetScripts), eq("avro"));
+            /*scriptName=*/ eq("partitionable"),
+            any(DataEntityManager.class),
+            eq(5),
+            eq(0));
+    verify(scriptManager)
+        .executeScript(
+            any(Connection.class),
+            /*dryRun=*/ eq(false),
+            any(SqlTemplateRenderer.class),
+            /*scriptName=*/ eq("partitionable"),
+            any(DataEntityManager.class),
+            eq(5),
+            eq(3));
+    assertThat(Files.exists(outputPath.resolve(".leases/partitionable_p0.done"))).isTrue();
+    assertThat(Files.exists(outputPath.resolve(".leases/partitionable_p1.done"))).isTrue();
   }
 
   @Test
-  public void run_noNeedQueryText_success() throws Exception {
-    when(scriptManager.getAllScriptNames()).thenReturn(ImmutableSet.of("test_script"));
-    when(schemaManager.getSchemaKeys(any(Connection.class), eq(ImmutableList.of())))
-        .thenReturn(ImmutableSet.of());
-    Arguments arguments =
-        Arguments.builder()
-            .setNeedQueryText(false)
-            .setDbConnectionProperties(properties)
-            .setDbConnectionAddress("jdbc:hsqldb:mem:my-animalclinic.example")
-            .setOutputPath(Paths.get("/tmp"))
-            .build();
+  public void run_worker_failOnZipOutput() {
+    when(scriptManager.getAllScriptNames()).thenReturn(ImmutableSet.of("one"));
+    when(dataEntityManager.isResumable()).thenReturn(false);
 
-    assertThat(executor.run(arguments)).isEqualTo(0);
+    IllegalStateException e =
+        assertThrows(
+            IllegalStateException.class,
+            () ->
+                executor.run(
+                    Arguments.builder()
+                        .setDbConnectionProperties(properties)
+                        .setDbConnectionAddress("jdbc:hsqldb:mem:worker.example")
+                        .setOutputPath(Paths.get("/tmp/output.zip"))
+                        .setWorkerId("worker-a")
+                        .build()));
+
+    assertThat(e).hasMessageThat().contains("only extract into a directory");
+  }
+
+  @Test
+  public void run_follow_pollsQueryLogsFromLastChunkOnSameConnection() throws Exception {
+    Path outputPath = Files.createTempDirectory("extract-follow-test");
+    when(scriptManager.getAllScriptNames()).thenReturn(ImmutableSet.of("one", "partitionable"));
+    when(dataEntityManager.isResumable()).thenReturn(true);
+    when(saveChecker.getScriptCheckPoints(outputPath))
+        .thenReturn(ImmutableMap.of())
+        .thenReturn(
+            ImmutableMap.of(
+                "partitionable",
+                ChunkCheckpoint.builder()
+                    .setLastSavedChunkNumber(1)
+                    .setLastSavedInstant(Instant.parse("2021-07-01T12:00:00Z"))
+                    .build()));
+
+    assertThat(
+            executor.run(
+                Arguments.builder()
+                    .setDbConnectionProperties(properties)
+                    .setDbConnectionAddress("jdbc:hsqldb:mem:follow.example")
+                    .setOutputPath(outputPath)
+                    .setNeedJdbcSchemas(false)
+                    .setChunkRows(5)
+                    .setFollowInterval(Duration.ofMillis(1))
+                    .setFollowCycles(2)
+                    .build()))
+        .isEqualTo(0);
 
     verify(scriptManager).getAllScriptNames();
     verify(scriptManager)
         .executeScript(
             any(Connection.class),
             /*dryRun=*/ eq(false),
-            argThat(
-                (SqlTemplateRenderer renderer) ->
-                    !renderer
-                        .getSqlScriptVariablesBuilder()
-                        .build()
-                        .getQueryLogsVariables()
-                        .getNeedQueryText()),
-            /*scriptName=*/ eq("test_script"),
+            any(SqlTemplateRenderer.class),
+            /*scriptName=*/ eq("one"),
             eq(dataEntityManager),
-            eq(0),
+            eq(5),
+            eq(0));
+    ArgumentCaptor<Connection> connectionCaptor = ArgumentCaptor.forClass(Connection.class);
+    ArgumentCaptor<SqlTemplateRenderer> rendererCaptor =
+        ArgumentCaptor.forClass(SqlTemplateRenderer.class);
+    verify(scriptManager)
+        .executeScript(
+            connectionCaptor.capture(),
+            /*dryRun=*/ eq(false),
+            rendererCaptor.capture(),
+            /*scriptName=*/ eq("partitionable"),
+            eq(dataEntityManager),
+            eq(5),
             eq(0));
+    verify(scriptManager)
+        .executeScript(
+            connectionCaptor.capture(),
+            /*dryRun=*/ eq(false),
+            rendererCaptor.capture(),
+            /*scriptName=*/ eq("partitionable"),
+            eq(dataEntityManager),
+            eq(5),
+            eq(2));
     verifyNoMoreInteractions(scriptManager);
+    assertThat(connectionCaptor.getAllValues().get(0))
+        .isSameInstanceAs(connectionCaptor.getAllValues().get(1));
+    assertThat(
+            rendererCaptor
+                .getAllValues()
+                .get(1)
+                .getSqlScriptVariablesBuilder()
+                .build()
+                .getQueryLogsVariables()
+                .getTimeRange()
+                .getStartTimestamp())
+        .isEqualTo("2021-07-01 12:00:00.000001+00:00");
+    assertThat(
+            rendererCaptor.getAllValues().stream()
+                .map(
+                    renderer ->
+                        renderer
+                            .getSqlScriptVariablesBuilder()
+                            .build()
+                            .getQueryLogsVariables()
+                            .timeRange()
+                            .isPresent())
+                .collect(toImmutableList()))
+        .containsExactly(true, true);
   }
 
   @Test
-  public void run_saveCheckerNotInvokedIfRunChunked() throws Exception {
-    when(scriptManager.getAllScriptNames()).thenReturn(ImmutableSet.of("test_script"));
-    when(schemaManager.getSchemaKeys(any(Connection.class), eq(ImmutableList.of())))
-        .thenReturn(ImmutableSet.of());
-    // saveChecker should not be invoked with chunk number < 1 regardless of mode.
-    when(saveChecker.getScriptCheckPoints(Paths.get("test_path"))).thenReturn(ImmutableMap.of());
-    Arguments arguments =
-        Arguments.builder()
-            .setDbConnectionProperties(properties)
-            .setDbConnectionAddress("jdbc:hsqldb:mem:my-animalclinic.example")
-            .setOutputPath(Paths.get("/tmp"))
-            .setMode(RunMode.INCREMENTAL)
-            .setChunkRows(0)
-            .setPrevRunPath(Paths.get("test_path"))
-            .build();
+  public void run_follow_failedPollRetriedOnNewConnection() throws Exception {
+    Path outputPath = Files.createTempDirectory("extract-follow-test");
+    when(scriptManager.getAllScriptNames()).thenReturn(ImmutableSet.of("partitionable"));
+    when(dataEntityManager.isResumable()).thenReturn(true);
+    when(saveChecker.getScriptCheckPoints(outputPath)).thenReturn(ImmutableMap.of());
+    doThrow(new SQLException("Connection reset."))
+        .doNothing()
+        .when(scriptManager)
+        .executeScript(
+            any(Connection.class),
+            anyBoolean(),
+            any(SqlTemplateRenderer.class),
+            eq("partitionable"),
+            any(DataEntityManager.class),
+            anyInt(),
+            anyInt());
 
-    assertThat(executor.run(arguments)).isEqualTo(0);
+    assertThat(
+            executor.run(
+                Arguments.builder()
+                    .setDbConnectionProperties(properties)
+                    .setDbConnectionAddress("jdbc:hsqldb:mem:follow.example")
+                    .setOutputPath(outputPath)
+                    .setNeedJdbcSchemas(false)
+                    .setChunkRows(5)
+                    .setFollowInterval(Duration.ofMillis(1))
+                    .setFollowCycles(2)
+                    .build()))
+        .isEqualTo(0);
 
-    verify(scriptManager).getAllScriptNames();
-    verify(scriptManager)
+    ArgumentCaptor<Connection> connectionCaptor = ArgumentCaptor.forClass(Connection.class);
+    verify(scriptManager, times(2))
         .executeScript(
-            any(Connection.class),
+            connectionCaptor.capture(),
             /*dryRun=*/ eq(false),
             any(SqlTemplateRenderer.class),
-            /*scriptName=*/ eq("test_script"),
+            /*scriptName=*/ eq("partitionable"),
             eq(dataEntityManager),
-            eq(0),
+            eq(5),
             eq(0));
-    verifyNoMoreInteractions(scriptManager);
-    verifyNoMoreInteractions(saveChecker);
+    assertThat(connectionCaptor.getAllValues().get(0).isClosed()).isTrue();
+    assertThat(connectionCaptor.getAllValues().get(1))
+        .isNotSameInstanceAs(connectionCaptor.getAllValues().get(0));
   }
 
   @Test
-  public void run_normalModeChunked_success() throws Exception {
-    when(scriptManager.getAllScriptNames()).thenReturn(ImmutableSet.of("test_script"));
-    when(schemaManager.getSchemaKeys(any(Connection.class), eq(ImmutableList.of())))
-        .thenReturn(ImmutableSet.of());
-    // saveChecker should not be invoked in normal mode regardless of chunk number.
-    when(saveChecker.getScriptCheckPoints(Paths.get("test_path"))).thenReturn(ImmutableMap.of());
-    Arguments arguments =
-        Arguments.builder()
-            .setDbConnectionProperties(properties)
-            .setDbConnectionAddress("jdbc:hsqldb:mem:my-animalclinic.example")
-            .setOutputPath(Paths.get("/tmp"))
-            .setMode(RunMode.NORMAL)
-            .setChunkRows(5)
-            .setPrevRunPath(Paths.get("test_path"))
-            .build();
+  public void run_follow_failOnConsecutiveFailedPolls() throws Exception {
+    Path outputPath = Files.createTempDirectory("extract-follow-test");
+    when(scriptManager.getAllScriptNames()).thenReturn(ImmutableSet.of("partitionable"));
+    when(dataEntityManager.isResumable()).thenReturn(true);
+    when(saveChecker.getScriptCheckPoints(outputPath)).thenReturn(ImmutableMap.of());
+    doThrow(new SQLException("Connection reset."))
+        .when(scriptManager)
+        .executeScript(
+            any(Connection.class),
+            anyBoolean(),
+            any(SqlTemplateRenderer.class),
+            eq("partitionable"),
+            any(DataEntityManager.class),
+            anyInt(),
+            anyInt());
 
-    assertThat(executor.run(arguments)).isEqualTo(0);
+    SQLException e =
+        assertThrows(
+            SQLException.class,
+            () ->
+                executor.run(
+                    Arguments.builder()
+                        .setDbConnectionProperties(properties)
+                        .setDbConnectionAddress("jdbc:hsqldb:mem:follow.example")
+                        .setOutputPath(outputPath)
+                        .setNeedJdbcSchemas(false)
+                        .setChunkRows(5)
+                        .setFollowInterval(Duration.ofMillis(1))
+                        .build()));
 
-    verify(scriptManager).getAllScriptNames();
-    verify(scriptManager)
+    assertThat(e.getMessage()).isEqualTo("Connection reset.");
+    verify(scriptManager, times(5))
         .executeScript(
             any(Connection.class),
             /*dryRun=*/ eq(false),
             any(SqlTemplateRenderer.class),
-            /*scriptName=*/ eq("test_script"),
+            /*scriptName=*/ eq("partitionable"),
             eq(dataEntityManager),
             eq(5),
             eq(0));
+  }
+
+  @Test
+  public void run_follow_failOnUnchunkedExtraction() {
+    when(scriptManager.getAllScriptNames()).thenReturn(ImmutableSet.of("partitionable"));
+    when(dataEntityManager.isResumable()).thenReturn(true);
+
+    IllegalStateException e =
+        assertThrows(
+            IllegalStateException.class,
+            () ->
+                executor.run(
+                    Arguments.builder()
+                        .setDbConnectionProperties(properties)
+                        .setDbConnectionAddress("jdbc:hsqldb:mem:follow.example")
+                        .setOutputPath(Paths.get("/tmp"))
+                        .setNeedJdbcSchemas(false)
+                        .setFollowInterval(Duration.ofMillis(1))
+                        .setFollowCycles(1)
+                        .build()));
+
+    assertThat(e).hasMessageThat().contains("requires chunked extraction");
+  }
+
+  @Test
+  public void run_follow_failOnQueryLogsEndTime() {
+    IllegalArgumentException e =
+        assertThrows(
+            IllegalArgumentException.class,
+            () ->
+                executor.run(
+                    Arguments.builder()
+                        .setDbConnectionProperties(properties)
+                        .setDbConnectionAddress("jdbc:hsqldb:mem:follow.example")
+                        .setOutputPath(Paths.get("/tmp"))
+                        .setChunkRows(100)
+                        .setQryLogEndTime(Instant.parse("2021-07-01T12:00:00Z"))
+                        .setFollowInterval(Duration.ofMillis(1))
+                        .build()));
+
+    assertThat(e).hasMessageThat().contains("cannot be combined with an end time");
     verifyNoMoreInteractions(scriptManager);
-    verifyNoMoreInteractions(saveChecker);
   }
 
   @Test
@@ -670,4 +1874,20 @@ public final class ExtractExecutorImplTest {
     assertThat(getTeradataTimestampFromInstant(Instant.parse("2022-10-01T24:00:00Z")))
         .isEqualTo("2022-10-02 00:00:00.000000+00:00");
   }
+
+  private void verifyScriptOrder(String... scriptNames) throws Exception {
+    InOrder inOrder = inOrder(scriptManager);
+    for (String scriptName : scriptNames) {
+      inOrder
+          .verify(scriptManager)
+          .executeScript(
+              any(Connection.class),
+              /*dryRun=*/ eq(false),
+              any(SqlTemplateRenderer.class),
+              eq(scriptName),
+              eq(dataEntityManager),
+              eq(0),
+              eq(0));
+    }
+  }
 }
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigquery.dwhassessment.extractiontool.executor;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.cloud.bigquery.dwhassessment.extractiontool.db.SchemaFilter;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.dumper.FakeDataEntityManagerImpl;
+import com.google.common.collect.ImmutableList;
+import com.google.re2j.Pattern;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import org.apache.avro.file.DataFileReader;
+import org.apache.avro.file.SeekableByteArrayInput;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.util.Utf8;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class HiveExtractExecutorImplTest {
+
+  private final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+  private final Connection hiveConnection = mock(Connection.class);
+  private final Statement hiveStatement = mock(Statement.class);
+  private Connection responseConnection;
+  private HiveExtractExecutorImpl executor;
+
+  @Before
+  public void setUp() throws SQLException {
+    // The responses of HiveServer2 are served from an in-memory database, keyed by statement.
+    responseConnection = DriverManager.getConnection("jdbc:hsqldb:mem:hive-extract-test");
+    responseConnection
+        .createStatement()
+        .execute(
+            "CREATE TABLE responses (hive_statement VARCHAR(200), idx INT, col_name VARCHAR(100),"
+                + " data_type VARCHAR(100), col_comment VARCHAR(100))");
+    when(hiveConnection.createStatement()).thenReturn(hiveStatement);
+    when(hiveConnection.isValid(anyInt())).thenReturn(true);
+    when(hiveStatement.executeQuery(anyString()))
+        .thenAnswer(invocation -> respond(invocation.getArgument(0)));
+    executor =
+        new HiveExtractExecutorImpl(
+            path -> new FakeDataEntityManagerImpl(outputStream), arguments -> hiveConnection);
+
+    addResponse("SHOW DATABASES", "sales", "tmp");
+    addResponse("SHOW TABLES IN `sales`", "orders", "customers");
+    addResponse("SHOW TABLES IN `tmp`", "scratch");
+    addDescribeResponse("DESCRIBE FORMATTED `sales`.`orders`", "dt", "/sales.db/orders");
+    addDescribeResponse("DESCRIBE FORMATTED `sales`.`customers`", null, "/sales.db/customers");
+    addDescribeResponse("DESCRIBE FORMATTED `tmp`.`scratch`", null, "/tmp.db/scratch");
+    addResponse("SHOW PARTITIONS `sales`.`orders`", "dt=2021-07-01", "dt=2021-07-02");
+    addDescribeResponse(
+        "DESCRIBE FORMATTED `sales`.`orders` PARTITION (`dt`='2021-07-01')",
+        "dt",
+        "/sales.db/orders/dt=2021-07-01");
+    addDescribeResponse(
+        "DESCRIBE FORMATTED `sales`.`orders` PARTITION (`dt`='2021-07-02')",
+        "dt",
+        "/sales.db/orders/dt=2021-07-02");
+  }
+
+  @After
+  public void tearDown() throws SQLException {
+    responseConnection.createStatement().execute("DROP TABLE responses");
+    responseConnection.close();
+  }
+
+  @Test
+  public void run_describesTablesAndPartitions() throws Exception {
+    assertThat(executor.run(getArgumentsBuilder().build())).isEqualTo(0);
+
+    assertThat(readLocations())
+        .containsExactly(
+            "/sales.db/orders",
+            "/sales.db/orders/dt=2021-07-01",
+            "/sales.db/orders/dt=2021-07-02",
+            "/sales.db/customers",
+            "/tmp.db/scratch");
+    GenericRecord partition =
+        readRecords().stream()
+            .filter(record -> record.get("PartitionName") != null)
+            .findFirst()
+            .get();
+    assertThat(partition.get("DatabaseName").toString()).isEqualTo("sales");
+    assertThat(partition.get("TableName").toString()).isEqualTo("orders");
+    assertThat(partition.get("PartitionName").toString()).startsWith("dt=2021-07-0");
+  }
+
+  @Test
+  public void run_schemaFilter_describesMatchingTablesOnly() throws Exception {
+    SchemaFilter filter =
+        SchemaFilter.builder()
+            .setDatabaseName(Pattern.compile("sales"))
+            .setTableName(Pattern.compile("cust.*"))
+            .build();
+
+    executor.run(getArgumentsBuilder().setSchemaFilters(ImmutableList.of(filter)).build());
+
+    assertThat(readLocations()).containsExactly("/sales.db/customers");
+    verify(hiveStatement, never()).executeQuery("SHOW TABLES IN `tmp`");
+  }
+
+  @Test
+  public void run_withoutPartitions_describesTablesOnly() throws Exception {
+    executor.run(getArgumentsBuilder().setDescribePartitions(false).build());
+
+    assertThat(readLocations())
+        .containsExactly("/sales.db/orders", "/sales.db/customers", "/tmp.db/scratch");
+    verify(hiveStatement, never()).executeQuery("SHOW PARTITIONS `sales`.`orders`");
+  }
+
+  @Test
+  public void run_failingDescribe_skipsTable() throws Exception {
+    responseConnection
+        .createStatement()
+        .execute(
+            "DELETE FROM responses WHERE hive_statement = 'DESCRIBE FORMATTED `tmp`.`scratch`'");
+
+    assertThat(executor.run(getArgumentsBuilder().build())).isEqualTo(0);
+
+    assertThat(readLocations()).doesNotContain("/tmp.db/scratch");
+    assertThat(readLocations()).contains("/sales.db/customers");
+  }
+
+  @Test
+  public void getPartitionSpec_unescapesAndQuotesValues() {
+    assertThat(HiveExtractExecutorImpl.getPartitionSpec("dt=2021-07-01/country=US%2FCA"))
+        .isEqualTo("(`dt`='2021-07-01', `country`='US/CA')");
+    assertThat(HiveExtractExecutorImpl.getPartitionSpec("name=O'Brien"))
+        .isEqualTo("(`name`='O\\'Brien')");
+  }
+
+  private HiveExtractExecutor.Arguments.Builder getArgumentsBuilder() {
+    return HiveExtractExecutor.Arguments.builder()
+        .setDbConnectionAddress("jdbc:hive2://hive.example:10000")
+        .setDbConnectionProperties(new Properties())
+        .setOutputPath(Paths.get("/tmp/hive-extract"))
+        .setThreads(3);
+  }
+
+  private void addResponse(String statement, String... values) throws SQLException {
+    String[][] rows = new String[values.length][];
+    for (int i = 0; i < values.length; i++) {
+      rows[i] = new String[] {values[i], null, null};
+    }
+    addResponseRows(statement, rows);
+  }
+
+  private void addDescribeResponse(String statement, String partitionKey, String location)
+      throws SQLException {
+    List<String[]> rows = new ArrayList<>();
+    rows.add(new String[] {"id", "int", null});
+    if (partitionKey != null) {
+      rows.add(new String[] {"# Partition Information", null, null});
+      rows.add(new String[] {partitionKey, "string", null});
+    }
+    rows.add(new String[] {"# Detailed Table Information", null, null});
+    rows.add(new String[] {"Location:", location, null});
+    addResponseRows(statement, rows.toArray(new String[0][]));
+  }
+
+  private void addResponseRows(String statement, String[][] rows) throws SQLException {
+    PreparedStatement insert =
+        responseConnection.prepareStatement("INSERT INTO responses VALUES (?, ?, ?, ?, ?)");
+    for (int i = 0; i < rows.length; i++) {
+      insert.setString(1, statement);
+      insert.setInt(2, i);
+      insert.setString(3, rows[i][0]);
+      insert.setString(4, rows[i][1]);
+      insert.setString(5, rows[i][2]);
+      insert.execute();
+    }
+  }
+
+  private ResultSet respond(String statement) throws SQLException {
+    PreparedStatement count =
+        responseConnection.prepareStatement(
+            "SELECT COUNT(*) FROM responses WHERE hive_statement = ?");
+    count.setString(1, statement);
+    ResultSet countResultSet = count.executeQuery();
+    countResultSet.next();
+    if (countResultSet.getInt(1) == 0) {
+      throw new SQLException("Unexpected statement: " + statement);
+    }
+    PreparedStatement query =
+        responseConnection.prepareStatement(
+            "SELECT col_name, data_type, col_comment FROM responses WHERE hive_statement = ?"
+                + " ORDER BY idx");
+    query.setString(1, statement);
+    return query.executeQuery();
+  }
+
+  private ImmutableList<GenericRecord> readRecords() throws IOException {
+    ImmutableList.Builder<GenericRecord> records = ImmutableList.builder();
+    try (DataFileReader<GenericRecord> reader =
+        new DataFileReader<>(
+            new SeekableByteArrayInput(outputStream.toByteArray()), new GenericDatumReader<>())) {
+      reader.forEach(records::add);
+    }
+    return records.build();
+  }
+
+  private ImmutableList<String> readLocations() throws IOException {
+    ImmutableList.Builder<String> locations = ImmutableList.builder();
+    for (GenericRecord record : readRecords()) {
+      Map<?, ?> details = (Map<?, ?>) record.get("Details");
+      locations.add(details.get(new Utf8("Location")).toString());
+    }
+    return locations.build();
+  }
+}
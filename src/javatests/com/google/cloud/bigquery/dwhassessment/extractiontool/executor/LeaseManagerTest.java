@@ -0,0 +1,295 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigquery.dwhassessment.extractiontool.executor;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertThrows;
+
+import com.google.cloud.bigquery.dwhassessment.extractiontool.dumper.DataEntityManager;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.dumper.DataEntityManagerDirectoryImpl;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.executor.LeaseManager.Lease;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.executor.LeaseManager.LeaseLostException;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class LeaseManagerTest {
+
+  private static final Duration LEASE_DURATION = Duration.ofHours(1);
+  private static final Duration EXPIRY =
+      LEASE_DURATION.plus(LeaseManager.MAX_CLOCK_SKEW).plusSeconds(1);
+
+  private Path leaseDirectory;
+  private FakeClock clock;
+  private LeaseManager workerA;
+  private LeaseManager workerB;
+
+  @Before
+  public void setUp() throws IOException {
+    leaseDirectory = Files.createTempDirectory("leases");
+    clock = new FakeClock(Instant.parse("2021-07-01T00:00:00Z"));
+    workerA = createLeaseManager("worker-a");
+    workerB = createLeaseManager("worker-b");
+  }
+
+  @After
+  public void tearDown() {
+    workerA.close();
+    workerB.close();
+  }
+
+  @Test
+  public void tryAcquire_leasedByOtherWorker_empty() throws IOException {
+    assertThat(workerA.tryAcquire("querylogs").isPresent()).isTrue();
+
+    assertThat(workerB.tryAcquire("querylogs").isPresent()).isFalse();
+    assertThat(workerB.tryAcquire("users").isPresent()).isTrue();
+  }
+
+  @Test
+  public void tryAcquire_expiredLease_reclaimed() throws IOException {
+    assertThat(workerA.tryAcquire("querylogs").isPresent()).isTrue();
+    clock.advance(EXPIRY);
+
+    Optional<Lease> lease = workerB.tryAcquire("querylogs");
+
+    assertThat(lease.isPresent()).isTrue();
+    assertThat(lease.get().getUnit()).isEqualTo("querylogs");
+    assertThat(workerA.tryAcquire("querylogs").isPresent()).isFalse();
+  }
+
+  @Test
+  public void tryAcquire_renewedLease_notReclaimed() throws IOException {
+    Lease lease = workerA.tryAcquire("querylogs").get();
+    clock.advance(LEASE_DURATION.minusSeconds(1));
+    lease.renew();
+    clock.advance(Duration.ofSeconds(2));
+
+    assertThat(workerB.tryAcquire("querylogs").isPresent()).isFalse();
+  }
+
+  @Test
+  public void tryAcquire_leaseWithinClockSkew_notReclaimed() throws IOException {
+    assertThat(workerA.tryAcquire("querylogs").isPresent()).isTrue();
+    clock.advance(LEASE_DURATION.plusSeconds(1));
+
+    assertThat(workerB.tryAcquire("querylogs").isPresent()).isFalse();
+  }
+
+  @Test
+  public void tryAcquire_leaseRenewedDuringReclaim_keptByHolder() throws IOException {
+    Lease lease = workerA.tryAcquire("querylogs").get();
+    clock.advance(EXPIRY);
+    // Worker A renews its lease right after worker B found it expired.
+    clock.beforeNextInstant(
+        () -> {
+          try {
+            lease.renew();
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        });
+
+    assertThat(workerB.tryAcquire("querylogs").isPresent()).isFalse();
+    lease.checkHeld();
+    lease.renew();
+    assertThat(readLeaseDirectory()).containsExactly("querylogs.lease");
+  }
+
+  @Test
+  public void tryAcquire_reclaimInProgress_notReclaimedUntilMarkerExpires() throws IOException {
+    workerA.tryAcquire("querylogs").get();
+    clock.advance(EXPIRY);
+    Path leasePath = leaseDirectory.resolve("querylogs.lease");
+    // Another worker created the reclaim marker and stopped.
+    Path markerPath =
+        leaseDirectory.resolve(
+            "querylogs.lease." + Files.getLastModifiedTime(leasePath).toMillis() + ".reclaim");
+    Files.createFile(markerPath);
+    Files.setLastModifiedTime(markerPath, FileTime.from(clock.instant()));
+
+    assertThat(workerB.tryAcquire("querylogs").isPresent()).isFalse();
+
+    clock.advance(EXPIRY);
+    assertThat(workerB.tryAcquire("querylogs").isPresent()).isTrue();
+    assertThat(new String(Files.readAllBytes(leasePath), UTF_8)).isEqualTo("worker-b");
+  }
+
+  @Test
+  public void checkHeld_missingLeaseFile_notLost() throws IOException {
+    Lease lease = workerA.tryAcquire("querylogs").get();
+    Files.delete(leaseDirectory.resolve("querylogs.lease"));
+
+    lease.checkHeld();
+    lease.renew();
+
+    assertThat(workerB.tryAcquire("querylogs").isPresent()).isFalse();
+    lease.complete();
+    assertThat(workerB.isCompleted("querylogs")).isTrue();
+  }
+
+  @Test
+  public void complete_unitCannotBeAcquiredAgain() throws IOException {
+    workerA.tryAcquire("querylogs").get().complete();
+
+    assertThat(workerA.isCompleted("querylogs")).isTrue();
+    assertThat(workerB.isCompleted("querylogs")).isTrue();
+    assertThat(workerB.tryAcquire("querylogs").isPresent()).isFalse();
+    assertThat(Files.exists(leaseDirectory.resolve("querylogs.lease"))).isFalse();
+  }
+
+  @Test
+  public void complete_afterLeaseWasReclaimed_fails() throws IOException {
+    Lease lease = workerA.tryAcquire("querylogs").get();
+    clock.advance(EXPIRY);
+    workerB.tryAcquire("querylogs").get();
+
+    LeaseLostException e = assertThrows(LeaseLostException.class, lease::complete);
+
+    assertThat(e).hasMessageThat().contains("lost the lease of querylogs");
+    assertThat(workerA.isCompleted("querylogs")).isFalse();
+  }
+
+  @Test
+  public void fence_writesTemporaryFilesUnderWorkerName() throws IOException {
+    Path outputDirectory = Files.createTempDirectory("fenced-output");
+    Lease lease = workerA.tryAcquire("querylogs").get();
+    DataEntityManager dataEntityManager =
+        lease.fence(new DataEntityManagerDirectoryImpl(outputDirectory));
+
+    try (OutputStream outputStream = dataEntityManager.getEntityOutputStream("q-1_0_temp.avro")) {
+      outputStream.write(1);
+    }
+    dataEntityManager.getEntityOutputStream("q.avro.index_temp").close();
+    dataEntityManager.getEntityOutputStream("q.avro").close();
+
+    assertThat(dataEntityManager.getAbsolutePath("q-1_0_temp.avro").toString())
+        .isEqualTo(outputDirectory.resolve("q-1_0.worker-a_temp.avro").toString());
+    assertThat(Files.exists(outputDirectory.resolve("q-1_0.worker-a_temp.avro"))).isTrue();
+    assertThat(Files.exists(outputDirectory.resolve("q.avro.index.worker-a_temp"))).isTrue();
+    assertThat(Files.exists(outputDirectory.resolve("q.avro"))).isTrue();
+  }
+
+  @Test
+  public void fence_afterLeaseWasReclaimed_stopsOutput() throws IOException {
+    Path outputDirectory = Files.createTempDirectory("fenced-output");
+    Lease lease = workerA.tryAcquire("querylogs").get();
+    DataEntityManager dataEntityManager =
+        lease.fence(new DataEntityManagerDirectoryImpl(outputDirectory));
+    OutputStream outputStream = dataEntityManager.getEntityOutputStream("q-1_0_temp.avro");
+    clock.advance(EXPIRY);
+    workerB.tryAcquire("querylogs").get();
+
+    // The file is not committed, since closing it fails.
+    assertThrows(LeaseLostException.class, outputStream::close);
+    assertThrows(
+        LeaseLostException.class, () -> dataEntityManager.getEntityOutputStream("q-1_1_temp.avro"));
+    assertThat(Files.exists(outputDirectory.resolve("q-1_1.worker-a_temp.avro"))).isFalse();
+  }
+
+  @Test
+  public void release_otherWorkerCanAcquire() throws IOException {
+    workerA.tryAcquire("querylogs").get().release();
+
+    assertThat(workerA.isCompleted("querylogs")).isFalse();
+    assertThat(workerB.tryAcquire("querylogs").isPresent()).isTrue();
+  }
+
+  @Test
+  public void release_afterLeaseWasReclaimed_keepsNewLease() throws IOException {
+    Lease lease = workerA.tryAcquire("querylogs").get();
+    clock.advance(EXPIRY);
+    workerB.tryAcquire("querylogs").get();
+
+    lease.release();
+
+    assertThat(Files.exists(leaseDirectory.resolve("querylogs.lease"))).isTrue();
+    assertThat(workerA.tryAcquire("querylogs").isPresent()).isFalse();
+  }
+
+  private ImmutableList<String> readLeaseDirectory() throws IOException {
+    try (Stream<Path> paths = Files.list(leaseDirectory)) {
+      return paths.map(path -> path.getFileName().toString()).collect(toImmutableList());
+    }
+  }
+
+  private LeaseManager createLeaseManager(String workerId) {
+    return new LeaseManager(
+        leaseDirectory,
+        workerId,
+        LEASE_DURATION,
+        clock,
+        Executors.newSingleThreadScheduledExecutor());
+  }
+
+  /** A clock that only advances when told to. */
+  private static final class FakeClock extends Clock {
+
+    private Instant instant;
+    private Runnable beforeNextInstant = () -> {};
+
+    FakeClock(Instant instant) {
+      this.instant = instant;
+    }
+
+    void advance(Duration duration) {
+      instant = instant.plus(duration);
+    }
+
+    /** Runs the action the next time the clock is read. */
+    void beforeNextInstant(Runnable action) {
+      beforeNextInstant = action;
+    }
+
+    @Override
+    public ZoneId getZone() {
+      return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Instant instant() {
+      Runnable action = beforeNextInstant;
+      beforeNextInstant = () -> {};
+      action.run();
+      return instant;
+    }
+  }
+}
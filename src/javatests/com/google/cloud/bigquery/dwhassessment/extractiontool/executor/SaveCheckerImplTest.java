@@ -100,6 +100,38 @@ public class SaveCheckerImplTest {
                     .build()));
   }
 
+  @Test
+  public void getScriptCheckpoints_hashPartitions_successPerPartition() throws IOException {
+    Files.createFile(
+        tmpDir.resolve(
+            SCRIPT_NAME + "_p0-20140707T170707S000007-20140707T170707S000008_0" + AVRO_SUFFIX));
+    Files.createFile(
+        tmpDir.resolve(
+            SCRIPT_NAME + "_p1-20140707T170707S000001-20140707T170707S000002_0" + AVRO_SUFFIX));
+    Files.createFile(
+        tmpDir.resolve(
+            SCRIPT_NAME + "_p1-20140707T170707S000017-20140707T170707S000018_1" + AVRO_SUFFIX));
+    Files.createFile(
+        tmpDir.resolve(
+            "unknown_script_p0-20140707T170707S000007-20140707T170707S000008_0" + AVRO_SUFFIX));
+
+    ImmutableMap<String, ChunkCheckpoint> checkpoints = saveChecker.getScriptCheckPoints(tmpDir);
+
+    assertThat(checkpoints)
+        .isEqualTo(
+            ImmutableMap.of(
+                SCRIPT_NAME + "_p0",
+                ChunkCheckpoint.builder()
+                    .setLastSavedChunkNumber(0)
+                    .setLastSavedInstant(Instant.parse("2014-07-07T17:07:07.000008Z"))
+                    .build(),
+                SCRIPT_NAME + "_p1",
+                ChunkCheckpoint.builder()
+                    .setLastSavedChunkNumber(1)
+                    .setLastSavedInstant(Instant.parse("2014-07-07T17:07:07.000018Z"))
+                    .build()));
+  }
+
   @Test
   public void getScriptCheckpoints_unmatchingFilenamesAreIgnored() throws IOException {
     // Lower cased timestamp separators.
@@ -225,6 +257,60 @@ public class SaveCheckerImplTest {
         .contains("no later than the last time stamp of the previous file");
   }
 
+  @Test
+  public void getScriptCheckpoints_chunksEndingInTies_successWithLastSavedKey() throws IOException {
+    saveChecker =
+        new SaveCheckerImpl(
+            ImmutableMap.of(SCRIPT_NAME, ImmutableList.of("testTimestampColumn", "testIdColumn")));
+    Files.createFile(
+        tmpDir.resolve(
+            SCRIPT_NAME + "-20140707T170707S000007-20140707T170707S000008+12_0" + AVRO_SUFFIX));
+    Files.createFile(
+        tmpDir.resolve(
+            SCRIPT_NAME + "-20140707T170707S000008-20140707T170707S000008+307_1" + AVRO_SUFFIX));
+
+    ImmutableMap<String, ChunkCheckpoint> checkpoints = saveChecker.getScriptCheckPoints(tmpDir);
+
+    assertThat(checkpoints)
+        .isEqualTo(
+            ImmutableMap.of(
+                SCRIPT_NAME,
+                ChunkCheckpoint.builder()
+                    .setLastSavedChunkNumber(1)
+                    .setLastSavedInstant(Instant.parse("2014-07-07T17:07:07.000008Z"))
+                    .setLastSavedKey(ImmutableMap.of("testIdColumn", "307"))
+                    .build()));
+  }
+
+  @Test
+  public void getScriptCheckpoints_sameTimestampAfterChunkWithoutKey_throwsException()
+      throws IOException {
+    Files.createFile(
+        tmpDir.resolve(
+            SCRIPT_NAME + "-20140707T170707S000007-20140707T170707S000008_0" + AVRO_SUFFIX));
+    Files.createFile(
+        tmpDir.resolve(
+            SCRIPT_NAME + "-20140707T170707S000008-20140707T170707S000018_1" + AVRO_SUFFIX));
+
+    IllegalStateException e =
+        assertThrows(IllegalStateException.class, () -> saveChecker.getScriptCheckPoints(tmpDir));
+    assertThat(e)
+        .hasMessageThat()
+        .contains("no later than the last time stamp of the previous file");
+  }
+
+  @Test
+  public void getScriptCheckpoints_keyWithoutTieBreakingColumns_throwsException()
+      throws IOException {
+    Files.createFile(
+        tmpDir.resolve(
+            SCRIPT_NAME + "-20140707T170707S000007-20140707T170707S000008+12_0" + AVRO_SUFFIX));
+
+    IllegalStateException e =
+        assertThrows(IllegalStateException.class, () -> saveChecker.getScriptCheckPoints(tmpDir));
+    assertThat(e).hasMessageThat().contains("has 1 key values");
+  }
+
   @Test
   public void getScriptCheckpoints_reversedTimestamps_throwsException() throws IOException {
     Files.createFile(
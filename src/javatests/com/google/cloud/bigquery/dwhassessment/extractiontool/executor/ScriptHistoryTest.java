@@ -0,0 +1,145 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigquery.dwhassessment.extractiontool.executor;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class ScriptHistoryTest {
+
+  @Test
+  public void load_earlierDirectoryTakesPrecedence() throws IOException {
+    Path outputPath = Files.createTempDirectory("script-history-test");
+    Path prevRunPath = Files.createTempDirectory("script-history-test");
+    Files.write(outputPath.resolve(ScriptHistory.FILE_NAME), ImmutableList.of("one=1000"));
+    Files.write(
+        prevRunPath.resolve(ScriptHistory.FILE_NAME), ImmutableList.of("one=5", "two=2000"));
+
+    ScriptHistory history = ScriptHistory.load(ImmutableList.of(outputPath, prevRunPath));
+
+    assertThat(history.getDuration("one")).hasValue(Duration.ofSeconds(1));
+    assertThat(history.getDuration("two")).hasValue(Duration.ofSeconds(2));
+    assertThat(history.getDuration("three")).isEmpty();
+  }
+
+  @Test
+  public void load_ignoresInvalidDurations() throws IOException {
+    Path directory = Files.createTempDirectory("script-history-test");
+    Files.write(
+        directory.resolve(ScriptHistory.FILE_NAME), ImmutableList.of("one=abc", "two=2000"));
+
+    ScriptHistory history = ScriptHistory.load(ImmutableList.of(directory));
+
+    assertThat(history.getDuration("one")).isEmpty();
+    assertThat(history.getDuration("two")).hasValue(Duration.ofSeconds(2));
+  }
+
+  @Test
+  public void orderLongestFirst_unitsWithoutHistoryFirstByCostHint() {
+    ScriptHistory history = ScriptHistory.load(ImmutableList.of());
+    history.record("short", Duration.ofSeconds(1));
+    history.record("long", Duration.ofMinutes(1));
+    ImmutableMap<String, Integer> costHints = ImmutableMap.of("cheap", 1, "expensive", 100);
+
+    assertThat(
+            history.orderLongestFirst(
+                ImmutableList.of("short", "cheap", "long", "expensive"), costHints::get))
+        .containsExactly("expensive", "cheap", "long", "short")
+        .inOrder();
+  }
+
+  @Test
+  public void save_keepsDurationsRecordedByOthers() throws IOException {
+    Path directory = Files.createTempDirectory("script-history-test");
+    ScriptHistory history = ScriptHistory.load(ImmutableList.of(directory));
+    history.record("one", Duration.ofSeconds(1));
+    // Another worker saved its durations after this history was loaded.
+    Files.write(directory.resolve(ScriptHistory.FILE_NAME), ImmutableList.of("one=5", "two=2000"));
+
+    history.save(directory);
+
+    ScriptHistory savedHistory = ScriptHistory.load(ImmutableList.of(directory));
+    assertThat(savedHistory.getDuration("one")).hasValue(Duration.ofSeconds(1));
+    assertThat(savedHistory.getDuration("two")).hasValue(Duration.ofSeconds(2));
+    assertThat(Files.list(directory).count()).isEqualTo(1);
+  }
+
+  @Test
+  public void save_concurrentWorkers_keepsDurationsOfAllWorkers() throws Exception {
+    Path directory = Files.createTempDirectory("script-history-test");
+    ExecutorService executorService = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int worker = 0; worker < 8; worker++) {
+        ScriptHistory history = ScriptHistory.load(ImmutableList.of(directory));
+        String unit = "unit" + worker;
+        futures.add(
+            executorService.submit(
+                () -> {
+                  for (int i = 1; i <= 10; i++) {
+                    history.record(unit, Duration.ofSeconds(i));
+                    history.save(directory);
+                  }
+                  return null;
+                }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executorService.shutdown();
+    }
+
+    ScriptHistory savedHistory = ScriptHistory.load(ImmutableList.of(directory));
+    for (int worker = 0; worker < 8; worker++) {
+      assertThat(savedHistory.getDuration("unit" + worker)).hasValue(Duration.ofSeconds(10));
+    }
+    assertThat(Files.list(directory).count()).isEqualTo(1);
+  }
+
+  @Test
+  public void save_removesStaleLock() throws IOException {
+    Path directory = Files.createTempDirectory("script-history-test");
+    Path lockPath = Files.createFile(directory.resolve(ScriptHistory.LOCK_FILE_NAME));
+    Files.setLastModifiedTime(lockPath, FileTime.from(Instant.now().minus(Duration.ofHours(1))));
+    ScriptHistory history = ScriptHistory.load(ImmutableList.of(directory));
+    history.record("one", Duration.ofSeconds(1));
+
+    history.save(directory);
+
+    assertThat(ScriptHistory.load(ImmutableList.of(directory)).getDuration("one"))
+        .hasValue(Duration.ofSeconds(1));
+    assertThat(Files.exists(lockPath)).isFalse();
+  }
+}
@@ -0,0 +1,321 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigquery.dwhassessment.extractiontool.executor;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import java.util.logging.SimpleFormatter;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.apache.avro.LogicalTypes;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.generic.GenericRecordBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class VerifyExecutorImplTest {
+
+  private static final long START_MILLIS = Instant.parse("2021-07-01T00:00:00Z").toEpochMilli();
+
+  private static final DateTimeFormatter CHUNK_TIMESTAMP_FORMATTER =
+      DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'S'SSSSSS").withZone(ZoneOffset.UTC);
+
+  private static final Schema TIMESTAMP_SCHEMA =
+      LogicalTypes.timestampMillis().addToSchema(Schema.create(Schema.Type.LONG));
+
+  private static final Schema QUERYLOGS_SCHEMA =
+      SchemaBuilder.record("querylogs")
+          .namespace("namespace")
+          .fields()
+          .name("QueryText")
+          .type()
+          .optional()
+          .stringType()
+          .name("StartTime")
+          .type()
+          .optional()
+          .type(TIMESTAMP_SCHEMA)
+          .endRecord();
+
+  private static final ImmutableMap<String, ImmutableList<String>> SORTING_COLUMNS_MAP =
+      ImmutableMap.of("querylogs", ImmutableList.of("StartTime"));
+
+  private final List<String> logMessages = new ArrayList<>();
+  private final Handler logHandler =
+      new Handler() {
+        @Override
+        public void publish(LogRecord record) {
+          logMessages.add(getFormatter().formatMessage(record));
+        }
+
+        @Override
+        public void flush() {}
+
+        @Override
+        public void close() {}
+      };
+
+  private Path outputPath;
+  // Splits of a few blocks each, so that every chunk is read by several threads.
+  private final VerifyExecutorImpl executor = new VerifyExecutorImpl(SORTING_COLUMNS_MAP, 256);
+
+  @Before
+  public void setUp() throws IOException {
+    outputPath = Files.createTempDirectory("verify-executor-test");
+    logHandler.setFormatter(new SimpleFormatter());
+    Logger.getLogger(VerifyExecutorImpl.class.getName()).addHandler(logHandler);
+  }
+
+  @After
+  public void tearDown() {
+    Logger.getLogger(VerifyExecutorImpl.class.getName()).removeHandler(logHandler);
+  }
+
+  @Test
+  public void run_validChunks() throws IOException {
+    writeChunk(0, QUERYLOGS_SCHEMA, getSeconds(0, 100));
+    writeChunk(1, QUERYLOGS_SCHEMA, getSeconds(100, 200));
+    writeFile("users.avro", QUERYLOGS_SCHEMA, getSeconds(0, 3));
+
+    assertThat(runVerify(outputPath)).isEqualTo(0);
+    assertThat(logMessages).contains("querylogs: 2 files, 200 rows.");
+    assertThat(logMessages).contains("users: 1 files, 3 rows.");
+  }
+
+  @Test
+  public void run_hashPartitionedChunks() throws IOException {
+    writeFile(
+        String.format("querylogs_h0of2-%s_0.avro", getRange(getSeconds(0, 10))),
+        QUERYLOGS_SCHEMA,
+        getSeconds(0, 10));
+    writeFile(
+        String.format("querylogs_h1of2-%s_0.avro", getRange(getSeconds(5, 15))),
+        QUERYLOGS_SCHEMA,
+        getSeconds(5, 15));
+
+    assertThat(runVerify(outputPath)).isEqualTo(0);
+  }
+
+  @Test
+  public void run_unsortedRows() throws IOException {
+    long[] seconds = getSeconds(0, 100);
+    long swap = seconds[40];
+    seconds[40] = seconds[60];
+    seconds[60] = swap;
+    writeChunk(0, QUERYLOGS_SCHEMA, seconds);
+
+    assertThat(runVerify(outputPath)).isEqualTo(1);
+    assertThat(logMessages)
+        .contains(getChunkName(0, seconds) + ": 2 rows are not sorted by StartTime.");
+  }
+
+  @Test
+  public void run_fileNameDoesNotMatchRows() throws IOException {
+    writeFile(
+        String.format("querylogs-%s_0.avro", getRange(getSeconds(0, 11))),
+        QUERYLOGS_SCHEMA,
+        getSeconds(0, 10));
+
+    assertThat(runVerify(outputPath)).isEqualTo(1);
+    assertThat(String.join("\n", logMessages))
+        .contains("the last row has StartTime 2021-07-01T00:00:09Z, but the file name has");
+  }
+
+  @Test
+  public void run_missingChunk() throws IOException {
+    writeChunk(0, QUERYLOGS_SCHEMA, getSeconds(0, 10));
+    writeChunk(2, QUERYLOGS_SCHEMA, getSeconds(20, 30));
+
+    assertThat(runVerify(outputPath)).isEqualTo(1);
+    assertThat(logMessages)
+        .contains(
+            getChunkName(2, getSeconds(20, 30))
+                + ": expected chunk 1, possibly indicating missing files.");
+  }
+
+  @Test
+  public void run_overlappingChunks() throws IOException {
+    writeChunk(0, QUERYLOGS_SCHEMA, getSeconds(0, 10));
+    writeChunk(1, QUERYLOGS_SCHEMA, getSeconds(9, 20));
+
+    assertThat(runVerify(outputPath)).isEqualTo(1);
+    assertThat(logMessages)
+        .contains(
+            getChunkName(1, getSeconds(9, 20))
+                + ": the first row is no later than the last row of "
+                + getChunkName(0, getSeconds(0, 10))
+                + ".");
+  }
+
+  @Test
+  public void run_differentSchemas() throws IOException {
+    Schema otherSchema =
+        SchemaBuilder.record("querylogs")
+            .namespace("namespace")
+            .fields()
+            .name("QueryText")
+            .type()
+            .optional()
+            .stringType()
+            .name("QueryBand")
+            .type()
+            .optional()
+            .stringType()
+            .name("StartTime")
+            .type()
+            .optional()
+            .type(TIMESTAMP_SCHEMA)
+            .endRecord();
+    writeChunk(0, QUERYLOGS_SCHEMA, getSeconds(0, 10));
+    writeChunk(1, otherSchema, getSeconds(10, 20));
+
+    assertThat(runVerify(outputPath)).isEqualTo(1);
+    assertThat(logMessages)
+        .contains(
+            getChunkName(1, getSeconds(10, 20))
+                + ": the schema differs from the one of "
+                + getChunkName(0, getSeconds(0, 10))
+                + ".");
+  }
+
+  @Test
+  public void run_truncatedFile() throws IOException {
+    writeChunk(0, QUERYLOGS_SCHEMA, getSeconds(0, 100));
+    Path file = outputPath.resolve(getChunkName(0, getSeconds(0, 100)));
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      channel.truncate(channel.size() - 10);
+    }
+
+    assertThat(runVerify(outputPath)).isEqualTo(1);
+    assertThat(String.join("\n", logMessages)).contains(file.getFileName() + " is not readable");
+  }
+
+  @Test
+  public void run_unfinishedChunk() throws IOException {
+    writeFile("querylogs-20210701T000000S000000_0_temp.avro", QUERYLOGS_SCHEMA, getSeconds(0, 1));
+
+    assertThat(runVerify(outputPath)).isEqualTo(1);
+    assertThat(logMessages)
+        .contains(
+            "querylogs-20210701T000000S000000_0_temp.avro was not finished. Resume the"
+                + " extraction.");
+  }
+
+  @Test
+  public void run_zipFile() throws IOException {
+    Path zipPath = outputPath.resolve("output.zip");
+    try (ZipOutputStream zipStream = new ZipOutputStream(Files.newOutputStream(zipPath))) {
+      zipStream.putNextEntry(new ZipEntry("querylogs.avro"));
+      write(zipStream, QUERYLOGS_SCHEMA, getSeconds(0, 50));
+      zipStream.closeEntry();
+      zipStream.putNextEntry(new ZipEntry("users.avro"));
+      write(zipStream, QUERYLOGS_SCHEMA, getSeconds(0, 2));
+      zipStream.closeEntry();
+    }
+
+    assertThat(runVerify(zipPath)).isEqualTo(0);
+    assertThat(logMessages).contains("querylogs: 1 files, 50 rows.");
+  }
+
+  @Test
+  public void run_zipFileWithCorruptEntry() throws IOException {
+    Path zipPath = outputPath.resolve("output.zip");
+    try (ZipOutputStream zipStream = new ZipOutputStream(Files.newOutputStream(zipPath))) {
+      zipStream.putNextEntry(new ZipEntry("querylogs.avro"));
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      write(bytes, QUERYLOGS_SCHEMA, getSeconds(0, 50));
+      zipStream.write(bytes.toByteArray(), 0, bytes.size() - 10);
+      zipStream.closeEntry();
+    }
+
+    assertThat(runVerify(zipPath)).isEqualTo(1);
+  }
+
+  private int runVerify(Path inputPath) throws IOException {
+    return executor.run(
+        VerifyExecutor.Arguments.builder().setInputPath(inputPath).setThreads(3).build());
+  }
+
+  private static long[] getSeconds(int from, int to) {
+    long[] millis = new long[to - from];
+    for (int i = 0; i < millis.length; i++) {
+      millis[i] = START_MILLIS + (from + i) * 1000L;
+    }
+    return millis;
+  }
+
+  private static String getRange(long[] millis) {
+    return CHUNK_TIMESTAMP_FORMATTER.format(Instant.ofEpochMilli(millis[0]))
+        + "-"
+        + CHUNK_TIMESTAMP_FORMATTER.format(Instant.ofEpochMilli(millis[millis.length - 1]));
+  }
+
+  private static String getChunkName(int chunkNumber, long[] millis) {
+    return String.format("querylogs-%s_%d.avro", getRange(millis), chunkNumber);
+  }
+
+  private void writeChunk(int chunkNumber, Schema schema, long[] millis) throws IOException {
+    writeFile(getChunkName(chunkNumber, millis), schema, millis);
+  }
+
+  private void writeFile(String name, Schema schema, long[] millis) throws IOException {
+    try (OutputStream outputStream = Files.newOutputStream(outputPath.resolve(name))) {
+      write(outputStream, schema, millis);
+    }
+  }
+
+  private static void write(OutputStream outputStream, Schema schema, long[] millis)
+      throws IOException {
+    DataFileWriter<GenericRecord> writer =
+        new DataFileWriter<>(new GenericDatumWriter<GenericRecord>(schema));
+    // Small blocks, so that every file has many sync markers.
+    writer.setSyncInterval(32);
+    writer.create(schema, outputStream);
+    for (long value : millis) {
+      writer.append(
+          new GenericRecordBuilder(schema)
+              .set("QueryText", "SELECT " + value)
+              .set("StartTime", value)
+              .build());
+    }
+    writer.flush();
+  }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigquery.dwhassessment.extractiontool.faketd;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * Fills the DBC views of a {@link TeradataSimulator} database with generated query logs and
+ * catalogs. The rows are generated by the database itself, a batch per statement, at about 100000
+ * rows per second. For tens of millions of rows, use a file database with cached tables, e.g.
+ * {@code jdbc:hsqldb:file:/tmp/dbc;hsqldb.default_table_type=cached}, rather than an in-memory one.
+ *
+ * <p>Every query has a row in QryLogV, QryLogSQLV and DBQLObjTbl. The start times of the queries
+ * are spread evenly over the time span, so that queries share a start time when there are more
+ * queries than milliseconds in the span.
+ */
+public final class DbcDataGenerator {
+
+  private static final int BATCH_ROWS = 100_000;
+  private static final long FIRST_QUERY_ID = 307190000000000000L;
+
+  private long queries = 10_000;
+  private int databases = 10;
+  private int tables = 100;
+  private int columnsPerTable = 10;
+  private int textLength = 200;
+  private LocalDateTime startTime = LocalDateTime.of(2022, 1, 1, 0, 0);
+  private Duration timeSpan = Duration.ofDays(1);
+
+  /** Sets the number of queries in the query logs. Default: 10000. */
+  public DbcDataGenerator setQueries(long queries) {
+    checkArgument(queries >= 0, "The number of queries must not be negative.");
+    this.queries = queries;
+    return this;
+  }
+
+  /** Sets the number of databases, among which the tables are spread. Default: 10. */
+  public DbcDataGenerator setDatabases(int databases) {
+    checkArgument(databases > 0, "The number of databases must be positive.");
+    this.databases = databases;
+    return this;
+  }
+
+  /** Sets the number of tables. Default: 100. */
+  public DbcDataGenerator setTables(int tables) {
+    checkArgument(tables > 0, "The number of tables must be positive.");
+    this.tables = tables;
+    return this;
+  }
+
+  /** Sets the number of columns of every table. Default: 10. */
+  public DbcDataGenerator setColumnsPerTable(int columnsPerTable) {
+    checkArgument(columnsPerTable > 0, "The number of columns must be positive.");
+    this.columnsPerTable = columnsPerTable;
+    return this;
+  }
+
+  /** Sets the number of characters of the query texts. Default: 200. */
+  public DbcDataGenerator setTextLength(int textLength) {
+    checkArgument(
+        textLength > 0 && textLength <= 10_000, "The text length must be between 1 and 10000.");
+    this.textLength = textLength;
+    return this;
+  }
+
+  /** Sets the time span over which the start times of the queries are spread. Default: a day. */
+  public DbcDataGenerator setTimeRange(LocalDateTime startTime, Duration timeSpan) {
+    checkArgument(!timeSpan.isNegative(), "The time span must not be negative.");
+    this.startTime = startTime;
+    this.timeSpan = timeSpan;
+    return this;
+  }
+
+  /** Returns the query ID of the query with the given number, starting at 0. */
+  public static long getQueryId(long query) {
+    return FIRST_QUERY_ID + query;
+  }
+
+  /**
+   * Fills the DBC views of the given database, which {@link TeradataSimulator#createTablesAndViews}
+   * created.
+   *
+   * @param dbUrl The HSQLDB address of the database.
+   */
+  public void populate(String dbUrl) throws SQLException {
+    try (Connection connection = DriverManager.getConnection(dbUrl);
+        Statement statement = connection.createStatement()) {
+      insertCatalogs(statement);
+      insertQueryLogs(statement);
+    }
+  }
+
+  private void insertCatalogs(Statement statement) throws SQLException {
+    String databaseName = String.format("'db_' || MOD(\"I\", %d)", databases);
+    String timestamp = String.format("TIMESTAMP '%s'", Timestamp.valueOf(startTime));
+    insertRows(
+        statement,
+        databases,
+        "INSERT INTO DBC.\"DatabasesV\" (\"DatabaseName\", \"CreatorName\", \"OwnerName\","
+            + " \"PermSpace\", \"CreateTimeStamp\", \"DBKind\")"
+            + " SELECT 'db_' || \"I\", 'dbc', 'dbc', 1E9, "
+            + timestamp
+            + ", 'D'");
+    insertRows(
+        statement,
+        tables,
+        "INSERT INTO DBC.\"TablesV\" (\"DatabaseName\", \"TableName\", \"AccessCount\","
+            + " \"TableKind\", \"CreatorName\", \"CreateTimeStamp\", \"LastAlterTimeStamp\","
+            + " \"RequestText\")"
+            + String.format(" SELECT %s, 'table_' || \"I\", \"I\", 'T', 'dbc', ", databaseName)
+            + timestamp
+            + ", "
+            + timestamp
+            + ", 'CREATE TABLE table_' || \"I\" || ' (column_0 INTEGER)'");
+    insertRows(
+        statement,
+        tables,
+        "INSERT INTO DBC.\"TableSizeV\" (\"DatabaseName\", \"TableName\", \"CurrentPerm\","
+            + " \"PeakPerm\")"
+            + String.format(
+                " SELECT %s, 'table_' || \"I\", CAST(\"I\" AS BIGINT) * 4096,"
+                    + " CAST(\"I\" AS BIGINT) * 8192",
+                databaseName));
+    insertRows(
+        statement,
+        tables,
+        "INSERT INTO DBC.\"TableTextV\" (\"DatabaseName\", \"TableName\", \"TableKind\","
+            + " \"RequestText\", \"LineNo\")"
+            + String.format(
+                " SELECT %s, 'table_' || \"I\", 'T', 'CREATE TABLE table_' || \"I\" ||"
+                    + " ' (column_0 INTEGER)', 1",
+                databaseName));
+    String table = String.format("\"I\" / %d", columnsPerTable);
+    insertRows(
+        statement,
+        (long) tables * columnsPerTable,
+        "INSERT INTO DBC.\"ColumnsV\" (\"DatabaseName\", \"TableName\", \"ColumnName\","
+            + " \"ColumnLength\", \"ColumnType\", \"Nullable\", \"ColumnId\")"
+            + String.format(
+                " SELECT 'db_' || MOD(%1$s, %2$d), 'table_' || %1$s, 'column_' || MOD(\"I\", %3$d),"
+                    + " 4, CASE MOD(\"I\", 3) WHEN 0 THEN 'I ' WHEN 1 THEN 'CV' ELSE 'TS' END,"
+                    + " CASE MOD(\"I\", 2) WHEN 0 THEN 'N' ELSE 'Y' END,"
+                    + " 1025 + MOD(\"I\", %3$d)",
+                table, databases, columnsPerTable));
+  }
+
+  private void insertQueryLogs(Statement statement) throws SQLException {
+    String queryId = String.format("%d + \"I\"", FIRST_QUERY_ID);
+    String procId = "30719 + MOD(\"I\", 16)";
+    String queryStartTime =
+        String.format(
+            "TIMESTAMPADD(SQL_TSI_MILLI_SECOND, CAST(\"I\" AS BIGINT) * %d / %d, TIMESTAMP '%s')",
+            timeSpan.toMillis(), Math.max(queries, 1), Timestamp.valueOf(this.startTime));
+    String tableName = String.format("'table_' || MOD(\"I\", %d)", tables);
+    String databaseName = String.format("'db_' || MOD(MOD(\"I\", %d), %d)", tables, databases);
+    String text =
+        String.format(
+            "SUBSTRING('SELECT column_0 FROM ' || %s || '.' || %s || ' WHERE column_0 = ' || \"I\""
+                + " || ' ' || REPEAT('-', %d) FROM 1 FOR %d)",
+            databaseName, tableName, textLength, textLength);
+    insertRows(
+        statement,
+        queries,
+        "INSERT INTO DBC.\"QryLogV\" (\"QueryID\", \"ProcID\", \"CollectTimeStamp\", \"UserName\","
+            + " \"SessionID\", \"StatementType\", \"ErrorCode\", \"StartTime\", \"FirstRespTime\","
+            + " \"AMPCPUTime\", \"TotalIOCount\", \"NumResultRows\", \"QueryText\")"
+            + String.format(
+                " SELECT %1$s, %2$s, %3$s, 'user_' || MOD(\"I\", 50), MOD(\"I\", 1000), CASE"
+                    + " MOD(\"I\", 4) WHEN 0 THEN 'Select' WHEN 1 THEN 'Insert' WHEN 2 THEN"
+                    + " 'Update' ELSE 'Merge' END, CASE MOD(\"I\", 50) WHEN 0 THEN 3807 ELSE 0 END,"
+                    + " %3$s, TIMESTAMPADD(SQL_TSI_MILLI_SECOND, 1 + MOD(\"I\", 5000), %3$s),"
+                    + " MOD(\"I\", 1000) / 100.0, MOD(CAST(\"I\" AS BIGINT) * 31, 100000),"
+                    + " MOD(\"I\", 100), %4$s",
+                queryId, procId, queryStartTime, text));
+    insertRows(
+        statement,
+        queries,
+        "INSERT INTO DBC.\"QryLogSQLV\" (\"CollectTimeStamp\", \"ProcID\", \"QueryID\","
+            + " \"SqlRowNo\", \"SqlTextInfo\")"
+            + String.format(" SELECT %s, %s, %s, 1, %s", queryStartTime, procId, queryId, text));
+    insertRows(
+        statement,
+        queries,
+        "INSERT INTO DBC.\"DBQLObjTbl\" (\"ProcID\", \"CollectTimeStamp\", \"QueryID\","
+            + " \"ObjectDatabaseName\", \"ObjectTableName\", \"ObjectID\", \"ObjectNum\","
+            + " \"ObjectType\", \"FreqofUse\", \"TypeofUse\")"
+            + String.format(
+                " SELECT %s, %s, %s, %s, %s, 1, 1, 'Tab', 1, 1",
+                procId, queryStartTime, queryId, databaseName, tableName));
+  }
+
+  /**
+   * Inserts rows in batches. The insert selects from a generated table with a column "I" that
+   * numbers the rows, starting at 0.
+   */
+  private static void insertRows(Statement statement, long rows, String insertSelect)
+      throws SQLException {
+    for (long first = 0; first < rows; first += BATCH_ROWS) {
+      long last = Math.min(first + BATCH_ROWS, rows) - 1;
+      statement.execute(
+          String.format(
+              "%s FROM UNNEST(SEQUENCE_ARRAY(%d, %d, 1)) AS \"G\"(\"I\")",
+              insertSelect, first, last));
+    }
+  }
+}
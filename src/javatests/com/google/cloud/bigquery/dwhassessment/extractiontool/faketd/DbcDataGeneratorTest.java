@@ -0,0 +1,110 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigquery.dwhassessment.extractiontool.faketd;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class DbcDataGeneratorTest {
+
+  private static final String DB_URL = "jdbc:hsqldb:mem:generated";
+
+  @BeforeClass
+  public static void setUpDatabase() throws SQLException, IOException {
+    TeradataSimulator.createTablesAndViews(DB_URL);
+    new DbcDataGenerator()
+        .setQueries(100_000)
+        .setDatabases(3)
+        .setTables(20)
+        .setColumnsPerTable(5)
+        .setTextLength(50)
+        .setTimeRange(LocalDateTime.of(2022, 3, 1, 0, 0), Duration.ofMinutes(1))
+        .populate(DB_URL);
+  }
+
+  @Test
+  public void populate_fillsQueryLogs() throws SQLException {
+    assertThat(count("QryLogV")).isEqualTo(100_000);
+    assertThat(count("QryLogSQLV")).isEqualTo(100_000);
+    assertThat(count("DBQLObjTbl")).isEqualTo(100_000);
+    try (Connection connection = DriverManager.getConnection(DB_URL);
+        Statement statement = connection.createStatement();
+        ResultSet resultSet =
+            statement.executeQuery(
+                "SELECT MIN(\"QueryID\"), MAX(\"QueryID\"), MIN(\"StartTime\"), MAX(\"StartTime\"),"
+                    + " COUNT(DISTINCT \"StartTime\"), MAX(CHAR_LENGTH(\"QueryText\"))"
+                    + " FROM DBC.\"QryLogV\"")) {
+      assertThat(resultSet.next()).isTrue();
+      assertThat(resultSet.getLong(1)).isEqualTo(DbcDataGenerator.getQueryId(0));
+      assertThat(resultSet.getLong(2)).isEqualTo(DbcDataGenerator.getQueryId(99_999));
+      assertThat(resultSet.getTimestamp(3)).isEqualTo(Timestamp.valueOf("2022-03-01 00:00:00"));
+      assertThat(resultSet.getTimestamp(4)).isLessThan(Timestamp.valueOf("2022-03-01 00:01:00"));
+      // More queries than milliseconds share start times.
+      assertThat(resultSet.getInt(5)).isEqualTo(60_000);
+      assertThat(resultSet.getInt(6)).isEqualTo(50);
+    }
+  }
+
+  @Test
+  public void populate_fillsCatalogs() throws SQLException {
+    assertThat(count("DatabasesV")).isEqualTo(3);
+    assertThat(count("TablesV")).isEqualTo(20);
+    assertThat(count("TableSizeV")).isEqualTo(20);
+    assertThat(count("TableTextV")).isEqualTo(20);
+    assertThat(count("ColumnsV")).isEqualTo(100);
+    try (Connection connection = DriverManager.getConnection(DB_URL);
+        Statement statement = connection.createStatement();
+        ResultSet resultSet =
+            statement.executeQuery(
+                "SELECT COUNT(*) FROM DBC.\"TablesV\" INNER JOIN DBC.\"ColumnsV\""
+                    + " ON \"TablesV\".\"DatabaseName\" = \"ColumnsV\".\"DatabaseName\""
+                    + " AND \"TablesV\".\"TableName\" = \"ColumnsV\".\"TableName\"")) {
+      assertThat(resultSet.next()).isTrue();
+      assertThat(resultSet.getInt(1)).isEqualTo(100);
+    }
+  }
+
+  @Test
+  public void setTextLength_failsOnTooLongText() {
+    assertThrows(
+        IllegalArgumentException.class, () -> new DbcDataGenerator().setTextLength(10_001));
+  }
+
+  private static long count(String view) throws SQLException {
+    try (Connection connection = DriverManager.getConnection(DB_URL);
+        Statement statement = connection.createStatement();
+        ResultSet resultSet =
+            statement.executeQuery(String.format("SELECT COUNT(*) FROM DBC.\"%s\"", view))) {
+      resultSet.next();
+      return resultSet.getLong(1);
+    }
+  }
+}
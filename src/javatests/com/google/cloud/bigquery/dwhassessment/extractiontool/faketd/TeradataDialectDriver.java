@@ -0,0 +1,270 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigquery.dwhassessment.extractiontool.faketd;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.function.UnaryOperator;
+import java.util.logging.Logger;
+
+/**
+ * A JDBC driver that runs Teradata SQL on HSQLDB, by translating the Teradata functions that the
+ * scripts use into HSQLDB expressions. Together with {@link TeradataSimulator}, the DBC views of
+ * which it queries, it lets the extraction run all scripts locally.
+ *
+ * <p>The URL is the HSQLDB URL with the prefix {@code jdbc:faketd:} instead of {@code jdbc:}, e.g.
+ * {@code jdbc:faketd:hsqldb:mem:dbc}. The driver registers itself when the class is loaded.
+ */
+public final class TeradataDialectDriver implements Driver {
+
+  public static final String URL_PREFIX = "jdbc:faketd:";
+
+  static {
+    try {
+      DriverManager.registerDriver(new TeradataDialectDriver());
+    } catch (SQLException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  /** Registers the driver, if it is not yet registered. */
+  public static void register() {
+    // Loading the class registers the driver.
+  }
+
+  /** Returns the URL of this driver for an HSQLDB URL. */
+  public static String getUrl(String hsqldbUrl) {
+    if (!hsqldbUrl.startsWith("jdbc:hsqldb:")) {
+      throw new IllegalArgumentException(String.format("Not an HSQLDB URL: '%s'.", hsqldbUrl));
+    }
+    return URL_PREFIX + hsqldbUrl.substring("jdbc:".length());
+  }
+
+  /**
+   * Translates the Teradata functions of a query into HSQLDB expressions:
+   *
+   * <ul>
+   *   <li>HASHROW(x) becomes a 32-bit multiplicative hash of the numeric x.
+   *   <li>HASHBUCKET(h) becomes the upper 20 bits of the row hash h, like Teradata's buckets.
+   *   <li>NULLIFZERO(x) becomes NULLIF(x, 0), and ZEROIFNULL(x) becomes COALESCE(x, 0).
+   * </ul>
+   */
+  public static String translate(String sql) {
+    sql =
+        replaceFunction(
+            sql,
+            "HASHROW",
+            argument ->
+                String.format("MOD(CAST(%s AS DECIMAL(38)) * 2654435761, 4294967296)", argument));
+    sql =
+        replaceFunction(
+            sql, "HASHBUCKET", argument -> String.format("FLOOR((%s) / 4096)", argument));
+    sql = replaceFunction(sql, "NULLIFZERO", argument -> String.format("NULLIF(%s, 0)", argument));
+    sql =
+        replaceFunction(sql, "ZEROIFNULL", argument -> String.format("COALESCE(%s, 0)", argument));
+    return sql;
+  }
+
+  /**
+   * Replaces every call of a function with a single argument. Quoted names and string literals are
+   * not looked into.
+   */
+  private static String replaceFunction(
+      String sql, String function, UnaryOperator<String> replacement) {
+    String upperSql = sql.toUpperCase(Locale.ROOT);
+    StringBuilder result = new StringBuilder();
+    int position = 0;
+    int start = findCall(sql, upperSql, function, 0);
+    while (start >= 0) {
+      int argumentStart = sql.indexOf('(', start + function.length()) + 1;
+      int argumentEnd = findClosingParenthesis(sql, argumentStart);
+      result.append(sql, position, start);
+      String argument = sql.substring(argumentStart, argumentEnd).trim();
+      result.append(replacement.apply(replaceFunction(argument, function, replacement)));
+      position = argumentEnd + 1;
+      start = findCall(sql, upperSql, function, position);
+    }
+    return result.append(sql.substring(position)).toString();
+  }
+
+  /** Returns the index of the next call of a function, or -1. */
+  private static int findCall(String sql, String upperSql, String function, int from) {
+    char quote = 0;
+    for (int i = from; i < sql.length(); i++) {
+      char c = sql.charAt(i);
+      if (quote != 0) {
+        quote = c == quote ? 0 : quote;
+      } else if (c == '"' || c == '\'') {
+        quote = c;
+      } else if (upperSql.startsWith(function, i)
+          && (i == 0 || !isNamePart(sql.charAt(i - 1)))
+          && sql.substring(i + function.length()).trim().startsWith("(")) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static int findClosingParenthesis(String sql, int from) {
+    int depth = 0;
+    char quote = 0;
+    for (int i = from; i < sql.length(); i++) {
+      char c = sql.charAt(i);
+      if (quote != 0) {
+        quote = c == quote ? 0 : quote;
+      } else if (c == '"' || c == '\'') {
+        quote = c;
+      } else if (c == '(') {
+        depth++;
+      } else if (c == ')') {
+        if (depth == 0) {
+          return i;
+        }
+        depth--;
+      }
+    }
+    throw new IllegalArgumentException(String.format("Unbalanced parentheses in '%s'.", sql));
+  }
+
+  private static boolean isNamePart(char c) {
+    return Character.isLetterOrDigit(c) || c == '_';
+  }
+
+  @Override
+  public Connection connect(String url, Properties info) throws SQLException {
+    if (!acceptsURL(url)) {
+      return null;
+    }
+    Connection connection =
+        DriverManager.getConnection("jdbc:" + url.substring(URL_PREFIX.length()), info);
+    return newProxy(Connection.class, new ConnectionHandler(connection));
+  }
+
+  @Override
+  public boolean acceptsURL(String url) {
+    return url != null && url.startsWith(URL_PREFIX);
+  }
+
+  @Override
+  public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+    return new DriverPropertyInfo[0];
+  }
+
+  @Override
+  public int getMajorVersion() {
+    return 1;
+  }
+
+  @Override
+  public int getMinorVersion() {
+    return 0;
+  }
+
+  @Override
+  public boolean jdbcCompliant() {
+    return false;
+  }
+
+  @Override
+  public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+    throw new SQLFeatureNotSupportedException();
+  }
+
+  private static <T> T newProxy(Class<T> type, InvocationHandler handler) {
+    return type.cast(
+        Proxy.newProxyInstance(
+            TeradataDialectDriver.class.getClassLoader(),
+            new Class<?>[] {type},
+            (proxy, method, args) -> {
+              try {
+                return handler.invoke(proxy, method, args);
+              } catch (InvocationTargetException e) {
+                throw e.getCause();
+              }
+            }));
+  }
+
+  /** Translates the first argument of a method if it is a query. */
+  private static Object[] translateQuery(Method method, Object[] args) {
+    if (args != null
+        && args.length > 0
+        && args[0] instanceof String
+        && method.getParameterTypes()[0] == String.class) {
+      Object[] translatedArgs = args.clone();
+      translatedArgs[0] = translate((String) args[0]);
+      return translatedArgs;
+    }
+    return args;
+  }
+
+  private static final class ConnectionHandler implements InvocationHandler {
+
+    private final Connection connection;
+
+    ConnectionHandler(Connection connection) {
+      this.connection = connection;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      switch (method.getName()) {
+        case "prepareStatement":
+        case "prepareCall":
+        case "nativeSQL":
+          return method.invoke(connection, translateQuery(method, args));
+        case "createStatement":
+          Statement statement = (Statement) method.invoke(connection, args);
+          return newProxy(Statement.class, new StatementHandler(statement, (Connection) proxy));
+        default:
+          return method.invoke(connection, args);
+      }
+    }
+  }
+
+  private static final class StatementHandler implements InvocationHandler {
+
+    private final Statement statement;
+    private final Connection connection;
+
+    StatementHandler(Statement statement, Connection connection) {
+      this.statement = statement;
+      this.connection = connection;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      String name = method.getName();
+      if (name.equals("getConnection")) {
+        return connection;
+      }
+      if (name.startsWith("execute") || name.equals("addBatch")) {
+        return method.invoke(statement, translateQuery(method, args));
+      }
+      return method.invoke(statement, args);
+    }
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigquery.dwhassessment.extractiontool.faketd;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import com.google.common.collect.Range;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class TeradataDialectDriverTest {
+
+  private static final String DB_URL = "jdbc:hsqldb:mem:dialect";
+
+  @BeforeClass
+  public static void setUpDatabase() throws SQLException {
+    TeradataDialectDriver.register();
+    try (Connection connection = DriverManager.getConnection(DB_URL);
+        Statement statement = connection.createStatement()) {
+      statement.execute("CREATE TABLE \"Queries\" (\"QueryID\" DECIMAL(18,0), \"Rows\" INTEGER)");
+      statement.execute(
+          "INSERT INTO \"Queries\" SELECT 307190000000000000 + \"I\", MOD(\"I\", 3)"
+              + " FROM UNNEST(SEQUENCE_ARRAY(0, 999, 1)) AS \"G\"(\"I\")");
+    }
+  }
+
+  @Test
+  public void translate_replacesTeradataFunctions() {
+    assertThat(
+            TeradataDialectDriver.translate(
+                "SELECT NULLIFZERO(AVG(\"A\" + \"B\")), ZEROIFNULL(\"C\") FROM \"T\""
+                    + " WHERE MOD(HASHBUCKET(HASHROW(\"T\".\"QueryID\")), 4) = 1"))
+        .isEqualTo(
+            "SELECT NULLIF(AVG(\"A\" + \"B\"), 0), COALESCE(\"C\", 0) FROM \"T\""
+                + " WHERE MOD(FLOOR((MOD(CAST(\"T\".\"QueryID\" AS DECIMAL(38)) * 2654435761,"
+                + " 4294967296)) / 4096), 4) = 1");
+  }
+
+  @Test
+  public void translate_ignoresQuotedNames() {
+    String sql = "SELECT \"HASHROW(x)\", 'NULLIFZERO(y)', MyNULLIFZERO(z) FROM \"T\"";
+
+    assertThat(TeradataDialectDriver.translate(sql)).isEqualTo(sql);
+  }
+
+  @Test
+  public void translate_failsOnUnbalancedParentheses() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> TeradataDialectDriver.translate("SELECT HASHROW((\"A\") FROM \"T\""));
+  }
+
+  @Test
+  public void createStatement_hashPartitionsSplitTheRows() throws SQLException {
+    Set<Long> queryIds = new HashSet<>();
+    int[] partitionRows = new int[4];
+    try (Connection connection = DriverManager.getConnection(TeradataDialectDriver.getUrl(DB_URL));
+        Statement statement = connection.createStatement()) {
+      for (int partition = 0; partition < 4; partition++) {
+        try (ResultSet resultSet =
+            statement.executeQuery(
+                "SELECT \"QueryID\" FROM \"Queries\" AS \"Q\""
+                    + " WHERE MOD(HASHBUCKET(HASHROW(\"Q\".\"QueryID\")), 4) = "
+                    + partition)) {
+          while (resultSet.next()) {
+            queryIds.add(resultSet.getLong(1));
+            partitionRows[partition]++;
+          }
+        }
+      }
+    }
+
+    assertThat(queryIds).hasSize(1000);
+    for (int rows : partitionRows) {
+      assertThat(rows).isIn(Range.closed(200, 300));
+    }
+  }
+
+  @Test
+  public void prepareStatement_translatesQuery() throws SQLException {
+    try (Connection connection = DriverManager.getConnection(TeradataDialectDriver.getUrl(DB_URL));
+        PreparedStatement statement =
+            connection.prepareStatement(
+                "SELECT COUNT(NULLIFZERO(\"Rows\")) FROM \"Queries\" WHERE \"Rows\" < ?")) {
+      statement.setInt(1, 2);
+
+      try (ResultSet resultSet = statement.executeQuery()) {
+        assertThat(resultSet.next()).isTrue();
+        assertThat(resultSet.getInt(1)).isEqualTo(333);
+      }
+    }
+  }
+
+  @Test
+  public void getUrl_failsOnOtherUrl() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> TeradataDialectDriver.getUrl("jdbc:teradata://localhost/dbc"));
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigquery.dwhassessment.extractiontool.subcommand;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+import com.google.cloud.bigquery.dwhassessment.extractiontool.executor.CompactExecutor;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import picocli.CommandLine;
+
+@RunWith(JUnit4.class)
+public final class CompactSubcommandTest {
+
+  private static Path inputPath;
+
+  @BeforeClass
+  public static void setUpClass() throws IOException {
+    inputPath = Files.createTempDirectory("compact-test");
+  }
+
+  @Test
+  public void call_success() throws IOException {
+    CompactExecutor executor = Mockito.mock(CompactExecutor.class);
+    CommandLine cmd = new CommandLine(new CompactSubcommand(() -> executor));
+    ArgumentCaptor<CompactExecutor.Arguments> argumentsCaptor =
+        ArgumentCaptor.forClass(CompactExecutor.Arguments.class);
+
+    assertThat(cmd.execute("--input", inputPath.toString())).isEqualTo(0);
+
+    verify(executor).run(argumentsCaptor.capture());
+    CompactExecutor.Arguments arguments = argumentsCaptor.getValue();
+    assertThat(arguments.inputPath().toString()).isEqualTo(inputPath.toString());
+    assertThat(arguments.targetFileSize()).isEqualTo(256L << 20);
+    assertThat(arguments.threads()).isEqualTo(8);
+  }
+
+  @Test
+  public void call_successWithOptions() throws IOException {
+    CompactExecutor executor = Mockito.mock(CompactExecutor.class);
+    CommandLine cmd = new CommandLine(new CompactSubcommand(() -> executor));
+    ArgumentCaptor<CompactExecutor.Arguments> argumentsCaptor =
+        ArgumentCaptor.forClass(CompactExecutor.Arguments.class);
+
+    assertThat(
+            cmd.execute("-i", inputPath.toString(), "--target-size-mb", "1024", "--threads", "2"))
+        .isEqualTo(0);
+
+    verify(executor).run(argumentsCaptor.capture());
+    CompactExecutor.Arguments arguments = argumentsCaptor.getValue();
+    assertThat(arguments.targetFileSize()).isEqualTo(1L << 30);
+    assertThat(arguments.threads()).isEqualTo(2);
+  }
+
+  @Test
+  public void call_failOnMissingInput() {
+    CompactExecutor executor = Mockito.mock(CompactExecutor.class);
+    CommandLine cmd = new CommandLine(new CompactSubcommand(() -> executor));
+    StringWriter writer = new StringWriter();
+    cmd.setErr(new PrintWriter(writer));
+
+    assertThat(cmd.execute("--input", inputPath.resolve("output.zip").toString())).isEqualTo(2);
+    assertThat(writer.toString()).contains("is not a directory.");
+    verifyNoInteractions(executor);
+  }
+
+  @Test
+  public void call_failOnNonPositiveTargetSize() {
+    CompactExecutor executor = Mockito.mock(CompactExecutor.class);
+    CommandLine cmd = new CommandLine(new CompactSubcommand(() -> executor));
+    StringWriter writer = new StringWriter();
+    cmd.setErr(new PrintWriter(writer));
+
+    assertThat(cmd.execute("--input", inputPath.toString(), "--target-size-mb", "0")).isEqualTo(2);
+    assertThat(writer.toString()).contains("--target-size-mb must be a positive integer.");
+    verifyNoInteractions(executor);
+  }
+}
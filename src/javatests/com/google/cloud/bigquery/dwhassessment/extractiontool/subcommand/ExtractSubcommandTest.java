@@ -17,16 +17,23 @@ package com.google.cloud.bigquery.dwhassessment.extractiontool.subcommand;
 
 import static com.google.common.truth.Truth.assertThat;
 import static com.google.common.truth.Truth8.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.verify;
 
+import com.google.cloud.bigquery.dwhassessment.extractiontool.db.ColumnProjection;
 import com.google.cloud.bigquery.dwhassessment.extractiontool.db.SchemaFilter;
 import com.google.cloud.bigquery.dwhassessment.extractiontool.db.SchemaFilters;
 import com.google.cloud.bigquery.dwhassessment.extractiontool.db.ScriptManager;
 import com.google.cloud.bigquery.dwhassessment.extractiontool.db.ScriptManagerImpl;
 import com.google.cloud.bigquery.dwhassessment.extractiontool.db.ScriptRunnerImpl;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.db.SqlScriptVariables.QueryLogsVariables.SummaryGrain;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.db.StatementTimeouts;
 import com.google.cloud.bigquery.dwhassessment.extractiontool.executor.ExtractExecutor;
 import com.google.cloud.bigquery.dwhassessment.extractiontool.executor.ExtractExecutor.RunMode;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.re2j.Pattern;
 import java.io.IOException;
 import java.io.PrintWriter;
@@ -35,18 +42,27 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.sql.SQLException;
+import java.time.Duration;
 import java.time.Instant;
 import org.junit.BeforeClass;
+import org.junit.Rule;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
 import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
 import picocli.CommandLine;
 
 @RunWith(JUnit4.class)
 public final class ExtractSubcommandTest {
 
+  @Rule public final MockitoRule mocks = MockitoJUnit.rule();
+
+  @Captor private ArgumentCaptor<ImmutableList<ExtractExecutor.Arguments>> sourcesArgumentsCaptor;
+
   private static Path outputPath;
   private static Path prevRunPath;
 
@@ -89,6 +105,7 @@ public final class ExtractSubcommandTest {
     assertThat(arguments.skipSqlScripts()).isEmpty();
     assertThat(arguments.chunkRows()).isEqualTo(0);
     assertThat(arguments.needQueryText()).isTrue();
+    assertThat(arguments.qryLogSummaryGrain()).isEqualTo(SummaryGrain.HOUR);
   }
 
   @Test
@@ -121,6 +138,508 @@ public final class ExtractSubcommandTest {
     assertThat(arguments.chunkRows()).isEqualTo(5000);
   }
 
+  @Test
+  public void call_successWithHashPartitions() throws IOException, SQLException {
+    ExtractExecutor executor = Mockito.mock(ExtractExecutor.class);
+    CommandLine cmd = new CommandLine(new ExtractSubcommand(() -> executor, scriptManager));
+
+    assertThat(
+            cmd.execute(
+                "--db-address",
+                "jdbc:hsqldb:mem:my-db-hash-partitions.example",
+                "--db-user",
+                "my-username",
+                "--db-password",
+                "my0password",
+                "--output",
+                outputPath.toString(),
+                "--hash-partitions",
+                "8"))
+        .isEqualTo(0);
+
+    ArgumentCaptor<ExtractExecutor.Arguments> argumentsCaptor =
+        ArgumentCaptor.forClass(ExtractExecutor.Arguments.class);
+    verify(executor).run(argumentsCaptor.capture());
+    assertThat(argumentsCaptor.getValue().hashPartitions()).isEqualTo(8);
+  }
+
+  @Test
+  public void call_successWithAdaptiveSessions() throws IOException, SQLException {
+    ExtractExecutor executor = Mockito.mock(ExtractExecutor.class);
+    CommandLine cmd = new CommandLine(new ExtractSubcommand(() -> executor, scriptManager));
+
+    assertThat(
+            cmd.execute(
+                "--db-address",
+                "jdbc:hsqldb:mem:my-db-sessions.example",
+                "--db-user",
+                "my-username",
+                "--db-password",
+                "my0password",
+                "--output",
+                outputPath.toString(),
+                "--hash-partitions",
+                "16",
+                "--min-sessions",
+                "2",
+                "--max-sessions",
+                "8",
+                "--load-query",
+                "SELECT 0.5",
+                "--max-load",
+                "0.8"))
+        .isEqualTo(0);
+
+    ArgumentCaptor<ExtractExecutor.Arguments> argumentsCaptor =
+        ArgumentCaptor.forClass(ExtractExecutor.Arguments.class);
+    verify(executor).run(argumentsCaptor.capture());
+    ExtractExecutor.Arguments arguments = argumentsCaptor.getValue();
+    assertThat(arguments.minSessions()).isEqualTo(2);
+    assertThat(arguments.maxSessions()).hasValue(8);
+    assertThat(arguments.loadQuery()).hasValue("SELECT 0.5");
+    assertThat(arguments.maxLoad()).hasValue(0.8);
+  }
+
+  @Test
+  public void call_successWithTimeouts() throws IOException, SQLException {
+    ExtractExecutor executor = Mockito.mock(ExtractExecutor.class);
+    CommandLine cmd = new CommandLine(new ExtractSubcommand(() -> executor, scriptManager));
+
+    assertThat(
+            cmd.execute(
+                "--db-address",
+                "jdbc:hsqldb:mem:my-db-timeouts.example",
+                "--db-user",
+                "my-username",
+                "--db-password",
+                "my0password",
+                "--output",
+                outputPath.toString(),
+                "--query-timeout-minutes",
+                "60,querylogs=120",
+                "--fetch-idle-timeout-minutes",
+                "one=10",
+                "--skip-timed-out-scripts"))
+        .isEqualTo(0);
+
+    ArgumentCaptor<ExtractExecutor.Arguments> argumentsCaptor =
+        ArgumentCaptor.forClass(ExtractExecutor.Arguments.class);
+    verify(executor).run(argumentsCaptor.capture());
+    ExtractExecutor.Arguments arguments = argumentsCaptor.getValue();
+    assertThat(arguments.getStatementTimeouts("querylogs"))
+        .isEqualTo(StatementTimeouts.builder().setExecuteTimeout(Duration.ofMinutes(120)).build());
+    assertThat(arguments.getStatementTimeouts("one"))
+        .isEqualTo(
+            StatementTimeouts.builder()
+                .setExecuteTimeout(Duration.ofMinutes(60))
+                .setFetchIdleTimeout(Duration.ofMinutes(10))
+                .build());
+    assertThat(arguments.getStatementTimeouts("two"))
+        .isEqualTo(StatementTimeouts.builder().setExecuteTimeout(Duration.ofMinutes(60)).build());
+    assertThat(arguments.skipTimedOutScripts()).isTrue();
+  }
+
+  @Test
+  public void call_failOnInvalidQueryTimeout() {
+    ExtractExecutor executor = Mockito.mock(ExtractExecutor.class);
+    CommandLine cmd = new CommandLine(new ExtractSubcommand(() -> executor, scriptManager));
+    StringWriter writer = new StringWriter();
+    cmd.setErr(new PrintWriter(writer));
+
+    assertThat(
+            cmd.execute(
+                "--db-address",
+                "jdbc:hsqldb:mem:my-db-timeouts-fail.example",
+                "--db-user",
+                "my-username",
+                "--db-password",
+                "my0password",
+                "--output",
+                outputPath.toString(),
+                "--query-timeout-minutes",
+                "querylogs=0"))
+        .isEqualTo(2);
+    assertThat(writer.toString()).contains("--query-timeout-minutes must be a positive integer.");
+  }
+
+  @Test
+  public void call_successWithMemoryBudget() throws IOException, SQLException {
+    ExtractExecutor executor = Mockito.mock(ExtractExecutor.class);
+    CommandLine cmd = new CommandLine(new ExtractSubcommand(() -> executor, scriptManager));
+
+    assertThat(
+            cmd.execute(
+                "--db-address",
+                "jdbc:hsqldb:mem:my-db-memory-budget.example",
+                "--db-user",
+                "my-username",
+                "--db-password",
+                "my0password",
+                "--output",
+                outputPath.toString(),
+                "--memory-budget-mb",
+                "64"))
+        .isEqualTo(0);
+
+    ArgumentCaptor<ExtractExecutor.Arguments> argumentsCaptor =
+        ArgumentCaptor.forClass(ExtractExecutor.Arguments.class);
+    verify(executor).run(argumentsCaptor.capture());
+    assertThat(argumentsCaptor.getValue().memoryBudget()).hasValue(64L << 20);
+  }
+
+  @Test
+  public void call_failOnInvalidMemoryBudget() {
+    ExtractExecutor executor = Mockito.mock(ExtractExecutor.class);
+    CommandLine cmd = new CommandLine(new ExtractSubcommand(() -> executor, scriptManager));
+    StringWriter writer = new StringWriter();
+    cmd.setErr(new PrintWriter(writer));
+
+    assertThat(
+            cmd.execute(
+                "--db-address",
+                "jdbc:hsqldb:mem:my-db-memory-budget-fail.example",
+                "--db-user",
+                "my-username",
+                "--db-password",
+                "my0password",
+                "--output",
+                outputPath.toString(),
+                "--memory-budget-mb",
+                "0"))
+        .isEqualTo(2);
+    assertThat(writer.toString()).contains("--memory-budget-mb must be a positive integer.");
+  }
+
+  @Test
+  public void call_failOnMinSessionsAboveMaxSessions() {
+    ExtractExecutor executor = Mockito.mock(ExtractExecutor.class);
+    CommandLine cmd = new CommandLine(new ExtractSubcommand(() -> executor, scriptManager));
+    StringWriter writer = new StringWriter();
+    cmd.setErr(new PrintWriter(writer));
+
+    assertThat(
+            cmd.execute(
+                "--db-address",
+                "jdbc:hsqldb:mem:my-db-sessions-fail.example",
+                "--db-user",
+                "my-username",
+                "--db-password",
+                "my0password",
+                "--output",
+                outputPath.toString(),
+                "--min-sessions",
+                "4",
+                "--max-sessions",
+                "2"))
+        .isEqualTo(2);
+    assertThat(writer.toString())
+        .contains("--min-sessions must not be larger than --max-sessions.");
+  }
+
+  @Test
+  public void call_failOnLoadQueryWithoutMaxLoad() {
+    ExtractExecutor executor = Mockito.mock(ExtractExecutor.class);
+    CommandLine cmd = new CommandLine(new ExtractSubcommand(() -> executor, scriptManager));
+    StringWriter writer = new StringWriter();
+    cmd.setErr(new PrintWriter(writer));
+
+    assertThat(
+            cmd.execute(
+                "--db-address",
+                "jdbc:hsqldb:mem:my-db-load-fail.example",
+                "--db-user",
+                "my-username",
+                "--db-password",
+                "my0password",
+                "--output",
+                outputPath.toString(),
+                "--max-sessions",
+                "2",
+                "--load-query",
+                "SELECT 1"))
+        .isEqualTo(2);
+    assertThat(writer.toString())
+        .contains("--load-query and --max-load must be specified together.");
+  }
+
+  @Test
+  public void call_successWithSourcesFile() throws IOException, SQLException {
+    ExtractExecutor executor = Mockito.mock(ExtractExecutor.class);
+    CommandLine cmd = new CommandLine(new ExtractSubcommand(() -> executor, scriptManager));
+    Path sourcesOutputPath = Files.createTempDirectory("extract-sources-test");
+    Path sourcesFile = Files.createTempFile("sources", ".json");
+    Files.write(
+        sourcesFile,
+        ("[{\"name\": \"prod\", \"dbAddress\": \"jdbc:hsqldb:mem:my-db-prod.example\","
+                + " \"dbUser\": \"prod-user\", \"baseDb\": \"ProdDBC\"},"
+                + " {\"name\": \"test\", \"dbAddress\": \"jdbc:hsqldb:mem:my-db-test.example\","
+                + " \"dbUser\": \"test-user\", \"dbPassword\": \"test-password\","
+                + " \"scriptBaseDb\": {\"querylogs\": \"PDCRINFO\"}}]")
+            .getBytes(UTF_8));
+
+    assertThat(
+            cmd.execute(
+                "--sources-file",
+                sourcesFile.toString(),
+                "--db-password",
+                "my0password",
+                "--output",
+                sourcesOutputPath.toString(),
+                "--parallel-sources",
+                "2"))
+        .isEqualTo(0);
+
+    verify(executor).runAll(sourcesArgumentsCaptor.capture(), eq(2));
+    ImmutableList<ExtractExecutor.Arguments> arguments = sourcesArgumentsCaptor.getValue();
+    assertThat(arguments).hasSize(2);
+    assertThat(arguments.get(0).dbConnectionAddress())
+        .isEqualTo("jdbc:hsqldb:mem:my-db-prod.example");
+    assertThat(arguments.get(0).dbConnectionProperties())
+        .containsExactly("user", "prod-user", "password", "my0password");
+    assertThat(arguments.get(0).outputPath()).isEqualTo(sourcesOutputPath.resolve("prod"));
+    assertThat(arguments.get(0).baseDatabase()).isEqualTo("ProdDBC");
+    assertThat(arguments.get(0).scriptBaseDatabase()).isEmpty();
+    assertThat(arguments.get(1).dbConnectionAddress())
+        .isEqualTo("jdbc:hsqldb:mem:my-db-test.example");
+    assertThat(arguments.get(1).dbConnectionProperties())
+        .containsExactly("user", "test-user", "password", "test-password");
+    assertThat(arguments.get(1).outputPath()).isEqualTo(sourcesOutputPath.resolve("test"));
+    assertThat(arguments.get(1).baseDatabase()).isEqualTo("DBC");
+    assertThat(arguments.get(1).scriptBaseDatabase()).containsExactly("querylogs", "PDCRINFO");
+    assertThat(Files.isDirectory(sourcesOutputPath.resolve("prod"))).isTrue();
+    assertThat(Files.isDirectory(sourcesOutputPath.resolve("test"))).isTrue();
+  }
+
+  @Test
+  public void call_failOnSourcesFileWithDbAddress() throws IOException {
+    ExtractExecutor executor = Mockito.mock(ExtractExecutor.class);
+    CommandLine cmd = new CommandLine(new ExtractSubcommand(() -> executor, scriptManager));
+    StringWriter writer = new StringWriter();
+    cmd.setErr(new PrintWriter(writer));
+    Path sourcesFile = Files.createTempFile("sources", ".json");
+    Files.write(
+        sourcesFile,
+        ("[{\"name\": \"prod\", \"dbAddress\": \"jdbc:hsqldb:mem:my-db-prod2.example\","
+                + " \"dbUser\": \"prod-user\"}]")
+            .getBytes(UTF_8));
+
+    assertThat(
+            cmd.execute(
+                "--sources-file",
+                sourcesFile.toString(),
+                "--db-address",
+                "jdbc:hsqldb:mem:my-db-sources.example",
+                "--db-password",
+                "my0password",
+                "--output",
+                outputPath.toString()))
+        .isEqualTo(2);
+    assertThat(writer.toString())
+        .contains("The option --sources-file cannot be combined with --db-address or --db-user.");
+  }
+
+  @Test
+  public void call_failOnDuplicateSourceName() throws IOException {
+    ExtractExecutor executor = Mockito.mock(ExtractExecutor.class);
+    CommandLine cmd = new CommandLine(new ExtractSubcommand(() -> executor, scriptManager));
+    StringWriter writer = new StringWriter();
+    cmd.setErr(new PrintWriter(writer));
+    Path sourcesFile = Files.createTempFile("sources", ".json");
+    Files.write(
+        sourcesFile,
+        ("[{\"name\": \"prod\", \"dbAddress\": \"jdbc:hsqldb:mem:my-db-prod3.example\","
+                + " \"dbUser\": \"prod-user\"},"
+                + " {\"name\": \"prod\", \"dbAddress\": \"jdbc:hsqldb:mem:my-db-prod4.example\","
+                + " \"dbUser\": \"prod-user\"}]")
+            .getBytes(UTF_8));
+
+    assertThat(
+            cmd.execute(
+                "--sources-file",
+                sourcesFile.toString(),
+                "--db-password",
+                "my0password",
+                "--output",
+                outputPath.toString()))
+        .isEqualTo(2);
+    assertThat(writer.toString()).contains("Got duplicate source name 'prod'.");
+  }
+
+  @Test
+  public void call_successWithWorkerId() throws IOException, SQLException {
+    ExtractExecutor executor = Mockito.mock(ExtractExecutor.class);
+    CommandLine cmd = new CommandLine(new ExtractSubcommand(() -> executor, scriptManager));
+
+    assertThat(
+            cmd.execute(
+                "--db-address",
+                "jdbc:hsqldb:mem:my-db-worker.example",
+                "--db-user",
+                "my-username",
+                "--db-password",
+                "my0password",
+                "--output",
+                outputPath.toString(),
+                "--worker-id",
+                "host-1",
+                "--lease-seconds",
+                "60"))
+        .isEqualTo(0);
+
+    ArgumentCaptor<ExtractExecutor.Arguments> argumentsCaptor =
+        ArgumentCaptor.forClass(ExtractExecutor.Arguments.class);
+    verify(executor).run(argumentsCaptor.capture());
+    assertThat(argumentsCaptor.getValue().workerId()).hasValue("host-1");
+    assertThat(argumentsCaptor.getValue().leaseDuration()).isEqualTo(Duration.ofSeconds(60));
+  }
+
+  @Test
+  public void call_failOnWorkerIdWithZipOutput() {
+    ExtractExecutor executor = Mockito.mock(ExtractExecutor.class);
+    CommandLine cmd = new CommandLine(new ExtractSubcommand(() -> executor, scriptManager));
+    StringWriter writer = new StringWriter();
+    cmd.setErr(new PrintWriter(writer));
+
+    assertThat(
+            cmd.execute(
+                "--db-address",
+                "jdbc:hsqldb:mem:my-db-worker-zip.example",
+                "--db-user",
+                "my-username",
+                "--db-password",
+                "my0password",
+                "--output",
+                outputPath.resolve("output.zip").toString(),
+                "--worker-id",
+                "host-1"))
+        .isEqualTo(2);
+    assertThat(writer.toString()).contains("--worker-id requires --output to be a directory.");
+  }
+
+  @Test
+  public void call_successWithFollow() throws IOException, SQLException {
+    ExtractExecutor executor = Mockito.mock(ExtractExecutor.class);
+    CommandLine cmd = new CommandLine(new ExtractSubcommand(() -> executor, scriptManager));
+
+    assertThat(
+            cmd.execute(
+                "--db-address",
+                "jdbc:hsqldb:mem:my-db-follow.example",
+                "--db-user",
+                "my-username",
+                "--db-password",
+                "my0password",
+                "--output",
+                outputPath.toString(),
+                "--rows-per-chunk",
+                "1000",
+                "--follow",
+                "--follow-interval-minutes",
+                "5",
+                "--follow-cycles",
+                "12"))
+        .isEqualTo(0);
+
+    ArgumentCaptor<ExtractExecutor.Arguments> argumentsCaptor =
+        ArgumentCaptor.forClass(ExtractExecutor.Arguments.class);
+    verify(executor).run(argumentsCaptor.capture());
+    assertThat(argumentsCaptor.getValue().followInterval()).hasValue(Duration.ofMinutes(5));
+    assertThat(argumentsCaptor.getValue().followCycles()).hasValue(12);
+  }
+
+  @Test
+  public void call_failOnFollowWithoutChunks() {
+    ExtractExecutor executor = Mockito.mock(ExtractExecutor.class);
+    CommandLine cmd = new CommandLine(new ExtractSubcommand(() -> executor, scriptManager));
+    StringWriter writer = new StringWriter();
+    cmd.setErr(new PrintWriter(writer));
+
+    assertThat(
+            cmd.execute(
+                "--db-address",
+                "jdbc:hsqldb:mem:my-db-follow-unchunked.example",
+                "--db-user",
+                "my-username",
+                "--db-password",
+                "my0password",
+                "--output",
+                outputPath.toString(),
+                "--follow"))
+        .isEqualTo(2);
+    assertThat(writer.toString()).contains("--follow requires chunked processing");
+  }
+
+  @Test
+  public void call_successWithSample() throws IOException, SQLException {
+    ExtractExecutor executor = Mockito.mock(ExtractExecutor.class);
+    CommandLine cmd = new CommandLine(new ExtractSubcommand(() -> executor, scriptManager));
+
+    assertThat(
+            cmd.execute(
+                "--db-address",
+                "jdbc:hsqldb:mem:my-db-sample.example",
+                "--db-user",
+                "my-username",
+                "--db-password",
+                "my0password",
+                "--output",
+                outputPath.toString(),
+                "--sample",
+                "0.01"))
+        .isEqualTo(0);
+
+    ArgumentCaptor<ExtractExecutor.Arguments> argumentsCaptor =
+        ArgumentCaptor.forClass(ExtractExecutor.Arguments.class);
+    verify(executor).run(argumentsCaptor.capture());
+    assertThat(argumentsCaptor.getValue().sampleRatio()).hasValue(0.01);
+  }
+
+  @Test
+  public void call_failOnSampleOutOfRange() {
+    ExtractExecutor executor = Mockito.mock(ExtractExecutor.class);
+    CommandLine cmd = new CommandLine(new ExtractSubcommand(() -> executor, scriptManager));
+    StringWriter writer = new StringWriter();
+    cmd.setErr(new PrintWriter(writer));
+
+    assertThat(
+            cmd.execute(
+                "--db-address",
+                "jdbc:hsqldb:mem:my-db-sample-out-of-range.example",
+                "--db-user",
+                "my-username",
+                "--db-password",
+                "my0password",
+                "--output",
+                outputPath.toString(),
+                "--sample",
+                "1.5"))
+        .isEqualTo(2);
+    assertThat(writer.toString()).contains("--sample must be a fraction between 0.0001 and 1.");
+  }
+
+  @Test
+  public void call_failOnNonPositiveHashPartitions() {
+    ExtractExecutor executor = Mockito.mock(ExtractExecutor.class);
+    CommandLine cmd = new CommandLine(new ExtractSubcommand(() -> executor, scriptManager));
+    StringWriter writer = new StringWriter();
+    cmd.setErr(new PrintWriter(writer));
+
+    assertThat(
+            cmd.execute(
+                "--db-address",
+                "jdbc:hsqldb:mem:my-db-hash-partitions-fail.example",
+                "--db-user",
+                "my-username",
+                "--db-password",
+                "my0password",
+                "--output",
+                outputPath.toString(),
+                "--hash-partitions",
+                "0"))
+        .isEqualTo(2);
+    assertThat(writer.toString()).contains("--hash-partitions must be a positive integer.");
+  }
+
   @Test
   public void call_successWithSqlScripts() throws IOException, SQLException {
     ExtractExecutor executor = Mockito.mock(ExtractExecutor.class);
@@ -531,6 +1050,122 @@ public final class ExtractSubcommandTest {
     assertThat(arguments.qryLogUsers()).containsExactly("one", "two");
   }
 
+  @Test
+  public void call_successWithColumnProjections() throws IOException, SQLException {
+    ExtractExecutor executor = Mockito.mock(ExtractExecutor.class);
+    CommandLine cmd = new CommandLine(new ExtractSubcommand(() -> executor, scriptManager));
+    ArgumentCaptor<ExtractExecutor.Arguments> argumentsCaptor =
+        ArgumentCaptor.forClass(ExtractExecutor.Arguments.class);
+
+    assertThat(
+            cmd.execute(
+                "--db-address",
+                "jdbc:hsqldb:mem:db-column-projections.example",
+                "--db-user",
+                "my-username",
+                "--db-password",
+                "my0password",
+                "--output",
+                outputPath.toString(),
+                "--include-columns",
+                "querylogs.QueryID,querylogs.QueryText",
+                "--exclude-columns",
+                "one.a",
+                "--max-text-length",
+                "querylogs=1000,two=10"))
+        .isEqualTo(0);
+
+    verify(executor).run(argumentsCaptor.capture());
+    assertThat(argumentsCaptor.getValue().columnProjections())
+        .containsExactly(
+            "querylogs",
+            ColumnProjection.builder()
+                .setIncludeColumns(ImmutableSet.of("QueryID", "QueryText"))
+                .setMaxTextLength(1000)
+                .build(),
+            "one",
+            ColumnProjection.builder().setExcludeColumns(ImmutableSet.of("a")).build(),
+            "two",
+            ColumnProjection.builder().setMaxTextLength(10).build());
+  }
+
+  @Test
+  public void call_failOnIncludedAndExcludedColumnsForSameScript() {
+    ExtractExecutor executor = Mockito.mock(ExtractExecutor.class);
+    CommandLine cmd = new CommandLine(new ExtractSubcommand(() -> executor, scriptManager));
+    StringWriter writer = new StringWriter();
+    cmd.setErr(new PrintWriter(writer));
+
+    assertThat(
+            cmd.execute(
+                "--db-address",
+                "jdbc:hsqldb:mem:db-column-projections-conflict.example",
+                "--db-user",
+                "my-username",
+                "--db-password",
+                "my0password",
+                "--output",
+                outputPath.toString(),
+                "--include-columns",
+                "one.a",
+                "--exclude-columns",
+                "one.b"))
+        .isEqualTo(2);
+    assertThat(writer.toString())
+        .contains(
+            "The options --include-columns and --exclude-columns are mutually exclusive per"
+                + " script, but both were given for: one");
+  }
+
+  @Test
+  public void call_failOnInvalidIncludeColumns() {
+    ExtractExecutor executor = Mockito.mock(ExtractExecutor.class);
+    CommandLine cmd = new CommandLine(new ExtractSubcommand(() -> executor, scriptManager));
+    StringWriter writer = new StringWriter();
+    cmd.setErr(new PrintWriter(writer));
+
+    assertThat(
+            cmd.execute(
+                "--db-address",
+                "jdbc:hsqldb:mem:db-column-projections-invalid.example",
+                "--db-user",
+                "my-username",
+                "--db-password",
+                "my0password",
+                "--output",
+                outputPath.toString(),
+                "--include-columns",
+                "QueryID"))
+        .isEqualTo(2);
+    assertThat(writer.toString())
+        .contains("Got invalid value 'QueryID' for --include-columns. Expected <script>.<column>.");
+  }
+
+  @Test
+  public void call_successWithQryLogSummaryGrain() throws IOException, SQLException {
+    ExtractExecutor executor = Mockito.mock(ExtractExecutor.class);
+    CommandLine cmd = new CommandLine(new ExtractSubcommand(() -> executor, scriptManager));
+    ArgumentCaptor<ExtractExecutor.Arguments> argumentsCaptor =
+        ArgumentCaptor.forClass(ExtractExecutor.Arguments.class);
+
+    assertThat(
+            cmd.execute(
+                "--db-address",
+                "jdbc:hsqldb:mem:db-qrylog-summary-grain.example",
+                "--db-user",
+                "my-username",
+                "--db-password",
+                "my0password",
+                "--output",
+                outputPath.toString(),
+                "--qrylog-summary-grain",
+                "DAY"))
+        .isEqualTo(0);
+
+    verify(executor).run(argumentsCaptor.capture());
+    assertThat(argumentsCaptor.getValue().qryLogSummaryGrain()).isEqualTo(SummaryGrain.DAY);
+  }
+
   @Test
   public void call_successWithScriptVars() throws IOException, SQLException {
     ExtractExecutor executor = Mockito.mock(ExtractExecutor.class);
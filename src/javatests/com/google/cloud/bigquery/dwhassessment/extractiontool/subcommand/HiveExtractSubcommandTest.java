@@ -0,0 +1,150 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigquery.dwhassessment.extractiontool.subcommand;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+import com.google.cloud.bigquery.dwhassessment.extractiontool.db.SchemaFilter;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.db.SchemaFilters;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.executor.HiveExtractExecutor;
+import com.google.re2j.Pattern;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import picocli.CommandLine;
+
+@RunWith(JUnit4.class)
+public final class HiveExtractSubcommandTest {
+
+  private static Path outputPath;
+
+  @BeforeClass
+  public static void setUpClass() throws IOException {
+    outputPath = Files.createTempDirectory("hive-extract-test");
+  }
+
+  @Test
+  public void call_success() throws IOException, SQLException {
+    HiveExtractExecutor executor = Mockito.mock(HiveExtractExecutor.class);
+    CommandLine cmd = new CommandLine(new HiveExtractSubcommand(() -> executor));
+    ArgumentCaptor<HiveExtractExecutor.Arguments> argumentsCaptor =
+        ArgumentCaptor.forClass(HiveExtractExecutor.Arguments.class);
+
+    assertThat(
+            cmd.execute(
+                "--db-address",
+                "jdbc:hsqldb:mem:hive-db1.example",
+                "--db-user",
+                "my-username",
+                "--output",
+                outputPath.toString()))
+        .isEqualTo(0);
+
+    verify(executor).run(argumentsCaptor.capture());
+    HiveExtractExecutor.Arguments arguments = argumentsCaptor.getValue();
+    assertThat(arguments.dbConnectionAddress()).isEqualTo("jdbc:hsqldb:mem:hive-db1.example");
+    assertThat(arguments.dbConnectionProperties().getProperty("user")).isEqualTo("my-username");
+    assertThat(arguments.dbConnectionProperties().getProperty("password")).isNull();
+    assertThat(arguments.outputPath().toString()).isEqualTo(outputPath.toString());
+    assertThat(arguments.threads()).isEqualTo(8);
+    assertThat(arguments.describePartitions()).isTrue();
+    assertThat(arguments.readMetastore()).isFalse();
+    assertThat(arguments.schemaFilters()).isEmpty();
+  }
+
+  @Test
+  public void call_successWithOptions() throws IOException, SQLException {
+    HiveExtractExecutor executor = Mockito.mock(HiveExtractExecutor.class);
+    CommandLine cmd =
+        new CommandLine(new HiveExtractSubcommand(() -> executor))
+            .registerConverter(SchemaFilter.class, SchemaFilters::parse);
+    ArgumentCaptor<HiveExtractExecutor.Arguments> argumentsCaptor =
+        ArgumentCaptor.forClass(HiveExtractExecutor.Arguments.class);
+
+    assertThat(
+            cmd.execute(
+                "--db-address",
+                "jdbc:hsqldb:mem:hive-db2.example",
+                "--output",
+                outputPath.resolve("hive.zip").toString(),
+                "--threads",
+                "32",
+                "--no-describe-partitions",
+                "--metastore",
+                "--schema-filter",
+                "db:sales"))
+        .isEqualTo(0);
+
+    verify(executor).run(argumentsCaptor.capture());
+    HiveExtractExecutor.Arguments arguments = argumentsCaptor.getValue();
+    assertThat(arguments.outputPath().toString())
+        .isEqualTo(outputPath.resolve("hive.zip").toString());
+    assertThat(arguments.threads()).isEqualTo(32);
+    assertThat(arguments.describePartitions()).isFalse();
+    assertThat(arguments.readMetastore()).isTrue();
+    assertThat(arguments.schemaFilters())
+        .containsExactly(SchemaFilter.builder().setDatabaseName(Pattern.compile("sales")).build());
+  }
+
+  @Test
+  public void call_failOnNonPositiveThreads() {
+    HiveExtractExecutor executor = Mockito.mock(HiveExtractExecutor.class);
+    CommandLine cmd = new CommandLine(new HiveExtractSubcommand(() -> executor));
+    StringWriter writer = new StringWriter();
+    cmd.setErr(new PrintWriter(writer));
+
+    assertThat(
+            cmd.execute(
+                "--db-address",
+                "jdbc:hsqldb:mem:hive-db3.example",
+                "--output",
+                outputPath.toString(),
+                "--threads",
+                "0"))
+        .isEqualTo(2);
+    assertThat(writer.toString()).contains("--threads must be a positive integer.");
+    verifyNoInteractions(executor);
+  }
+
+  @Test
+  public void call_failOnMissingOutputDirectory() {
+    HiveExtractExecutor executor = Mockito.mock(HiveExtractExecutor.class);
+    CommandLine cmd = new CommandLine(new HiveExtractSubcommand(() -> executor));
+    StringWriter writer = new StringWriter();
+    cmd.setErr(new PrintWriter(writer));
+
+    assertThat(
+            cmd.execute(
+                "--db-address",
+                "jdbc:hsqldb:mem:hive-db4.example",
+                "--output",
+                outputPath.resolve("missing").toString()))
+        .isEqualTo(2);
+    assertThat(writer.toString()).contains("is not a directory.");
+    verifyNoInteractions(executor);
+  }
+}
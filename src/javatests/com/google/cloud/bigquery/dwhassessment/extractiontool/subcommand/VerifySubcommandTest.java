@@ -0,0 +1,123 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigquery.dwhassessment.extractiontool.subcommand;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import com.google.cloud.bigquery.dwhassessment.extractiontool.executor.VerifyExecutor;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import picocli.CommandLine;
+
+@RunWith(JUnit4.class)
+public final class VerifySubcommandTest {
+
+  private static Path inputPath;
+
+  @BeforeClass
+  public static void setUpClass() throws IOException {
+    inputPath = Files.createTempDirectory("verify-test");
+  }
+
+  @Test
+  public void call_success() throws IOException {
+    VerifyExecutor executor = Mockito.mock(VerifyExecutor.class);
+    CommandLine cmd = new CommandLine(new VerifySubcommand(() -> executor));
+    ArgumentCaptor<VerifyExecutor.Arguments> argumentsCaptor =
+        ArgumentCaptor.forClass(VerifyExecutor.Arguments.class);
+
+    assertThat(cmd.execute("--input", inputPath.toString())).isEqualTo(0);
+
+    verify(executor).run(argumentsCaptor.capture());
+    VerifyExecutor.Arguments arguments = argumentsCaptor.getValue();
+    assertThat(arguments.inputPath().toString()).isEqualTo(inputPath.toString());
+    assertThat(arguments.threads()).isEqualTo(8);
+  }
+
+  @Test
+  public void call_successWithZipAndThreads() throws IOException {
+    Path zipPath = Files.createFile(inputPath.resolve("output.zip"));
+    VerifyExecutor executor = Mockito.mock(VerifyExecutor.class);
+    CommandLine cmd = new CommandLine(new VerifySubcommand(() -> executor));
+    ArgumentCaptor<VerifyExecutor.Arguments> argumentsCaptor =
+        ArgumentCaptor.forClass(VerifyExecutor.Arguments.class);
+
+    assertThat(cmd.execute("-i", zipPath.toString(), "--threads", "32")).isEqualTo(0);
+
+    verify(executor).run(argumentsCaptor.capture());
+    VerifyExecutor.Arguments arguments = argumentsCaptor.getValue();
+    assertThat(arguments.inputPath().toString()).isEqualTo(zipPath.toString());
+    assertThat(arguments.threads()).isEqualTo(32);
+  }
+
+  @Test
+  public void call_returnsExitCodeOfExecutor() throws IOException {
+    VerifyExecutor executor = Mockito.mock(VerifyExecutor.class);
+    when(executor.run(any())).thenReturn(1);
+    CommandLine cmd = new CommandLine(new VerifySubcommand(() -> executor));
+
+    assertThat(cmd.execute("--input", inputPath.toString())).isEqualTo(1);
+  }
+
+  @Test
+  public void call_failOnMissingInput() {
+    VerifyExecutor executor = Mockito.mock(VerifyExecutor.class);
+    CommandLine cmd = new CommandLine(new VerifySubcommand(() -> executor));
+    StringWriter writer = new StringWriter();
+    cmd.setErr(new PrintWriter(writer));
+
+    assertThat(cmd.execute("--input", inputPath.resolve("missing").toString())).isEqualTo(2);
+    assertThat(writer.toString()).contains("is not a directory.");
+    verifyNoInteractions(executor);
+  }
+
+  @Test
+  public void call_failOnMissingZipFile() {
+    VerifyExecutor executor = Mockito.mock(VerifyExecutor.class);
+    CommandLine cmd = new CommandLine(new VerifySubcommand(() -> executor));
+    StringWriter writer = new StringWriter();
+    cmd.setErr(new PrintWriter(writer));
+
+    assertThat(cmd.execute("--input", inputPath.resolve("missing.zip").toString())).isEqualTo(2);
+    assertThat(writer.toString()).contains("is not a file.");
+    verifyNoInteractions(executor);
+  }
+
+  @Test
+  public void call_failOnNonPositiveThreads() {
+    VerifyExecutor executor = Mockito.mock(VerifyExecutor.class);
+    CommandLine cmd = new CommandLine(new VerifySubcommand(() -> executor));
+    StringWriter writer = new StringWriter();
+    cmd.setErr(new PrintWriter(writer));
+
+    assertThat(cmd.execute("--input", inputPath.toString(), "--threads", "0")).isEqualTo(2);
+    assertThat(writer.toString()).contains("--threads must be a positive integer.");
+    verifyNoInteractions(executor);
+  }
+}
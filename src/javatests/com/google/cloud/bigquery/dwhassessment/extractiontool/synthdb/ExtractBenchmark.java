@@ -0,0 +1,357 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigquery.dwhassessment.extractiontool.synthdb;
+
+import com.google.cloud.bigquery.dwhassessment.extractiontool.db.SchemaManagerImpl;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.db.ScriptManagerImpl;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.db.ScriptRunnerImpl;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.dbscripts.InternalScriptLoader;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.dumper.DataEntityManagerFactory;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.executor.ExtractExecutor;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.executor.ExtractExecutorImpl;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.executor.SaveCheckerImpl;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.faketd.DbcDataGenerator;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.faketd.TeradataDialectDriver;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.faketd.TeradataSimulator;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.apache.avro.file.DataFileReader;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericRecord;
+import picocli.CommandLine;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+
+/**
+ * Runs the extraction end to end against the {@link SyntheticDriver} and reports its throughput and
+ * memory use.
+ *
+ * <p>Example: {@code bazel run //src/javatests/.../synthdb:ExtractBenchmark -- --url
+ * "jdbc:dwhsynth:rows=1000000;textLength=2000" --scripts querylogs,sql_logs --rows-per-chunk 100000
+ * --hash-partitions 4}
+ *
+ * <p>With {@code --dbc-queries}, the scripts run instead against an HSQLDB emulation of the DBC
+ * views, which {@link DbcDataGenerator} fills before the measurement starts. Unlike the synthetic
+ * driver, the emulation evaluates the conditions, orderings and joins of the scripts.
+ */
+@Command(name = "extract-benchmark", description = "Benchmarks the extraction.")
+public final class ExtractBenchmark implements Callable<Integer> {
+
+  private static final Duration ALLOCATION_SAMPLE_INTERVAL = Duration.ofMillis(100);
+
+  @Option(
+      names = "--url",
+      defaultValue = "jdbc:dwhsynth:rows=100000",
+      description = "The URL of the synthetic database. Default: ${DEFAULT-VALUE}")
+  private String url;
+
+  @Option(
+      names = "--scripts",
+      split = ",",
+      defaultValue = "querylogs,sql_logs,columns",
+      description = "The scripts to extract. Default: ${DEFAULT-VALUE}")
+  private List<String> scripts;
+
+  @Option(
+      names = "--rows-per-chunk",
+      defaultValue = "0",
+      description = "The number of rows per chunk, or 0 for one file per script.")
+  private int chunkRows;
+
+  @Option(
+      names = "--hash-partitions",
+      defaultValue = "1",
+      description = "The number of hash partitions of the query log scripts.")
+  private int hashPartitions;
+
+  @Option(
+      names = "--batch-small-scripts",
+      description = "Extracts the small catalog scripts together, in a single request.")
+  private boolean batchSmallScripts;
+
+  @Option(names = "--memory-budget-mb", description = "The memory budget of the fetched rows.")
+  private Integer memoryBudgetMb;
+
+  @Option(
+      names = "--dbc-queries",
+      description =
+          "Extracts from an HSQLDB emulation of the DBC views with this many queries instead of"
+              + " --url.")
+  private Long dbcQueries;
+
+  @Option(
+      names = "--dbc-url",
+      defaultValue = "jdbc:hsqldb:mem:dbc-benchmark",
+      description =
+          "The HSQLDB URL of the emulation, e.g. a file database with"
+              + " hsqldb.default_table_type=cached for tens of millions of queries. Default:"
+              + " ${DEFAULT-VALUE}")
+  private String dbcUrl;
+
+  @Option(
+      names = "--output",
+      description = "The directory into which to extract. By default, a temporary directory.")
+  private Path outputPath;
+
+  public static void main(String[] args) {
+    System.exit(new CommandLine(new ExtractBenchmark()).execute(args));
+  }
+
+  @Override
+  public Integer call() throws IOException, SQLException {
+    Path output = outputPath != null ? outputPath : Files.createTempDirectory("extract-benchmark");
+    ExtractExecutor.Arguments.Builder arguments =
+        ExtractExecutor.Arguments.builder()
+            .setDbConnectionAddress(
+                dbcQueries == null
+                    ? url
+                    : createDbcEmulation(dbcUrl, new DbcDataGenerator().setQueries(dbcQueries)))
+            .setDbConnectionProperties(new Properties())
+            .setOutputPath(output)
+            .setSqlScripts(scripts)
+            .setChunkRows(chunkRows)
+            .setHashPartitions(hashPartitions)
+            .setBatchSmallScripts(batchSmallScripts)
+            .setNeedJdbcSchemas(false);
+    if (memoryBudgetMb != null) {
+      arguments.setMemoryBudget((long) memoryBudgetMb << 20);
+    }
+    System.out.println(run(arguments.build()));
+    return 0;
+  }
+
+  /**
+   * Creates the DBC views in an HSQLDB database and fills them.
+   *
+   * @return The URL under which the scripts can run against the database.
+   */
+  public static String createDbcEmulation(String hsqldbUrl, DbcDataGenerator generator)
+      throws IOException, SQLException {
+    TeradataDialectDriver.register();
+    TeradataSimulator.createTablesAndViews(hsqldbUrl);
+    generator.populate(hsqldbUrl);
+    return TeradataDialectDriver.getUrl(hsqldbUrl);
+  }
+
+  /** Extracts the given arguments and measures the extraction. */
+  public static Result run(ExtractExecutor.Arguments arguments) throws IOException, SQLException {
+    SyntheticDriver.register();
+    InternalScriptLoader scriptLoader = new InternalScriptLoader();
+    ExtractExecutor executor =
+        new ExtractExecutorImpl(
+            new SchemaManagerImpl(),
+            new ScriptManagerImpl(
+                new ScriptRunnerImpl(),
+                scriptLoader.loadScripts(),
+                scriptLoader.getSortingColumnsMap(),
+                scriptLoader.getIndexColumnsMap()),
+            new SaveCheckerImpl(scriptLoader.getSortingColumnsMap()),
+            DataEntityManagerFactory::create,
+            scriptLoader.getHashPartitionableScripts(),
+            scriptLoader.getCostHints(),
+            scriptLoader.getBatchableScripts(),
+            scriptLoader.getOptInScripts());
+
+    System.gc();
+    List<MemoryPoolMXBean> heapPools = getHeapPools();
+    heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+    AllocationSampler allocationSampler = new AllocationSampler();
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    try {
+      executor.run(arguments);
+    } finally {
+      stopwatch.stop();
+      allocationSampler.stop();
+    }
+    long peakHeapBytes = 0;
+    for (MemoryPoolMXBean pool : heapPools) {
+      peakHeapBytes += pool.getPeakUsage().getUsed();
+    }
+    return countOutput(arguments.outputPath())
+        .setElapsed(stopwatch.elapsed())
+        .setAllocatedBytes(allocationSampler.getAllocatedBytes())
+        .setPeakHeapBytes(peakHeapBytes);
+  }
+
+  private static List<MemoryPoolMXBean> getHeapPools() {
+    ImmutableList.Builder<MemoryPoolMXBean> heapPools = ImmutableList.builder();
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        heapPools.add(pool);
+      }
+    }
+    return heapPools.build();
+  }
+
+  private static Result countOutput(Path outputPath) throws IOException {
+    Result result = new Result();
+    ImmutableList<Path> avroFiles;
+    try (Stream<Path> paths = Files.list(outputPath)) {
+      avroFiles =
+          paths
+              .filter(path -> path.getFileName().toString().endsWith(".avro"))
+              .collect(ImmutableList.toImmutableList());
+    }
+    for (Path avroFile : avroFiles) {
+      result.bytes += Files.size(avroFile);
+      try (DataFileReader<GenericRecord> reader =
+          new DataFileReader<>(avroFile.toFile(), new GenericDatumReader<>())) {
+        GenericRecord record = null;
+        while (reader.hasNext()) {
+          record = reader.next(record);
+          result.rows++;
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Sums the bytes that the threads allocate, by sampling the allocations of every live thread. The
+   * allocations of a thread since the last sample are lost when the thread ends.
+   */
+  private static final class AllocationSampler {
+
+    private final com.sun.management.ThreadMXBean threadBean =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private final Map<Long, Long> initialBytes = new HashMap<>();
+    private final Map<Long, Long> lastBytes = new HashMap<>();
+    private final ScheduledExecutorService scheduler =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              Thread thread = new Thread(runnable, "allocation-sampler");
+              thread.setDaemon(true);
+              return thread;
+            });
+
+    AllocationSampler() {
+      long[] threadIds = threadBean.getAllThreadIds();
+      long[] bytes = threadBean.getThreadAllocatedBytes(threadIds);
+      for (int i = 0; i < threadIds.length; i++) {
+        initialBytes.put(threadIds[i], bytes[i]);
+      }
+      scheduler.scheduleAtFixedRate(
+          this::sample,
+          ALLOCATION_SAMPLE_INTERVAL.toMillis(),
+          ALLOCATION_SAMPLE_INTERVAL.toMillis(),
+          TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void sample() {
+      long[] threadIds = threadBean.getAllThreadIds();
+      long[] bytes = threadBean.getThreadAllocatedBytes(threadIds);
+      for (int i = 0; i < threadIds.length; i++) {
+        if (bytes[i] >= 0) {
+          lastBytes.put(threadIds[i], bytes[i]);
+        }
+      }
+    }
+
+    void stop() {
+      scheduler.shutdownNow();
+      sample();
+    }
+
+    synchronized long getAllocatedBytes() {
+      long allocatedBytes = 0;
+      for (Map.Entry<Long, Long> entry : lastBytes.entrySet()) {
+        allocatedBytes += entry.getValue() - initialBytes.getOrDefault(entry.getKey(), 0L);
+      }
+      return allocatedBytes;
+    }
+  }
+
+  /** The measurements of an extraction. */
+  public static final class Result {
+    private long rows;
+    private long bytes;
+    private Duration elapsed = Duration.ZERO;
+    private long allocatedBytes;
+    private long peakHeapBytes;
+
+    /** The number of rows in the output. */
+    public long rows() {
+      return rows;
+    }
+
+    /** The size of the Avro files of the output. */
+    public long bytes() {
+      return bytes;
+    }
+
+    public Duration elapsed() {
+      return elapsed;
+    }
+
+    /** The bytes that the JVM allocated during the extraction, approximately. */
+    public long allocatedBytes() {
+      return allocatedBytes;
+    }
+
+    /** The largest size of the heap during the extraction, including garbage. */
+    public long peakHeapBytes() {
+      return peakHeapBytes;
+    }
+
+    private Result setElapsed(Duration elapsed) {
+      this.elapsed = elapsed;
+      return this;
+    }
+
+    private Result setAllocatedBytes(long allocatedBytes) {
+      this.allocatedBytes = allocatedBytes;
+      return this;
+    }
+
+    private Result setPeakHeapBytes(long peakHeapBytes) {
+      this.peakHeapBytes = peakHeapBytes;
+      return this;
+    }
+
+    @Override
+    public String toString() {
+      double seconds = Math.max(elapsed.toMillis(), 1) / 1000.0;
+      double megabytes = bytes / (double) (1 << 20);
+      return String.format(
+          "Extracted %d rows (%.1f MiB) in %.2f s: %.0f rows/s, %.1f MiB/s, allocated %.1f MiB/s,"
+              + " peak heap %.1f MiB.",
+          rows,
+          megabytes,
+          seconds,
+          rows / seconds,
+          megabytes / seconds,
+          allocatedBytes / (double) (1 << 20) / seconds,
+          peakHeapBytes / (double) (1 << 20));
+    }
+  }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigquery.dwhassessment.extractiontool.synthdb;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.cloud.bigquery.dwhassessment.extractiontool.executor.ExtractExecutor;
+import com.google.cloud.bigquery.dwhassessment.extractiontool.faketd.DbcDataGenerator;
+import com.google.common.collect.ImmutableList;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Properties;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class ExtractBenchmarkTest {
+
+  @Test
+  public void run_extractsAllRows() throws Exception {
+    ExtractBenchmark.Result result =
+        ExtractBenchmark.run(
+            ExtractExecutor.Arguments.builder()
+                .setDbConnectionAddress("jdbc:dwhsynth:rows=2500;catalogRows=100")
+                .setDbConnectionProperties(new Properties())
+                .setOutputPath(Files.createTempDirectory("extract-benchmark-test"))
+                .setSqlScripts(ImmutableList.of("querylogs", "sql_logs", "columns"))
+                .setChunkRows(1000)
+                .setHashPartitions(2)
+                .setNeedJdbcSchemas(false)
+                .build());
+
+    assertThat(result.rows()).isEqualTo(2500 + 2500 + 100);
+    assertThat(result.bytes()).isGreaterThan(0L);
+    assertThat(result.allocatedBytes()).isGreaterThan(0L);
+    assertThat(result.peakHeapBytes()).isGreaterThan(0L);
+    assertThat(result.toString()).contains("Extracted 5100 rows");
+  }
+
+  @Test
+  public void run_batchSmallScripts_extractsEachScript() throws Exception {
+    Path outputPath = Files.createTempDirectory("extract-benchmark-test");
+    ExtractBenchmark.Result result =
+        ExtractBenchmark.run(
+            ExtractExecutor.Arguments.builder()
+                .setDbConnectionAddress("jdbc:dwhsynth:rows=500;catalogRows=100")
+                .setDbConnectionProperties(new Properties())
+                .setOutputPath(outputPath)
+                .setSqlScripts(
+                    ImmutableList.of(
+                        "querylogs",
+                        "roles",
+                        "users",
+                        "stats",
+                        "functioninfo",
+                        "all_ri_parents",
+                        "all_ri_children"))
+                .setBatchSmallScripts(true)
+                .setNeedJdbcSchemas(false)
+                .build());
+
+    assertThat(result.rows()).isEqualTo(500 + 6 * 100);
+    for (String scriptName : ImmutableList.of("roles", "users", "all_ri_children")) {
+      assertThat(Files.exists(outputPath.resolve(scriptName + ".avro"))).isTrue();
+    }
+  }
+
+  @Test
+  public void run_dbcEmulation_extractsQueryLogsAndCatalogs() throws Exception {
+    String url =
+        ExtractBenchmark.createDbcEmulation(
+            "jdbc:hsqldb:mem:benchmark-scripts",
+            new DbcDataGenerator().setQueries(3000).setTables(20).setColumnsPerTable(5));
+
+    ExtractBenchmark.Result result =
+        ExtractBenchmark.run(
+            ExtractExecutor.Arguments.builder()
+                .setDbConnectionAddress(url)
+                .setDbConnectionProperties(new Properties())
+                .setOutputPath(Files.createTempDirectory("extract-benchmark-test"))
+                .setSqlScripts(
+                    ImmutableList.of(
+                        "querylogs",
+                        "sql_logs",
+                        "query_references",
+                        "columns",
+                        "tableinfo",
+                        "tablesize",
+                        "tabletext"))
+                .setChunkRows(1000)
+                .setHashPartitions(3)
+                .setNeedJdbcSchemas(false)
+                .build());
+
+    assertThat(result.rows()).isEqualTo(3 * 3000 + 100 + 3 * 20);
+  }
+
+  @Test
+  public void run_dbcEmulationWithBindParameters_extractsTimeRange() throws Exception {
+    String url =
+        ExtractBenchmark.createDbcEmulation(
+            "jdbc:hsqldb:mem:benchmark-bind-parameters", new DbcDataGenerator().setQueries(2000));
+
+    ExtractBenchmark.Result result =
+        ExtractBenchmark.run(
+            ExtractExecutor.Arguments.builder()
+                .setDbConnectionAddress(url)
+                .setDbConnectionProperties(new Properties())
+                .setOutputPath(Files.createTempDirectory("extract-benchmark-test"))
+                .setSqlScripts(ImmutableList.of("querylogs", "sql_logs", "query_references"))
+                .setQryLogStartTime(Instant.parse("2021-12-31T00:00:00Z"))
+                .setQryLogEndTime(Instant.parse("2022-01-03T00:00:00Z"))
+                .setBindParameters(true)
+                .setChunkRows(500)
+                .setHashPartitions(2)
+                .setNeedJdbcSchemas(false)
+                .build());
+
+    assertThat(result.rows()).isEqualTo(3 * 2000);
+  }
+
+  @Test
+  public void run_dbcEmulation_extractsAllScripts() throws Exception {
+    String url =
+        ExtractBenchmark.createDbcEmulation(
+            "jdbc:hsqldb:mem:benchmark-all-scripts", new DbcDataGenerator().setQueries(500));
+
+    ExtractBenchmark.Result result =
+        ExtractBenchmark.run(
+            ExtractExecutor.Arguments.builder()
+                .setDbConnectionAddress(url)
+                .setDbConnectionProperties(new Properties())
+                .setOutputPath(Files.createTempDirectory("extract-benchmark-test"))
+                .setHashPartitions(2)
+                .setNeedJdbcSchemas(false)
+                .build());
+
+    assertThat(result.rows()).isGreaterThan(3 * 500L);
+  }
+
+  @Test
+  public void run_dbcEmulationWithBatchSmallScripts_extractsAllScripts() throws Exception {
+    String url =
+        ExtractBenchmark.createDbcEmulation(
+            "jdbc:hsqldb:mem:benchmark-batch", new DbcDataGenerator().setQueries(500));
+
+    ExtractBenchmark.Result result =
+        ExtractBenchmark.run(
+            ExtractExecutor.Arguments.builder()
+                .setDbConnectionAddress(url)
+                .setDbConnectionProperties(new Properties())
+                .setOutputPath(Files.createTempDirectory("extract-benchmark-test"))
+                .setBatchSmallScripts(true)
+                .setNeedJdbcSchemas(false)
+                .build());
+
+    assertThat(result.rows()).isGreaterThan(3 * 500L);
+  }
+}
@@ -0,0 +1,410 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigquery.dwhassessment.extractiontool.synthdb;
+
+import com.google.common.base.Splitter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A JDBC driver that serves synthetic query logs and catalogs of any size, so that the extraction
+ * can be benchmarked without a data warehouse.
+ *
+ * <p>The driver accepts URLs like {@code
+ * jdbc:dwhsynth:rows=1000000;textLength=2000;fetchLatencyMillis=5}, with the properties:
+ *
+ * <ul>
+ *   <li>rows: The number of rows of the query log views. Default: 10000.
+ *   <li>catalogRows: The number of rows of the catalog views. Default: 1000.
+ *   <li>textLength: The number of characters of the query texts. Default: 200.
+ *   <li>fetchLatencyMillis: The time that every fetch of a batch of rows takes. Default: 0.
+ *   <li>timestampSkew: How much the rows crowd towards the end of the time span, from 0 for evenly
+ *       spread rows. Default: 0.
+ *   <li>timeSpanHours: The time span of the timestamps of the query logs. Default: 24.
+ * </ul>
+ *
+ * <p>A query gets the rows of the view it names, see {@link SyntheticTable#forQuery}; all other
+ * parts of the query, e.g. its conditions, are ignored, except for the hash partition condition
+ * {@code MOD(HASHBUCKET(HASHROW(...)), n) = i}, which selects every n-th row. Like Teradata, the
+ * driver names its database "Teradata" and executes a multi-statement request, i.e. queries joined
+ * by semicolons, with a result set for every query. The driver registers itself when the class is
+ * loaded.
+ */
+public final class SyntheticDriver implements Driver {
+
+  public static final String URL_PREFIX = "jdbc:dwhsynth:";
+
+  static {
+    try {
+      DriverManager.registerDriver(new SyntheticDriver());
+    } catch (SQLException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  /** Registers the driver, if it is not yet registered. */
+  public static void register() {
+    // Loading the class registers the driver.
+  }
+
+  @Override
+  public Connection connect(String url, Properties info) throws SQLException {
+    if (!acceptsURL(url)) {
+      return null;
+    }
+    Config config = Config.parse(url.substring(URL_PREFIX.length()));
+    return newProxy(Connection.class, new ConnectionHandler(config));
+  }
+
+  @Override
+  public boolean acceptsURL(String url) {
+    return url != null && url.startsWith(URL_PREFIX);
+  }
+
+  @Override
+  public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+    return new DriverPropertyInfo[0];
+  }
+
+  @Override
+  public int getMajorVersion() {
+    return 1;
+  }
+
+  @Override
+  public int getMinorVersion() {
+    return 0;
+  }
+
+  @Override
+  public boolean jdbcCompliant() {
+    return false;
+  }
+
+  @Override
+  public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+    throw new SQLFeatureNotSupportedException();
+  }
+
+  static <T> T newProxy(Class<T> type, InvocationHandler handler) {
+    return type.cast(
+        Proxy.newProxyInstance(
+            SyntheticDriver.class.getClassLoader(), new Class<?>[] {type}, handler));
+  }
+
+  /**
+   * Handles the methods of {@link Object} for a proxy, or returns null if the method is not one of
+   * them.
+   */
+  static Object invokeObjectMethod(Object proxy, Method method, Object[] args) {
+    switch (method.getName()) {
+      case "equals":
+        return method.getParameterCount() == 1 ? proxy == args[0] : null;
+      case "hashCode":
+        return method.getParameterCount() == 0 ? System.identityHashCode(proxy) : null;
+      case "toString":
+        return method.getParameterCount() == 0
+            ? "Synthetic" + proxy.getClass().getInterfaces()[0].getSimpleName()
+            : null;
+      default:
+        return null;
+    }
+  }
+
+  static SQLException unsupported(Method method) {
+    return new SQLFeatureNotSupportedException(
+        String.format("The synthetic driver does not support %s.", method.getName()));
+  }
+
+  /** The properties of the synthetic database of a URL. */
+  static final class Config {
+    private long rows = 10_000;
+    private long catalogRows = 1_000;
+    private int textLength = 200;
+    private Duration fetchLatency = Duration.ZERO;
+    private double timestampSkew = 0;
+    private Duration timeSpan = Duration.ofHours(24);
+
+    static Config parse(String properties) throws SQLException {
+      Config config = new Config();
+      try {
+        Map<String, String> values =
+            Splitter.on(';')
+                .omitEmptyStrings()
+                .trimResults()
+                .withKeyValueSeparator('=')
+                .split(properties);
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+          switch (entry.getKey()) {
+            case "rows":
+              config.rows = Long.parseLong(entry.getValue());
+              break;
+            case "catalogRows":
+              config.catalogRows = Long.parseLong(entry.getValue());
+              break;
+            case "textLength":
+              config.textLength = Integer.parseInt(entry.getValue());
+              break;
+            case "fetchLatencyMillis":
+              config.fetchLatency = Duration.ofMillis(Long.parseLong(entry.getValue()));
+              break;
+            case "timestampSkew":
+              config.timestampSkew = Double.parseDouble(entry.getValue());
+              break;
+            case "timeSpanHours":
+              config.timeSpan = Duration.ofHours(Long.parseLong(entry.getValue()));
+              break;
+            default:
+              throw new SQLException(String.format("Unknown property '%s'.", entry.getKey()));
+          }
+        }
+      } catch (IllegalArgumentException e) {
+        throw new SQLException(String.format("Invalid properties '%s'.", properties), e);
+      }
+      if (config.rows < 0
+          || config.catalogRows < 0
+          || config.textLength < 1
+          || config.fetchLatency.isNegative()
+          || config.timestampSkew < 0) {
+        throw new SQLException(String.format("Invalid properties '%s'.", properties));
+      }
+      return config;
+    }
+
+    long rows() {
+      return rows;
+    }
+
+    long catalogRows() {
+      return catalogRows;
+    }
+
+    int textLength() {
+      return textLength;
+    }
+
+    Duration fetchLatency() {
+      return fetchLatency;
+    }
+
+    double timestampSkew() {
+      return timestampSkew;
+    }
+
+    Duration timeSpan() {
+      return timeSpan;
+    }
+  }
+
+  private static final class ConnectionHandler implements InvocationHandler {
+
+    private static final String DATABASE_PRODUCT_NAME = "Teradata";
+
+    private final Config config;
+    private boolean closed;
+
+    ConnectionHandler(Config config) {
+      this.config = config;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      Object objectResult = invokeObjectMethod(proxy, method, args);
+      if (objectResult != null) {
+        return objectResult;
+      }
+      switch (method.getName()) {
+        case "createStatement":
+          return newProxy(Statement.class, new StatementHandler(config, (Connection) proxy, null));
+        case "prepareStatement":
+          return newProxy(
+              PreparedStatement.class,
+              new StatementHandler(config, (Connection) proxy, (String) args[0]));
+        case "getMetaData":
+          return newProxy(
+              DatabaseMetaData.class,
+              (metaDataProxy, metaDataMethod, metaDataArgs) -> {
+                Object metaDataObjectResult =
+                    invokeObjectMethod(metaDataProxy, metaDataMethod, metaDataArgs);
+                if (metaDataObjectResult != null) {
+                  return metaDataObjectResult;
+                }
+                switch (metaDataMethod.getName()) {
+                  case "getDatabaseProductName":
+                    return DATABASE_PRODUCT_NAME;
+                  case "getConnection":
+                    return proxy;
+                  default:
+                    throw unsupported(metaDataMethod);
+                }
+              });
+        case "close":
+          closed = true;
+          return null;
+        case "isClosed":
+          return closed;
+        case "isValid":
+          return !closed;
+        case "getAutoCommit":
+          return true;
+        case "isReadOnly":
+          return true;
+        case "setAutoCommit":
+        case "setReadOnly":
+        case "commit":
+        case "rollback":
+        case "clearWarnings":
+          return null;
+        case "getWarnings":
+          return null;
+        case "getTransactionIsolation":
+          return Connection.TRANSACTION_NONE;
+        default:
+          throw unsupported(method);
+      }
+    }
+  }
+
+  /** Handles statements as well as prepared statements, whose parameters are ignored. */
+  private static final class StatementHandler implements InvocationHandler {
+
+    private static final Pattern HASH_PARTITION_PATTERN =
+        Pattern.compile("MOD\\(HASHBUCKET\\(HASHROW\\([^)]*\\)\\), (\\d+)\\) = (\\d+)");
+
+    private final Config config;
+    private final Connection connection;
+    private final String preparedSql;
+    /** The queries of a multi-statement request whose results were not yet requested. */
+    private final Deque<String> pendingQueries = new ArrayDeque<>();
+
+    private int fetchSize;
+    private int queryTimeout;
+    private ResultSet resultSet;
+    private volatile boolean cancelled;
+
+    StatementHandler(Config config, Connection connection, String preparedSql) {
+      this.config = config;
+      this.connection = connection;
+      this.preparedSql = preparedSql;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      Object objectResult = invokeObjectMethod(proxy, method, args);
+      if (objectResult != null) {
+        return objectResult;
+      }
+      String name = method.getName();
+      if (name.startsWith("set") && preparedSql != null && method.getParameterCount() >= 2) {
+        // A parameter of a prepared statement.
+        return null;
+      }
+      switch (name) {
+        case "executeQuery":
+          return executeQuery((Statement) proxy, getSql(args));
+        case "execute":
+          pendingQueries.clear();
+          pendingQueries.addAll(
+              Splitter.on(';').trimResults().omitEmptyStrings().splitToList(getSql(args)));
+          executeQuery((Statement) proxy, pendingQueries.remove());
+          return true;
+        case "getResultSet":
+          return resultSet;
+        case "getUpdateCount":
+          return -1;
+        case "getMoreResults":
+          if (pendingQueries.isEmpty()) {
+            resultSet = null;
+            return false;
+          }
+          executeQuery((Statement) proxy, pendingQueries.remove());
+          return true;
+        case "setFetchSize":
+          fetchSize = (Integer) args[0];
+          return null;
+        case "getFetchSize":
+          return fetchSize;
+        case "setQueryTimeout":
+          queryTimeout = (Integer) args[0];
+          return null;
+        case "getQueryTimeout":
+          return queryTimeout;
+        case "cancel":
+          cancelled = true;
+          return null;
+        case "getConnection":
+          return connection;
+        case "close":
+        case "clearParameters":
+        case "clearWarnings":
+        case "setMaxRows":
+        case "setEscapeProcessing":
+          return null;
+        case "getWarnings":
+          return null;
+        default:
+          throw unsupported(method);
+      }
+    }
+
+    private String getSql(Object[] args) {
+      return args == null || args.length == 0 ? preparedSql : (String) args[0];
+    }
+
+    private ResultSet executeQuery(Statement statement, String sql) {
+      cancelled = false;
+      SyntheticTable table = SyntheticTable.forQuery(sql);
+      int partitionCount = 1;
+      int partitionIndex = 0;
+      Matcher matcher = HASH_PARTITION_PATTERN.matcher(sql);
+      if (matcher.find()) {
+        partitionCount = Integer.parseInt(matcher.group(1));
+        partitionIndex = Integer.parseInt(matcher.group(2));
+      }
+      resultSet =
+          newProxy(
+              ResultSet.class,
+              new SyntheticResultSet(
+                  table,
+                  config,
+                  statement,
+                  fetchSize,
+                  partitionCount,
+                  partitionIndex,
+                  () -> cancelled));
+      return resultSet;
+    }
+  }
+}
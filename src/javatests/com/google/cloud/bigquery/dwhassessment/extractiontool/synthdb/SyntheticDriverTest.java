@@ -0,0 +1,155 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigquery.dwhassessment.extractiontool.synthdb;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class SyntheticDriverTest {
+
+  @BeforeClass
+  public static void registerDriver() {
+    SyntheticDriver.register();
+  }
+
+  @Test
+  public void executeQuery_servesQueryLogs() throws SQLException {
+    try (Connection connection = DriverManager.getConnection("jdbc:dwhsynth:rows=3;textLength=50");
+        Statement statement = connection.createStatement();
+        ResultSet resultSet = statement.executeQuery("SELECT * FROM DBC.QryLogV")) {
+      ResultSetMetaData metaData = resultSet.getMetaData();
+      assertThat(metaData.getColumnName(6)).isEqualTo("StartTime");
+      assertThat(metaData.getColumnType(6)).isEqualTo(Types.TIMESTAMP);
+
+      int rows = 0;
+      Timestamp previousStartTime = new Timestamp(0);
+      while (resultSet.next()) {
+        rows++;
+        assertThat(resultSet.getString("QueryText")).hasLength(50);
+        Timestamp startTime = resultSet.getTimestamp("StartTime");
+        assertThat(startTime).isAtLeast(previousStartTime);
+        previousStartTime = startTime;
+      }
+      assertThat(rows).isEqualTo(3);
+      assertThat(resultSet.isAfterLast()).isTrue();
+    }
+  }
+
+  @Test
+  public void executeQuery_servesSqlLogsAndCatalogs() throws SQLException {
+    try (Connection connection = DriverManager.getConnection("jdbc:dwhsynth:rows=5;catalogRows=2");
+        Statement statement = connection.createStatement()) {
+      try (ResultSet resultSet = statement.executeQuery("SELECT * FROM DBC.QryLogSQLV")) {
+        assertThat(resultSet.getMetaData().getColumnName(5)).isEqualTo("SqlText");
+        assertThat(countRows(resultSet)).isEqualTo(5);
+      }
+      try (ResultSet resultSet = statement.executeQuery("SELECT * FROM DBC.ColumnsV")) {
+        assertThat(resultSet.getMetaData().getColumnName(3)).isEqualTo("ColumnName");
+        assertThat(countRows(resultSet)).isEqualTo(2);
+      }
+    }
+  }
+
+  @Test
+  public void execute_servesResultSetPerStatementOfRequest() throws SQLException {
+    try (Connection connection = DriverManager.getConnection("jdbc:dwhsynth:rows=5;catalogRows=2");
+        Statement statement = connection.createStatement()) {
+      assertThat(connection.getMetaData().getDatabaseProductName()).isEqualTo("Teradata");
+
+      assertThat(statement.execute("SELECT * FROM DBC.QryLogV;\nSELECT * FROM DBC.ColumnsV;"))
+          .isTrue();
+      assertThat(countRows(statement.getResultSet())).isEqualTo(5);
+      assertThat(statement.getMoreResults()).isTrue();
+      assertThat(countRows(statement.getResultSet())).isEqualTo(2);
+      assertThat(statement.getMoreResults()).isFalse();
+      assertThat(statement.getUpdateCount()).isEqualTo(-1);
+    }
+  }
+
+  @Test
+  public void next_skewedTimestampsStayOrdered() throws SQLException {
+    try (Connection connection =
+            DriverManager.getConnection("jdbc:dwhsynth:rows=1000;timestampSkew=3;timeSpanHours=1");
+        Statement statement = connection.createStatement();
+        ResultSet resultSet = statement.executeQuery("SELECT * FROM DBC.QryLogV")) {
+      Timestamp previousStartTime = new Timestamp(0);
+      int rowsInLastMinute = 0;
+      Timestamp lastMinute = Timestamp.valueOf("2022-01-01 00:59:00");
+      while (resultSet.next()) {
+        Timestamp startTime = resultSet.getTimestamp(6);
+        assertThat(startTime).isAtLeast(previousStartTime);
+        previousStartTime = startTime;
+        if (!startTime.before(lastMinute)) {
+          rowsInLastMinute++;
+        }
+      }
+      // Evenly spread, about 17 rows would fall into the last minute.
+      assertThat(rowsInLastMinute).isGreaterThan(50);
+    }
+  }
+
+  @Test
+  public void executeQuery_servesHashPartition() throws SQLException {
+    try (Connection connection = DriverManager.getConnection("jdbc:dwhsynth:rows=10");
+        Statement statement = connection.createStatement();
+        ResultSet resultSet =
+            statement.executeQuery(
+                "SELECT * FROM DBC.QryLogV AS \"QLV\""
+                    + " WHERE MOD(HASHBUCKET(HASHROW(QLV.QueryID)), 3) = 1")) {
+      assertThat(countRows(resultSet)).isEqualTo(3);
+    }
+  }
+
+  @Test
+  public void next_failsAfterCancel() throws SQLException {
+    try (Connection connection = DriverManager.getConnection("jdbc:dwhsynth:rows=10");
+        Statement statement = connection.createStatement();
+        ResultSet resultSet = statement.executeQuery("SELECT * FROM DBC.QryLogV")) {
+      assertThat(resultSet.next()).isTrue();
+
+      statement.cancel();
+
+      assertThrows(SQLException.class, resultSet::next);
+    }
+  }
+
+  @Test
+  public void getConnection_failsOnUnknownProperty() {
+    assertThrows(SQLException.class, () -> DriverManager.getConnection("jdbc:dwhsynth:columns=5"));
+  }
+
+  private static int countRows(ResultSet resultSet) throws SQLException {
+    int rows = 0;
+    while (resultSet.next()) {
+      rows++;
+    }
+    return rows;
+  }
+}
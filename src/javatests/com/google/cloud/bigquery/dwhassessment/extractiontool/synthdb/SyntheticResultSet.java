@@ -0,0 +1,243 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigquery.dwhassessment.extractiontool.synthdb;
+
+import static com.google.cloud.bigquery.dwhassessment.extractiontool.synthdb.SyntheticDriver.invokeObjectMethod;
+import static com.google.cloud.bigquery.dwhassessment.extractiontool.synthdb.SyntheticDriver.newProxy;
+import static com.google.cloud.bigquery.dwhassessment.extractiontool.synthdb.SyntheticDriver.unsupported;
+
+import com.google.cloud.bigquery.dwhassessment.extractiontool.synthdb.SyntheticTable.Column;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.function.BooleanSupplier;
+
+/**
+ * The result set of a synthetic table. Rows are computed when they are read, and every batch of
+ * fetch size rows waits for the fetch latency of the configuration, like a driver that fetches the
+ * rows from the database. A result set of a hash partition gets every partition count-th row of the
+ * table.
+ */
+final class SyntheticResultSet implements InvocationHandler {
+
+  private static final int DEFAULT_FETCH_SIZE = 1000;
+
+  private final SyntheticTable table;
+  private final SyntheticDriver.Config config;
+  private final Statement statement;
+  private final BooleanSupplier cancelled;
+  private final long rowCount;
+  private final int partitionCount;
+  private final int partitionIndex;
+  private final ResultSetMetaData metaData;
+  private int fetchSize;
+  private long row = -1;
+  private long fetchedRows;
+  private boolean wasNull;
+
+  SyntheticResultSet(
+      SyntheticTable table,
+      SyntheticDriver.Config config,
+      Statement statement,
+      int fetchSize,
+      int partitionCount,
+      int partitionIndex,
+      BooleanSupplier cancelled) {
+    this.table = table;
+    this.config = config;
+    this.statement = statement;
+    this.cancelled = cancelled;
+    this.rowCount = table.getRowCount(config);
+    this.fetchSize = fetchSize;
+    this.partitionCount = partitionCount;
+    this.partitionIndex = partitionIndex;
+    this.metaData = newProxy(ResultSetMetaData.class, this::invokeMetaData);
+  }
+
+  @Override
+  public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+    Object objectResult = invokeObjectMethod(proxy, method, args);
+    if (objectResult != null) {
+      return objectResult;
+    }
+    String name = method.getName();
+    if (name.startsWith("get") && args != null && args.length >= 1) {
+      Object column = args[0];
+      if (column instanceof Integer || column instanceof String) {
+        return getColumnValue(method, getColumnIndex(column));
+      }
+    }
+    switch (name) {
+      case "next":
+        return next();
+      case "wasNull":
+        return wasNull;
+      case "getMetaData":
+        return metaData;
+      case "isBeforeFirst":
+        return row < 0 && partitionIndex < rowCount;
+      case "isAfterLast":
+        return row >= rowCount && partitionIndex < rowCount;
+      case "getRow":
+        return row >= 0 && row < rowCount ? (int) ((row - partitionIndex) / partitionCount + 1) : 0;
+      case "setFetchSize":
+        fetchSize = (Integer) args[0];
+        return null;
+      case "getFetchSize":
+        return fetchSize;
+      case "getStatement":
+        return statement;
+      case "getType":
+        return ResultSet.TYPE_FORWARD_ONLY;
+      case "getConcurrency":
+        return ResultSet.CONCUR_READ_ONLY;
+      case "close":
+      case "clearWarnings":
+        return null;
+      case "isClosed":
+        return false;
+      case "getWarnings":
+        return null;
+      default:
+        throw unsupported(method);
+    }
+  }
+
+  private boolean next() throws SQLException, InterruptedException {
+    if (cancelled.getAsBoolean()) {
+      throw new SQLException("The statement was cancelled.");
+    }
+    if (row >= rowCount) {
+      return false;
+    }
+    // A hash partition gets every partitionCount-th row of the table.
+    row = row < 0 ? partitionIndex : row + partitionCount;
+    if (row >= rowCount) {
+      return false;
+    }
+    if (row >= fetchedRows) {
+      // Fetches the next batch of rows.
+      if (!config.fetchLatency().isZero()) {
+        Thread.sleep(config.fetchLatency().toMillis());
+      }
+      fetchedRows = row + (long) (fetchSize > 0 ? fetchSize : DEFAULT_FETCH_SIZE) * partitionCount;
+    }
+    return true;
+  }
+
+  private int getColumnIndex(Object column) throws SQLException {
+    if (column instanceof Integer) {
+      return (Integer) column - 1;
+    }
+    for (int index = 0; index < table.getColumns().size(); index++) {
+      if (table.getColumns().get(index).name().equalsIgnoreCase((String) column)) {
+        return index;
+      }
+    }
+    throw new SQLException(String.format("Unknown column '%s'.", column));
+  }
+
+  private Object getColumnValue(Method method, int columnIndex) throws SQLException {
+    if (row < 0 || row >= rowCount) {
+      throw new SQLException("The result set has no current row.");
+    }
+    if (columnIndex < 0 || columnIndex >= table.getColumns().size()) {
+      throw new SQLException(String.format("Invalid column index %d.", columnIndex + 1));
+    }
+    Object value = table.getValue(columnIndex, row, config);
+    wasNull = value == null;
+    switch (method.getName()) {
+      case "getObject":
+        return value;
+      case "getString":
+        return value == null ? null : value.toString();
+      case "getInt":
+        return value == null ? 0 : ((Number) value).intValue();
+      case "getLong":
+        return value == null ? 0L : ((Number) value).longValue();
+      case "getDouble":
+        return value == null ? 0.0 : ((Number) value).doubleValue();
+      case "getBigDecimal":
+        return value == null ? null : new BigDecimal(value.toString());
+      case "getTimestamp":
+        // Like Teradata's driver, the time is returned as is, whatever the calendar.
+        return (Timestamp) value;
+      case "getBytes":
+        return value == null ? null : value.toString().getBytes(StandardCharsets.UTF_8);
+      default:
+        throw unsupported(method);
+    }
+  }
+
+  private Object invokeMetaData(Object proxy, Method method, Object[] args) throws SQLException {
+    Object objectResult = invokeObjectMethod(proxy, method, args);
+    if (objectResult != null) {
+      return objectResult;
+    }
+    if (method.getName().equals("getColumnCount")) {
+      return table.getColumns().size();
+    }
+    Column column = table.getColumns().get((Integer) args[0] - 1);
+    switch (method.getName()) {
+      case "getColumnName":
+      case "getColumnLabel":
+        return column.name();
+      case "getColumnType":
+        return column.type();
+      case "getColumnTypeName":
+        return getTypeName(column.type());
+      case "getPrecision":
+      case "getColumnDisplaySize":
+        return column.precision();
+      case "getScale":
+        return column.scale();
+      case "isNullable":
+        return ResultSetMetaData.columnNullable;
+      case "getTableName":
+      case "getSchemaName":
+      case "getCatalogName":
+        return "";
+      default:
+        throw unsupported(method);
+    }
+  }
+
+  private static String getTypeName(int type) {
+    switch (type) {
+      case Types.DECIMAL:
+        return "DECIMAL";
+      case Types.INTEGER:
+        return "INTEGER";
+      case Types.BIGINT:
+        return "BIGINT";
+      case Types.DOUBLE:
+        return "FLOAT";
+      case Types.TIMESTAMP:
+        return "TIMESTAMP";
+      case Types.CHAR:
+        return "CHAR";
+      default:
+        return "VARCHAR";
+    }
+  }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2021 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigquery.dwhassessment.extractiontool.synthdb;
+
+import com.google.common.collect.ImmutableList;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * The shapes of the result sets that the {@link SyntheticDriver} serves, modeled on the views that
+ * the query log and catalog scripts read. The values are computed from the row number, so that any
+ * number of rows can be served without holding them.
+ */
+enum SyntheticTable {
+  QUERY_LOGS(
+      ImmutableList.of(
+          Column.of("QueryID", Types.DECIMAL, 18, 0),
+          Column.of("ProcID", Types.DECIMAL, 5, 0),
+          Column.of("UserName", Types.VARCHAR, 128, 0),
+          Column.of("StatementType", Types.VARCHAR, 20, 0),
+          Column.of("ErrorCode", Types.INTEGER, 10, 0),
+          Column.of("StartTime", Types.TIMESTAMP, 26, 6),
+          Column.of("FirstRespTime", Types.TIMESTAMP, 26, 6),
+          Column.of("AMPCPUTime", Types.DOUBLE, 15, 0),
+          Column.of("TotalIOCount", Types.BIGINT, 19, 0),
+          Column.of("QueryText", Types.VARCHAR, 31000, 0))),
+  SQL_LOGS(
+      ImmutableList.of(
+          Column.of("ProcID", Types.DECIMAL, 5, 0),
+          Column.of("CollectTimeStamp", Types.TIMESTAMP, 26, 6),
+          Column.of("SqlRowNo", Types.INTEGER, 10, 0),
+          Column.of("QueryID", Types.DECIMAL, 18, 0),
+          Column.of("SqlText", Types.VARCHAR, 31000, 0))),
+  CATALOG(
+      ImmutableList.of(
+          Column.of("DatabaseName", Types.VARCHAR, 128, 0),
+          Column.of("TableName", Types.VARCHAR, 128, 0),
+          Column.of("ColumnName", Types.VARCHAR, 128, 0),
+          Column.of("ColumnType", Types.CHAR, 2, 0),
+          Column.of("ColumnLength", Types.INTEGER, 10, 0),
+          Column.of("Nullable", Types.CHAR, 1, 0),
+          Column.of("CreateTimeStamp", Types.TIMESTAMP, 26, 6),
+          Column.of("CommentString", Types.VARCHAR, 255, 0)));
+
+  private static final String[] USER_NAMES = {"dbc", "etl_batch", "analyst", "report_svc"};
+  private static final String[] STATEMENT_TYPES = {"Select", "Insert", "Update", "Merge"};
+  private static final String[] COLUMN_TYPES = {"I ", "CV", "DA", "TS", "D "};
+  private static final Instant START = Instant.parse("2022-01-01T00:00:00Z");
+
+  private final ImmutableList<Column> columns;
+
+  SyntheticTable(ImmutableList<Column> columns) {
+    this.columns = columns;
+  }
+
+  /**
+   * Returns the table that a query reads, judged by the view it names. Queries that read none of
+   * the query log views get a catalog.
+   */
+  static SyntheticTable forQuery(String sql) {
+    if (sql.contains("QryLogSQLV") || sql.contains("DBQLObjTbl")) {
+      return SQL_LOGS;
+    }
+    if (sql.contains("QryLogV")) {
+      return QUERY_LOGS;
+    }
+    return CATALOG;
+  }
+
+  ImmutableList<Column> getColumns() {
+    return columns;
+  }
+
+  /** Returns the number of rows of the table. */
+  long getRowCount(SyntheticDriver.Config config) {
+    return this == CATALOG ? config.catalogRows() : config.rows();
+  }
+
+  /**
+   * Returns the value of a column in a row, or null.
+   *
+   * @param columnIndex The index of the column, starting at 0.
+   * @param row The index of the row, starting at 0.
+   */
+  Object getValue(int columnIndex, long row, SyntheticDriver.Config config) {
+    String name = columns.get(columnIndex).name();
+    switch (name) {
+      case "QueryID":
+        return BigDecimal.valueOf(307190000000000000L + (this == SQL_LOGS ? row / 2 : row));
+      case "ProcID":
+        return BigDecimal.valueOf(30719 + row % 16);
+      case "UserName":
+        return USER_NAMES[(int) (row % USER_NAMES.length)];
+      case "StatementType":
+        return STATEMENT_TYPES[(int) (row / 7 % STATEMENT_TYPES.length)];
+      case "ErrorCode":
+        return row % 50 == 0 ? 3807 : 0;
+      case "StartTime":
+      case "CollectTimeStamp":
+        return getTimestamp(row, getRowCount(config), config, 0);
+      case "FirstRespTime":
+        return getTimestamp(row, getRowCount(config), config, 1 + row % 5000);
+      case "AMPCPUTime":
+        return (row % 1000) / 100.0;
+      case "TotalIOCount":
+        return row * 31 % 100_000;
+      case "SqlRowNo":
+        return (int) (row % 2 + 1);
+      case "QueryText":
+      case "SqlText":
+        return getText(row, config.textLength());
+      case "DatabaseName":
+        return "db_" + row / 10_000;
+      case "TableName":
+        return "table_" + row / 20;
+      case "ColumnName":
+        return "column_" + row % 20;
+      case "ColumnType":
+        return COLUMN_TYPES[(int) (row % COLUMN_TYPES.length)];
+      case "ColumnLength":
+        return 4 << (row % 8);
+      case "Nullable":
+        return row % 3 == 0 ? "N" : "Y";
+      case "CreateTimeStamp":
+        return getTimestamp(row, getRowCount(config), config, 0);
+      case "CommentString":
+        return row % 4 == 0 ? null : "Column " + row % 20 + " of table " + row / 20;
+      default:
+        throw new IllegalStateException(String.format("Unknown column %s.", name));
+    }
+  }
+
+  /**
+   * Returns the timestamp of a row, spread over the time span of the configuration. A skew above 0
+   * crowds the rows towards the end of the span, like a log that grew over time, so that more rows
+   * share a timestamp. The timestamps never decrease, as if the rows were ordered by them.
+   */
+  private static Timestamp getTimestamp(
+      long row, long rowCount, SyntheticDriver.Config config, long offsetMillis) {
+    double position = rowCount <= 1 ? 0 : (double) row / (rowCount - 1);
+    double skewedPosition = Math.pow(position, 1 / (1 + config.timestampSkew()));
+    long millis = (long) (skewedPosition * config.timeSpan().toMillis()) + offsetMillis;
+    // Like Teradata's driver, the driver returns the UTC time in the local time zone.
+    return Timestamp.valueOf(LocalDateTime.ofInstant(START.plusMillis(millis), ZoneOffset.UTC));
+  }
+
+  private static String getText(long row, int length) {
+    StringBuilder text = new StringBuilder(length);
+    text.append("SELECT /* ").append(row).append(" */ c FROM t WHERE c = '");
+    while (text.length() < length) {
+      text.append((char) ('a' + (row + text.length()) % 26));
+    }
+    text.setLength(length);
+    return text.toString();
+  }
+
+  /** A column of a synthetic table. */
+  static final class Column {
+    private final String name;
+    private final int type;
+    private final int precision;
+    private final int scale;
+
+    private Column(String name, int type, int precision, int scale) {
+      this.name = name;
+      this.type = type;
+      this.precision = precision;
+      this.scale = scale;
+    }
+
+    static Column of(String name, int type, int precision, int scale) {
+      return new Column(name, type, precision, scale);
+    }
+
+    String name() {
+      return name;
+    }
+
+    int type() {
+      return type;
+    }
+
+    int precision() {
+      return precision;
+    }
+
+    int scale() {
+      return scale;
+    }
+  }
+}
@@ -17,8 +17,26 @@
 #
 # Example: dwh-assessment-extraction-tool.sh --help
 
-CLASSPATH="$(dirname "$0")/ExtractionTool_deploy.jar:$(dirname "$0")/terajdbc4.jar:${CLASSPATH}"
+TOOL_DIR="$(dirname "$0")"
+TOOL_CLASSPATH="${TOOL_DIR}/ExtractionTool_deploy.jar:${TOOL_DIR}/terajdbc4.jar"
+JAVA_OPTS=()
 
-exec java -cp "${CLASSPATH}" \
+# Load the classes needed at startup from an AppCDS archive, which shortens the startup time. The
+# archive is only valid for the class path it was created with, so it is created on the first run
+# from the class list shipped with the tool. Set DWH_EXTRACTION_TOOL_CDS=0 to disable this.
+CLASS_LIST="${TOOL_DIR}/ExtractionTool.classlist"
+CDS_ARCHIVE="${DWH_EXTRACTION_TOOL_CDS_ARCHIVE:-${TOOL_DIR}/ExtractionTool.jsa}"
+if [[ "${DWH_EXTRACTION_TOOL_CDS:-1}" != "0" && -f "${CLASS_LIST}" ]]; then
+  if [[ ! -f "${CDS_ARCHIVE}" || "${TOOL_DIR}/ExtractionTool_deploy.jar" -nt "${CDS_ARCHIVE}" ]]; then
+    java -Xshare:dump -XX:SharedClassListFile="${CLASS_LIST}" \
+      -XX:SharedArchiveFile="${CDS_ARCHIVE}" -cp "${TOOL_CLASSPATH}" > /dev/null 2>&1 \
+      || rm -f "${CDS_ARCHIVE}"
+  fi
+  if [[ -f "${CDS_ARCHIVE}" ]]; then
+    JAVA_OPTS+=( -Xshare:auto -XX:SharedArchiveFile="${CDS_ARCHIVE}" )
+  fi
+fi
+
+exec java "${JAVA_OPTS[@]}" -cp "${TOOL_CLASSPATH}:${CLASSPATH}" \
   com/google/cloud/bigquery/dwhassessment/extractiontool/ExtractionTool \
   "$@"